@@ -0,0 +1,105 @@
+package collector;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * collector.conf 의 {@code collector {}} 블록 설정.
+ * <p>
+ * 시스템 프로퍼티가 우선한다. (예: {@code -Dcollector.port=8126})
+ */
+final class CollectorConfig {
+
+    private final int port;
+    private final int metricsPort;
+    private final int receiveBuffer;
+    private final int maxPacketSize;
+    private final int batch;
+    private final int maxSeries;
+    private final String simulation;
+    private final String simulationTag;
+    private final String defaultTool;
+    private final Map<String, String> toolPrefixes;
+
+    private CollectorConfig(Config config) {
+        this.port = config.hasPath("port") ? config.getInt("port") : 8125;
+        this.metricsPort = config.hasPath("metrics-port") ? config.getInt("metrics-port") : 9104;
+        this.receiveBuffer = config.hasPath("receive-buffer")
+                ? (int) Math.min(Integer.MAX_VALUE, config.getBytes("receive-buffer")) : 8 * 1024 * 1024;
+        // UDP 페이로드 최대 크기를 넘길 필요는 없다
+        this.maxPacketSize = config.hasPath("max-packet-size")
+                ? Math.max(512, Math.min(65507, config.getInt("max-packet-size"))) : 65507;
+        this.batch = config.hasPath("batch") ? Math.max(1, config.getInt("batch")) : 256;
+        this.maxSeries = config.hasPath("max-series") ? Math.max(1, config.getInt("max-series")) : 20000;
+        this.simulation = config.hasPath("simulation") ? config.getString("simulation") : "statsd";
+        this.simulationTag = config.hasPath("simulation-tag") ? config.getString("simulation-tag") : "testid";
+        this.defaultTool = config.hasPath("default-tool") ? config.getString("default-tool") : "statsd";
+
+        Map<String, String> prefixes = new LinkedHashMap<>();
+        if (config.hasPath("tools")) {
+            for (Config tool : config.getConfigList("tools")) {
+                prefixes.put(tool.getString("prefix"), tool.getString("tool"));
+            }
+        } else {
+            prefixes.put("k6.", "k6");
+        }
+        this.toolPrefixes = prefixes;
+    }
+
+    static CollectorConfig load() {
+        Config config = ConfigFactory.systemProperties()
+                .withFallback(ConfigFactory.parseResources("collector.conf"));
+        return new CollectorConfig(config.hasPath("collector")
+                ? config.getConfig("collector")
+                : ConfigFactory.empty());
+    }
+
+    int getPort() {
+        return port;
+    }
+
+    int getMetricsPort() {
+        return metricsPort;
+    }
+
+    int getReceiveBuffer() {
+        return receiveBuffer;
+    }
+
+    int getMaxPacketSize() {
+        return maxPacketSize;
+    }
+
+    /**
+     * select 한 번에 최대 몇 개의 데이터그램을 비우는지
+     */
+    int getBatch() {
+        return batch;
+    }
+
+    int getMaxSeries() {
+        return maxSeries;
+    }
+
+    String getSimulation() {
+        return simulation;
+    }
+
+    String getSimulationTag() {
+        return simulationTag;
+    }
+
+    String getDefaultTool() {
+        return defaultTool;
+    }
+
+    /**
+     * 메트릭 이름 접두사 -> tool 라벨 값. 접두사는 매핑 전에 이름에서 떼어낸다.
+     */
+    Map<String, String> getToolPrefixes() {
+        return toolPrefixes;
+    }
+}
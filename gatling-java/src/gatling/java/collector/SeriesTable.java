@@ -0,0 +1,90 @@
+package collector;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * StatsD 라인의 원문 키(이름, 타입, 태그 바이트)로 해석된 시리즈를 찾는 open addressing 해시 테이블.
+ * <p>
+ * 조회는 수신 버퍼의 바이트 범위를 그대로 해싱하고 비교하므로 할당이 없다.
+ * 처음 보는 키를 넣을 때만 키 바이트를 복사한다. 수신 스레드 하나에서만 접근한다.
+ */
+final class SeriesTable {
+
+    private static final VarHandle LONG_VIEW = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    private byte[][] keys = new byte[1024][];
+    private int[] hashes = new int[1024];
+    private StatsdMapping.Series[] values = new StatsdMapping.Series[1024];
+    private int size;
+
+    /**
+     * 키는 태그를 포함해 100 바이트를 넘는 경우가 많으므로 8 바이트씩 읽어 섞는다
+     */
+    static int hash(byte[] bytes, int from, int to) {
+        long hash = MULTIPLIER ^ (to - from);
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            hash = Long.rotateLeft(hash ^ (long) LONG_VIEW.get(bytes, i) * MULTIPLIER, 31) * MULTIPLIER;
+        }
+        for (; i < to; i++) {
+            hash = (hash ^ bytes[i]) * MULTIPLIER;
+        }
+        // 하위 비트로 슬롯을 고르므로 상위 비트를 섞는다
+        hash ^= hash >>> 32;
+        return (int) (hash ^ (hash >>> 16));
+    }
+
+    StatsdMapping.Series get(byte[] bytes, int from, int to, int hash) {
+        int mask = keys.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            byte[] key = keys[slot];
+            if (key == null) {
+                return null;
+            }
+            if (hashes[slot] == hash && Arrays.equals(key, 0, key.length, bytes, from, to)) {
+                return values[slot];
+            }
+        }
+    }
+
+    void put(byte[] bytes, int from, int to, int hash, StatsdMapping.Series series) {
+        if ((size + 1) * 2 > keys.length) {
+            resize();
+        }
+        insert(Arrays.copyOfRange(bytes, from, to), hash, series);
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void insert(byte[] key, int hash, StatsdMapping.Series series) {
+        int mask = keys.length - 1;
+        int slot = hash & mask;
+        while (keys[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        hashes[slot] = hash;
+        values[slot] = series;
+    }
+
+    private void resize() {
+        byte[][] oldKeys = keys;
+        int[] oldHashes = hashes;
+        StatsdMapping.Series[] oldValues = values;
+        keys = new byte[oldKeys.length * 2][];
+        hashes = new int[oldKeys.length * 2];
+        values = new StatsdMapping.Series[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                insert(oldKeys[i], oldHashes[i], oldValues[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,384 @@
+package collector;
+
+import com.sun.net.httpserver.HttpServer;
+import io.prometheus.metrics.core.metrics.CounterWithCallback;
+import io.prometheus.metrics.core.metrics.GaugeWithCallback;
+import io.prometheus.metrics.expositionformats.ExpositionFormatWriter;
+import io.prometheus.metrics.expositionformats.ExpositionFormats;
+import io.prometheus.metrics.instrumentation.jvm.JvmMetrics;
+import io.prometheus.metrics.model.registry.PrometheusRegistry;
+import prometheus.PrometheusConfig;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * StatsD(UDP) 수집기 - k6 등 다른 도구의 결과를 Gatling 과 같은 메트릭 family 로 노출한다.
+ * <p>
+ * k6 는 InfluxDB 로, Gatling 은 Prometheus 로 결과를 보내 스키마와 해상도가 달랐다.
+ * 이 수집기는 StatsD 데이터그램을 받아 {@link StatsdMapping} 규칙대로 {@code gatling_*} family 에
+ * {@code tool} 라벨을 붙여 기록하므로, 두 도구의 결과를 한 대시보드의 같은 쿼리로 비교할 수 있다.
+ * <ul>
+ *     <li>non-blocking {@link DatagramChannel} - select 한 번에 최대 batch 개의 데이터그램을 비운다</li>
+ *     <li>한 데이터그램의 여러 라인을 한 번에 파싱하며, 이미 본 라인 키는 할당 없이 처리한다 ({@link SeriesTable})</li>
+ *     <li>수집기 자체 카운터는 batch 마다 한 번 게시한다</li>
+ * </ul>
+ * <pre>
+ * ./gradlew statsdCollector
+ * K6_STATSD_ENABLE_TAGS=true k6 run --out statsd script.js
+ * </pre>
+ * 메트릭은 metrics-port(기본 9104)의 /metrics 에서 볼 수 있다.
+ */
+public final class StatsdCollector implements AutoCloseable {
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+    };
+
+    private final CollectorConfig config;
+    private final DatagramChannel channel;
+    private final Selector selector;
+    private final StatsdMapping mapping;
+    private final SeriesTable table = new SeriesTable();
+    private final Thread receiver;
+    private final HttpServer metricsServer;
+    private volatile boolean running = true;
+
+    // 수신 스레드 전용 버퍼 - 데이터그램과 라인 키
+    private final byte[] packet;
+    private final ByteBuffer packetBuffer;
+    private final byte[] key;
+
+    // 수신 스레드만 쓰고, 메트릭 콜백이 읽는다
+    private volatile long receivedPackets;
+    private volatile long receivedLines;
+    private volatile long malformedLines;
+    private volatile long unsupportedLines;
+    private volatile long limitedLines;
+    private volatile int series;
+
+    private StatsdCollector(CollectorConfig config) throws IOException {
+        this.config = config;
+        this.packet = new byte[config.getMaxPacketSize()];
+        this.packetBuffer = ByteBuffer.wrap(packet);
+        this.key = new byte[config.getMaxPacketSize() + 2];
+
+        PrometheusRegistry registry = new PrometheusRegistry();
+        JvmMetrics.builder().register(registry);
+        this.mapping = new StatsdMapping(registry, PrometheusConfig.load(), config);
+        registerCollectorMetrics(registry);
+
+        this.channel = DatagramChannel.open();
+        channel.setOption(StandardSocketOptions.SO_RCVBUF, config.getReceiveBuffer());
+        channel.bind(new InetSocketAddress(config.getPort()));
+        channel.configureBlocking(false);
+        this.selector = Selector.open();
+        channel.register(selector, SelectionKey.OP_READ);
+
+        this.metricsServer = HttpServer.create(new InetSocketAddress(config.getMetricsPort()), 16);
+        ExpositionFormatWriter writer = ExpositionFormats.init().getPrometheusTextFormatWriter();
+        metricsServer.createContext("/metrics", exchange -> {
+            ByteArrayOutputStream body = new ByteArrayOutputStream(64 * 1024);
+            writer.write(body, registry.scrape());
+            try {
+                exchange.getResponseHeaders().set("Content-Type", writer.getContentType());
+                exchange.sendResponseHeaders(200, body.size());
+                try (OutputStream out = exchange.getResponseBody()) {
+                    body.writeTo(out);
+                }
+            } finally {
+                exchange.close();
+            }
+        });
+
+        this.receiver = new Thread(this::receiveLoop, "statsd-receiver");
+        receiver.setDaemon(true);
+    }
+
+    private void registerCollectorMetrics(PrometheusRegistry registry) {
+        CounterWithCallback.builder()
+                .name("gatling_collector_received_packets_total")
+                .help("StatsD datagrams received by the collector")
+                .callback(callback -> callback.call(receivedPackets))
+                .register(registry);
+
+        CounterWithCallback.builder()
+                .name("gatling_collector_received_lines_total")
+                .help("StatsD lines received by the collector")
+                .callback(callback -> callback.call(receivedLines))
+                .register(registry);
+
+        CounterWithCallback.builder()
+                .name("gatling_collector_rejected_lines_total")
+                .help("StatsD lines that were not recorded")
+                .labelNames("reason")
+                .callback(callback -> {
+                    callback.call(malformedLines, "malformed");
+                    callback.call(unsupportedLines, "unsupported");
+                    callback.call(limitedLines, "series_limit");
+                })
+                .register(registry);
+
+        GaugeWithCallback.builder()
+                .name("gatling_collector_series")
+                .help("Distinct StatsD line keys resolved by the collector")
+                .callback(callback -> callback.call(series))
+                .register(registry);
+    }
+
+    /**
+     * collector.conf 설정으로 수집기를 시작한다.
+     */
+    public static StatsdCollector start() throws IOException {
+        StatsdCollector collector = new StatsdCollector(CollectorConfig.load());
+        collector.receiver.start();
+        collector.metricsServer.start();
+        System.out.println("✓ StatsD collector listening on udp/" + collector.config.getPort());
+        System.out.println("  Metrics available at: http://localhost:" + collector.config.getMetricsPort() + "/metrics");
+        return collector;
+    }
+
+    private void receiveLoop() {
+        try {
+            while (running) {
+                if (drain() < config.getBatch()) {
+                    // 소켓이 비었다 - 다음 데이터그램까지 대기
+                    selector.select(ignored -> {
+                    }, 1000);
+                }
+            }
+        } catch (IOException e) {
+            if (running) {
+                System.err.println("StatsD collector receive failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 최대 batch 개의 데이터그램을 받아 바로 파싱하고, 받은 개수를 반환한다.
+     */
+    private int drain() throws IOException {
+        int batch = config.getBatch();
+        int packets = 0;
+        long lines = 0;
+        for (; packets < batch; packets++) {
+            packetBuffer.clear();
+            if (channel.receive(packetBuffer) == null) {
+                break;
+            }
+            lines += parsePacket(packetBuffer.position());
+        }
+        if (packets > 0) {
+            receivedPackets += packets;
+            receivedLines += lines;
+        }
+        return packets;
+    }
+
+    private int parsePacket(int length) {
+        int lines = 0;
+        int start = 0;
+        while (start < length) {
+            int end = indexOf(packet, (byte) '\n', start, length);
+            if (end < 0) {
+                end = length;
+            }
+            int lineEnd = end > start && packet[end - 1] == '\r' ? end - 1 : end;
+            if (lineEnd > start) {
+                parseLine(start, lineEnd);
+                lines++;
+            }
+            start = end + 1;
+        }
+        return lines;
+    }
+
+    /**
+     * {@code name:value[:value...]|type[|@rate][|#tags]}
+     */
+    private void parseLine(int start, int end) {
+        byte[] bytes = packet;
+        int colon = indexOf(bytes, (byte) ':', start, end);
+        int pipe = colon > start ? indexOf(bytes, (byte) '|', colon + 1, end) : -1;
+        if (pipe < 0) {
+            malformedLines++;
+            return;
+        }
+        int typeEnd = indexOf(bytes, (byte) '|', pipe + 1, end);
+        if (typeEnd < 0) {
+            typeEnd = end;
+        }
+        if (typeEnd == pipe + 1) {
+            malformedLines++;
+            return;
+        }
+
+        double sampleRate = 1;
+        int tagsFrom = end;
+        int tagsTo = end;
+        for (int section = typeEnd; section < end; ) {
+            int next = indexOf(bytes, (byte) '|', section + 1, end);
+            if (next < 0) {
+                next = end;
+            }
+            if (section + 1 < next && bytes[section + 1] == '@') {
+                sampleRate = parseDouble(bytes, section + 2, next);
+                if (!(sampleRate > 0 && sampleRate <= 1)) {
+                    malformedLines++;
+                    return;
+                }
+            } else if (section + 1 < next && bytes[section + 1] == '#') {
+                tagsFrom = section + 2;
+                tagsTo = next;
+            }
+            section = next;
+        }
+
+        StatsdMapping.Series target = lookup(start, colon, pipe + 1, typeEnd, tagsFrom, tagsTo);
+        if (target == null) {
+            limitedLines++;
+            return;
+        }
+        if (target == StatsdMapping.UNSUPPORTED) {
+            unsupportedLines++;
+            return;
+        }
+
+        // 값이 여러 개면 (DogStatsD 확장) 각각 기록한다
+        boolean gauge = pipe + 2 == typeEnd && bytes[pipe + 1] == 'g';
+        int valueFrom = colon + 1;
+        while (valueFrom < pipe) {
+            int valueTo = indexOf(bytes, (byte) ':', valueFrom, pipe);
+            if (valueTo < 0) {
+                valueTo = pipe;
+            }
+            // 부호가 붙은 gauge 값은 StatsD 규칙상 증감이다
+            boolean delta = gauge && (bytes[valueFrom] == '+' || bytes[valueFrom] == '-');
+            double value = parseDouble(bytes, valueFrom, valueTo);
+            if (Double.isNaN(value) || !target.record(value, sampleRate, delta)) {
+                malformedLines++;
+                return;
+            }
+            valueFrom = valueTo + 1;
+        }
+    }
+
+    /**
+     * 라인 키(이름|타입|태그)를 스크래치 버퍼에 모아 시리즈를 찾는다. 처음 보는 키는 해석해 캐시한다.
+     * 시리즈 상한을 넘으면 null.
+     */
+    private StatsdMapping.Series lookup(int nameFrom, int nameTo, int typeFrom, int typeTo, int tagsFrom, int tagsTo) {
+        int length = 0;
+        System.arraycopy(packet, nameFrom, key, length, nameTo - nameFrom);
+        length += nameTo - nameFrom;
+        key[length++] = '|';
+        System.arraycopy(packet, typeFrom, key, length, typeTo - typeFrom);
+        length += typeTo - typeFrom;
+        key[length++] = '|';
+        System.arraycopy(packet, tagsFrom, key, length, tagsTo - tagsFrom);
+        length += tagsTo - tagsFrom;
+
+        int hash = SeriesTable.hash(key, 0, length);
+        StatsdMapping.Series found = table.get(key, 0, length, hash);
+        if (found != null) {
+            return found;
+        }
+        if (table.size() >= config.getMaxSeries()) {
+            return null;
+        }
+        String name = new String(packet, nameFrom, nameTo - nameFrom, StandardCharsets.UTF_8);
+        String type = new String(packet, typeFrom, typeTo - typeFrom, StandardCharsets.UTF_8);
+        String tags = new String(packet, tagsFrom, tagsTo - tagsFrom, StandardCharsets.UTF_8);
+        StatsdMapping.Series resolved = mapping.resolve(name, type, tags);
+        table.put(key, 0, length, hash, resolved);
+        series = table.size();
+        return resolved;
+    }
+
+    private static int indexOf(byte[] bytes, byte value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 부호, 정수부, 소수부만 있는 일반적인 값은 바이트에서 바로 계산하고, 지수 표기 등은 Double.parseDouble 로 넘긴다.
+     * 파싱할 수 없으면 NaN.
+     */
+    static double parseDouble(byte[] bytes, int from, int to) {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = -1;
+        for (; i < to; i++) {
+            byte b = bytes[i];
+            if (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (scale >= 0) {
+                    scale++;
+                }
+            } else if (b == '.' && scale < 0) {
+                scale = 0;
+            } else {
+                break;
+            }
+        }
+        if (i < to || digits > 15) {
+            // 지수 표기, 긴 값 - 드물다
+            try {
+                return Double.parseDouble(new String(bytes, from, to - from, StandardCharsets.US_ASCII));
+            } catch (NumberFormatException e) {
+                return Double.NaN;
+            }
+        }
+        if (digits == 0) {
+            return Double.NaN;
+        }
+        double value = scale > 0 ? mantissa / POWERS_OF_TEN[scale] : mantissa;
+        return negative ? -value : value;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+        try {
+            receiver.join(2000);
+            selector.close();
+            channel.close();
+        } catch (IOException e) {
+            // ignore
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        metricsServer.stop(0);
+    }
+
+    public static void main(String[] args) throws Exception {
+        StatsdCollector collector = start();
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            collector.close();
+            stopped.countDown();
+        }, "statsd-shutdown"));
+        stopped.await();
+    }
+}
@@ -0,0 +1,292 @@
+package collector;
+
+import io.prometheus.metrics.core.datapoints.CounterDataPoint;
+import io.prometheus.metrics.core.datapoints.DistributionDataPoint;
+import io.prometheus.metrics.core.datapoints.GaugeDataPoint;
+import io.prometheus.metrics.core.metrics.Counter;
+import io.prometheus.metrics.core.metrics.Gauge;
+import io.prometheus.metrics.core.metrics.Histogram;
+import io.prometheus.metrics.model.registry.PrometheusRegistry;
+import prometheus.PrometheusConfig;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * StatsD 메트릭을 Gatling 과 같은 이름의 family 로 옮긴다. 모든 시리즈에 보낸 도구를 나타내는 {@code tool} 라벨이 붙는다.
+ * <p>
+ * k6 의 StatsD 출력 ({@code K6_STATSD_ENABLE_TAGS=true}) 기준 매핑:
+ * <ul>
+ *     <li>http_req_duration (ms) → gatling_response_time_milliseconds - request 는 name 태그, status 는 expected_response 로 ok/ko</li>
+ *     <li>http_reqs (c) → gatling_requests_total, ko 는 gatling_errors_total{error="HTTP_xxx"} 에도 센다</li>
+ *     <li>vus (g) → gatling_active_users</li>
+ *     <li>iterations (c) → gatling_users_finished_total - Gatling 의 가상 사용자 한 명이 k6 의 iteration 하나에 해당</li>
+ *     <li>그 밖의 메트릭은 타입별 gatling_statsd_timer_milliseconds / _counter_total / _gauge 에 metric 라벨로</li>
+ * </ul>
+ * 해석은 처음 보는 라인 키에 대해서만 일어나고, 결과 {@link Series} 는 {@link SeriesTable} 에 캐시된다.
+ */
+final class StatsdMapping {
+
+    /**
+     * 해석된 라인 키 - 이후 같은 키의 라인은 값만 기록한다
+     */
+    abstract static class Series {
+        /**
+         * @return 기록했으면 true, 값이 이 시리즈에 맞지 않으면 false
+         */
+        abstract boolean record(double value, double sampleRate, boolean delta);
+    }
+
+    /**
+     * 지원하지 않는 타입 (set 등) - 캐시해 두고 버린다
+     */
+    static final Series UNSUPPORTED = new Series() {
+        @Override
+        boolean record(double value, double sampleRate, boolean delta) {
+            return false;
+        }
+    };
+
+    private static final class TimerSeries extends Series {
+        private final DistributionDataPoint timer;
+
+        TimerSeries(DistributionDataPoint timer) {
+            this.timer = timer;
+        }
+
+        @Override
+        boolean record(double value, double sampleRate, boolean delta) {
+            if (value < 0) {
+                return false;
+            }
+            timer.observe(value);
+            return true;
+        }
+    }
+
+    private static final class CounterSeries extends Series {
+        private final CounterDataPoint counter;
+        private final CounterDataPoint errors;
+
+        CounterSeries(CounterDataPoint counter, CounterDataPoint errors) {
+            this.counter = counter;
+            this.errors = errors;
+        }
+
+        @Override
+        boolean record(double value, double sampleRate, boolean delta) {
+            if (value < 0) {
+                return false;
+            }
+            // 샘플링된 카운터는 전체 추정치로 환산
+            double amount = sampleRate < 1 ? value / sampleRate : value;
+            counter.inc(amount);
+            if (errors != null) {
+                errors.inc(amount);
+            }
+            return true;
+        }
+    }
+
+    private static final class GaugeSeries extends Series {
+        private final GaugeDataPoint gauge;
+
+        GaugeSeries(GaugeDataPoint gauge) {
+            this.gauge = gauge;
+        }
+
+        @Override
+        boolean record(double value, double sampleRate, boolean delta) {
+            if (delta) {
+                gauge.inc(value);
+            } else {
+                gauge.set(value);
+            }
+            return true;
+        }
+    }
+
+    private final CollectorConfig config;
+    private final Histogram responseTime;
+    private final Counter requests;
+    private final Counter errors;
+    private final Gauge activeUsers;
+    private final Counter usersFinished;
+    private final Histogram timers;
+    private final Counter counters;
+    private final Gauge gauges;
+
+    StatsdMapping(PrometheusRegistry registry, PrometheusConfig prometheusConfig, CollectorConfig config) {
+        this.config = config;
+
+        this.responseTime = histogramBuilder(prometheusConfig)
+                .name("gatling_response_time_milliseconds")
+                .help("Response time in milliseconds")
+                .labelNames("simulation", "scenario", "request", "status", "tool")
+                .withoutExemplars()
+                .register(registry);
+
+        this.requests = Counter.builder()
+                .name("gatling_requests_total")
+                .help("Total number of requests")
+                .labelNames("simulation", "scenario", "request", "status", "tool")
+                .withoutExemplars()
+                .register(registry);
+
+        this.errors = Counter.builder()
+                .name("gatling_errors_total")
+                .help("Total number of errors")
+                .labelNames("simulation", "scenario", "request", "error", "tool")
+                .withoutExemplars()
+                .register(registry);
+
+        this.activeUsers = Gauge.builder()
+                .name("gatling_active_users")
+                .help("Number of active users")
+                .labelNames("simulation", "scenario", "tool")
+                .register(registry);
+
+        this.usersFinished = Counter.builder()
+                .name("gatling_users_finished_total")
+                .help("Total number of users finished")
+                .labelNames("simulation", "scenario", "tool")
+                .withoutExemplars()
+                .register(registry);
+
+        this.timers = histogramBuilder(prometheusConfig)
+                .name("gatling_statsd_timer_milliseconds")
+                .help("StatsD timers and distributions without a dedicated mapping")
+                .labelNames("simulation", "scenario", "metric", "tool")
+                .withoutExemplars()
+                .register(registry);
+
+        this.counters = Counter.builder()
+                .name("gatling_statsd_counter_total")
+                .help("StatsD counters without a dedicated mapping")
+                .labelNames("simulation", "scenario", "metric", "tool")
+                .withoutExemplars()
+                .register(registry);
+
+        this.gauges = Gauge.builder()
+                .name("gatling_statsd_gauge")
+                .help("StatsD gauges without a dedicated mapping")
+                .labelNames("simulation", "scenario", "metric", "tool")
+                .register(registry);
+    }
+
+    // gatling_response_time_milliseconds 와 같은 버킷이어야 도구 간 백분위수를 비교할 수 있다
+    private static Histogram.Builder histogramBuilder(PrometheusConfig config) {
+        Histogram.Builder builder = Histogram.builder();
+        switch (config.getHistogramMode()) {
+            case CLASSIC -> builder.classicOnly()
+                    .classicUpperBounds(config.getHistogramBuckets());
+            case NATIVE -> builder.nativeOnly()
+                    .nativeInitialSchema(config.getNativeInitialSchema())
+                    .nativeMaxNumberOfBuckets(config.getNativeMaxBuckets());
+            case BOTH -> builder
+                    .classicUpperBounds(config.getHistogramBuckets())
+                    .nativeInitialSchema(config.getNativeInitialSchema())
+                    .nativeMaxNumberOfBuckets(config.getNativeMaxBuckets());
+        }
+        return builder;
+    }
+
+    /**
+     * 라인 키 하나를 시리즈로 해석한다. 수신 스레드에서 처음 보는 키마다 한 번 호출된다.
+     *
+     * @param tags DogStatsD 태그 원문 ({@code k:v,k2:v2}), 없으면 빈 문자열
+     */
+    Series resolve(String name, String type, String tags) {
+        String tool = config.getDefaultTool();
+        for (Map.Entry<String, String> prefix : config.getToolPrefixes().entrySet()) {
+            if (name.startsWith(prefix.getKey())) {
+                tool = prefix.getValue();
+                name = name.substring(prefix.getKey().length());
+                break;
+            }
+        }
+
+        Map<String, String> tagMap = parseTags(tags);
+        String simulation = tagMap.getOrDefault(config.getSimulationTag(), config.getSimulation());
+        String scenario = tagMap.getOrDefault("scenario", "default");
+
+        switch (type) {
+            case "ms", "h", "d" -> {
+                if (name.equals("http_req_duration")) {
+                    return new TimerSeries(responseTime.labelValues(simulation, scenario, request(name, tagMap),
+                            failed(tagMap) ? "ko" : "ok", tool));
+                }
+                return new TimerSeries(timers.labelValues(simulation, scenario, name, tool));
+            }
+            case "c" -> {
+                if (name.equals("http_reqs")) {
+                    String request = request(name, tagMap);
+                    boolean failed = failed(tagMap);
+                    return new CounterSeries(requests.labelValues(simulation, scenario, request, failed ? "ko" : "ok", tool),
+                            failed ? errors.labelValues(simulation, scenario, request, errorLabel(tagMap), tool) : null);
+                }
+                if (name.equals("iterations")) {
+                    return new CounterSeries(usersFinished.labelValues(simulation, scenario, tool), null);
+                }
+                return new CounterSeries(counters.labelValues(simulation, scenario, name, tool), null);
+            }
+            case "g" -> {
+                if (name.equals("vus")) {
+                    return new GaugeSeries(activeUsers.labelValues(simulation, scenario, tool));
+                }
+                return new GaugeSeries(gauges.labelValues(simulation, scenario, name, tool));
+            }
+            default -> {
+                return UNSUPPORTED;
+            }
+        }
+    }
+
+    private static String request(String name, Map<String, String> tags) {
+        // k6 는 name 태그가 없으면 URL 을 name 으로 쓴다
+        String request = tags.get("name");
+        if (request == null) {
+            request = tags.getOrDefault("url", name);
+        }
+        return request;
+    }
+
+    private static boolean failed(Map<String, String> tags) {
+        String expected = tags.get("expected_response");
+        if (expected != null) {
+            return !expected.equals("true");
+        }
+        int status = status(tags);
+        return status == 0 || status >= 400;
+    }
+
+    private static String errorLabel(Map<String, String> tags) {
+        int status = status(tags);
+        // status 0 은 응답을 받지 못한 경우 (연결 실패, 타임아웃)
+        return status > 0 ? "HTTP_" + status : "unknown";
+    }
+
+    private static int status(Map<String, String> tags) {
+        try {
+            return Integer.parseInt(tags.getOrDefault("status", "0"));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static Map<String, String> parseTags(String tags) {
+        Map<String, String> map = new HashMap<>();
+        if (tags.isEmpty()) {
+            return map;
+        }
+        for (String tag : tags.split(",")) {
+            int colon = tag.indexOf(':');
+            if (colon < 0) {
+                map.put(tag, "");
+            } else {
+                map.put(tag.substring(0, colon), tag.substring(colon + 1));
+            }
+        }
+        return map;
+    }
+}
@@ -0,0 +1,163 @@
+package feeder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 메모리 매핑한 데이터 파일과 off-heap 라인 시작 오프셋 인덱스.
+ * <p>
+ * 파일은 1GB 이하의 세그먼트로 나눠 매핑하며, 세그먼트 경계는 항상 라인 시작에 맞춘다 (한 라인은 한 세그먼트 안에 있다).
+ * 인덱스는 레코드마다 시작 오프셋 하나만 direct 버퍼에 담는다 - 4GB 미만 파일은 4 바이트, 그 이상은 8 바이트.
+ * 라인 끝은 읽을 때 찾는다. 빈 줄은 레코드로 세지 않는다.
+ * 생성 이후에는 읽기 전용이고 절대 위치 조회만 하므로 여러 스레드가 동시에 읽어도 된다.
+ */
+final class LineIndex {
+
+    private static final long SEGMENT_SIZE = 1L << 30;
+
+    private final Path path;
+    private final long fileSize;
+    private final MappedByteBuffer[] segments;
+    private final long[] segmentStarts;
+    private final ByteBuffer offsets;
+    private final boolean wideOffsets;
+    private final int count;
+
+    LineIndex(Path path) {
+        this.path = path;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            this.fileSize = channel.size();
+
+            // 1 차: 라인 경계에 맞춰 세그먼트를 나누고 레코드 수를 센다
+            List<MappedByteBuffer> mapped = new ArrayList<>();
+            List<Long> starts = new ArrayList<>();
+            long records = 0;
+            long position = 0;
+            while (position < fileSize) {
+                long length = Math.min(SEGMENT_SIZE, fileSize - position);
+                MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                int usable = (int) length;
+                if (position + length < fileSize) {
+                    usable = lastIndexOf(segment, (byte) '\n', (int) length) + 1;
+                    if (usable == 0) {
+                        throw new IllegalArgumentException("Line longer than " + SEGMENT_SIZE + " bytes in " + path);
+                    }
+                    segment = channel.map(FileChannel.MapMode.READ_ONLY, position, usable);
+                }
+                records += countLines(segment, usable);
+                mapped.add(segment);
+                starts.add(position);
+                position += usable;
+            }
+            this.wideOffsets = fileSize > 0xFFFF_FFFFL;
+            long indexBytes = records * (wideOffsets ? 8 : 4);
+            if (indexBytes > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Too many records for one feeder file: " + records + " in " + path);
+            }
+            this.count = (int) records;
+            this.segments = mapped.toArray(new MappedByteBuffer[0]);
+            this.segmentStarts = starts.stream().mapToLong(Long::longValue).toArray();
+
+            // 2 차: 레코드 시작 오프셋 기록
+            this.offsets = ByteBuffer.allocateDirect((int) indexBytes).order(ByteOrder.nativeOrder());
+            for (int s = 0; s < segments.length; s++) {
+                fillOffsets(segments[s], segmentStarts[s]);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to map feeder file " + path, e);
+        }
+    }
+
+    private static int lastIndexOf(ByteBuffer buffer, byte value, int limit) {
+        for (int i = limit - 1; i >= 0; i--) {
+            if (buffer.get(i) == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static long countLines(ByteBuffer segment, int limit) {
+        long lines = 0;
+        boolean inLine = false;
+        for (int i = 0; i < limit; i++) {
+            byte b = segment.get(i);
+            if (b == '\n') {
+                inLine = false;
+            } else if (!inLine && b != '\r') {
+                inLine = true;
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    private void fillOffsets(ByteBuffer segment, long segmentStart) {
+        int limit = segment.limit();
+        boolean inLine = false;
+        for (int i = 0; i < limit; i++) {
+            byte b = segment.get(i);
+            if (b == '\n') {
+                inLine = false;
+            } else if (!inLine && b != '\r') {
+                inLine = true;
+                if (wideOffsets) {
+                    offsets.putLong(segmentStart + i);
+                } else {
+                    offsets.putInt((int) (segmentStart + i));
+                }
+            }
+        }
+    }
+
+    int count() {
+        return count;
+    }
+
+    Path path() {
+        return path;
+    }
+
+    long fileSize() {
+        return fileSize;
+    }
+
+    long indexBytes() {
+        return offsets.capacity();
+    }
+
+    /**
+     * record 번째 라인의 바이트 (줄바꿈 제외)
+     */
+    byte[] line(int record) {
+        long start = wideOffsets
+                ? offsets.getLong(record * 8)
+                : Integer.toUnsignedLong(offsets.getInt(record * 4));
+        int s = Arrays.binarySearch(segmentStarts, start);
+        if (s < 0) {
+            s = -s - 2;
+        }
+        MappedByteBuffer segment = segments[s];
+        int from = (int) (start - segmentStarts[s]);
+        int to = from;
+        int limit = segment.limit();
+        while (to < limit && segment.get(to) != '\n') {
+            to++;
+        }
+        if (to > from && segment.get(to - 1) == '\r') {
+            to--;
+        }
+        byte[] line = new byte[to - from];
+        segment.get(from, line);
+        return line;
+    }
+}
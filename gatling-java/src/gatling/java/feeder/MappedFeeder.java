@@ -0,0 +1,264 @@
+package feeder;
+
+import prometheus.PrometheusConfig;
+
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 수백만 건의 테스트 데이터를 힙에 올리지 않는 feeder.
+ * <p>
+ * Gatling 의 csv/json feeder 는 파일 전체를 힙에 올려, 응답 시간을 재는 같은 JVM 의 GC 를 늘린다.
+ * 이 feeder 는 파일을 메모리 매핑하고 레코드 시작 오프셋만 off-heap 인덱스로 만든다 ({@link LineIndex}).
+ * 세션에는 레코드 번호만 가진 {@link MappedRecord} 하나가 들어가고, 컬럼은 실제로 조회될 때 디코딩된다.
+ * <pre>
+ * feed(MappedFeeder.csv("data/users.csv").random().as("user"))
+ * ...
+ * http("Get User").get("/users/#{user.id}")
+ * </pre>
+ * 전략 (커서는 모두 lock-free):
+ * <ul>
+ *     <li>sequential - 처음부터 차례로, 끝나면 처음으로 (기본값)</li>
+ *     <li>random     - 매번 임의의 레코드</li>
+ *     <li>shard      - {@link prometheus.ShardCoordinator} 실행에서 인젝터 JVM 마다 겹치지 않는 구간을 차례로</li>
+ * </ul>
+ * {@code queue()} 를 붙이면 sequential/shard 가 순환하지 않고 한 번만 소비한다 (Gatling queue 와 같은 동작).
+ * 같은 파일의 인덱스는 여러 feeder 가 공유한다.
+ */
+public final class MappedFeeder implements Iterator<Map<String, Object>> {
+
+    public enum Strategy {
+        SEQUENTIAL, RANDOM, SHARD
+    }
+
+    private static final Map<Path, LineIndex> INDEXES = new ConcurrentHashMap<>();
+
+    /**
+     * 파일, 헤더, 구분자 - 같은 파일을 쓰는 feeder 와 레코드가 공유한다
+     */
+    static final class Source {
+        private final String name;
+        private final LineIndex index;
+        private final byte separator;
+        private final String[] columns;
+        private final Map<String, Integer> columnIndexes = new HashMap<>();
+
+        Source(String name, LineIndex index, byte separator) {
+            this.name = name;
+            this.index = index;
+            this.separator = separator;
+            if (index.count() == 0) {
+                throw new IllegalArgumentException("Feeder file " + name + " has no header line");
+            }
+            this.columns = splitHeader(index.line(0), separator);
+            for (int i = 0; i < columns.length; i++) {
+                columnIndexes.putIfAbsent(columns[i], i);
+            }
+        }
+
+        /**
+         * 레코드({@link MappedRecord})와 같은 바이트 스캔으로 나눈다 - 구분자를 정규식으로 해석하지 않고
+         * 따옴표 안의 구분자는 무시한다
+         */
+        static String[] splitHeader(byte[] line, byte separator) {
+            List<String> columns = new ArrayList<>();
+            int from = 0;
+            boolean quoted = false;
+            for (int i = 0; i <= line.length; i++) {
+                if (i < line.length) {
+                    byte b = line[i];
+                    if (b == '"') {
+                        quoted = !quoted;
+                        continue;
+                    }
+                    if (quoted || b != separator) {
+                        continue;
+                    }
+                }
+                String column = new String(line, from, i - from, StandardCharsets.UTF_8).trim();
+                if (column.length() >= 2 && column.charAt(0) == '"' && column.charAt(column.length() - 1) == '"') {
+                    column = column.substring(1, column.length() - 1).replace("\"\"", "\"");
+                }
+                columns.add(column);
+                from = i + 1;
+            }
+            return columns.toArray(new String[0]);
+        }
+
+        String name() {
+            return name;
+        }
+
+        LineIndex index() {
+            return index;
+        }
+
+        byte separator() {
+            return separator;
+        }
+
+        String[] columns() {
+            return columns;
+        }
+
+        int column(String column) {
+            Integer found = columnIndexes.get(column);
+            return found != null ? found : -1;
+        }
+
+        // 0 번 라인은 헤더
+        int firstRecord() {
+            return 1;
+        }
+    }
+
+    private final Source source;
+    private final Strategy strategy;
+    private final boolean circular;
+    private final String attribute;
+    // [from, to) - shard 전략이면 이 인젝터 JVM 의 몫
+    private final int from;
+    private final int to;
+    private final AtomicLong cursor = new AtomicLong();
+
+    private MappedFeeder(Source source, Strategy strategy, boolean circular, String attribute) {
+        this.source = source;
+        this.strategy = strategy;
+        this.circular = circular;
+        this.attribute = attribute;
+
+        int first = source.firstRecord();
+        int records = source.index().count() - first;
+        if (strategy == Strategy.SHARD) {
+            PrometheusConfig config = PrometheusConfig.load();
+            long count = config.getShardCount();
+            long shard = config.getShardIndex();
+            this.from = first + (int) (records * shard / count);
+            this.to = first + (int) (records * (shard + 1) / count);
+        } else {
+            this.from = first;
+            this.to = first + records;
+        }
+        if (to <= from) {
+            throw new IllegalArgumentException("Feeder file " + source.name() + " has no records"
+                    + (strategy == Strategy.SHARD ? " for this shard" : ""));
+        }
+    }
+
+    /**
+     * 헤더가 있는 쉼표 구분 파일. 경로가 없으면 클래스패스(src/gatling/resources)에서 찾는다.
+     */
+    public static MappedFeeder csv(String path) {
+        return open(path, (byte) ',');
+    }
+
+    public static MappedFeeder tsv(String path) {
+        return open(path, (byte) '\t');
+    }
+
+    public static MappedFeeder separatedValues(String path, char separator) {
+        return open(path, (byte) separator);
+    }
+
+    private static MappedFeeder open(String path, byte separator) {
+        Path resolved = resolve(path);
+        LineIndex index = INDEXES.computeIfAbsent(resolved, file -> {
+            long start = System.nanoTime();
+            LineIndex created = new LineIndex(file);
+            System.out.printf("✓ Mapped feeder %s: %,d lines indexed in %d ms (%,d KB off-heap index)%n",
+                    file.getFileName(), created.count(), (System.nanoTime() - start) / 1_000_000,
+                    created.indexBytes() / 1024);
+            return created;
+        });
+        return new MappedFeeder(new Source(path, index, separator), Strategy.SEQUENTIAL, true, "record");
+    }
+
+    private static Path resolve(String path) {
+        Path file = Paths.get(path);
+        if (Files.isRegularFile(file)) {
+            return file.toAbsolutePath().normalize();
+        }
+        // 매핑하려면 실제 파일이어야 한다 - jar 안의 리소스는 지원하지 않는다
+        URL resource = MappedFeeder.class.getClassLoader().getResource(path);
+        if (resource != null && "file".equals(resource.getProtocol())) {
+            try {
+                return Paths.get(resource.toURI());
+            } catch (URISyntaxException e) {
+                throw new IllegalArgumentException("Invalid feeder resource " + resource, e);
+            }
+        }
+        throw new IllegalArgumentException("Feeder file not found: " + path);
+    }
+
+    public MappedFeeder sequential() {
+        return new MappedFeeder(source, Strategy.SEQUENTIAL, circular, attribute);
+    }
+
+    public MappedFeeder random() {
+        return new MappedFeeder(source, Strategy.RANDOM, circular, attribute);
+    }
+
+    /**
+     * 인젝터 JVM 마다 겹치지 않는 구간 - shard 실행이 아니면 sequential 과 같다
+     */
+    public MappedFeeder shard() {
+        return new MappedFeeder(source, Strategy.SHARD, circular, attribute);
+    }
+
+    /**
+     * 순환하지 않고 레코드를 한 번씩만 내준다 - 다 쓰면 Gatling 이 feeder 소진으로 사용자를 멈춘다
+     */
+    public MappedFeeder queue() {
+        return new MappedFeeder(source, strategy, false, attribute);
+    }
+
+    /**
+     * 레코드를 담을 세션 속성 이름 (기본값 "record")
+     */
+    public MappedFeeder as(String attribute) {
+        return new MappedFeeder(source, strategy, circular, attribute);
+    }
+
+    /**
+     * 이 feeder 가 내줄 수 있는 레코드 수 (shard 면 이 JVM 의 몫)
+     */
+    public int records() {
+        return to - from;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return circular || strategy == Strategy.RANDOM || cursor.get() < to - from;
+    }
+
+    @Override
+    public Map<String, Object> next() {
+        int record;
+        if (strategy == Strategy.RANDOM) {
+            record = ThreadLocalRandom.current().nextInt(from, to);
+        } else {
+            long position = cursor.getAndIncrement();
+            if (position >= to - from) {
+                if (!circular) {
+                    throw new NoSuchElementException("Feeder " + source.name() + " is exhausted");
+                }
+                position %= to - from;
+            }
+            record = from + (int) position;
+        }
+        return Map.of(attribute, new MappedRecord(source, record));
+    }
+}
@@ -0,0 +1,170 @@
+package feeder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link MappedFeeder} 가 세션에 넣는 레코드 하나 - 컬럼 이름으로 조회하는 읽기 전용 Map.
+ * <p>
+ * 만들어질 때는 레코드 번호만 가진다. 처음 조회할 때 매핑된 파일에서 라인을 읽어 필드 경계를 나누고,
+ * 각 필드는 조회된 것만 문자열로 디코딩한다. Gatling EL 에서는 {@code #{user.id}} 로,
+ * 코드에서는 {@code session.<MappedRecord>get("user").getLong("id")} 로 쓴다.
+ * 한 가상 사용자의 세션에서만 쓰이므로 동기화하지 않는다.
+ */
+public final class MappedRecord extends AbstractMap<String, Object> {
+
+    private final MappedFeeder.Source source;
+    private final int record;
+
+    // 처음 조회할 때 채운다
+    private byte[] line;
+    private int[] bounds;
+    private String[] values;
+
+    MappedRecord(MappedFeeder.Source source, int record) {
+        this.source = source;
+        this.record = record;
+    }
+
+    /**
+     * 파일 안의 레코드 번호 (헤더 제외, 0 부터)
+     */
+    public int recordNumber() {
+        return record - source.firstRecord();
+    }
+
+    @Override
+    public Object get(Object key) {
+        return key instanceof String column ? getString(column) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String column && source.column(column) >= 0;
+    }
+
+    public String getString(String column) {
+        int index = source.column(column);
+        return index >= 0 ? value(index) : null;
+    }
+
+    /**
+     * 숫자 컬럼 - 문자열을 만들지 않고 바이트에서 바로 읽는다
+     */
+    public long getLong(String column) {
+        int index = source.column(column);
+        if (index < 0) {
+            throw new IllegalArgumentException("No column '" + column + "' in " + source.name());
+        }
+        split();
+        if (index >= fieldCount()) {
+            throw new NumberFormatException("Empty column '" + column + "' in record " + recordNumber());
+        }
+        int from = bounds[index * 2];
+        int to = bounds[index * 2 + 1];
+        if (values[index] != null || from == to || line[from] == '"') {
+            return Long.parseLong(value(index).trim());
+        }
+        boolean negative = line[from] == '-';
+        long result = 0;
+        for (int i = negative ? from + 1 : from; i < to; i++) {
+            int digit = line[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return Long.parseLong(value(index).trim());
+            }
+            result = result * 10 + digit;
+        }
+        return negative ? -result : result;
+    }
+
+    public int getInt(String column) {
+        return Math.toIntExact(getLong(column));
+    }
+
+    public double getDouble(String column) {
+        String value = getString(column);
+        if (value == null) {
+            throw new IllegalArgumentException("No column '" + column + "' in " + source.name());
+        }
+        return Double.parseDouble(value.trim());
+    }
+
+    @Override
+    public int size() {
+        return source.columns().length;
+    }
+
+    /**
+     * 전체 순회는 모든 컬럼을 디코딩한다 - 로그 출력 등 드문 용도
+     */
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        Map<String, Object> all = new LinkedHashMap<>();
+        String[] columns = source.columns();
+        for (int i = 0; i < columns.length; i++) {
+            all.put(columns[i], value(i));
+        }
+        return Collections.unmodifiableMap(all).entrySet();
+    }
+
+    private String value(int index) {
+        split();
+        if (index >= fieldCount()) {
+            return null;
+        }
+        String value = values[index];
+        if (value == null) {
+            value = decode(bounds[index * 2], bounds[index * 2 + 1]);
+            values[index] = value;
+        }
+        return value;
+    }
+
+    private int fieldCount() {
+        return bounds.length / 2;
+    }
+
+    private void split() {
+        if (line != null) {
+            return;
+        }
+        line = source.index().line(record);
+        byte separator = source.separator();
+        int[] found = new int[source.columns().length * 2];
+        int fields = 0;
+        int from = 0;
+        boolean quoted = false;
+        for (int i = 0; i <= line.length && fields < source.columns().length; i++) {
+            if (i < line.length) {
+                byte b = line[i];
+                if (b == '"') {
+                    quoted = !quoted;
+                    continue;
+                }
+                if (quoted || b != separator) {
+                    continue;
+                }
+            }
+            found[fields * 2] = from;
+            found[fields * 2 + 1] = i;
+            fields++;
+            from = i + 1;
+        }
+        bounds = fields * 2 == found.length ? found : Arrays.copyOf(found, fields * 2);
+        values = new String[fields];
+    }
+
+    private String decode(int from, int to) {
+        if (to - from >= 2 && line[from] == '"' && line[to - 1] == '"') {
+            // 따옴표 필드 - 바깥 따옴표를 벗기고 "" 를 " 로
+            String inner = new String(line, from + 1, to - from - 2, StandardCharsets.UTF_8);
+            return inner.replace("\"\"", "\"");
+        }
+        return new String(line, from, to - from, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,435 @@
+package prometheus;
+
+import io.gatling.javaapi.core.ChainBuilder;
+import io.gatling.javaapi.core.OpenInjectionStep;
+import io.prometheus.metrics.core.metrics.Gauge;
+import io.prometheus.metrics.model.registry.PrometheusRegistry;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static io.gatling.javaapi.core.CoreDsl.*;
+
+/**
+ * 한 번의 실행 안에서 도착률을 바꿔 가며 SLO 를 만족하는 최대 처리량을 찾는 closed-loop 용량 탐색.
+ * <p>
+ * Gatling 의 주입 프로파일은 실행 중에 바꿀 수 없으므로, {@link #injectionProfile()} 으로 최대 도착률로 주입하고
+ * 시나리오 맨 앞의 {@link #admit()} 이 현재 목표 도착률만큼만 사용자를 통과시킨다. 나머지 사용자는 요청 없이 바로 종료된다.
+ * 제어 스레드는 단계마다 warmup 이후 구간의 p99 와 에러율을 기록 경로({@link RequestListener})에서 직접 읽어
+ * SLO 통과 여부를 판정하고 다음 도착률을 정한다.
+ * <ul>
+ *     <li>step   : 시작 도착률에서 일정량씩 올리다가 처음 SLO 를 벗어나면 종료</li>
+ *     <li>binary : 두 배씩 올려 실패 구간을 찾은 뒤 이분 탐색으로 정밀도 안까지 좁힌다</li>
+ * </ul>
+ * 탐색이 끝나면 load generator 를 멈추고, 측정한 도착률/지연 곡선과 knee point 를 출력한다.
+ */
+public final class CapacitySearch implements RequestListener {
+
+    public enum Mode {
+        STEP, BINARY
+    }
+
+    /**
+     * 단계 하나의 측정 결과.
+     */
+    public record Point(double rate, double throughput, double p50Millis, double p99Millis,
+                        double errorRate, long requests, boolean passed) {
+    }
+
+    private record Step(double rate, long startNanos, AtomicLong admitted) {
+    }
+
+    private final GatlingPrometheusMetrics metrics;
+    private final String simulation;
+    private final String scenario;
+    private final String request;
+    private final RequestMetrics target;
+    private final Mode mode;
+    private final double sloP99Millis;
+    private final double sloErrorRate;
+    private final double startRate;
+    private final double maxRate;
+    private final double stepIncrement;
+    private final double precision;
+    private final Duration stepDuration;
+    private final Duration warmup;
+
+    private final Recorder recorder = new Recorder(LatencyWindow.SIGNIFICANT_DIGITS);
+    private final LongAdder okCount = new LongAdder();
+    private final LongAdder koCount = new LongAdder();
+    private final List<Point> curve = new ArrayList<>();
+
+    private volatile Step step = new Step(0, System.nanoTime(), new AtomicLong());
+    private volatile boolean finished;
+    private volatile double sustainableRate = -1;
+    private Thread controller;
+
+    private CapacitySearch(Builder builder) {
+        this.metrics = builder.simulation.getMetrics();
+        this.simulation = builder.simulation.getSimulationName();
+        this.scenario = builder.scenario;
+        this.request = builder.request;
+        this.target = metrics.requestMetrics(simulation, scenario, request);
+        this.mode = builder.mode;
+        this.sloP99Millis = builder.sloP99Millis;
+        this.sloErrorRate = builder.sloErrorRate;
+        this.startRate = builder.startRate;
+        this.maxRate = builder.maxRate;
+        this.stepIncrement = builder.stepIncrement;
+        this.precision = builder.precision;
+        this.stepDuration = builder.stepDuration;
+        this.warmup = builder.warmup;
+    }
+
+    /**
+     * 시나리오 맨 앞에 두는 도착률 게이트. 탐색이 끝나면 load generator 를 멈춘다.
+     */
+    public ChainBuilder admit() {
+        return stopLoadGeneratorIf("Capacity search finished", session -> finished)
+                .exitHereIf(session -> !tryAdmit());
+    }
+
+    /**
+     * 최대 도착률로 최대 탐색 시간 동안 주입하는 프로파일 - 실제 도착률은 {@link #admit()} 이 조절한다.
+     */
+    public OpenInjectionStep injectionProfile() {
+        return constantUsersPerSec(maxRate).during(maxDuration());
+    }
+
+    // 단계 수 상한 × 단계 길이 (binary 는 두 배씩 올리는 단계 + 이분 탐색 단계)
+    private Duration maxDuration() {
+        long steps;
+        if (mode == Mode.STEP) {
+            steps = (long) Math.floor((maxRate - startRate) / stepIncrement) + 1;
+        } else {
+            long doublings = (long) Math.ceil(Math.log(maxRate / startRate) / Math.log(2)) + 1;
+            long bisections = (long) Math.ceil(Math.log(1 / precision) / Math.log(2)) + 1;
+            steps = doublings + bisections;
+        }
+        return stepDuration.multipliedBy(steps + 1);
+    }
+
+    private boolean tryAdmit() {
+        Step current = step;
+        long allowed = (long) ((System.nanoTime() - current.startNanos()) / 1_000_000_000.0 * current.rate()) + 1;
+        AtomicLong admitted = current.admitted();
+        long count;
+        do {
+            count = admitted.get();
+            if (count >= allowed) {
+                return false;
+            }
+        } while (!admitted.compareAndSet(count, count + 1));
+        return true;
+    }
+
+    @Override
+    public void onRequest(RequestMetrics request, boolean success, long timestampMillis, long responseTimeMicros) {
+        if (request != target) {
+            return;
+        }
+        recorder.recordValue(Math.max(0, responseTimeMicros));
+        if (success) {
+            okCount.increment();
+        } else {
+            koCount.increment();
+        }
+    }
+
+    synchronized void start() {
+        if (controller != null) {
+            return;
+        }
+        metrics.addRequestListener(this);
+        controller = new Thread(this::search, "prometheus-capacity-search");
+        controller.setDaemon(true);
+        controller.start();
+        System.out.printf("✓ Capacity search started: %s / %s (%s, SLO p99 <= %.0fms, errors <= %.2f%%)%n",
+                scenario, request, mode.name().toLowerCase(), sloP99Millis, sloErrorRate * 100);
+    }
+
+    synchronized void stop() {
+        if (controller == null) {
+            return;
+        }
+        finished = true;
+        controller.interrupt();
+        try {
+            controller.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        metrics.removeRequestListener(this);
+        controller = null;
+        report();
+    }
+
+    public double getSustainableRate() {
+        return sustainableRate;
+    }
+
+    public List<Point> getCurve() {
+        synchronized (curve) {
+            return List.copyOf(curve);
+        }
+    }
+
+    private void search() {
+        SearchMetrics gauges = metrics.capacitySearchMetrics();
+        double rate = startRate;
+        double passedRate = 0;
+        double failedRate = Double.NaN;
+        try {
+            while (!finished) {
+                gauges.targetRate.labelValues(simulation, scenario, request).set(rate);
+                Point point = measure(rate);
+                synchronized (curve) {
+                    curve.add(point);
+                }
+                gauges.stepP99.labelValues(simulation, scenario, request).set(point.p99Millis());
+                gauges.stepErrorRatio.labelValues(simulation, scenario, request).set(point.errorRate());
+                System.out.printf("  capacity step %.1f/s -> %.1f req/s, p99 %.1fms, errors %.2f%% %s%n",
+                        rate, point.throughput(), point.p99Millis(), point.errorRate() * 100,
+                        point.passed() ? "PASS" : "FAIL");
+
+                if (point.passed()) {
+                    passedRate = Math.max(passedRate, rate);
+                    sustainableRate = passedRate;
+                    gauges.sustainableRate.labelValues(simulation, scenario, request).set(passedRate);
+                } else {
+                    failedRate = Double.isNaN(failedRate) ? rate : Math.min(failedRate, rate);
+                }
+
+                double next = nextRate(rate, point.passed(), passedRate, failedRate);
+                if (Double.isNaN(next)) {
+                    break;
+                }
+                rate = next;
+            }
+        } catch (InterruptedException e) {
+            // stop() 이 깨운 경우
+        } finally {
+            finished = true;
+            step = new Step(0, System.nanoTime(), new AtomicLong());
+        }
+    }
+
+    /**
+     * @return 다음 단계 도착률, 탐색이 끝났으면 NaN
+     */
+    private double nextRate(double rate, boolean passed, double passedRate, double failedRate) {
+        if (mode == Mode.STEP) {
+            double next = rate + stepIncrement;
+            return passed && next <= maxRate ? next : Double.NaN;
+        }
+        if (Double.isNaN(failedRate)) {
+            // 아직 실패 구간을 찾지 못함 - 두 배씩 올린다
+            return rate >= maxRate ? Double.NaN : Math.min(maxRate, rate * 2);
+        }
+        if (failedRate - passedRate <= Math.max(1, failedRate * precision)) {
+            return Double.NaN;
+        }
+        return (passedRate + failedRate) / 2;
+    }
+
+    private Point measure(double rate) throws InterruptedException {
+        step = new Step(rate, System.nanoTime(), new AtomicLong());
+        TimeUnit.MILLISECONDS.sleep(warmup.toMillis());
+
+        // warmup 구간의 측정값은 버린다
+        recorder.getIntervalHistogram();
+        okCount.reset();
+        koCount.reset();
+        long measureStart = System.nanoTime();
+        TimeUnit.MILLISECONDS.sleep(stepDuration.minus(warmup).toMillis());
+
+        Histogram histogram = recorder.getIntervalHistogram();
+        long ok = okCount.sumThenReset();
+        long ko = koCount.sumThenReset();
+        double seconds = (System.nanoTime() - measureStart) / 1_000_000_000.0;
+        long requests = ok + ko;
+        double errorRate = requests > 0 ? (double) ko / requests : 0;
+        double p50 = histogram.getValueAtPercentile(50) / 1000.0;
+        double p99 = histogram.getValueAtPercentile(99) / 1000.0;
+        // 요청이 하나도 완료되지 않았다면 (타겟이 멈춘 경우) 실패로 본다
+        boolean passed = requests > 0 && p99 <= sloP99Millis && errorRate <= sloErrorRate;
+        return new Point(rate, requests / seconds, p50, p99, errorRate, requests, passed);
+    }
+
+    private void report() {
+        List<Point> points = getCurve();
+        if (points.isEmpty()) {
+            return;
+        }
+        List<Point> sorted = new ArrayList<>(points);
+        sorted.sort(Comparator.comparingDouble(Point::rate));
+        Point knee = knee(sorted);
+
+        System.out.println("========================================");
+        System.out.println("Capacity search: " + scenario + " / " + request);
+        System.out.println("  rate/s    req/s    p50 ms    p99 ms   errors");
+        for (Point point : sorted) {
+            System.out.printf("  %7.1f  %7.1f  %8.1f  %8.1f  %6.2f%%  %s%n", point.rate(), point.throughput(),
+                    point.p50Millis(), point.p99Millis(), point.errorRate() * 100, point.passed() ? "" : "SLO violated");
+        }
+        System.out.printf("  Max sustainable rate: %s%n",
+                sustainableRate > 0 ? String.format("%.1f users/s", sustainableRate) : "none (SLO violated at start rate)");
+        if (knee != null) {
+            System.out.printf("  Knee point: %.1f users/s (p99 %.1fms)%n", knee.rate(), knee.p99Millis());
+        }
+        System.out.println("========================================");
+
+        Path file = Paths.get("build", "capacity",
+                (simulation + "-" + scenario + "-" + request).toLowerCase().replaceAll("[^a-z0-9._-]+", "_") + ".csv");
+        StringBuilder csv = new StringBuilder("rate,throughput,p50_ms,p99_ms,error_rate,requests,passed\n");
+        for (Point point : sorted) {
+            csv.append(String.format("%.2f,%.2f,%.3f,%.3f,%.5f,%d,%s%n", point.rate(), point.throughput(),
+                    point.p50Millis(), point.p99Millis(), point.errorRate(), point.requests(), point.passed()));
+        }
+        try {
+            Files.createDirectories(file.getParent());
+            Files.writeString(file, csv.toString(), StandardCharsets.UTF_8);
+            System.out.println("  Curve written to " + file);
+        } catch (IOException e) {
+            System.err.println("Could not write capacity curve: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 도착률-p99 곡선의 knee point (Kneedle) - 양 끝점을 [0,1] 로 정규화했을 때 대각선에서 가장 멀리 떨어진 점.
+     * 지연이 완만하다가 급격히 오르기 시작하는 지점이다. 점이 3개 미만이면 null.
+     */
+    static Point knee(List<Point> sortedByRate) {
+        if (sortedByRate.size() < 3) {
+            return null;
+        }
+        Point first = sortedByRate.get(0);
+        Point last = sortedByRate.get(sortedByRate.size() - 1);
+        double rateRange = last.rate() - first.rate();
+        double latencyRange = last.p99Millis() - first.p99Millis();
+        if (rateRange <= 0 || latencyRange <= 0) {
+            return null;
+        }
+        Point knee = null;
+        double maxDistance = 0;
+        for (Point point : sortedByRate) {
+            double x = (point.rate() - first.rate()) / rateRange;
+            double y = (point.p99Millis() - first.p99Millis()) / latencyRange;
+            if (x - y > maxDistance) {
+                maxDistance = x - y;
+                knee = point;
+            }
+        }
+        return knee;
+    }
+
+    public static final class Builder {
+
+        private final PrometheusSimulation simulation;
+        private final String scenario;
+        private final String request;
+        private Mode mode = Mode.BINARY;
+        private double sloP99Millis = 500;
+        private double sloErrorRate = 0.01;
+        private double startRate = 1;
+        private double maxRate = 1000;
+        private double stepIncrement = 10;
+        private double precision = 0.05;
+        private Duration stepDuration = Duration.ofSeconds(20);
+        private Duration warmup = Duration.ofSeconds(5);
+
+        Builder(PrometheusSimulation simulation, String scenario, String request) {
+            this.simulation = simulation;
+            this.scenario = scenario;
+            this.request = request;
+        }
+
+        public Builder slo(double p99Millis, double errorRate) {
+            this.sloP99Millis = p99Millis;
+            this.sloErrorRate = errorRate;
+            return this;
+        }
+
+        public Builder rates(double startRate, double maxRate) {
+            this.startRate = Math.max(0.1, startRate);
+            this.maxRate = Math.max(this.startRate, maxRate);
+            return this;
+        }
+
+        public Builder stepBy(double increment) {
+            this.mode = Mode.STEP;
+            this.stepIncrement = Math.max(0.1, increment);
+            return this;
+        }
+
+        /**
+         * @param precision 실패/통과 도착률 간격이 이 비율 이하가 되면 종료 (0.05 = 5%)
+         */
+        public Builder binarySearch(double precision) {
+            this.mode = Mode.BINARY;
+            this.precision = Math.max(0.001, precision);
+            return this;
+        }
+
+        public Builder stepDuration(Duration stepDuration, Duration warmup) {
+            this.stepDuration = stepDuration;
+            this.warmup = warmup.compareTo(stepDuration) < 0 ? warmup : Duration.ZERO;
+            return this;
+        }
+
+        public CapacitySearch build() {
+            CapacitySearch search = new CapacitySearch(this);
+            simulation.registerCapacitySearch(search);
+            return search;
+        }
+    }
+
+    /**
+     * 탐색 진행 상황 게이지 - 레지스트리에 한 번만 등록된다.
+     */
+    static final class SearchMetrics {
+
+        final Gauge targetRate;
+        final Gauge sustainableRate;
+        final Gauge stepP99;
+        final Gauge stepErrorRatio;
+
+        SearchMetrics(PrometheusRegistry registry) {
+            this.targetRate = Gauge.builder()
+                    .name("gatling_capacity_target_users_per_second")
+                    .help("Arrival rate currently admitted by the capacity search")
+                    .labelNames("simulation", "scenario", "request")
+                    .register(registry);
+
+            this.sustainableRate = Gauge.builder()
+                    .name("gatling_capacity_sustainable_users_per_second")
+                    .help("Highest arrival rate that met the SLO so far")
+                    .labelNames("simulation", "scenario", "request")
+                    .register(registry);
+
+            this.stepP99 = Gauge.builder()
+                    .name("gatling_capacity_step_p99_milliseconds")
+                    .help("p99 response time measured during the last capacity search step")
+                    .labelNames("simulation", "scenario", "request")
+                    .register(registry);
+
+            this.stepErrorRatio = Gauge.builder()
+                    .name("gatling_capacity_step_error_ratio")
+                    .help("Error ratio measured during the last capacity search step")
+                    .labelNames("simulation", "scenario", "request")
+                    .register(registry);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package prometheus;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 에러 메시지를 카디널리티가 제한된 {@code error} 라벨 값으로 정규화한다.
+ * <p>
+ * 규칙은 순서대로 적용되며 처음으로 null 이 아닌 값을 돌려준 규칙이 라벨을 결정한다.
+ * <ol>
+ *     <li>{@link #addRule(Rule)} 로 추가한 사용자 규칙</li>
+ *     <li>HTTP 상태 코드 ({@code HTTP_503} 또는 설정에 따라 {@code HTTP_5xx})</li>
+ *     <li>예외 타입 ({@code j.n.ConnectException: ...} → {@code ConnectException})</li>
+ *     <li>정규식 템플릿으로 가변 부분(UUID, IP, 숫자 등)을 치환한 메시지</li>
+ * </ol>
+ * 서로 다른 라벨 값은 실행마다 최대 {@code max-labels} 개까지만 허용되고, 이후의 새 값은 {@link #OTHER} 로 합쳐진다.
+ * 허용된 라벨과 메시지 캐시는 {@link #runStarted()} 에서 비우므로 이전 실행의 라벨이 상한을 차지하지 않는다.
+ */
+public final class ErrorClassifier {
+
+    public static final String OTHER = "other";
+
+    private static final int MAX_LABEL_LENGTH = 100;
+
+    private static final Pattern HTTP_STATUS = Pattern.compile(
+            "(?:HTTP_|status\\b.*?found\\s+|status\\s*[:=]?\\s*)([1-5]\\d\\d)\\b");
+    private static final Pattern EXCEPTION_TYPE = Pattern.compile(
+            "^\\s*(?:[\\w$]+\\.)*([\\w$]*(?:Exception|Error|Timeout))\\b");
+
+    @FunctionalInterface
+    public interface Rule {
+        /**
+         * @return 정규화된 라벨 값, 이 규칙이 적용되지 않으면 null
+         */
+        String classify(String message);
+    }
+
+    public record Template(Pattern pattern, String replacement) {
+    }
+
+    private final List<Rule> customRules = new CopyOnWriteArrayList<>();
+    private final List<Template> templates;
+    private final boolean statusClassOnly;
+    private final int maxLabels;
+    private final int cacheSize;
+
+    private final ConcurrentHashMap<String, String> cache = new ConcurrentHashMap<>();
+    private final Set<String> admittedLabels = ConcurrentHashMap.newKeySet();
+
+    ErrorClassifier(int maxLabels, int cacheSize, boolean statusClassOnly, List<Template> templates) {
+        this.maxLabels = maxLabels;
+        this.cacheSize = cacheSize;
+        this.statusClassOnly = statusClassOnly;
+        this.templates = new ArrayList<>(templates);
+    }
+
+    static List<Template> defaultTemplates() {
+        List<Template> templates = new ArrayList<>();
+        templates.add(new Template(Pattern.compile(
+                "[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}"), "<uuid>"));
+        templates.add(new Template(Pattern.compile(
+                "\\d{4}-\\d{2}-\\d{2}[T ]\\d{2}:\\d{2}:\\d{2}(?:\\.\\d+)?(?:Z|[+-]\\d{2}:?\\d{2})?"), "<timestamp>"));
+        templates.add(new Template(Pattern.compile(
+                "(?:[\\w-]+\\.)*[\\w-]*/?\\d{1,3}\\.\\d{1,3}\\.\\d{1,3}\\.\\d{1,3}(?::\\d+)?"), "<ip>"));
+        templates.add(new Template(Pattern.compile("\\b[0-9a-fA-F]{16,}\\b"), "<hex>"));
+        templates.add(new Template(Pattern.compile("\\d+"), "<n>"));
+        return templates;
+    }
+
+    /**
+     * 새 실행 시작 - 허용된 라벨과 캐시를 비운다 (사용자 규칙은 유지)
+     */
+    void runStarted() {
+        cache.clear();
+        admittedLabels.clear();
+    }
+
+    public void addRule(Rule rule) {
+        customRules.add(rule);
+    }
+
+    /**
+     * HTTP 상태 코드 에러 라벨 - 설정에 따라 코드 그대로 또는 클래스(5xx)로 묶는다.
+     */
+    public String classifyStatus(int status) {
+        String label = statusLabel(status);
+        return admit(label);
+    }
+
+    public String classify(String message) {
+        if (message == null || message.isEmpty()) {
+            return admit("unknown");
+        }
+        String label = cache.get(message);
+        if (label != null) {
+            return label;
+        }
+        label = admit(normalize(message));
+        if (cache.size() >= cacheSize) {
+            evict();
+        }
+        cache.put(message, label);
+        return label;
+    }
+
+    private String normalize(String message) {
+        for (Rule rule : customRules) {
+            String label = rule.classify(message);
+            if (label != null) {
+                return truncate(label);
+            }
+        }
+
+        Matcher status = HTTP_STATUS.matcher(message);
+        if (status.find()) {
+            return statusLabel(Integer.parseInt(status.group(1)));
+        }
+
+        Matcher exception = EXCEPTION_TYPE.matcher(message);
+        if (exception.find()) {
+            return truncate(exception.group(1));
+        }
+
+        String normalized = message;
+        for (Template template : templates) {
+            normalized = template.pattern().matcher(normalized).replaceAll(template.replacement());
+        }
+        return truncate(normalized.trim());
+    }
+
+    private String statusLabel(int status) {
+        return statusClassOnly ? "HTTP_" + (status / 100) + "xx" : "HTTP_" + status;
+    }
+
+    private static String truncate(String label) {
+        return label.length() > MAX_LABEL_LENGTH ? label.substring(0, MAX_LABEL_LENGTH) : label;
+    }
+
+    private String admit(String label) {
+        if (admittedLabels.contains(label)) {
+            return label;
+        }
+        // 상한을 약간 넘을 수 있지만 (동시 추가) 무한히 늘어나지는 않는다
+        if (admittedLabels.size() < maxLabels) {
+            admittedLabels.add(label);
+            return label;
+        }
+        return OTHER;
+    }
+
+    // 캐시가 가득 차면 절반을 비운다 - 자주 쓰이는 메시지는 곧바로 다시 채워진다
+    private void evict() {
+        int toRemove = cache.size() / 2;
+        Iterator<String> iterator = cache.keySet().iterator();
+        while (toRemove-- > 0 && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    int getAdmittedLabelCount() {
+        return admittedLabels.size();
+    }
+}
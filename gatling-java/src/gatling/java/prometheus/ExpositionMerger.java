@@ -0,0 +1,199 @@
+package prometheus;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 여러 인젝터 JVM 의 Prometheus text exposition 을 하나로 합친다.
+ * <p>
+ * 같은 이름과 라벨의 시리즈끼리 합산한다 - counter, histogram 버킷/_count/_sum, 대부분의 gauge (활성 사용자, 유입률).
+ * 합이 의미 없는 값은 노드 중 최댓값을 쓴다.
+ * <ul>
+ *     <li>quantile 라벨이 있는 시리즈 (슬라이딩 윈도우 백분위수)</li>
+ *     <li>이름이 {@code _ratio} 로 끝나거나 {@code _lag_} 를 포함하는 gauge (GC 비율, 스케줄러 지연)</li>
+ * </ul>
+ * jvm_*, process_* 는 노드마다 의미가 달라 합친 결과에서 제외하고 노드별 exposition 에만 남긴다.
+ * native histogram 은 text 포맷에 버킷이 실리지 않으므로 classic 버킷만 합쳐진다.
+ */
+final class ExpositionMerger {
+
+    /**
+     * 메트릭 family 하나 - 시리즈 키는 {@code name{labels}} 원문
+     */
+    static final class Family {
+        final String name;
+        String help;
+        String type = "untyped";
+        final LinkedHashMap<String, Double> samples = new LinkedHashMap<>();
+
+        Family(String name) {
+            this.name = name;
+        }
+    }
+
+    private ExpositionMerger() {
+    }
+
+    static LinkedHashMap<String, Family> parse(String text) {
+        LinkedHashMap<String, Family> families = new LinkedHashMap<>();
+        Family current = null;
+        for (String line : text.split("\n")) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            if (line.startsWith("# HELP ") || line.startsWith("# TYPE ")) {
+                int nameEnd = line.indexOf(' ', 7);
+                if (nameEnd < 0) {
+                    continue;
+                }
+                String name = line.substring(7, nameEnd);
+                current = families.computeIfAbsent(name, Family::new);
+                if (line.charAt(2) == 'H') {
+                    current.help = line.substring(nameEnd + 1);
+                } else {
+                    current.type = line.substring(nameEnd + 1).trim();
+                }
+                continue;
+            }
+            if (line.startsWith("#")) {
+                continue;
+            }
+            // name{labels} value [timestamp] - 라벨 값에 공백이 있을 수 있으므로 닫는 괄호 이후에서 값을 찾는다
+            int labelsEnd = line.indexOf('{') >= 0 ? line.lastIndexOf('}') + 1 : line.indexOf(' ');
+            if (labelsEnd <= 0 || labelsEnd >= line.length()) {
+                continue;
+            }
+            String series = line.substring(0, labelsEnd);
+            String rest = line.substring(labelsEnd).trim();
+            int valueEnd = rest.indexOf(' ');
+            double value = parseValue(valueEnd < 0 ? rest : rest.substring(0, valueEnd));
+            String sampleName = sampleName(series);
+            if (current == null || !sampleName.startsWith(current.name)) {
+                current = families.computeIfAbsent(sampleName, Family::new);
+            }
+            current.samples.put(series, value);
+        }
+        return families;
+    }
+
+    /**
+     * 노드별 파싱 결과를 합친다. 노드 순서와 상관없이 family/시리즈 순서는 처음 나온 순서를 따른다.
+     */
+    static LinkedHashMap<String, Family> merge(List<Map<String, Family>> nodes) {
+        LinkedHashMap<String, Family> merged = new LinkedHashMap<>();
+        for (Map<String, Family> node : nodes) {
+            for (Family family : node.values()) {
+                if (family.name.startsWith("jvm_") || family.name.startsWith("process_")) {
+                    continue;
+                }
+                Family target = merged.computeIfAbsent(family.name, Family::new);
+                target.help = family.help;
+                target.type = family.type;
+                boolean maxGauge = "gauge".equals(family.type)
+                        && (family.name.endsWith("_ratio") || family.name.contains("_lag_"));
+                for (Map.Entry<String, Double> sample : family.samples.entrySet()) {
+                    boolean max = maxGauge || sample.getKey().contains("quantile=\"");
+                    target.samples.merge(sample.getKey(), sample.getValue(),
+                            max ? ExpositionMerger::maxIgnoringNaN : ExpositionMerger::sumIgnoringNaN);
+                }
+            }
+        }
+        return merged;
+    }
+
+    static void write(StringBuilder out, Map<String, Family> families) {
+        for (Family family : families.values()) {
+            writeHeader(out, family);
+            for (Map.Entry<String, Double> sample : family.samples.entrySet()) {
+                out.append(sample.getKey()).append(' ').append(formatValue(sample.getValue())).append('\n');
+            }
+        }
+    }
+
+    /**
+     * 노드별 exposition 을 node 라벨을 붙여 family 단위로 모아 쓴다.
+     */
+    static void writeWithNodeLabel(StringBuilder out, List<String> nodeNames, List<Map<String, Family>> nodes) {
+        LinkedHashMap<String, List<Integer>> order = new LinkedHashMap<>();
+        for (int i = 0; i < nodes.size(); i++) {
+            for (String name : nodes.get(i).keySet()) {
+                order.computeIfAbsent(name, key -> new ArrayList<>()).add(i);
+            }
+        }
+        for (Map.Entry<String, List<Integer>> entry : order.entrySet()) {
+            boolean header = false;
+            for (int index : entry.getValue()) {
+                Family family = nodes.get(index).get(entry.getKey());
+                if (!header) {
+                    writeHeader(out, family);
+                    header = true;
+                }
+                String node = "node=\"" + nodeNames.get(index) + "\"";
+                for (Map.Entry<String, Double> sample : family.samples.entrySet()) {
+                    String series = sample.getKey();
+                    int brace = series.indexOf('{');
+                    if (brace < 0) {
+                        out.append(series).append('{').append(node).append('}');
+                    } else {
+                        out.append(series, 0, brace + 1).append(node);
+                        if (series.charAt(brace + 1) != '}') {
+                            out.append(',');
+                        }
+                        out.append(series, brace + 1, series.length());
+                    }
+                    out.append(' ').append(formatValue(sample.getValue())).append('\n');
+                }
+            }
+        }
+    }
+
+    private static void writeHeader(StringBuilder out, Family family) {
+        if (family.help != null) {
+            out.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+        }
+        out.append("# TYPE ").append(family.name).append(' ').append(family.type).append('\n');
+    }
+
+    private static String sampleName(String series) {
+        int brace = series.indexOf('{');
+        return brace < 0 ? series : series.substring(0, brace);
+    }
+
+    private static double parseValue(String value) {
+        return switch (value) {
+            case "+Inf" -> Double.POSITIVE_INFINITY;
+            case "-Inf" -> Double.NEGATIVE_INFINITY;
+            case "NaN" -> Double.NaN;
+            default -> {
+                try {
+                    yield Double.parseDouble(value);
+                } catch (NumberFormatException e) {
+                    yield Double.NaN;
+                }
+            }
+        };
+    }
+
+    private static String formatValue(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        }
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    private static double sumIgnoringNaN(double left, double right) {
+        return Double.isNaN(left) ? right : Double.isNaN(right) ? left : left + right;
+    }
+
+    private static double maxIgnoringNaN(double left, double right) {
+        return Double.isNaN(left) ? right : Double.isNaN(right) ? left : Math.max(left, right);
+    }
+}
@@ -0,0 +1,46 @@
+package prometheus;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 종료 시 최종 스냅샷이 실제로 스크래핑되었는지 확인하는 handshake.
+ * <p>
+ * 서빙 쪽은 응답을 보낼 때마다 {@link #scrapeCompleted(long)} 에 그 스크래핑의 시작 시각을 넘긴다.
+ * {@link #freeze()} 이후에 시작되어 끝난 스크래핑이 하나라도 있으면 최종 값을 가져간 것이므로 대기가 풀린다.
+ * 고정 전에 시작된 스크래핑은 이전 스냅샷을 읽었을 수 있으므로 세지 않는다.
+ * 한 번도 스크래핑되지 않았다면 스크래퍼가 없는 것으로 보고 기다리지 않는다.
+ */
+final class FinalScrape {
+
+    private final CountDownLatch served = new CountDownLatch(1);
+    private volatile boolean scraped;
+    private volatile boolean frozen;
+    private volatile long frozenAtNanos;
+
+    void scrapeCompleted(long startedNanos) {
+        scraped = true;
+        if (frozen && startedNanos - frozenAtNanos >= 0) {
+            served.countDown();
+        }
+    }
+
+    /**
+     * 이후 서빙되는 값이 최종 스냅샷임을 표시 - 스냅샷을 고정한 뒤에 호출한다
+     */
+    void freeze() {
+        frozenAtNanos = System.nanoTime();
+        frozen = true;
+    }
+
+    /**
+     * @return 최종 스냅샷이 스크래핑되었으면 true, 스크래퍼가 없거나 timeout 이면 false
+     */
+    boolean await(long timeoutMillis) throws InterruptedException {
+        return scraped && served.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    boolean wasScraped() {
+        return scraped;
+    }
+}
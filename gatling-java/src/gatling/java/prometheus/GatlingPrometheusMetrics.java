@@ -3,12 +3,20 @@ package prometheus;
 import io.prometheus.metrics.core.metrics.Counter;
 import io.prometheus.metrics.core.metrics.Gauge;
 import io.prometheus.metrics.core.metrics.Histogram;
-import io.prometheus.metrics.exporter.httpserver.HTTPServer;
 import io.prometheus.metrics.instrumentation.jvm.JvmMetrics;
+import io.prometheus.metrics.model.registry.MultiCollector;
 import io.prometheus.metrics.model.registry.PrometheusRegistry;
+import io.prometheus.metrics.model.snapshots.MetricSnapshots;
 
 import java.io.IOException;
-import java.net.ServerSocket;
+import java.net.BindException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class GatlingPrometheusMetrics {
 
@@ -18,18 +26,38 @@ public class GatlingPrometheusMetrics {
     private static volatile boolean metricsRegistered = false;
 
     private final PrometheusRegistry registry;
-    private volatile HTTPServer server;
+    private final PrometheusConfig config;
+    private volatile MetricsExpositionServer server;
+    private MetricsExpositionServer.ExpositionMetrics expositionMetrics;
+    private CapacitySearch.SearchMetrics capacitySearchMetrics;
     private volatile int currentPort = -1;
-
-    private Histogram responseTimeHistogram;
-    private Counter requestCounter;
-    private Counter errorCounter;
-    private Gauge activeUsersGauge;
-    private Counter usersStartedCounter;
-    private Counter usersFinishedCounter;
+    private int requestedPort = -1;
+
+    // 요청/사용자 시리즈는 실행마다 새 registry 에 만든다 - 실행 중이 아니면 null
+    private volatile MetricsRun run;
+    // 끝난 실행의 최종 스냅샷 - 마지막 스크래핑이 끝나면 해제
+    private volatile MetricSnapshots completedRun;
+    private Counter runsCompleted;
+    private Counter idleSeriesEvicted;
+    private ScheduledExecutorService idleSweeper;
+
+    private ErrorClassifier errorClassifier;
+    private LatencyWindows latencyWindows;
+    private InfluxDbWriter influxDbWriter;
+    private RemoteWriteExporter remoteWriteExporter;
+    private InjectorProbes injectorProbes;
+    private SimulationLogTailer simulationLogTailer;
+    private ResultsStoreWriter resultsStoreWriter;
+    private RegressionGate regressionGate;
+    private LiveMetricsStream liveStream;
+    private SlowRequestWindows slowRequestWindows;
+
+    // copy-on-write - 기록 경로에서는 배열을 읽기만 한다
+    volatile RequestListener[] requestListeners = new RequestListener[0];
 
     private GatlingPrometheusMetrics() {
         this.registry = PrometheusRegistry.defaultRegistry;
+        this.config = PrometheusConfig.load();
         registerMetrics();
         registerShutdownHook();
     }
@@ -48,48 +76,75 @@ public class GatlingPrometheusMetrics {
         }
 
         try {
-            // Response time histogram with buckets (matching Gatling's default ranges)
-            this.responseTimeHistogram = Histogram.builder()
-                    .name("gatling_response_time_milliseconds")
-                    .help("Response time in milliseconds")
-                    .labelNames("simulation", "scenario", "request", "status")
-                    .classicUpperBounds(100, 200, 300, 400, 500, 600, 700, 800, 900, 1000, 1100, 1200, 1500, 2000, 3000, 5000, 10000)
-                    .register(registry);
+            // Request and user series live in a per-run registry (run_id label), exposed through this collector
+            System.out.println("Response time histogram mode: " + config.getHistogramMode());
+            registry.register((MultiCollector) this::collectRun);
 
-            // Request counter
-            this.requestCounter = Counter.builder()
-                    .name("gatling_requests_total")
-                    .help("Total number of requests")
-                    .labelNames("simulation", "scenario", "request", "status")
+            this.runsCompleted = Counter.builder()
+                    .name("gatling_runs_completed_total")
+                    .help("Simulation runs completed in this JVM")
                     .register(registry);
 
-            // Error counter
-            this.errorCounter = Counter.builder()
-                    .name("gatling_errors_total")
-                    .help("Total number of errors")
-                    .labelNames("simulation", "scenario", "request", "error")
+            this.idleSeriesEvicted = Counter.builder()
+                    .name("gatling_idle_series_evicted_total")
+                    .help("Request and scenario label series removed after receiving no samples for the idle TTL")
                     .register(registry);
 
-            // Active users gauge
-            this.activeUsersGauge = Gauge.builder()
-                    .name("gatling_active_users")
-                    .help("Number of active users")
-                    .labelNames("simulation", "scenario")
-                    .register(registry);
+            long idleTtl = config.getRunIdleTtlMillis();
+            if (idleTtl > 0) {
+                this.idleSweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "prometheus-idle-sweeper");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                long interval = Math.max(1000, Math.min(60_000, idleTtl / 4));
+                idleSweeper.scheduleWithFixedDelay(this::sweepIdleSeries, interval, interval, TimeUnit.MILLISECONDS);
+            }
 
-            // Users started counter
-            this.usersStartedCounter = Counter.builder()
-                    .name("gatling_users_started_total")
-                    .help("Total number of users started")
-                    .labelNames("simulation", "scenario")
-                    .register(registry);
+            this.errorClassifier = new ErrorClassifier(config.getErrorMaxLabels(), config.getErrorCacheSize(),
+                    config.isErrorStatusClassOnly(), config.getErrorTemplates());
 
-            // Users finished counter
-            this.usersFinishedCounter = Counter.builder()
-                    .name("gatling_users_finished_total")
-                    .help("Total number of users finished")
-                    .labelNames("simulation", "scenario")
-                    .register(registry);
+            // Sliding-window percentiles (exact, in-process)
+            if (config.isWindowEnabled()) {
+                this.latencyWindows = new LatencyWindows(config.getWindowSeconds(), registry);
+            }
+
+            // Top-K slowest requests per window, attached as exemplars and served on /exemplars
+            if (config.isExemplarsEnabled()) {
+                this.slowRequestWindows = new SlowRequestWindows(config, registry);
+            }
+
+            // Injector self-saturation probes (scheduler lag, user start lag, GC pauses, injection rate)
+            if (config.isProbesEnabled()) {
+                this.injectorProbes = new InjectorProbes(config, registry);
+            }
+
+            // Which shard of a ShardCoordinator run this injector JVM is
+            if (config.isSharded()) {
+                Gauge.builder()
+                        .name("gatling_injector_node_info")
+                        .help("Injector JVM of a sharded run")
+                        .labelNames("node", "shard", "shards")
+                        .register(registry)
+                        .labelValues(config.getNodeName(), String.valueOf(config.getShardIndex()),
+                                String.valueOf(config.getShardCount()))
+                        .set(1);
+            }
+
+            // Per-second live stream (SSE on /live), built right after each window rotation
+            if (config.isLiveEnabled()) {
+                this.liveStream = new LiveMetricsStream(this, config, registry);
+                if (latencyWindows != null) {
+                    latencyWindows.setRotationListener(liveStream::tick);
+                } else {
+                    liveStream.startTicker();
+                }
+            }
+
+            // Requests not wrapped in prometheusHttp, read back from simulation.log
+            if (config.isTailEnabled()) {
+                this.simulationLogTailer = new SimulationLogTailer(this, config);
+            }
 
             metricsRegistered = true;
             System.out.println("Prometheus metrics registered successfully");
@@ -134,9 +189,9 @@ public class GatlingPrometheusMetrics {
 
     public void startServer(int port) throws IOException {
         synchronized (lock) {
-            // 이미 같은 포트에서 실행 중
-            if (server != null && currentPort == port) {
-                System.out.println("Prometheus metrics server already running on port " + port);
+            // 이미 같은 포트를 요청해 실행 중
+            if (server != null && requestedPort == port) {
+                System.out.println("Prometheus metrics server already running on port " + currentPort);
                 return;
             }
 
@@ -145,61 +200,57 @@ public class GatlingPrometheusMetrics {
                 stopServerInternal();
             }
 
-            // 포트 사용 가능 여부 확인 및 대기
-            int maxRetries = 5;
-            int retryCount = 0;
-
-            while (!isPortAvailable(port) && retryCount < maxRetries) {
-                System.out.println("Port " + port + " is in use. Waiting... (" + (retryCount + 1) + "/" + maxRetries + ")");
-                try {
-                    Thread.sleep(1000);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    throw new IOException("Interrupted while waiting for port " + port);
-                }
-                retryCount++;
-            }
-
-            if (!isPortAvailable(port)) {
-                // 포트가 여전히 사용 중이면 다른 포트 시도
-                int alternativePort = findAvailablePort(port + 1, port + 100);
-                if (alternativePort > 0) {
-                    System.out.println("Port " + port + " unavailable. Using alternative port " + alternativePort);
-                    port = alternativePort;
-                } else {
-                    throw new IOException("Port " + port + " is still in use and no alternative port available.");
-                }
+            if (expositionMetrics == null) {
+                expositionMetrics = new MetricsExpositionServer.ExpositionMetrics(registry);
             }
-
             try {
-                server = HTTPServer.builder()
-                        .port(port)
-                        .registry(registry)
-                        .buildAndStart();
-                currentPort = port;
-                System.out.println("✓ Prometheus metrics server started on port " + port);
-                System.out.println("  Metrics available at: http://localhost:" + port + "/metrics");
+                server = new MetricsExpositionServer(port, registry, config, expositionMetrics);
+            } catch (BindException e) {
+                if (config.isSharded()) {
+                    // 코디네이터는 정해진 포트만 스크래핑하므로 다른 포트로 옮기지 않는다
+                    throw new IOException("Port " + port + " assigned to " + config.getNodeName() + " is in use.", e);
+                }
+                // 기다리거나 포트를 훑지 않고 OS 가 고른 임시 포트로 바로 바인딩
+                server = new MetricsExpositionServer(0, registry, config, expositionMetrics);
+                System.out.println("Port " + port + " is in use. Bound to ephemeral port " + server.getPort() + " instead");
             } catch (IOException e) {
                 System.err.println("Failed to start Prometheus server on port " + port + ": " + e.getMessage());
                 throw e;
             }
+            server.setLiveStream(liveStream);
+            server.setSlowRequestWindows(slowRequestWindows);
+            requestedPort = port;
+            currentPort = server.getPort();
+            System.out.println("✓ Prometheus metrics server started on port " + currentPort);
+            System.out.println("  Metrics available at: http://localhost:" + currentPort + "/metrics");
         }
     }
 
-    private int findAvailablePort(int startPort, int endPort) {
-        for (int port = startPort; port <= endPort; port++) {
-            if (isPortAvailable(port)) {
-                return port;
-            }
+    /**
+     * 종료 handshake - 최종 스냅샷을 고정하고, 고정 이후 시작된 스크래핑이 끝날 때까지 기다린다
+     * (최대 prometheus.shutdown.final-scrape-timeout). 이 서버를 스크래핑한 적이 없으면 바로 반환한다.
+     *
+     * @return 최종 스냅샷이 스크래핑되었으면 true
+     */
+    public boolean awaitFinalScrape() {
+        MetricsExpositionServer current = server;
+        if (current == null) {
+            return false;
         }
-        return -1;
-    }
-
-    private boolean isPortAvailable(int port) {
-        try (ServerSocket socket = new ServerSocket(port)) {
-            socket.setReuseAddress(true);
-            return true;
-        } catch (IOException e) {
+        long start = System.nanoTime();
+        try {
+            boolean scraped = current.freezeAndAwaitScrape(config.getFinalScrapeTimeoutMillis());
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+            if (scraped) {
+                System.out.println("✓ Final metrics snapshot scraped after " + elapsedMillis + " ms");
+            } else if (!current.wasScraped()) {
+                System.out.println("No scrape seen on port " + currentPort + ", skipping final scrape wait");
+            } else {
+                System.err.println("Final metrics snapshot was not scraped within " + elapsedMillis + " ms");
+            }
+            return scraped;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             return false;
         }
     }
@@ -213,6 +264,9 @@ public class GatlingPrometheusMetrics {
     private void stopServerInternal() {
         if (server != null) {
             try {
+                if (liveStream != null) {
+                    liveStream.closeSubscribers();
+                }
                 server.close();
                 System.out.println("Prometheus metrics server stopped");
             } catch (Exception e) {
@@ -220,6 +274,7 @@ public class GatlingPrometheusMetrics {
             } finally {
                 server = null;
                 currentPort = -1;
+                requestedPort = -1;
             }
         }
     }
@@ -228,58 +283,454 @@ public class GatlingPrometheusMetrics {
         return server != null;
     }
 
+    /**
+     * 에러 라벨 정규화 규칙 - {@link ErrorClassifier#addRule} 로 사용자 규칙을 추가할 수 있다.
+     */
+    public ErrorClassifier getErrorClassifier() {
+        return errorClassifier;
+    }
+
+    public PrometheusConfig getConfig() {
+        return config;
+    }
+
     public int getCurrentPort() {
         return currentPort;
     }
 
+    /**
+     * 새 실행 시작 - 이전 실행이 남아 있으면 종료하고, 이후 요청/사용자 시리즈는 새 registry 에 run_id 라벨과 함께 기록된다.
+     * {@link PrometheusSimulation} 이 시나리오를 정의하기 전에 호출한다.
+     *
+     * @return run_id 라벨 값
+     */
+    public String beginRun(String simulation) {
+        synchronized (lock) {
+            completeRunInternal();
+            completedRun = null;
+            MetricsRun started = new MetricsRun(this, config, MetricsRun.runId(config, simulation), simulation);
+            run = started;
+            errorClassifier.runStarted();
+            if (injectorProbes != null) {
+                injectorProbes.runStarted();
+            }
+            if (liveStream != null) {
+                liveStream.runStarted();
+            }
+            System.out.println("✓ Metrics run started: run_id=" + started.getRunId());
+            return started.getRunId();
+        }
+    }
+
+    /**
+     * 실행 종료 - 최종 스냅샷을 고정하고 실행의 시리즈와 윈도우를 해제한다.
+     * 고정된 스냅샷은 {@link #releaseRun()} 또는 다음 실행 시작 전까지 스크래핑된다.
+     */
+    public void completeRun() {
+        synchronized (lock) {
+            completeRunInternal();
+        }
+    }
+
+    private void completeRunInternal() {
+        MetricsRun current = run;
+        if (current == null) {
+            return;
+        }
+        int series = current.allRequestMetrics().size();
+        completedRun = current.complete();
+        run = null;
+        runsCompleted.inc();
+        System.out.println("Metrics run completed: run_id=" + current.getRunId() + " (" + series + " request series)");
+    }
+
+    /**
+     * 마지막 스크래핑이 끝난 뒤 끝난 실행의 최종 스냅샷 해제
+     */
+    public void releaseRun() {
+        synchronized (lock) {
+            completedRun = null;
+        }
+    }
+
+    /**
+     * 현재 실행의 run_id - 실행 중이 아니면 null
+     */
+    public String getRunId() {
+        MetricsRun current = run;
+        return current != null ? current.getRunId() : null;
+    }
+
+    // PrometheusSimulation 밖에서 DSL 만 쓰는 경우 첫 기록 시 실행을 시작한다
+    private MetricsRun currentRun(String simulation) {
+        MetricsRun current = run;
+        if (current != null) {
+            return current;
+        }
+        synchronized (lock) {
+            if (run == null) {
+                beginRun(simulation);
+            }
+            return run;
+        }
+    }
+
+    private MetricSnapshots collectRun() {
+        MetricsRun current = run;
+        if (current != null) {
+            return current.scrape();
+        }
+        MetricSnapshots completed = completedRun;
+        return completed != null ? completed : new MetricSnapshots();
+    }
+
+    private void sweepIdleSeries() {
+        MetricsRun current = run;
+        if (current == null) {
+            return;
+        }
+        try {
+            int evicted = current.sweep(System.currentTimeMillis(), config.getRunIdleTtlMillis());
+            if (evicted > 0) {
+                idleSeriesEvicted.inc(evicted);
+            }
+        } catch (Exception e) {
+            System.err.println("Error evicting idle series: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 요청별 핸들 조회 - 빌드 시점에 한 번 호출해 두고 기록 시에는 핸들을 재사용한다.
+     */
+    public RequestMetrics requestMetrics(String simulation, String scenario, String request) {
+        return currentRun(simulation).requestMetrics(simulation, scenario, request);
+    }
+
+    /**
+     * 현재 실행에서 이 요청 이름으로 만들어진 핸들 (scenario 무관) - 실행 중이 아니면 빈 목록
+     */
+    List<RequestMetrics> requestMetricsNamed(String request) {
+        MetricsRun current = run;
+        if (current == null) {
+            return List.of();
+        }
+        List<RequestMetrics> named = new ArrayList<>(2);
+        for (RequestMetrics handle : current.allRequestMetrics()) {
+            if (handle.getRequest().equals(request)) {
+                named.add(handle);
+            }
+        }
+        return named;
+    }
+
+    /**
+     * 트랜잭션별 핸들 조회 - requestMetrics 와 같이 빌드 시점에 한 번 호출한다.
+     */
+    public TransactionMetrics transactionMetrics(String simulation, String scenario, String transaction) {
+        return currentRun(simulation).transactionMetrics(simulation, scenario, transaction);
+    }
+
+    Collection<RequestMetrics> allRequestMetrics() {
+        MetricsRun current = run;
+        return current != null ? current.allRequestMetrics() : List.of();
+    }
+
+    LatencyWindow createLatencyWindow(String simulation, String scenario, String request) {
+        return latencyWindows != null ? latencyWindows.create(simulation, scenario, request) : null;
+    }
+
+    SlowRequestWindow createSlowRequestWindow(String simulation, String scenario, String request) {
+        return slowRequestWindows != null ? slowRequestWindows.create(simulation, scenario, request) : null;
+    }
+
+    // 제거된 핸들의 윈도우는 더 이상 회전/노출하지 않는다
+    void releaseWindows(LatencyWindow latencyWindow, SlowRequestWindow slowRequests) {
+        if (latencyWindow != null) {
+            latencyWindows.remove(latencyWindow);
+        }
+        if (slowRequests != null) {
+            slowRequestWindows.remove(slowRequests);
+        }
+    }
+
+    /**
+     * 최근 window 구간의 응답 시간 분포 조회 - window 가 비활성화된 경우 null
+     */
+    public LatencyWindow.Snapshot latencySnapshot(String simulation, String scenario, String request) {
+        LatencyWindow window = requestMetrics(simulation, scenario, request).getLatencyWindow();
+        return window != null ? window.snapshot() : null;
+    }
+
     public void recordRequest(String simulation, String scenario, String request,
                               boolean success, long responseTimeMs) {
-        String status = success ? "ok" : "ko";
+        requestMetrics(simulation, scenario, request).record(success, responseTimeMs);
+    }
 
-        responseTimeHistogram
-                .labelValues(simulation, scenario, request, status)
-                .observe(responseTimeMs);
+    public void addRequestListener(RequestListener listener) {
+        synchronized (lock) {
+            RequestListener[] current = requestListeners;
+            for (RequestListener existing : current) {
+                if (existing == listener) {
+                    return;
+                }
+            }
+            RequestListener[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = listener;
+            requestListeners = updated;
+        }
+    }
 
-        requestCounter
-                .labelValues(simulation, scenario, request, status)
-                .inc();
+    public void removeRequestListener(RequestListener listener) {
+        synchronized (lock) {
+            requestListeners = Arrays.stream(requestListeners)
+                    .filter(existing -> existing != listener)
+                    .toArray(RequestListener[]::new);
+        }
+    }
+
+    /**
+     * gatling.conf 의 prometheus.influxdb 설정이 활성화된 경우 InfluxDB writer 시작
+     */
+    public void startInfluxDbWriter() throws IOException {
+        if (!config.isInfluxDbEnabled()) {
+            return;
+        }
+        synchronized (lock) {
+            if (influxDbWriter == null) {
+                influxDbWriter = new InfluxDbWriter(config, registry);
+            }
+            influxDbWriter.start();
+            addRequestListener(influxDbWriter);
+        }
+    }
+
+    /**
+     * 남아 있는 집계를 모두 전송한 뒤 InfluxDB writer 종료
+     */
+    public void stopInfluxDbWriter() {
+        synchronized (lock) {
+            if (influxDbWriter != null && influxDbWriter.isRunning()) {
+                removeRequestListener(influxDbWriter);
+                influxDbWriter.stop();
+            }
+        }
+    }
+
+    /**
+     * gatling.conf 의 prometheus.remote-write 설정이 활성화된 경우 remote write push 시작
+     */
+    public void startRemoteWriteExporter() {
+        if (!config.isRemoteWriteEnabled()) {
+            return;
+        }
+        synchronized (lock) {
+            if (remoteWriteExporter == null) {
+                remoteWriteExporter = new RemoteWriteExporter(config, registry);
+            }
+            remoteWriteExporter.start();
+        }
+    }
+
+    /**
+     * 최종 스냅샷을 push 한 뒤 remote write 종료
+     */
+    public void stopRemoteWriteExporter() {
+        synchronized (lock) {
+            if (remoteWriteExporter != null && remoteWriteExporter.isRunning()) {
+                remoteWriteExporter.stop();
+            }
+        }
+    }
+
+    /**
+     * 인젝터 프로브 시작 - gatling.conf 의 prometheus.probes.enabled 가 false 이면 아무것도 하지 않는다.
+     */
+    public void startInjectorProbes() {
+        synchronized (lock) {
+            if (injectorProbes != null) {
+                injectorProbes.start();
+            }
+        }
+    }
+
+    public void stopInjectorProbes() {
+        synchronized (lock) {
+            if (injectorProbes != null && injectorProbes.isRunning()) {
+                injectorProbes.stop();
+            }
+        }
+    }
+
+    /**
+     * 시나리오의 의도한 유입률 선언 (constantUsersPerSec 값) - 실제 유입률 비교와 사용자 시작 지연 측정에 쓰인다.
+     */
+    public void expectInjectionRate(String simulation, String scenario, double usersPerSecond) {
+        if (injectorProbes != null) {
+            injectorProbes.expectInjectionRate(simulation, scenario, usersPerSecond);
+        }
+    }
+
+    /**
+     * gatling.conf 의 prometheus.results-store 설정이 활성화된 경우 요청 샘플을 바이너리 저장소에 기록 시작
+     */
+    public void startResultsStore(String simulation) throws IOException {
+        if (!config.isResultsStoreEnabled()) {
+            return;
+        }
+        synchronized (lock) {
+            if (resultsStoreWriter == null) {
+                resultsStoreWriter = new ResultsStoreWriter(config, registry);
+            }
+            resultsStoreWriter.start(simulation);
+            addRequestListener(resultsStoreWriter);
+        }
+    }
+
+    /**
+     * 남은 샘플을 모두 기록한 뒤 결과 저장소 종료
+     */
+    public void stopResultsStore() {
+        synchronized (lock) {
+            if (resultsStoreWriter != null && resultsStoreWriter.isRunning()) {
+                removeRequestListener(resultsStoreWriter);
+                resultsStoreWriter.stop();
+            }
+        }
+    }
+
+    /**
+     * 용량 탐색 게이지 - 첫 탐색이 시작될 때 한 번만 등록한다.
+     */
+    CapacitySearch.SearchMetrics capacitySearchMetrics() {
+        synchronized (lock) {
+            if (capacitySearchMetrics == null) {
+                capacitySearchMetrics = new CapacitySearch.SearchMetrics(registry);
+            }
+            return capacitySearchMetrics;
+        }
+    }
+
+    /**
+     * gatling.conf 의 prometheus.regression 설정이 활성화된 경우 baseline 비교용 분포 기록 시작
+     */
+    public void startRegressionGate() {
+        if (!config.isRegressionEnabled()) {
+            return;
+        }
+        synchronized (lock) {
+            if (regressionGate == null) {
+                regressionGate = new RegressionGate(config);
+                addRequestListener(regressionGate);
+            }
+        }
+    }
+
+    /**
+     * 이번 실행을 baseline 과 비교하고 결과 보고서를 남긴다.
+     *
+     * @return 회귀가 없거나 게이트가 비활성화된 경우 true - 비교하지 못한 경우(IO 오류 등)는 false
+     */
+    public boolean evaluateRegressionGate(String simulation) {
+        synchronized (lock) {
+            if (regressionGate == null) {
+                return true;
+            }
+            removeRequestListener(regressionGate);
+            try {
+                return regressionGate.evaluateOrFail(simulation);
+            } finally {
+                regressionGate = null;
+            }
+        }
+    }
+
+    /**
+     * simulation.log tail 시작 - DSL 로 계측되지 않은 요청도 같은 메트릭으로 기록한다.
+     */
+    public void startSimulationLogTailer(String simulation) {
+        synchronized (lock) {
+            if (simulationLogTailer != null) {
+                simulationLogTailer.start(simulation);
+            }
+        }
+    }
+
+    /**
+     * 남은 레코드를 반영한 뒤 simulation.log tail 종료
+     */
+    public void stopSimulationLogTailer() {
+        synchronized (lock) {
+            if (simulationLogTailer != null && simulationLogTailer.isRunning()) {
+                simulationLogTailer.stop();
+            }
+        }
+    }
+
+    // DSL 로 이미 기록되는 요청/시나리오는 simulation.log 에서 다시 집계하지 않는다
+    void markInstrumentedRequest(String request) {
+        if (simulationLogTailer != null) {
+            simulationLogTailer.markInstrumentedRequest(request);
+        }
+    }
+
+    void markInstrumentedScenario(String scenario) {
+        if (simulationLogTailer != null) {
+            simulationLogTailer.markInstrumentedScenario(scenario);
+        }
     }
 
     public void recordError(String simulation, String scenario, String request, String errorMessage) {
-        String safeError = errorMessage != null ?
-                errorMessage.substring(0, Math.min(100, errorMessage.length())) : "unknown";
-        errorCounter
-                .labelValues(simulation, scenario, request, safeError)
-                .inc();
+        requestMetrics(simulation, scenario, request).recordError(errorMessage);
     }
 
-    public void userStarted(String simulation, String scenario) {
-        activeUsersGauge
-                .labelValues(simulation, scenario)
-                .inc();
-        usersStartedCounter
-                .labelValues(simulation, scenario)
-                .inc();
+    /**
+     * @return 의도한 시작 시각보다 늦어진 시간(ns) - 유입률이 선언되지 않았거나 프로브가 꺼져 있으면 0
+     */
+    public long userStarted(String simulation, String scenario) {
+        return userStarted(scenarioUsers(simulation, scenario));
+    }
+
+    /**
+     * 빌드 시점에 조회해 둔 핸들로 사용자 시작 기록 - 사용자마다 키를 만들지 않는다
+     */
+    long userStarted(MetricsRun.ScenarioUsers users) {
+        users.userStarted();
+        return injectorProbes != null ? injectorProbes.userStarted(users.getSimulation(), users.getScenario()) : 0;
     }
 
     public void userFinished(String simulation, String scenario) {
-        activeUsersGauge
-                .labelValues(simulation, scenario)
-                .dec();
-        usersFinishedCounter
-                .labelValues(simulation, scenario)
-                .inc();
+        userFinished(simulation, scenario, -1);
     }
 
+    /**
+     * @param sessionNanos trackUser 부터의 세션 시간 - 0 이상이면 세션 시간 히스토그램에 기록
+     */
+    public void userFinished(String simulation, String scenario, long sessionNanos) {
+        scenarioUsers(simulation, scenario).userFinished(sessionNanos);
+    }
+
+    /**
+     * 시나리오별 사용자 수 핸들 조회 - requestMetrics 와 같이 빌드 시점에 한 번 호출한다.
+     */
+    MetricsRun.ScenarioUsers scenarioUsers(String simulation, String scenario) {
+        return currentRun(simulation).users(simulation, scenario);
+    }
+
+    /**
+     * 현재 실행의 응답 시간 히스토그램 - 실행 중이 아니면 null
+     */
     public Histogram getResponseTimeHistogram() {
-        return responseTimeHistogram;
+        MetricsRun current = run;
+        return current != null ? current.responseTime : null;
     }
 
     public Counter getRequestCounter() {
-        return requestCounter;
+        MetricsRun current = run;
+        return current != null ? current.requests : null;
     }
 
     public Gauge getActiveUsersGauge() {
-        return activeUsersGauge;
+        MetricsRun current = run;
+        return current != null ? current.activeUsers : null;
     }
 }
\ No newline at end of file
@@ -0,0 +1,393 @@
+package prometheus;
+
+import io.prometheus.metrics.core.metrics.Counter;
+import io.prometheus.metrics.core.metrics.CounterWithCallback;
+import io.prometheus.metrics.core.metrics.Histogram;
+import io.prometheus.metrics.model.registry.PrometheusRegistry;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 요청 이벤트를 초 단위로 집계해 InfluxDB 에 line protocol 로 기록하는 비동기 writer.
+ * <p>
+ * Gatling 스레드는 {@link RequestEventRing} 에 이벤트를 넣기만 하고, 집계/직렬화/전송은
+ * 전용 백그라운드 스레드가 담당한다. 링이 가득 차면 이벤트를 버리고, InfluxDB 가 느리거나
+ * 응답하지 않으면 전송 대기 배치 수를 제한해 가장 오래된 배치부터 버린다.
+ * <p>
+ * 초 S 의 집계는 flush 시점에 링을 모두 비운 뒤, 벽시계가 S + 2 초에 들어선 다음에야 직렬화한다
+ * (S.999 에 찍혀 늦게 들어온 이벤트를 위한 1 초 유예). 그 뒤에 S 의 이벤트가 들어오면 같은 태그/타임스탬프의
+ * 두 번째 점이 첫 점의 필드를 덮어쓰므로 보내지 않고 {@code gatling_influxdb_late_events_total} 로 센다.
+ * <pre>
+ * gatling_requests,simulation=..,scenario=..,request=.. count=10i,ok=9i,ko=1i,min=..,mean=..,p50=..,p95=..,p99=..,max=.. 1700000000000000000
+ * </pre>
+ */
+public final class InfluxDbWriter implements RequestListener {
+
+    private static final String MEASUREMENT = "gatling_requests";
+    private static final int MAX_UDP_PAYLOAD = 8192;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    private static final long MAX_RETRY_BACKOFF_MILLIS = 5000;
+
+    private final PrometheusConfig config;
+    private final RequestEventRing ring;
+
+    private final Counter droppedBatches;
+    private final Counter pointsWritten;
+    private final Counter writeErrors;
+    private final Counter lateEvents;
+    private final Histogram flushDuration;
+
+    // 아래 필드는 writer 스레드에서만 접근
+    private final Map<AggregateKey, SecondAggregate> aggregates = new HashMap<>();
+    private final ArrayDeque<SecondAggregate> aggregatePool = new ArrayDeque<>();
+    private final ArrayDeque<byte[]> pendingBatches = new ArrayDeque<>();
+    private final StringBuilder line = new StringBuilder(256);
+    private HttpClient httpClient;
+    private DatagramChannel udpChannel;
+    private long retryBackoffMillis;
+    private long nextSendAttemptMillis;
+    // 이 초보다 앞선 집계는 이미 직렬화됨
+    private long flushedBeforeSecond = Long.MIN_VALUE;
+
+    private volatile boolean running;
+    private volatile Thread writerThread;
+
+    InfluxDbWriter(PrometheusConfig config, PrometheusRegistry registry) {
+        this.config = config;
+        this.ring = new RequestEventRing(config.getInfluxDbRingCapacity());
+
+        CounterWithCallback.builder()
+                .name("gatling_influxdb_dropped_events_total")
+                .help("Request events dropped because the InfluxDB writer ring buffer was full")
+                .callback(callback -> callback.call(ring.getDropped()))
+                .register(registry);
+
+        this.droppedBatches = Counter.builder()
+                .name("gatling_influxdb_dropped_batches_total")
+                .help("Line protocol batches dropped because too many batches were pending")
+                .register(registry);
+
+        this.pointsWritten = Counter.builder()
+                .name("gatling_influxdb_points_written_total")
+                .help("Points successfully written to InfluxDB")
+                .register(registry);
+
+        this.writeErrors = Counter.builder()
+                .name("gatling_influxdb_write_errors_total")
+                .help("Failed InfluxDB write attempts")
+                .register(registry);
+
+        this.lateEvents = Counter.builder()
+                .name("gatling_influxdb_late_events_total")
+                .help("Request events that arrived after their second had already been written")
+                .register(registry);
+
+        this.flushDuration = Histogram.builder()
+                .name("gatling_influxdb_flush_duration_seconds")
+                .help("Time spent writing one batch to InfluxDB")
+                .classicOnly()
+                .classicUpperBounds(0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5)
+                .register(registry);
+    }
+
+    @Override
+    public void onRequest(RequestMetrics request, boolean success, long timestampMillis, long responseTimeMicros) {
+        ring.offer(request, success, timestampMillis, responseTimeMicros);
+    }
+
+    synchronized void start() throws IOException {
+        if (running) {
+            return;
+        }
+        if ("udp".equalsIgnoreCase(config.getInfluxDbTransport())) {
+            URI uri = URI.create(config.getInfluxDbUrl());
+            udpChannel = DatagramChannel.open();
+            udpChannel.connect(new InetSocketAddress(uri.getHost(), uri.getPort()));
+        } else {
+            httpClient = HttpClient.newBuilder()
+                    .connectTimeout(Duration.ofSeconds(2))
+                    .build();
+        }
+        running = true;
+        Thread thread = new Thread(this::runLoop, "influxdb-writer");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        writerThread = thread;
+        thread.start();
+        System.out.println("✓ InfluxDB writer started: " + config.getInfluxDbUrl()
+                + " (db=" + config.getInfluxDbDatabase() + ", transport=" + config.getInfluxDbTransport() + ")");
+    }
+
+    /**
+     * 남은 이벤트를 모두 집계/전송한 뒤 writer 스레드를 종료한다.
+     */
+    synchronized void stop() {
+        Thread thread = writerThread;
+        if (!running || thread == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writerThread = null;
+        if (udpChannel != null) {
+            try {
+                udpChannel.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            udpChannel = null;
+        }
+        System.out.println("InfluxDB writer stopped");
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    private void runLoop() {
+        long flushIntervalMillis = config.getInfluxDbFlushIntervalMillis();
+        long nextFlush = System.currentTimeMillis() + flushIntervalMillis;
+
+        while (running) {
+            int drained = ring.drain(this::aggregate, 4096);
+            long now = System.currentTimeMillis();
+            if (now >= nextFlush) {
+                // 밀린 이벤트가 다음 flush 에서 같은 초의 두 번째 점이 되지 않도록 flush 시점까지 게시된 것은 모두 집계
+                drainBacklog();
+                // 진행 중인 초와 직전 초(유예)는 다음 flush 까지 기다린다
+                flushedBeforeSecond = now / 1000 - 1;
+                serializeCompleted(flushedBeforeSecond);
+                nextFlush = now + flushIntervalMillis;
+            }
+            sendPending(now, false);
+            if (drained == 0) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+
+        // 종료 시 최종 flush
+        while (ring.drain(this::aggregate, Integer.MAX_VALUE) > 0) {
+            // drain all
+        }
+        serializeCompleted(Long.MAX_VALUE);
+        sendPending(System.currentTimeMillis(), true);
+    }
+
+    /**
+     * 링에 쌓인 이벤트 집계 - 계속 들어오는 이벤트 때문에 끝나지 않도록 링 크기만큼까지만
+     */
+    private void drainBacklog() {
+        int remaining = ring.getCapacity();
+        int drained;
+        while (remaining > 0 && (drained = ring.drain(this::aggregate, Math.min(remaining, 4096))) > 0) {
+            remaining -= drained;
+        }
+    }
+
+    private void aggregate(RequestMetrics request, boolean success, long timestampMillis, long responseTimeMicros) {
+        if (timestampMillis / 1000 < flushedBeforeSecond) {
+            // 이미 기록한 초 - 다시 쓰면 InfluxDB 가 앞의 점을 부분 집계로 덮어쓴다
+            lateEvents.inc();
+            return;
+        }
+        AggregateKey key = new AggregateKey(request, timestampMillis / 1000);
+        SecondAggregate aggregate = aggregates.get(key);
+        if (aggregate == null) {
+            aggregate = aggregatePool.isEmpty() ? new SecondAggregate() : aggregatePool.poll();
+            aggregates.put(key, aggregate);
+        }
+        aggregate.add(success, responseTimeMicros);
+    }
+
+    private void serializeCompleted(long beforeSecond) {
+        ByteArrayOutputStream batch = new ByteArrayOutputStream(8192);
+        int lines = 0;
+
+        Iterator<Map.Entry<AggregateKey, SecondAggregate>> iterator = aggregates.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<AggregateKey, SecondAggregate> entry = iterator.next();
+            AggregateKey key = entry.getKey();
+            if (key.second() >= beforeSecond) {
+                continue;
+            }
+            SecondAggregate aggregate = entry.getValue();
+            appendLine(key, aggregate);
+            byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+            batch.write(bytes, 0, bytes.length);
+            lines++;
+
+            iterator.remove();
+            aggregate.reset();
+            aggregatePool.push(aggregate);
+
+            if (lines >= config.getInfluxDbMaxBatchLines()) {
+                enqueue(batch.toByteArray());
+                batch.reset();
+                lines = 0;
+            }
+        }
+        if (lines > 0) {
+            enqueue(batch.toByteArray());
+        }
+    }
+
+    private void appendLine(AggregateKey key, SecondAggregate aggregate) {
+        RequestMetrics request = key.request();
+        line.setLength(0);
+        line.append(MEASUREMENT);
+        line.append(",simulation=");
+        appendTag(request.getSimulation());
+        line.append(",scenario=");
+        appendTag(request.getScenario());
+        line.append(",request=");
+        appendTag(request.getRequest());
+        line.append(" count=").append(aggregate.ok + aggregate.ko).append('i');
+        line.append(",ok=").append(aggregate.ok).append('i');
+        line.append(",ko=").append(aggregate.ko).append('i');
+        line.append(",min=").append(aggregate.histogram.getMinValue() / 1000.0);
+        line.append(",mean=").append(aggregate.histogram.getMean() / 1000.0);
+        line.append(",p50=").append(aggregate.histogram.getValueAtPercentile(50.0) / 1000.0);
+        line.append(",p95=").append(aggregate.histogram.getValueAtPercentile(95.0) / 1000.0);
+        line.append(",p99=").append(aggregate.histogram.getValueAtPercentile(99.0) / 1000.0);
+        line.append(",max=").append(aggregate.histogram.getMaxValue() / 1000.0);
+        line.append(' ').append(key.second()).append("000000000\n");
+    }
+
+    private void appendTag(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '=' || c == ' ') {
+                line.append('\\');
+            }
+            line.append(c);
+        }
+    }
+
+    private void enqueue(byte[] batch) {
+        while (pendingBatches.size() >= config.getInfluxDbMaxPendingBatches()) {
+            pendingBatches.poll();
+            droppedBatches.inc();
+        }
+        pendingBatches.add(batch);
+    }
+
+    private void sendPending(long now, boolean finalFlush) {
+        if (!finalFlush && now < nextSendAttemptMillis) {
+            return;
+        }
+        while (!pendingBatches.isEmpty()) {
+            byte[] batch = pendingBatches.peek();
+            long start = System.nanoTime();
+            try {
+                send(batch);
+                flushDuration.observe((System.nanoTime() - start) / 1_000_000_000.0);
+                pendingBatches.poll();
+                pointsWritten.inc(countLines(batch));
+                retryBackoffMillis = 0;
+            } catch (IOException e) {
+                writeErrors.inc();
+                retryBackoffMillis = Math.min(MAX_RETRY_BACKOFF_MILLIS, Math.max(100, retryBackoffMillis * 2));
+                nextSendAttemptMillis = now + retryBackoffMillis;
+                System.err.println("InfluxDB write failed (retry in " + retryBackoffMillis + "ms): " + e.getMessage());
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void send(byte[] batch) throws IOException, InterruptedException {
+        if (udpChannel != null) {
+            sendUdp(batch);
+            return;
+        }
+        String url = config.getInfluxDbUrl() + "/write?db="
+                + URLEncoder.encode(config.getInfluxDbDatabase(), StandardCharsets.UTF_8);
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofSeconds(5))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(batch))
+                .build();
+        HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() / 100 != 2) {
+            throw new IOException("InfluxDB responded with HTTP " + response.statusCode());
+        }
+    }
+
+    private void sendUdp(byte[] batch) throws IOException {
+        // 줄 경계에서 잘라 datagram 크기 제한을 넘지 않도록 전송
+        int start = 0;
+        while (start < batch.length) {
+            int end = Math.min(batch.length, start + MAX_UDP_PAYLOAD);
+            if (end < batch.length) {
+                int lastNewline = end - 1;
+                while (lastNewline > start && batch[lastNewline] != '\n') {
+                    lastNewline--;
+                }
+                if (lastNewline > start) {
+                    end = lastNewline + 1;
+                }
+            }
+            udpChannel.write(ByteBuffer.wrap(batch, start, end - start));
+            start = end;
+        }
+    }
+
+    private static int countLines(byte[] batch) {
+        int lines = 0;
+        for (byte b : batch) {
+            if (b == '\n') {
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    private record AggregateKey(RequestMetrics request, long second) {
+    }
+
+    private static final class SecondAggregate {
+
+        private final org.HdrHistogram.Histogram histogram =
+                new org.HdrHistogram.Histogram(LatencyWindow.SIGNIFICANT_DIGITS);
+        private long ok;
+        private long ko;
+
+        void add(boolean success, long responseTimeMicros) {
+            if (success) {
+                ok++;
+            } else {
+                ko++;
+            }
+            histogram.recordValue(Math.max(0, responseTimeMicros));
+        }
+
+        void reset() {
+            histogram.reset();
+            ok = 0;
+            ko = 0;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package prometheus;
+
+import io.prometheus.metrics.core.datapoints.DistributionDataPoint;
+import io.prometheus.metrics.core.metrics.GaugeWithCallback;
+import io.prometheus.metrics.core.metrics.Histogram;
+import io.prometheus.metrics.model.registry.PrometheusRegistry;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 인젝터(Gatling JVM) 자체의 포화를 감지하는 프로브.
+ * <p>
+ * 인젝터가 포화되면 기록되는 응답 시간에 인젝터 내부 대기 시간이 섞이고 실제 유입률이 의도한 값보다 낮아진다.
+ * 다음 값을 {@code JvmMetrics} 와 같은 레지스트리에 노출한다.
+ * <ul>
+ *     <li>스케줄러 지연 - 전용 스레드가 interval 만큼 park 한 뒤 실제로 깨어난 시각과의 차이</li>
+ *     <li>이벤트 루프 지연 - 사용자 시작이 의도한 시각보다 늦어진 정도 (사용자 시작은 이벤트 루프에서 스케줄된다)</li>
+ *     <li>GC 일시 정지 비율 - 직전 1초 중 GC 에 쓰인 시간의 비율</li>
+ *     <li>시나리오별 의도한 유입률과 실제 유입률</li>
+ * </ul>
+ * 이벤트 루프 지연은 {@link #expectInjectionRate} 로 일정한 유입률(constantUsersPerSec)을 선언한 시나리오에서만 측정된다.
+ */
+final class InjectorProbes {
+
+    private final long intervalNanos;
+    private final Histogram schedulerLag;
+    private final Histogram userStartLag;
+    private final ConcurrentHashMap<String, ScenarioInjection> scenarios = new ConcurrentHashMap<>();
+    // 동시(concurrent) 수집 시간은 애플리케이션 스레드를 멈추지 않으므로 제외 (G1 Concurrent GC, ZGC Cycles 등)
+    private final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans().stream()
+            .filter(collector -> !collector.getName().contains("Concurrent") && !collector.getName().contains("Cycles"))
+            .toList();
+
+    // 아래 필드는 프로브 스레드에서 쓰고 수집 콜백에서 읽는다
+    private volatile double maxSchedulerLagSeconds;
+    private volatile double gcPauseRatio;
+
+    private Thread probe;
+    private volatile boolean running;
+
+    InjectorProbes(PrometheusConfig config, PrometheusRegistry registry) {
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(config.getProbeIntervalMillis());
+
+        this.schedulerLag = Histogram.builder()
+                .name("gatling_injector_scheduler_lag_seconds")
+                .help("Delay between the intended and actual wake-up of the injector probe thread")
+                .classicOnly()
+                .classicUpperBounds(0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1)
+                .register(registry);
+
+        this.userStartLag = Histogram.builder()
+                .name("gatling_injector_user_start_lag_seconds")
+                .help("Delay between the intended and actual start of a virtual user on the event loop")
+                .labelNames("simulation", "scenario")
+                .classicOnly()
+                .classicUpperBounds(0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5)
+                .register(registry);
+
+        GaugeWithCallback.builder()
+                .name("gatling_injector_scheduler_lag_max_seconds")
+                .help("Maximum scheduler lag observed during the last second")
+                .callback(callback -> callback.call(maxSchedulerLagSeconds))
+                .register(registry);
+
+        GaugeWithCallback.builder()
+                .name("gatling_injector_gc_pause_ratio")
+                .help("Fraction of the last second the injector spent in garbage collection")
+                .callback(callback -> callback.call(gcPauseRatio))
+                .register(registry);
+
+        GaugeWithCallback.builder()
+                .name("gatling_injector_intended_users_per_second")
+                .help("Injection rate declared by the simulation")
+                .labelNames("simulation", "scenario")
+                .callback(callback -> {
+                    for (ScenarioInjection injection : scenarios.values()) {
+                        if (injection.intendedRate > 0) {
+                            callback.call(injection.intendedRate, injection.simulation, injection.scenario);
+                        }
+                    }
+                })
+                .register(registry);
+
+        GaugeWithCallback.builder()
+                .name("gatling_injector_actual_users_per_second")
+                .help("Users actually started during the last second")
+                .labelNames("simulation", "scenario")
+                .callback(callback -> {
+                    for (ScenarioInjection injection : scenarios.values()) {
+                        callback.call(injection.actualRate, injection.simulation, injection.scenario);
+                    }
+                })
+                .register(registry);
+    }
+
+    synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        probe = new Thread(this::probeLoop, "prometheus-injector-probe");
+        probe.setDaemon(true);
+        probe.start();
+        System.out.println("✓ Injector probes started (every " + TimeUnit.NANOSECONDS.toMillis(intervalNanos) + "ms)");
+    }
+
+    synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        probe.interrupt();
+        try {
+            probe.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * 새 실행 시작 - 이전 실행의 시나리오별 유입률과 시작 지연 시리즈를 버린다
+     */
+    void runStarted() {
+        scenarios.clear();
+        userStartLag.clear();
+    }
+
+    void expectInjectionRate(String simulation, String scenario, double usersPerSecond) {
+        scenario(simulation, scenario).intendedRate = usersPerSecond;
+    }
+
+    /**
+     * 사용자 시작 기록.
+     *
+     * @return 의도한 시작 시각보다 늦어진 시간(ns), 유입률이 선언되지 않은 시나리오는 0
+     */
+    long userStarted(String simulation, String scenario) {
+        long now = System.nanoTime();
+        ScenarioInjection injection = scenario(simulation, scenario);
+        injection.started.incrementAndGet();
+
+        double rate = injection.intendedRate;
+        if (rate <= 0) {
+            return 0;
+        }
+        long index = injection.startIndex.getAndIncrement();
+        if (index == 0) {
+            injection.firstStartNanos = now;
+            return 0;
+        }
+        long firstStart = injection.firstStartNanos;
+        if (firstStart == 0) {
+            // 첫 사용자의 기록이 아직 끝나지 않은 경우
+            return 0;
+        }
+        long intendedStart = firstStart + (long) (index * 1_000_000_000.0 / rate);
+        long lagNanos = Math.max(0, now - intendedStart);
+        injection.startLag.observe(lagNanos / 1_000_000_000.0);
+        return lagNanos;
+    }
+
+    private ScenarioInjection scenario(String simulation, String scenario) {
+        return scenarios.computeIfAbsent(simulation + '\u0000' + scenario,
+                key -> new ScenarioInjection(simulation, scenario, userStartLag.labelValues(simulation, scenario)));
+    }
+
+    private void probeLoop() {
+        long windowStart = System.nanoTime();
+        long windowMaxLag = 0;
+        long lastGcMillis = totalGcMillis();
+
+        while (running) {
+            long before = System.nanoTime();
+            LockSupport.parkNanos(intervalNanos);
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+            long now = System.nanoTime();
+            long lag = Math.max(0, now - before - intervalNanos);
+            schedulerLag.observe(lag / 1_000_000_000.0);
+            windowMaxLag = Math.max(windowMaxLag, lag);
+
+            long elapsed = now - windowStart;
+            if (elapsed >= 1_000_000_000L) {
+                long gcMillis = totalGcMillis();
+                gcPauseRatio = Math.min(1.0, (gcMillis - lastGcMillis) / (double) TimeUnit.NANOSECONDS.toMillis(elapsed));
+                lastGcMillis = gcMillis;
+
+                maxSchedulerLagSeconds = windowMaxLag / 1_000_000_000.0;
+                windowMaxLag = 0;
+
+                for (ScenarioInjection injection : scenarios.values()) {
+                    long started = injection.started.get();
+                    injection.actualRate = (started - injection.lastStarted) * 1_000_000_000.0 / elapsed;
+                    injection.lastStarted = started;
+                }
+                windowStart = now;
+            }
+        }
+    }
+
+    private long totalGcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : collectors) {
+            long time = collector.getCollectionTime();
+            if (time > 0) {
+                total += time;
+            }
+        }
+        return total;
+    }
+
+    private static final class ScenarioInjection {
+        final String simulation;
+        final String scenario;
+        final DistributionDataPoint startLag;
+        final AtomicLong started = new AtomicLong();
+        final AtomicLong startIndex = new AtomicLong();
+        volatile long firstStartNanos;
+        volatile double intendedRate;
+        volatile double actualRate;
+        long lastStarted;
+
+        ScenarioInjection(String simulation, String scenario, DistributionDataPoint startLag) {
+            this.simulation = simulation;
+            this.scenario = scenario;
+            this.startLag = startLag;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package prometheus;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * 최근 N 초 구간의 응답 시간 분포 (scenario, request 단위).
+ * <p>
+ * 기록은 HdrHistogram {@link Recorder} 에 마이크로초 단위로 쌓이며 wait-free 이므로 Gatling 스레드를 막지 않는다.
+ * {@link LatencyWindows} 의 회전 스레드가 1초마다 interval 히스토그램을 꺼내 링 버퍼에 넣고,
+ * 구간 전체를 합친 {@link Snapshot} 을 새로 게시한다. 조회는 항상 마지막으로 게시된 스냅샷을 읽는다.
+ */
+public final class LatencyWindow {
+
+    static final int SIGNIFICANT_DIGITS = 3;
+
+    private final String simulation;
+    private final String scenario;
+    private final String request;
+    private final int windowSeconds;
+
+    private final Recorder recorder = new Recorder(SIGNIFICANT_DIGITS);
+
+    // 아래 필드는 회전 스레드에서만 접근
+    private final Histogram[] slots;
+    private int slotIndex;
+
+    private volatile Snapshot snapshot;
+
+    LatencyWindow(String simulation, String scenario, String request, int windowSeconds) {
+        this.simulation = simulation;
+        this.scenario = scenario;
+        this.request = request;
+        this.windowSeconds = windowSeconds;
+        this.slots = new Histogram[windowSeconds];
+        this.snapshot = new Snapshot(new Histogram(SIGNIFICANT_DIGITS), windowSeconds);
+    }
+
+    void recordMicros(long micros) {
+        recorder.recordValue(Math.max(0, micros));
+    }
+
+    void rotate() {
+        slotIndex = (slotIndex + 1) % slots.length;
+        // 가장 오래된 슬롯은 Recorder 가 재사용하도록 돌려준다
+        slots[slotIndex] = recorder.getIntervalHistogram(slots[slotIndex]);
+
+        Histogram aggregate = new Histogram(SIGNIFICANT_DIGITS);
+        for (Histogram slot : slots) {
+            if (slot != null) {
+                aggregate.add(slot);
+            }
+        }
+        snapshot = new Snapshot(aggregate, windowSeconds);
+    }
+
+    /**
+     * 마지막으로 회전된 1초 interval 히스토그램 - 회전 스레드(회전 리스너)에서만 호출해야 한다
+     */
+    Histogram lastInterval() {
+        return slots[slotIndex];
+    }
+
+    public Snapshot snapshot() {
+        return snapshot;
+    }
+
+    public String getSimulation() {
+        return simulation;
+    }
+
+    public String getScenario() {
+        return scenario;
+    }
+
+    public String getRequest() {
+        return request;
+    }
+
+    public int getWindowSeconds() {
+        return windowSeconds;
+    }
+
+    /**
+     * 게시된 이후 변경되지 않는 구간 집계. 값은 밀리초 단위.
+     */
+    public static final class Snapshot {
+
+        private final Histogram histogram;
+        private final int windowSeconds;
+        private final double p50;
+        private final double p90;
+        private final double p95;
+        private final double p99;
+        private final double max;
+
+        private Snapshot(Histogram histogram, int windowSeconds) {
+            this.histogram = histogram;
+            this.windowSeconds = windowSeconds;
+            this.p50 = toMillis(histogram.getValueAtPercentile(50.0));
+            this.p90 = toMillis(histogram.getValueAtPercentile(90.0));
+            this.p95 = toMillis(histogram.getValueAtPercentile(95.0));
+            this.p99 = toMillis(histogram.getValueAtPercentile(99.0));
+            this.max = toMillis(histogram.getMaxValue());
+        }
+
+        private static double toMillis(long micros) {
+            return micros / 1000.0;
+        }
+
+        public double getValueAtPercentile(double percentile) {
+            return toMillis(histogram.getValueAtPercentile(percentile));
+        }
+
+        public long getCount() {
+            return histogram.getTotalCount();
+        }
+
+        public double getRequestsPerSecond() {
+            return (double) histogram.getTotalCount() / windowSeconds;
+        }
+
+        public double getP50() {
+            return p50;
+        }
+
+        public double getP90() {
+            return p90;
+        }
+
+        public double getP95() {
+            return p95;
+        }
+
+        public double getP99() {
+            return p99;
+        }
+
+        public double getMax() {
+            return max;
+        }
+    }
+}
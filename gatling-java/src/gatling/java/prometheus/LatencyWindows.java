@@ -0,0 +1,93 @@
+package prometheus;
+
+import io.prometheus.metrics.core.metrics.GaugeWithCallback;
+import io.prometheus.metrics.model.registry.PrometheusRegistry;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 요청별 {@link LatencyWindow} 를 관리하고 1초마다 회전시키는 컴포넌트.
+ * 구간 백분위수는 {@code gatling_response_time_window_milliseconds} 게이지로 노출된다.
+ */
+final class LatencyWindows {
+
+    private final int windowSeconds;
+    private final List<LatencyWindow> windows = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService rotator;
+    private volatile Runnable rotationListener;
+
+    LatencyWindows(int windowSeconds, PrometheusRegistry registry) {
+        this.windowSeconds = windowSeconds;
+
+        GaugeWithCallback.builder()
+                .name("gatling_response_time_window_milliseconds")
+                .help("Response time percentiles over the last " + windowSeconds + " seconds")
+                .labelNames("simulation", "scenario", "request", "quantile")
+                .callback(callback -> {
+                    for (LatencyWindow window : windows) {
+                        LatencyWindow.Snapshot snapshot = window.snapshot();
+                        if (snapshot.getCount() == 0) {
+                            continue;
+                        }
+                        String simulation = window.getSimulation();
+                        String scenario = window.getScenario();
+                        String request = window.getRequest();
+                        callback.call(snapshot.getP50(), simulation, scenario, request, "0.5");
+                        callback.call(snapshot.getP90(), simulation, scenario, request, "0.9");
+                        callback.call(snapshot.getP95(), simulation, scenario, request, "0.95");
+                        callback.call(snapshot.getP99(), simulation, scenario, request, "0.99");
+                        callback.call(snapshot.getMax(), simulation, scenario, request, "1.0");
+                    }
+                })
+                .register(registry);
+
+        this.rotator = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "prometheus-latency-window");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.rotator.scheduleAtFixedRate(this::rotateAll, 1, 1, TimeUnit.SECONDS);
+    }
+
+    LatencyWindow create(String simulation, String scenario, String request) {
+        LatencyWindow window = new LatencyWindow(simulation, scenario, request, windowSeconds);
+        windows.add(window);
+        return window;
+    }
+
+    /**
+     * 유휴 제거되었거나 끝난 실행의 윈도우 - 더 이상 회전/노출하지 않는다
+     */
+    void remove(LatencyWindow window) {
+        windows.remove(window);
+    }
+
+    /**
+     * 매 회전 직후 회전 스레드에서 호출할 콜백 (실시간 스트림용)
+     */
+    void setRotationListener(Runnable rotationListener) {
+        this.rotationListener = rotationListener;
+    }
+
+    private void rotateAll() {
+        for (LatencyWindow window : windows) {
+            try {
+                window.rotate();
+            } catch (Exception e) {
+                System.err.println("Error rotating latency window for " + window.getRequest() + ": " + e.getMessage());
+            }
+        }
+        Runnable listener = rotationListener;
+        if (listener != null) {
+            try {
+                listener.run();
+            } catch (Exception e) {
+                System.err.println("Error in latency window rotation listener: " + e.getMessage());
+            }
+        }
+    }
+}
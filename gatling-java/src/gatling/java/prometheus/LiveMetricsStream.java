@@ -0,0 +1,361 @@
+package prometheus;
+
+import com.sun.net.httpserver.HttpExchange;
+import io.prometheus.metrics.core.metrics.Counter;
+import io.prometheus.metrics.core.metrics.Gauge;
+import io.prometheus.metrics.core.metrics.GaugeWithCallback;
+import io.prometheus.metrics.model.registry.PrometheusRegistry;
+import io.prometheus.metrics.model.snapshots.GaugeSnapshot;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 초 단위 집계를 Server-Sent Events 로 내보내는 실시간 스트림 ({@code GET /live}).
+ * <p>
+ * 기록 경로에는 아무것도 추가하지 않는다. {@link LatencyWindows} 가 1초마다 회전한 직후 같은 스레드에서
+ * 각 요청의 마지막 1초 interval 히스토그램과 OK/KO 누적 카운터의 차이, 활성 사용자 게이지를 읽어
+ * 한 프레임을 만들고, 프레임은 한 번만 인코딩해 모든 구독자의 큐에 넣는다.
+ * <pre>
+ * event: dict   data: {"r":[[id,"simulation","scenario","request"]],"u":[[id,"simulation","scenario"]]}
+ * event: tick   data: {"t":epochSecond,"r":[[id,count,ko,p50,p95,p99,max]],"u":[[id,active]]}
+ * event: end    data: {}
+ * </pre>
+ * tick 에는 그 초에 요청이 있었던 요청과 값이 바뀐 시나리오만 들어간다 (이름은 dict 의 id 로 대체).
+ * 새 구독자는 전체 dict, 보관 중인 최근 tick, 현재 활성 사용자를 먼저 받고, Last-Event-ID 를 보내면
+ * 그 이후 tick 만 받는다. 큐가 가득 찬 느린 구독자는 연결을 끊는다.
+ */
+final class LiveMetricsStream {
+
+    private static final byte[] END = "event: end\ndata: {}\n\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CLOSE = new byte[0];
+
+    private final GatlingPrometheusMetrics owner;
+    private final PrometheusConfig config;
+    private final Counter droppedSubscribers;
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final ExecutorService writers = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "prometheus-live-stream");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private ScheduledExecutorService ticker;
+
+    // 아래 필드는 synchronized (this) 안에서만 접근
+    private final Map<RequestMetrics, Integer> requestIds = new IdentityHashMap<>();
+    private final Map<RequestMetrics, long[]> lastCounts = new IdentityHashMap<>();
+    private final Map<String, Integer> scenarioIds = new HashMap<>();
+    private final Map<Integer, Double> lastActiveUsers = new HashMap<>();
+    private final StringBuilder dictionary = new StringBuilder();
+    private final StringBuilder scenarioDictionary = new StringBuilder();
+    private final ArrayDeque<Frame> history = new ArrayDeque<>();
+    private long lastSecond;
+    // 실행이 바뀌어도 id 를 재사용하지 않아 연결된 구독자의 dict 와 충돌하지 않는다
+    private int nextRequestId;
+    private int nextScenarioId;
+
+    private record Frame(long second, byte[] bytes) {
+    }
+
+    private final class Subscriber implements Runnable {
+        final HttpExchange exchange;
+        final BlockingQueue<byte[]> queue;
+        volatile boolean closed;
+
+        Subscriber(HttpExchange exchange, int capacity) {
+            this.exchange = exchange;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        void send(byte[] bytes) {
+            if (!closed && !queue.offer(bytes)) {
+                // 큐가 찼다 - 밀린 구독자는 끊고 재접속 시 Last-Event-ID 로 이어받게 한다
+                droppedSubscribers.inc();
+                close();
+            }
+        }
+
+        void close() {
+            closed = true;
+            subscribers.remove(this);
+            queue.clear();
+            queue.offer(CLOSE);
+        }
+
+        @Override
+        public void run() {
+            try (OutputStream out = exchange.getResponseBody()) {
+                while (true) {
+                    byte[] bytes = queue.take();
+                    if (bytes == CLOSE) {
+                        return;
+                    }
+                    out.write(bytes);
+                    if (queue.isEmpty()) {
+                        out.flush();
+                    }
+                }
+            } catch (IOException e) {
+                // 클라이언트가 연결을 끊음
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                closed = true;
+                subscribers.remove(this);
+                exchange.close();
+            }
+        }
+    }
+
+    LiveMetricsStream(GatlingPrometheusMetrics owner, PrometheusConfig config, PrometheusRegistry registry) {
+        this.owner = owner;
+        this.config = config;
+
+        GaugeWithCallback.builder()
+                .name("gatling_live_subscribers")
+                .help("Clients connected to the live metrics stream")
+                .callback(callback -> callback.call(subscribers.size()))
+                .register(registry);
+
+        this.droppedSubscribers = Counter.builder()
+                .name("gatling_live_dropped_subscribers_total")
+                .help("Live stream clients disconnected because they fell too far behind")
+                .register(registry);
+    }
+
+    /**
+     * 슬라이딩 윈도우가 꺼져 있으면 회전 콜백이 없으므로 자체 1초 타이머로 프레임을 만든다 (백분위수 없음).
+     */
+    void startTicker() {
+        ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "prometheus-live-ticker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(this::tick, 1, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 지난 1초의 프레임을 만들어 보관하고 구독자에게 보낸다.
+     * 윈도우 회전 스레드에서 호출되므로 {@link LatencyWindow#lastInterval()} 을 읽어도 안전하다.
+     */
+    synchronized void tick() {
+        long second = Math.max(System.currentTimeMillis() / 1000, lastSecond + 1);
+        lastSecond = second;
+
+        StringBuilder newRequests = new StringBuilder();
+        StringBuilder requests = new StringBuilder();
+        for (RequestMetrics request : owner.allRequestMetrics()) {
+            long ok = request.getOkCount();
+            long ko = request.getKoCount();
+            long[] last = lastCounts.computeIfAbsent(request, key -> new long[2]);
+            long okDelta = ok - last[0];
+            long koDelta = ko - last[1];
+            last[0] = ok;
+            last[1] = ko;
+            if (okDelta + koDelta <= 0) {
+                continue;
+            }
+
+            Integer id = requestIds.get(request);
+            if (id == null) {
+                id = nextRequestId++;
+                requestIds.put(request, id);
+                StringBuilder entry = new StringBuilder();
+                entry.append('[').append(id).append(',');
+                appendString(entry, request.getSimulation()).append(',');
+                appendString(entry, request.getScenario()).append(',');
+                appendString(entry, request.getRequest()).append(']');
+                separate(newRequests).append(entry);
+                separate(dictionary).append(entry);
+            }
+
+            separate(requests).append('[').append(id).append(',').append(okDelta + koDelta).append(',').append(koDelta);
+            LatencyWindow window = request.getLatencyWindow();
+            Histogram interval = window != null && ticker == null ? window.lastInterval() : null;
+            if (interval != null && interval.getTotalCount() > 0) {
+                appendMillis(requests.append(','), interval.getValueAtPercentile(50));
+                appendMillis(requests.append(','), interval.getValueAtPercentile(95));
+                appendMillis(requests.append(','), interval.getValueAtPercentile(99));
+                appendMillis(requests.append(','), interval.getMaxValue());
+            }
+            requests.append(']');
+        }
+
+        StringBuilder newScenarios = new StringBuilder();
+        StringBuilder users = new StringBuilder();
+        Gauge activeUsersGauge = owner.getActiveUsersGauge();
+        List<GaugeSnapshot.GaugeDataPointSnapshot> activeUsers = activeUsersGauge != null
+                ? activeUsersGauge.collect().getDataPoints() : List.of();
+        for (GaugeSnapshot.GaugeDataPointSnapshot dataPoint : activeUsers) {
+            String simulation = dataPoint.getLabels().get("simulation");
+            String scenario = dataPoint.getLabels().get("scenario");
+            String key = simulation + "\t" + scenario;
+            Integer id = scenarioIds.get(key);
+            if (id == null) {
+                id = nextScenarioId++;
+                scenarioIds.put(key, id);
+                StringBuilder entry = new StringBuilder();
+                entry.append('[').append(id).append(',');
+                appendString(entry, simulation).append(',');
+                appendString(entry, scenario).append(']');
+                separate(newScenarios).append(entry);
+                separate(scenarioDictionary).append(entry);
+            }
+            double value = dataPoint.getValue();
+            Double last = lastActiveUsers.put(id, value);
+            if (last == null || last != value) {
+                separate(users).append('[').append(id).append(',').append((long) value).append(']');
+            }
+        }
+
+        if (newRequests.length() > 0 || newScenarios.length() > 0) {
+            broadcast(dictionaryEvent(newRequests, newScenarios));
+        }
+        byte[] frame = ("id: " + second + "\nevent: tick\ndata: {\"t\":" + second
+                + ",\"r\":[" + requests + "],\"u\":[" + users + "]}\n\n").getBytes(StandardCharsets.UTF_8);
+        history.addLast(new Frame(second, frame));
+        while (history.size() > config.getLiveHistorySeconds()) {
+            history.removeFirst();
+        }
+        broadcast(frame);
+    }
+
+    /**
+     * 구독자 등록 - 응답 헤더를 보낸 뒤 전용 writer 스레드에 넘기고 바로 반환한다.
+     */
+    void subscribe(HttpExchange exchange) throws IOException {
+        if (subscribers.size() >= config.getLiveMaxSubscribers()) {
+            byte[] body = "Too many live stream subscribers\n".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(503, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
+        exchange.sendResponseHeaders(200, 0);
+
+        long lastEventId = parseLastEventId(exchange.getRequestHeaders().getFirst("Last-Event-ID"));
+        Subscriber subscriber;
+        synchronized (this) {
+            // 재전송분은 구독자 큐 한도와 별도로 받아 둔다 (retry, dict, users 3개 포함)
+            subscriber = new Subscriber(exchange, config.getLiveSubscriberQueue() + history.size() + 3);
+            subscriber.queue.offer("retry: 1000\n\n".getBytes(StandardCharsets.UTF_8));
+            subscriber.queue.offer(dictionaryEvent(dictionary, scenarioDictionary));
+            for (Frame frame : history) {
+                if (frame.second() <= lastEventId) {
+                    continue;
+                }
+                subscriber.queue.offer(frame.bytes());
+            }
+            StringBuilder users = new StringBuilder();
+            lastActiveUsers.forEach((id, value) ->
+                    separate(users).append('[').append(id).append(',').append(value.longValue()).append(']'));
+            subscriber.queue.offer(("event: users\ndata: {\"u\":[" + users + "]}\n\n").getBytes(StandardCharsets.UTF_8));
+            subscribers.add(subscriber);
+        }
+        writers.execute(subscriber);
+    }
+
+    /**
+     * 새 실행 시작 - 이전 실행의 핸들, dict, 보관 tick 을 버린다. 연결된 구독자는 새 dict 를 이어서 받는다.
+     */
+    synchronized void runStarted() {
+        requestIds.clear();
+        lastCounts.clear();
+        scenarioIds.clear();
+        lastActiveUsers.clear();
+        dictionary.setLength(0);
+        scenarioDictionary.setLength(0);
+        history.clear();
+    }
+
+    /**
+     * 종료 이벤트를 보내고 모든 구독을 닫는다.
+     */
+    void closeSubscribers() {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.send(END);
+            subscriber.queue.offer(CLOSE);
+        }
+        subscribers.clear();
+    }
+
+    void stop() {
+        closeSubscribers();
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+        writers.shutdown();
+    }
+
+    private void broadcast(byte[] bytes) {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.send(bytes);
+        }
+    }
+
+    private static byte[] dictionaryEvent(CharSequence requests, CharSequence scenarios) {
+        return ("event: dict\ndata: {\"r\":[" + requests + "],\"u\":[" + scenarios + "]}\n\n")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long parseLastEventId(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static StringBuilder separate(StringBuilder builder) {
+        if (builder.length() > 0) {
+            builder.append(',');
+        }
+        return builder;
+    }
+
+    // µs -> ms, 소수점 한 자리
+    private static void appendMillis(StringBuilder builder, long micros) {
+        long tenths = (micros + 50) / 100;
+        builder.append(tenths / 10);
+        if (tenths % 10 != 0) {
+            builder.append('.').append(tenths % 10);
+        }
+    }
+
+    private static StringBuilder appendString(StringBuilder builder, String value) {
+        builder.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            } else if (c < 0x20) {
+                builder.append(String.format("\\u%04x", (int) c));
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.append('"');
+    }
+}
@@ -0,0 +1,355 @@
+package prometheus;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.prometheus.metrics.core.metrics.Counter;
+import io.prometheus.metrics.core.metrics.Gauge;
+import io.prometheus.metrics.core.metrics.GaugeWithCallback;
+import io.prometheus.metrics.core.metrics.Histogram;
+import io.prometheus.metrics.expositionformats.ExpositionFormatWriter;
+import io.prometheus.metrics.expositionformats.ExpositionFormats;
+import io.prometheus.metrics.model.registry.PrometheusRegistry;
+import io.prometheus.metrics.model.snapshots.MetricSnapshots;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 미리 인코딩해 둔 스냅샷을 서빙하는 /metrics 서버.
+ * <p>
+ * 스크래핑마다 레지스트리 전체를 직렬화하는 대신, 낮은 우선순위의 전용 스레드가 주기마다 한 번
+ * 스냅샷을 만들어 포맷별(text, OpenMetrics, protobuf) 바이트 배열과 gzip 버전으로 보관한다.
+ * 요청 처리 스레드는 Accept / Accept-Encoding 에 맞는 바이트 배열을 그대로 쓰기만 한다.
+ * OpenMetrics 와 protobuf 는 한 번이라도 요청된 이후부터 인코딩한다.
+ * 동시 스크래핑 수는 제한되며 초과 요청은 503 으로 거절된다.
+ * 종료 시에는 {@link #freezeAndAwaitScrape(long)} 으로 최종 스냅샷을 고정하고 스크래핑될 때까지만 기다린다.
+ */
+final class MetricsExpositionServer implements Closeable {
+
+    private enum Format {
+        TEXT, OPEN_METRICS, PROTOBUF
+    }
+
+    private static final class Encoded {
+        final byte[] plain;
+        final byte[] gzip;
+        final String contentType;
+
+        Encoded(byte[] plain, byte[] gzip, String contentType) {
+            this.plain = plain;
+            this.gzip = gzip;
+            this.contentType = contentType;
+        }
+    }
+
+    private static final class EncodedSnapshot {
+        final Encoded[] formats = new Encoded[Format.values().length];
+    }
+
+    private final PrometheusRegistry registry;
+    private final ExpositionFormats expositionFormats = ExpositionFormats.init();
+    private final HttpServer httpServer;
+    private final ExecutorService handlerExecutor;
+    private final ScheduledExecutorService snapshotExecutor;
+    private final Semaphore scrapePermits;
+    private final FinalScrape finalScrape = new FinalScrape();
+
+    private final Histogram snapshotDuration;
+    private final Counter scrapes;
+    private final Counter rejectedScrapes;
+    private final Gauge inflightScrapes;
+
+    private volatile boolean openMetricsRequested;
+    private volatile boolean protobufRequested;
+    private volatile boolean protobufAvailable = true;
+    private volatile EncodedSnapshot snapshot;
+    private volatile LiveMetricsStream liveStream;
+    private volatile SlowRequestWindows slowRequestWindows;
+
+    MetricsExpositionServer(int port, PrometheusRegistry registry, PrometheusConfig config,
+                            ExpositionMetrics metrics) throws IOException {
+        this.registry = registry;
+        this.scrapePermits = new Semaphore(config.getExpositionMaxConcurrentScrapes());
+        this.snapshotDuration = metrics.snapshotDuration;
+        this.scrapes = metrics.scrapes;
+        this.rejectedScrapes = metrics.rejectedScrapes;
+        this.inflightScrapes = metrics.inflightScrapes;
+
+        // 포트 바인딩이 실패하면 스레드를 만들지 않도록 먼저 생성
+        this.httpServer = HttpServer.create(new InetSocketAddress(port), 16);
+
+        // 첫 스크래핑 전에 스냅샷 준비
+        refresh();
+
+        this.snapshotExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "prometheus-exposition-snapshot");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        long interval = config.getExpositionRefreshIntervalMillis();
+        snapshotExecutor.scheduleWithFixedDelay(this::refresh, interval, interval, TimeUnit.MILLISECONDS);
+
+        // 허용 수보다 조금 많은 스레드를 두어 초과 요청은 대기 대신 503 으로 바로 응답
+        this.handlerExecutor = Executors.newFixedThreadPool(config.getExpositionMaxConcurrentScrapes() + 2, runnable -> {
+            Thread thread = new Thread(runnable, "prometheus-exposition-http");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        httpServer.createContext("/metrics", this::handleMetrics);
+        httpServer.createContext("/live", this::handleLive);
+        httpServer.createContext("/exemplars", this::handleExemplars);
+        httpServer.createContext("/-/healthy", exchange -> respond(exchange, 200, "text/plain", "Exporter is healthy.\n".getBytes()));
+        httpServer.setExecutor(handlerExecutor);
+        httpServer.start();
+        metrics.server = this;
+    }
+
+    void setLiveStream(LiveMetricsStream liveStream) {
+        this.liveStream = liveStream;
+    }
+
+    /**
+     * 실시간 스트림 구독 - 연결은 스트림의 writer 스레드가 넘겨받으므로 핸들러 스레드를 점유하지 않는다.
+     */
+    private void handleLive(HttpExchange exchange) throws IOException {
+        LiveMetricsStream stream = liveStream;
+        if (stream == null) {
+            respond(exchange, 404, "text/plain", "Live stream is disabled.\n".getBytes());
+            return;
+        }
+        stream.subscribe(exchange);
+    }
+
+    void setSlowRequestWindows(SlowRequestWindows slowRequestWindows) {
+        this.slowRequestWindows = slowRequestWindows;
+    }
+
+    /**
+     * 구간별 가장 느린 요청 목록 (JSON) - {@code ?scenario=...&request=...} 로 좁힐 수 있다.
+     */
+    private void handleExemplars(HttpExchange exchange) throws IOException {
+        SlowRequestWindows windows = slowRequestWindows;
+        if (windows == null) {
+            respond(exchange, 404, "text/plain", "Exemplar capture is disabled.\n".getBytes());
+            return;
+        }
+        String scenario = null;
+        String request = null;
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                int equals = parameter.indexOf('=');
+                if (equals < 0) {
+                    continue;
+                }
+                String value = URLDecoder.decode(parameter.substring(equals + 1), StandardCharsets.UTF_8);
+                switch (parameter.substring(0, equals)) {
+                    case "scenario" -> scenario = value;
+                    case "request" -> request = value;
+                    default -> {
+                    }
+                }
+            }
+        }
+        exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
+        respond(exchange, 200, "application/json; charset=utf-8",
+                windows.toJson(scenario, request).getBytes(StandardCharsets.UTF_8));
+    }
+
+    int getPort() {
+        return httpServer.getAddress().getPort();
+    }
+
+    private void refresh() {
+        long start = System.nanoTime();
+        try {
+            MetricSnapshots snapshots = registry.scrape();
+            EncodedSnapshot encoded = new EncodedSnapshot();
+            encoded.formats[Format.TEXT.ordinal()] = encode(expositionFormats.getPrometheusTextFormatWriter(), snapshots);
+            if (openMetricsRequested) {
+                encoded.formats[Format.OPEN_METRICS.ordinal()] =
+                        encode(expositionFormats.getOpenMetricsTextFormatWriter(), snapshots);
+            }
+            if (protobufRequested && protobufAvailable) {
+                try {
+                    encoded.formats[Format.PROTOBUF.ordinal()] =
+                            encode(expositionFormats.getPrometheusProtobufWriter(), snapshots);
+                } catch (RuntimeException | LinkageError e) {
+                    protobufAvailable = false;
+                    System.err.println("Protobuf exposition unavailable, falling back to text: " + e.getMessage());
+                }
+            }
+            snapshot = encoded;
+        } catch (Exception e) {
+            System.err.println("Error building metrics snapshot: " + e.getMessage());
+        } finally {
+            snapshotDuration.observe((System.nanoTime() - start) / 1_000_000_000.0);
+        }
+    }
+
+    private static Encoded encode(ExpositionFormatWriter writer, MetricSnapshots snapshots) throws IOException {
+        ByteArrayOutputStream plain = new ByteArrayOutputStream(64 * 1024);
+        writer.write(plain, snapshots);
+        byte[] plainBytes = plain.toByteArray();
+
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream(plainBytes.length / 4 + 64);
+        try (GZIPOutputStream out = new GZIPOutputStream(gzip)) {
+            out.write(plainBytes);
+        }
+        return new Encoded(plainBytes, gzip.toByteArray(), writer.getContentType());
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        long startedNanos = System.nanoTime();
+        if (!scrapePermits.tryAcquire()) {
+            rejectedScrapes.inc();
+            respond(exchange, 503, "text/plain", "Too many concurrent scrapes\n".getBytes());
+            return;
+        }
+        inflightScrapes.inc();
+        try {
+            EncodedSnapshot current = snapshot;
+            if (current == null) {
+                respond(exchange, 503, "text/plain", "Metrics snapshot not ready\n".getBytes());
+                return;
+            }
+            Format format = negotiate(exchange.getRequestHeaders().getFirst("Accept"));
+            Encoded encoded = current.formats[format.ordinal()];
+            if (encoded == null) {
+                // 다음 스냅샷부터 이 포맷도 인코딩
+                if (format == Format.PROTOBUF) {
+                    protobufRequested = true;
+                } else {
+                    openMetricsRequested = true;
+                }
+                encoded = current.formats[Format.TEXT.ordinal()];
+            }
+
+            String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+            if (gzip) {
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            }
+            respond(exchange, 200, encoded.contentType, gzip ? encoded.gzip : encoded.plain);
+            scrapes.inc();
+            finalScrape.scrapeCompleted(startedNanos);
+        } finally {
+            inflightScrapes.dec();
+            scrapePermits.release();
+        }
+    }
+
+    private Format negotiate(String accept) {
+        if (accept == null) {
+            return Format.TEXT;
+        }
+        if (protobufAvailable && expositionFormats.getPrometheusProtobufWriter().accepts(accept)) {
+            return Format.PROTOBUF;
+        }
+        if (expositionFormats.getOpenMetricsTextFormatWriter().accepts(accept)) {
+            return Format.OPEN_METRICS;
+        }
+        return Format.TEXT;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        try {
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * 종료 handshake - 주기 갱신을 멈추고 최종 스냅샷을 만든 뒤, 그 이후 시작된 스크래핑이 끝날 때까지 기다린다.
+     *
+     * @return 최종 스냅샷이 스크래핑되었으면 true (한 번도 스크래핑되지 않은 서버는 기다리지 않고 false)
+     */
+    boolean freezeAndAwaitScrape(long timeoutMillis) throws InterruptedException {
+        snapshotExecutor.shutdown();
+        snapshotExecutor.awaitTermination(1, TimeUnit.SECONDS);
+        refresh();
+        finalScrape.freeze();
+        return finalScrape.await(timeoutMillis);
+    }
+
+    boolean wasScraped() {
+        return finalScrape.wasScraped();
+    }
+
+    int getSnapshotBytes() {
+        EncodedSnapshot current = snapshot;
+        return current != null ? current.formats[Format.TEXT.ordinal()].plain.length : 0;
+    }
+
+    @Override
+    public void close() {
+        httpServer.stop(0);
+        snapshotExecutor.shutdownNow();
+        handlerExecutor.shutdownNow();
+    }
+
+    /**
+     * 서버 재시작 시 중복 등록되지 않도록 레지스트리에 한 번만 등록하는 exposition 메트릭.
+     */
+    static final class ExpositionMetrics {
+
+        final Histogram snapshotDuration;
+        final Counter scrapes;
+        final Counter rejectedScrapes;
+        final Gauge inflightScrapes;
+        volatile MetricsExpositionServer server;
+
+        ExpositionMetrics(PrometheusRegistry registry) {
+            this.snapshotDuration = Histogram.builder()
+                    .name("gatling_exposition_snapshot_duration_seconds")
+                    .help("Time spent scraping and encoding the registry snapshot")
+                    .classicOnly()
+                    .classicUpperBounds(0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1)
+                    .register(registry);
+
+            this.scrapes = Counter.builder()
+                    .name("gatling_exposition_scrapes_total")
+                    .help("Scrapes served from the cached snapshot")
+                    .register(registry);
+
+            this.rejectedScrapes = Counter.builder()
+                    .name("gatling_exposition_rejected_scrapes_total")
+                    .help("Scrapes rejected because too many were in flight")
+                    .register(registry);
+
+            this.inflightScrapes = Gauge.builder()
+                    .name("gatling_exposition_inflight_scrapes")
+                    .help("Scrapes currently being served")
+                    .register(registry);
+
+            GaugeWithCallback.builder()
+                    .name("gatling_exposition_snapshot_bytes")
+                    .help("Size of the uncompressed text exposition snapshot")
+                    .callback(callback -> {
+                        MetricsExpositionServer current = server;
+                        if (current != null) {
+                            callback.call(current.getSnapshotBytes());
+                        }
+                    })
+                    .register(registry);
+        }
+    }
+}
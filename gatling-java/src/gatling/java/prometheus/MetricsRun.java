@@ -0,0 +1,428 @@
+package prometheus;
+
+import io.prometheus.metrics.core.datapoints.CounterDataPoint;
+import io.prometheus.metrics.core.datapoints.DistributionDataPoint;
+import io.prometheus.metrics.core.datapoints.GaugeDataPoint;
+import io.prometheus.metrics.core.metrics.Counter;
+import io.prometheus.metrics.core.metrics.CounterWithCallback;
+import io.prometheus.metrics.core.metrics.Gauge;
+import io.prometheus.metrics.core.metrics.GaugeWithCallback;
+import io.prometheus.metrics.core.metrics.Histogram;
+import io.prometheus.metrics.model.registry.PrometheusRegistry;
+import io.prometheus.metrics.model.snapshots.Labels;
+import io.prometheus.metrics.model.snapshots.MetricSnapshots;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 시뮬레이션 실행 하나의 요청/사용자 메트릭 - 실행마다 자기 registry 를 갖고 모든 시리즈에 run_id 라벨이 붙는다.
+ * <p>
+ * {@link GatlingPrometheusMetrics} 는 실행이 시작될 때 새 MetricsRun 을 만들고, 프로세스 registry 에는
+ * 현재 실행(끝난 뒤에는 고정된 최종 스냅샷)을 대신 수집하는 collector 하나만 등록한다.
+ * 따라서 같은 JVM 에서 여러 번 실행해도 counter 가 이어지거나 이전 실행의 라벨 시리즈가 남지 않는다.
+ * <p>
+ * 요청/트랜잭션/시나리오 핸들({@link RunSeries})은 실행 동안 유지된다. idle-ttl 동안 기록이 없으면 라벨 시리즈와 윈도우만 제거하고
+ * ({@link #sweep}), 다음 기록에서 다시 만든다. 실행이 끝나면 ({@link #complete()}) 모든 시리즈를 제거하고
+ * registry 를 비우므로, 핸들을 쥔 액션 체인이 사라지면 실행 전체가 회수된다.
+ */
+final class MetricsRun {
+
+    private static final DateTimeFormatter RUN_ID_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    // 사용자 세션은 pause 를 포함하므로 요청 응답 시간보다 훨씬 길다
+    private static final double[] SESSION_BUCKETS = {
+            500, 1000, 2500, 5000, 10000, 30000, 60000, 120000, 300000, 600000, 1800000
+    };
+
+    private final GatlingPrometheusMetrics owner;
+    private final String runId;
+    private final String simulation;
+    private final PrometheusRegistry registry = new PrometheusRegistry();
+    private volatile boolean completed;
+
+    final Histogram responseTime;
+    final Counter requests;
+    final Counter errors;
+    final Counter errorsCollapsed;
+    final Gauge activeUsers;
+    final Counter usersStarted;
+    final Counter usersFinished;
+    final Histogram sessionDuration;
+    final Histogram transactionDuration;
+    final Histogram transactionResponseTime;
+    final Counter transactions;
+
+    private final ConcurrentHashMap<RequestKey, RequestMetrics> requestMetrics = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<ScenarioKey, ScenarioUsers> scenarioUsers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<RequestKey, TransactionMetrics> transactionMetrics = new ConcurrentHashMap<>();
+
+    MetricsRun(GatlingPrometheusMetrics owner, PrometheusConfig config, String runId, String simulation) {
+        this.owner = owner;
+        this.runId = runId;
+        this.simulation = simulation;
+        Labels run = Labels.of("run_id", runId);
+
+        // Response time histogram (classic buckets, native exponential buckets or both)
+        this.responseTime = histogramBuilder(config, config.getHistogramBuckets())
+                .name("gatling_response_time_milliseconds")
+                .help("Response time in milliseconds")
+                .labelNames("simulation", "scenario", "request", "status")
+                .constLabels(run)
+                .register(registry);
+
+        this.requests = Counter.builder()
+                .name("gatling_requests_total")
+                .help("Total number of requests")
+                .labelNames("simulation", "scenario", "request", "status")
+                .constLabels(run)
+                .register(registry);
+
+        this.errors = Counter.builder()
+                .name("gatling_errors_total")
+                .help("Total number of errors")
+                .labelNames("simulation", "scenario", "request", "error")
+                .constLabels(run)
+                .register(registry);
+
+        // Errors folded into error="other" once the distinct label cap is reached
+        this.errorsCollapsed = Counter.builder()
+                .name("gatling_errors_collapsed_total")
+                .help("Errors recorded as 'other' because the distinct error label limit was reached")
+                .labelNames("simulation", "scenario", "request")
+                .constLabels(run)
+                .register(registry);
+
+        this.activeUsers = Gauge.builder()
+                .name("gatling_active_users")
+                .help("Number of active users")
+                .labelNames("simulation", "scenario")
+                .constLabels(run)
+                .register(registry);
+
+        this.usersStarted = Counter.builder()
+                .name("gatling_users_started_total")
+                .help("Total number of users started")
+                .labelNames("simulation", "scenario")
+                .constLabels(run)
+                .register(registry);
+
+        this.usersFinished = Counter.builder()
+                .name("gatling_users_finished_total")
+                .help("Total number of users finished")
+                .labelNames("simulation", "scenario")
+                .constLabels(run)
+                .register(registry);
+
+        // Whole virtual-user session, trackUser to untrackUser (pauses included)
+        this.sessionDuration = histogramBuilder(config, SESSION_BUCKETS)
+                .name("gatling_user_session_duration_milliseconds")
+                .help("Virtual user session duration from trackUser to untrackUser, pauses included")
+                .labelNames("simulation", "scenario")
+                .constLabels(run)
+                .register(registry);
+
+        // Named transactions (multi-request journeys), possibly nested
+        this.transactionDuration = histogramBuilder(config, config.getHistogramBuckets())
+                .name("gatling_transaction_duration_milliseconds")
+                .help("End-to-end transaction duration, pauses included")
+                .labelNames("simulation", "scenario", "transaction", "status")
+                .constLabels(run)
+                .register(registry);
+
+        this.transactionResponseTime = histogramBuilder(config, config.getHistogramBuckets())
+                .name("gatling_transaction_response_time_milliseconds")
+                .help("Sum of the response times of the prometheusHttp/recordMetrics requests inside the transaction, pauses excluded")
+                .labelNames("simulation", "scenario", "transaction", "status")
+                .constLabels(run)
+                .register(registry);
+
+        this.transactions = Counter.builder()
+                .name("gatling_transactions_total")
+                .help("Completed transactions")
+                .labelNames("simulation", "scenario", "transaction", "status")
+                .constLabels(run)
+                .register(registry);
+
+        if (config.isNetworkEnabled()) {
+            registerNetworkMetrics(run);
+        }
+
+        Gauge.builder()
+                .name("gatling_run_start_time_seconds")
+                .help("Start time of the simulation run, in unix seconds")
+                .labelNames("simulation")
+                .constLabels(run)
+                .register(registry)
+                .labelValues(simulation)
+                .set(System.currentTimeMillis() / 1000.0);
+    }
+
+    /**
+     * 요청 핸들의 {@link NetworkCounters} 를 스크래핑 시 읽는 callback 메트릭 - 전송량이 기록된 핸들만 노출한다
+     */
+    private void registerNetworkMetrics(Labels run) {
+        CounterWithCallback.builder()
+                .name("gatling_request_body_bytes_total")
+                .help("Request body bytes sent (byte array and string bodies only)")
+                .labelNames("simulation", "scenario", "request")
+                .constLabels(run)
+                .callback(callback -> {
+                    for (RequestMetrics handle : networkHandles()) {
+                        callback.call(handle.getNetwork().getRequestBytes(),
+                                handle.getSimulation(), handle.getScenario(), handle.getRequest());
+                    }
+                })
+                .register(registry);
+
+        CounterWithCallback.builder()
+                .name("gatling_response_body_bytes_total")
+                .help("Response body bytes received")
+                .labelNames("simulation", "scenario", "request")
+                .constLabels(run)
+                .callback(callback -> {
+                    for (RequestMetrics handle : networkHandles()) {
+                        callback.call(handle.getNetwork().getResponseBytes(),
+                                handle.getSimulation(), handle.getScenario(), handle.getRequest());
+                    }
+                })
+                .register(registry);
+
+        // HTTP/1.x Connection: close - the next request has to open a new connection
+        CounterWithCallback.builder()
+                .name("gatling_connection_closes_total")
+                .help("HTTP/1.x responses with a Connection: close header")
+                .labelNames("simulation", "scenario", "request")
+                .constLabels(run)
+                .callback(callback -> {
+                    for (RequestMetrics handle : networkHandles()) {
+                        callback.call(handle.getNetwork().getConnectionCloses(),
+                                handle.getSimulation(), handle.getScenario(), handle.getRequest());
+                    }
+                })
+                .register(registry);
+
+        GaugeWithCallback.builder()
+                .name("gatling_network_throughput_megabytes_per_second")
+                .help("Body throughput in MB/s since the previous scrape (at most once per second)")
+                .labelNames("simulation", "scenario", "request", "direction")
+                .constLabels(run)
+                .callback(callback -> {
+                    long now = System.nanoTime();
+                    for (RequestMetrics handle : networkHandles()) {
+                        NetworkCounters network = handle.getNetwork();
+                        network.sampleThroughput(now);
+                        callback.call(network.getSentMegabytesPerSecond(),
+                                handle.getSimulation(), handle.getScenario(), handle.getRequest(), "sent");
+                        callback.call(network.getReceivedMegabytesPerSecond(),
+                                handle.getSimulation(), handle.getScenario(), handle.getRequest(), "received");
+                    }
+                })
+                .register(registry);
+    }
+
+    private List<RequestMetrics> networkHandles() {
+        List<RequestMetrics> handles = new ArrayList<>(requestMetrics.size());
+        for (RequestMetrics handle : requestMetrics.values()) {
+            if (!handle.evicted && handle.getNetwork().getResponses() > 0) {
+                handles.add(handle);
+            }
+        }
+        return handles;
+    }
+
+    /**
+     * 히스토그램 모드(classic, native, both)에 맞춘 빌더 - classic 버킷은 용도별로 다르다
+     */
+    static Histogram.Builder histogramBuilder(PrometheusConfig config, double[] classicUpperBounds) {
+        Histogram.Builder builder = Histogram.builder();
+        switch (config.getHistogramMode()) {
+            case CLASSIC -> builder.classicOnly()
+                    .classicUpperBounds(classicUpperBounds);
+            case NATIVE -> builder.nativeOnly()
+                    .nativeInitialSchema(config.getNativeInitialSchema())
+                    .nativeMaxNumberOfBuckets(config.getNativeMaxBuckets());
+            case BOTH -> builder
+                    .classicUpperBounds(classicUpperBounds)
+                    .nativeInitialSchema(config.getNativeInitialSchema())
+                    .nativeMaxNumberOfBuckets(config.getNativeMaxBuckets());
+        }
+        return builder;
+    }
+
+    /**
+     * 설정된 run id, 없으면 {@code <simulation>-<yyyyMMdd-HHmmss>}
+     */
+    static String runId(PrometheusConfig config, String simulation) {
+        return !config.getRunId().isEmpty()
+                ? config.getRunId()
+                : simulation + "-" + LocalDateTime.now().format(RUN_ID_TIME);
+    }
+
+    RequestMetrics requestMetrics(String simulation, String scenario, String request) {
+        return requestMetrics.computeIfAbsent(new RequestKey(simulation, scenario, request), key ->
+                new RequestMetrics(owner, this, simulation, scenario, request));
+    }
+
+    Collection<RequestMetrics> allRequestMetrics() {
+        return requestMetrics.values();
+    }
+
+    TransactionMetrics transactionMetrics(String simulation, String scenario, String transaction) {
+        return transactionMetrics.computeIfAbsent(new RequestKey(simulation, scenario, transaction), key ->
+                new TransactionMetrics(this, simulation, scenario, transaction));
+    }
+
+    ScenarioUsers users(String simulation, String scenario) {
+        return scenarioUsers.computeIfAbsent(new ScenarioKey(simulation, scenario), key ->
+                new ScenarioUsers(simulation, scenario));
+    }
+
+    MetricSnapshots scrape() {
+        return registry.scrape();
+    }
+
+    /**
+     * idle-ttl 동안 기록이 없는 라벨 시리즈 제거
+     *
+     * @return 제거한 핸들 수
+     */
+    int sweep(long nowMillis, long idleTtlMillis) {
+        int evicted = 0;
+        for (RequestMetrics handle : requestMetrics.values()) {
+            if (handle.evictIfIdle(nowMillis, idleTtlMillis)) {
+                evicted++;
+            }
+        }
+        for (TransactionMetrics handle : transactionMetrics.values()) {
+            if (handle.evictIfIdle(nowMillis, idleTtlMillis)) {
+                evicted++;
+            }
+        }
+        for (ScenarioUsers users : scenarioUsers.values()) {
+            if (users.evictIfIdle(nowMillis, idleTtlMillis)) {
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * 실행 종료 - 최종 스냅샷을 만든 뒤 모든 시리즈와 윈도우를 제거한다.
+     * 이후 남은 핸들에 기록해도 시리즈가 다시 만들어지지 않는다.
+     */
+    MetricSnapshots complete() {
+        MetricSnapshots finalSnapshot = registry.scrape();
+        completed = true;
+        requestMetrics.values().forEach(RunSeries::evict);
+        transactionMetrics.values().forEach(RunSeries::evict);
+        scenarioUsers.values().forEach(RunSeries::evict);
+        requestMetrics.clear();
+        transactionMetrics.clear();
+        scenarioUsers.clear();
+        registry.clear();
+        return finalSnapshot;
+    }
+
+    boolean isCompleted() {
+        return completed;
+    }
+
+    String getRunId() {
+        return runId;
+    }
+
+    String getSimulation() {
+        return simulation;
+    }
+
+    /**
+     * (simulation, scenario) 의 사용자 수와 세션 시간 시리즈 - 활성 사용자가 남아 있는 동안은 제거하지 않는다.
+     * RequestMetrics 처럼 trackUser 가 빌드 시점에 한 번 조회해 두고 사용자마다 키를 만들지 않는다.
+     */
+    final class ScenarioUsers extends RunSeries {
+
+        private final String simulation;
+        private final String scenario;
+
+        // 제거 후 다시 기록되면 reattach() 가 새 데이터 포인트로 바꾼다
+        private GaugeDataPoint active;
+        private CounterDataPoint started;
+        private CounterDataPoint finished;
+        private DistributionDataPoint session;
+
+        ScenarioUsers(String simulation, String scenario) {
+            super(MetricsRun.this);
+            this.simulation = simulation;
+            this.scenario = scenario;
+            attachSeries();
+        }
+
+        @Override
+        void attachSeries() {
+            active = activeUsers.labelValues(simulation, scenario);
+            started = usersStarted.labelValues(simulation, scenario);
+            finished = usersFinished.labelValues(simulation, scenario);
+            session = sessionDuration.labelValues(simulation, scenario);
+        }
+
+        void userStarted() {
+            int generation;
+            do {
+                generation = beginRecord();
+                active.inc();
+                started.inc();
+            } while (lostDuringRecord(generation));
+        }
+
+        /**
+         * @param sessionNanos trackUser 부터의 세션 시간, 모르면 음수
+         */
+        void userFinished(long sessionNanos) {
+            int generation;
+            do {
+                generation = beginRecord();
+                active.dec();
+                finished.inc();
+                if (sessionNanos >= 0) {
+                    session.observe(sessionNanos / 1_000_000.0);
+                }
+            } while (lostDuringRecord(generation));
+        }
+
+        String getSimulation() {
+            return simulation;
+        }
+
+        String getScenario() {
+            return scenario;
+        }
+
+        @Override
+        long sampleCount() {
+            return (long) (started.get() + finished.get());
+        }
+
+        @Override
+        boolean isInUse() {
+            return active.get() != 0;
+        }
+
+        @Override
+        void removeSeries() {
+            activeUsers.remove(simulation, scenario);
+            usersStarted.remove(simulation, scenario);
+            usersFinished.remove(simulation, scenario);
+            sessionDuration.remove(simulation, scenario);
+        }
+    }
+
+    private record RequestKey(String simulation, String scenario, String request) {
+    }
+
+    private record ScenarioKey(String simulation, String scenario) {
+    }
+}
@@ -0,0 +1,101 @@
+package prometheus;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * (scenario, request) 단위의 전송량과 연결 종료 카운터 - {@link RequestMetrics} 가 하나씩 갖는다.
+ * <p>
+ * 기록 경로는 여러 응답 스레드가 동시에 더하므로 LongAdder 로 분산해 두고, 값은 스크래핑 시
+ * {@link MetricsRun} 의 callback 메트릭이 읽는다. MB/s 는 직전 계산 이후의 증가분으로 구하되
+ * 1 초보다 짧은 간격으로 스크래핑되면 직전 값을 그대로 쓴다.
+ * <p>
+ * 연결 종료는 HTTP/1.x 응답의 {@code Connection: close} 헤더 수만 센다. Gatling Response 에는 연결 풀/TLS
+ * handshake 정보가 없으므로 재사용 비율은 노출하지 않는다.
+ */
+final class NetworkCounters {
+
+    private static final long MIN_RATE_INTERVAL_NANOS = 1_000_000_000L;
+    private static final double BYTES_PER_MEGABYTE = 1_000_000.0;
+
+    private final LongAdder requestBytes = new LongAdder();
+    private final LongAdder responseBytes = new LongAdder();
+    private final LongAdder responses = new LongAdder();
+    private final LongAdder connectionCloses = new LongAdder();
+
+    // 아래 필드는 synchronized (this) 안에서만 접근
+    private long lastSampleNanos = System.nanoTime();
+    private long lastRequestBytes;
+    private long lastResponseBytes;
+    private double sentMegabytesPerSecond;
+    private double receivedMegabytesPerSecond;
+
+    void record(long requestBodyBytes, long responseBodyBytes, boolean connectionClosed) {
+        if (requestBodyBytes > 0) {
+            requestBytes.add(requestBodyBytes);
+        }
+        if (responseBodyBytes > 0) {
+            responseBytes.add(responseBodyBytes);
+        }
+        responses.increment();
+        if (connectionClosed) {
+            connectionCloses.increment();
+        }
+    }
+
+    /**
+     * 직전 계산 이후의 MB/s 갱신 - 스크래핑 스레드에서 호출
+     */
+    synchronized void sampleThroughput(long nowNanos) {
+        long elapsed = nowNanos - lastSampleNanos;
+        if (elapsed < MIN_RATE_INTERVAL_NANOS) {
+            return;
+        }
+        long sent = requestBytes.sum();
+        long received = responseBytes.sum();
+        double seconds = elapsed / 1_000_000_000.0;
+        sentMegabytesPerSecond = (sent - lastRequestBytes) / BYTES_PER_MEGABYTE / seconds;
+        receivedMegabytesPerSecond = (received - lastResponseBytes) / BYTES_PER_MEGABYTE / seconds;
+        lastRequestBytes = sent;
+        lastResponseBytes = received;
+        lastSampleNanos = nowNanos;
+    }
+
+    /**
+     * 유휴 제거 시 - 다시 기록되면 counter 시리즈와 함께 0 부터 시작한다
+     */
+    synchronized void reset() {
+        requestBytes.reset();
+        responseBytes.reset();
+        responses.reset();
+        connectionCloses.reset();
+        lastSampleNanos = System.nanoTime();
+        lastRequestBytes = 0;
+        lastResponseBytes = 0;
+        sentMegabytesPerSecond = 0;
+        receivedMegabytesPerSecond = 0;
+    }
+
+    long getRequestBytes() {
+        return requestBytes.sum();
+    }
+
+    long getResponseBytes() {
+        return responseBytes.sum();
+    }
+
+    long getResponses() {
+        return responses.sum();
+    }
+
+    long getConnectionCloses() {
+        return connectionCloses.sum();
+    }
+
+    synchronized double getSentMegabytesPerSecond() {
+        return sentMegabytesPerSecond;
+    }
+
+    synchronized double getReceivedMegabytesPerSecond() {
+        return receivedMegabytesPerSecond;
+    }
+}
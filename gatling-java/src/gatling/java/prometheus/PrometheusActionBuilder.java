@@ -12,21 +12,32 @@ public class PrometheusActionBuilder {
     private static final GatlingPrometheusMetrics metrics = GatlingPrometheusMetrics.getInstance();
 
     public static ChainBuilder recordMetrics(String simulation, String scenario, String requestName) {
+        RequestMetrics requestMetrics = metrics.requestMetrics(simulation, scenario, requestName);
+        metrics.markInstrumentedRequest(requestName);
         return exec(session -> {
-            long startTime = session.getLong("prometheus_start_time");
-            long endTime = System.currentTimeMillis();
-            long responseTime = endTime - startTime;
-
+            long responseTimeNanos = System.nanoTime() - session.getLong("prometheus_start_nanos");
             boolean success = session.getBoolean("prometheus_request_success");
+            UserJourney journey = session.get(UserJourney.SESSION_KEY);
+            if (journey != null) {
+                journey.requestCompleted(responseTimeNanos, success);
+                // 사용자 시작 지연은 첫 요청에만 더한다
+                responseTimeNanos += journey.takeStartLag();
+            }
 
-            metrics.recordRequest(simulation, scenario, requestName, success, responseTime);
+            if (requestMetrics.isSlowCandidate(responseTimeNanos / 1000)) {
+                // 응답 정보가 없으므로 사용자 id 만 남긴다
+                requestMetrics.recordSlow(success, responseTimeNanos, new SlowRequestWindow.Sample(
+                        System.currentTimeMillis(), responseTimeNanos / 1000, success, 0, session.userId(), null, -1));
+            } else {
+                requestMetrics.recordNanos(success, responseTimeNanos);
+            }
 
             if (!success) {
                 String errorMsg = session.getString("prometheus_error_message");
                 if (errorMsg == null) {
                     errorMsg = "request_failed";
                 }
-                metrics.recordError(simulation, scenario, requestName, errorMsg);
+                requestMetrics.recordError(errorMsg);
             }
 
             return session;
@@ -34,7 +45,7 @@ public class PrometheusActionBuilder {
     }
 
     public static ChainBuilder startTimer() {
-        return exec(session -> session.set("prometheus_start_time", System.currentTimeMillis()));
+        return exec(session -> session.set("prometheus_start_nanos", System.nanoTime()));
     }
 
     public static ChainBuilder markSuccess() {
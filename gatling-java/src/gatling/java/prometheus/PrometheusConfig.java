@@ -0,0 +1,517 @@
+package prometheus;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * gatling.conf 의 {@code prometheus {}} 블록 설정.
+ * <p>
+ * 시스템 프로퍼티가 우선한다. (예: {@code -Dprometheus.histogram.mode=native})
+ */
+public final class PrometheusConfig {
+
+    public enum HistogramMode {
+        CLASSIC, NATIVE, BOTH
+    }
+
+    private static final double[] DEFAULT_BUCKETS = {
+            100, 200, 300, 400, 500, 600, 700, 800, 900, 1000, 1100, 1200, 1500, 2000, 3000, 5000, 10000
+    };
+
+    private final int port;
+    private final HistogramMode histogramMode;
+    private final double[] histogramBuckets;
+    private final int nativeInitialSchema;
+    private final int nativeMaxBuckets;
+    private final boolean windowEnabled;
+    private final int windowSeconds;
+    private final boolean influxDbEnabled;
+    private final String influxDbUrl;
+    private final String influxDbDatabase;
+    private final String influxDbTransport;
+    private final long influxDbFlushIntervalMillis;
+    private final int influxDbRingCapacity;
+    private final int influxDbMaxBatchLines;
+    private final int influxDbMaxPendingBatches;
+    private final boolean remoteWriteEnabled;
+    private final String remoteWriteUrl;
+    private final String remoteWriteJob;
+    private final long remoteWriteIntervalMillis;
+    private final int remoteWriteQueueCapacity;
+    private final long remoteWriteShutdownTimeoutMillis;
+    private final int errorMaxLabels;
+    private final int errorCacheSize;
+    private final boolean errorStatusClassOnly;
+    private final List<ErrorClassifier.Template> errorTemplates;
+    private final long expositionRefreshIntervalMillis;
+    private final int expositionMaxConcurrentScrapes;
+    private final boolean probesEnabled;
+    private final long probeIntervalMillis;
+    private final boolean coordinatedOmissionCorrection;
+    private final boolean tailEnabled;
+    private final String tailResultsDirectory;
+    private final long tailPollIntervalMillis;
+    private final boolean resultsStoreEnabled;
+    private final String resultsStoreDirectory;
+    private final int resultsStoreSegmentRows;
+    private final int resultsStoreRingCapacity;
+    private final boolean regressionEnabled;
+    private final String regressionDirectory;
+    private final String regressionBaseline;
+    private final String regressionSaveAs;
+    private final double regressionTolerance;
+    private final double regressionSignificance;
+    private final double[] regressionPercentiles;
+    private final long regressionMinSamples;
+    private final int shardIndex;
+    private final int shardCount;
+    private final String nodeName;
+    private final long shardScrapeIntervalMillis;
+
+    private final boolean liveEnabled;
+    private final int liveHistorySeconds;
+    private final int liveMaxSubscribers;
+    private final int liveSubscriberQueue;
+
+    private final boolean exemplarsEnabled;
+    private final int exemplarsTopK;
+    private final int exemplarsWindowSeconds;
+    private final int exemplarsHistory;
+
+    private final String runId;
+    private final long runIdleTtlMillis;
+    private final long finalScrapeTimeoutMillis;
+    private final boolean networkEnabled;
+
+    // prometheus 블록 - 테스트에서는 ConfigFactory.parseString 으로 직접 만든다
+    PrometheusConfig(Config config) {
+        this.port = config.hasPath("port") ? config.getInt("port") : 9102;
+
+        this.histogramMode = config.hasPath("histogram.mode")
+                ? HistogramMode.valueOf(config.getString("histogram.mode").trim().toUpperCase())
+                : HistogramMode.CLASSIC;
+
+        if (config.hasPath("histogram.buckets")) {
+            List<Double> buckets = config.getDoubleList("histogram.buckets");
+            this.histogramBuckets = buckets.stream().mapToDouble(Double::doubleValue).toArray();
+        } else {
+            this.histogramBuckets = DEFAULT_BUCKETS.clone();
+        }
+
+        // schema 5 => 버킷 간 배율 약 2.2%, 버킷 수가 max-buckets 를 넘으면 클라이언트가 해상도를 자동으로 낮춘다
+        this.nativeInitialSchema = config.hasPath("histogram.native.initial-schema")
+                ? config.getInt("histogram.native.initial-schema") : 5;
+        this.nativeMaxBuckets = config.hasPath("histogram.native.max-buckets")
+                ? config.getInt("histogram.native.max-buckets") : 160;
+
+        this.windowEnabled = !config.hasPath("window.enabled") || config.getBoolean("window.enabled");
+        this.windowSeconds = config.hasPath("window.seconds")
+                ? Math.max(1, config.getInt("window.seconds")) : 10;
+
+        this.influxDbEnabled = config.hasPath("influxdb.enabled") && config.getBoolean("influxdb.enabled");
+        this.influxDbUrl = config.hasPath("influxdb.url")
+                ? config.getString("influxdb.url") : "http://localhost:8086";
+        this.influxDbDatabase = config.hasPath("influxdb.database")
+                ? config.getString("influxdb.database") : "gatling-realtime";
+        this.influxDbTransport = config.hasPath("influxdb.transport")
+                ? config.getString("influxdb.transport") : "http";
+        this.influxDbFlushIntervalMillis = config.hasPath("influxdb.flush-interval")
+                ? config.getDuration("influxdb.flush-interval").toMillis() : 1000;
+        this.influxDbRingCapacity = config.hasPath("influxdb.ring-capacity")
+                ? config.getInt("influxdb.ring-capacity") : 65536;
+        this.influxDbMaxBatchLines = config.hasPath("influxdb.max-batch-lines")
+                ? config.getInt("influxdb.max-batch-lines") : 5000;
+        this.influxDbMaxPendingBatches = config.hasPath("influxdb.max-pending-batches")
+                ? config.getInt("influxdb.max-pending-batches") : 60;
+
+        this.remoteWriteEnabled = config.hasPath("remote-write.enabled") && config.getBoolean("remote-write.enabled");
+        this.remoteWriteUrl = config.hasPath("remote-write.url")
+                ? config.getString("remote-write.url") : "http://localhost:9090/api/v1/write";
+        this.remoteWriteJob = config.hasPath("remote-write.job")
+                ? config.getString("remote-write.job") : "gatling";
+        this.remoteWriteIntervalMillis = config.hasPath("remote-write.interval")
+                ? Math.max(50, config.getDuration("remote-write.interval").toMillis()) : 250;
+        this.remoteWriteQueueCapacity = config.hasPath("remote-write.queue-capacity")
+                ? config.getInt("remote-write.queue-capacity") : 240;
+        this.remoteWriteShutdownTimeoutMillis = config.hasPath("remote-write.shutdown-timeout")
+                ? config.getDuration("remote-write.shutdown-timeout").toMillis() : 5000;
+
+        this.errorMaxLabels = config.hasPath("errors.max-labels")
+                ? config.getInt("errors.max-labels") : 100;
+        this.errorCacheSize = config.hasPath("errors.cache-size")
+                ? config.getInt("errors.cache-size") : 10_000;
+        this.errorStatusClassOnly = config.hasPath("errors.status-granularity")
+                && "class".equalsIgnoreCase(config.getString("errors.status-granularity"));
+        if (config.hasPath("errors.templates")) {
+            List<ErrorClassifier.Template> templates = new ArrayList<>();
+            for (Config template : config.getConfigList("errors.templates")) {
+                templates.add(new ErrorClassifier.Template(
+                        Pattern.compile(template.getString("pattern")), template.getString("replacement")));
+            }
+            this.errorTemplates = templates;
+        } else {
+            this.errorTemplates = ErrorClassifier.defaultTemplates();
+        }
+
+        this.expositionRefreshIntervalMillis = config.hasPath("exposition.refresh-interval")
+                ? Math.max(100, config.getDuration("exposition.refresh-interval").toMillis()) : 1000;
+        this.expositionMaxConcurrentScrapes = config.hasPath("exposition.max-concurrent-scrapes")
+                ? Math.max(1, config.getInt("exposition.max-concurrent-scrapes")) : 2;
+
+        this.probesEnabled = !config.hasPath("probes.enabled") || config.getBoolean("probes.enabled");
+        this.probeIntervalMillis = config.hasPath("probes.interval")
+                ? Math.max(1, config.getDuration("probes.interval").toMillis()) : 100;
+        this.coordinatedOmissionCorrection = config.hasPath("probes.coordinated-omission")
+                && config.getBoolean("probes.coordinated-omission");
+
+        this.tailEnabled = !config.hasPath("tail.enabled") || config.getBoolean("tail.enabled");
+        this.tailResultsDirectory = config.hasPath("tail.results-directory")
+                ? config.getString("tail.results-directory") : "build/reports/gatling";
+        this.tailPollIntervalMillis = config.hasPath("tail.poll-interval")
+                ? Math.max(10, config.getDuration("tail.poll-interval").toMillis()) : 200;
+
+        this.resultsStoreEnabled = config.hasPath("results-store.enabled") && config.getBoolean("results-store.enabled");
+        this.resultsStoreDirectory = config.hasPath("results-store.directory")
+                ? config.getString("results-store.directory") : "build/results-store";
+        // 매핑 한 번의 크기 제한(2GB) 안에 들도록 세그먼트당 최대 1억 행
+        this.resultsStoreSegmentRows = config.hasPath("results-store.segment-rows")
+                ? Math.max(1024, Math.min(100_000_000, config.getInt("results-store.segment-rows"))) : 4_194_304;
+        this.resultsStoreRingCapacity = config.hasPath("results-store.ring-capacity")
+                ? config.getInt("results-store.ring-capacity") : 65536;
+
+        this.regressionEnabled = config.hasPath("regression.enabled") && config.getBoolean("regression.enabled");
+        this.regressionDirectory = config.hasPath("regression.directory")
+                ? config.getString("regression.directory") : "perf-baselines";
+        this.regressionBaseline = config.hasPath("regression.baseline")
+                ? config.getString("regression.baseline") : "baseline";
+        this.regressionSaveAs = config.hasPath("regression.save-as")
+                ? config.getString("regression.save-as").trim() : "";
+        this.regressionTolerance = config.hasPath("regression.tolerance")
+                ? config.getDouble("regression.tolerance") : 0.15;
+        this.regressionSignificance = config.hasPath("regression.significance")
+                ? config.getDouble("regression.significance") : 0.01;
+        this.regressionPercentiles = config.hasPath("regression.percentiles")
+                ? config.getDoubleList("regression.percentiles").stream().mapToDouble(Double::doubleValue).toArray()
+                : new double[]{50, 95, 99};
+        this.regressionMinSamples = config.hasPath("regression.min-samples")
+                ? config.getLong("regression.min-samples") : 100;
+
+        this.shardCount = config.hasPath("shard.count") ? Math.max(1, config.getInt("shard.count")) : 1;
+        this.shardIndex = config.hasPath("shard.index")
+                ? Math.max(0, Math.min(shardCount - 1, config.getInt("shard.index"))) : 0;
+        this.nodeName = config.hasPath("shard.node") && !config.getString("shard.node").isBlank()
+                ? config.getString("shard.node").trim() : "node-" + shardIndex;
+        this.shardScrapeIntervalMillis = config.hasPath("shard.scrape-interval")
+                ? Math.max(100, config.getDuration("shard.scrape-interval").toMillis()) : 1000;
+
+        this.liveEnabled = !config.hasPath("live.enabled") || config.getBoolean("live.enabled");
+        this.liveHistorySeconds = config.hasPath("live.history")
+                ? (int) Math.max(0, config.getDuration("live.history").toSeconds()) : 300;
+        this.liveMaxSubscribers = config.hasPath("live.max-subscribers")
+                ? Math.max(1, config.getInt("live.max-subscribers")) : 64;
+        this.liveSubscriberQueue = config.hasPath("live.subscriber-queue")
+                ? Math.max(4, config.getInt("live.subscriber-queue")) : 60;
+
+        this.exemplarsEnabled = !config.hasPath("exemplars.enabled") || config.getBoolean("exemplars.enabled");
+        this.exemplarsTopK = config.hasPath("exemplars.top-k")
+                ? Math.max(1, Math.min(1000, config.getInt("exemplars.top-k"))) : 10;
+        this.exemplarsWindowSeconds = config.hasPath("exemplars.window")
+                ? (int) Math.max(1, config.getDuration("exemplars.window").toSeconds()) : 10;
+        this.exemplarsHistory = config.hasPath("exemplars.history")
+                ? Math.max(0, config.getInt("exemplars.history")) : 6;
+
+        this.runId = config.hasPath("run.id") ? config.getString("run.id").trim() : "";
+        this.runIdleTtlMillis = config.hasPath("run.idle-ttl")
+                ? Math.max(0, config.getDuration("run.idle-ttl").toMillis()) : 300_000;
+        this.finalScrapeTimeoutMillis = config.hasPath("shutdown.final-scrape-timeout")
+                ? Math.max(0, config.getDuration("shutdown.final-scrape-timeout").toMillis()) : 15_000;
+        this.networkEnabled = !config.hasPath("network.enabled") || config.getBoolean("network.enabled");
+    }
+
+    public static PrometheusConfig load() {
+        Config config = ConfigFactory.systemProperties()
+                .withFallback(ConfigFactory.parseResources("gatling.conf"));
+        return new PrometheusConfig(config.hasPath("prometheus")
+                ? config.getConfig("prometheus")
+                : ConfigFactory.empty());
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public HistogramMode getHistogramMode() {
+        return histogramMode;
+    }
+
+    public double[] getHistogramBuckets() {
+        return histogramBuckets.clone();
+    }
+
+    public int getNativeInitialSchema() {
+        return nativeInitialSchema;
+    }
+
+    public int getNativeMaxBuckets() {
+        return nativeMaxBuckets;
+    }
+
+    public boolean isWindowEnabled() {
+        return windowEnabled;
+    }
+
+    public int getWindowSeconds() {
+        return windowSeconds;
+    }
+
+    public boolean isInfluxDbEnabled() {
+        return influxDbEnabled;
+    }
+
+    public String getInfluxDbUrl() {
+        return influxDbUrl;
+    }
+
+    public String getInfluxDbDatabase() {
+        return influxDbDatabase;
+    }
+
+    public String getInfluxDbTransport() {
+        return influxDbTransport;
+    }
+
+    public long getInfluxDbFlushIntervalMillis() {
+        return influxDbFlushIntervalMillis;
+    }
+
+    public int getInfluxDbRingCapacity() {
+        return influxDbRingCapacity;
+    }
+
+    public int getInfluxDbMaxBatchLines() {
+        return influxDbMaxBatchLines;
+    }
+
+    public int getInfluxDbMaxPendingBatches() {
+        return influxDbMaxPendingBatches;
+    }
+
+    public boolean isRemoteWriteEnabled() {
+        return remoteWriteEnabled;
+    }
+
+    public String getRemoteWriteUrl() {
+        return remoteWriteUrl;
+    }
+
+    public String getRemoteWriteJob() {
+        return remoteWriteJob;
+    }
+
+    public long getRemoteWriteIntervalMillis() {
+        return remoteWriteIntervalMillis;
+    }
+
+    public int getRemoteWriteQueueCapacity() {
+        return remoteWriteQueueCapacity;
+    }
+
+    public long getRemoteWriteShutdownTimeoutMillis() {
+        return remoteWriteShutdownTimeoutMillis;
+    }
+
+    public int getErrorMaxLabels() {
+        return errorMaxLabels;
+    }
+
+    public int getErrorCacheSize() {
+        return errorCacheSize;
+    }
+
+    public boolean isErrorStatusClassOnly() {
+        return errorStatusClassOnly;
+    }
+
+    public List<ErrorClassifier.Template> getErrorTemplates() {
+        return errorTemplates;
+    }
+
+    public long getExpositionRefreshIntervalMillis() {
+        return expositionRefreshIntervalMillis;
+    }
+
+    public int getExpositionMaxConcurrentScrapes() {
+        return expositionMaxConcurrentScrapes;
+    }
+
+    public boolean isProbesEnabled() {
+        return probesEnabled;
+    }
+
+    public long getProbeIntervalMillis() {
+        return probeIntervalMillis;
+    }
+
+    public boolean isCoordinatedOmissionCorrection() {
+        return coordinatedOmissionCorrection;
+    }
+
+    public boolean isTailEnabled() {
+        return tailEnabled;
+    }
+
+    public String getTailResultsDirectory() {
+        return tailResultsDirectory;
+    }
+
+    public long getTailPollIntervalMillis() {
+        return tailPollIntervalMillis;
+    }
+
+    public boolean isResultsStoreEnabled() {
+        return resultsStoreEnabled;
+    }
+
+    public String getResultsStoreDirectory() {
+        return resultsStoreDirectory;
+    }
+
+    public int getResultsStoreSegmentRows() {
+        return resultsStoreSegmentRows;
+    }
+
+    public int getResultsStoreRingCapacity() {
+        return resultsStoreRingCapacity;
+    }
+
+    public boolean isRegressionEnabled() {
+        return regressionEnabled;
+    }
+
+    public String getRegressionDirectory() {
+        return regressionDirectory;
+    }
+
+    public String getRegressionBaseline() {
+        return regressionBaseline;
+    }
+
+    public String getRegressionSaveAs() {
+        return regressionSaveAs;
+    }
+
+    public double getRegressionTolerance() {
+        return regressionTolerance;
+    }
+
+    public double getRegressionSignificance() {
+        return regressionSignificance;
+    }
+
+    public double[] getRegressionPercentiles() {
+        return regressionPercentiles.clone();
+    }
+
+    public long getRegressionMinSamples() {
+        return regressionMinSamples;
+    }
+
+    public int getShardIndex() {
+        return shardIndex;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * {@link ShardCoordinator} 가 띄운 인젝터 JVM 중 하나로 실행 중인지 여부
+     */
+    public boolean isSharded() {
+        return shardCount > 1;
+    }
+
+    public String getNodeName() {
+        return nodeName;
+    }
+
+    public long getShardScrapeIntervalMillis() {
+        return shardScrapeIntervalMillis;
+    }
+
+    public boolean isLiveEnabled() {
+        return liveEnabled;
+    }
+
+    /**
+     * 재접속/새 구독자에게 다시 보내기 위해 보관하는 최근 tick 수 (초)
+     */
+    public int getLiveHistorySeconds() {
+        return liveHistorySeconds;
+    }
+
+    public int getLiveMaxSubscribers() {
+        return liveMaxSubscribers;
+    }
+
+    /**
+     * 구독자별 대기 프레임 수 - 넘치면 느린 구독자로 보고 연결을 끊는다
+     */
+    public int getLiveSubscriberQueue() {
+        return liveSubscriberQueue;
+    }
+
+    public boolean isExemplarsEnabled() {
+        return exemplarsEnabled;
+    }
+
+    /**
+     * 구간마다 상세 정보를 남길 가장 느린 요청 수 (scenario, request 단위)
+     */
+    public int getExemplarsTopK() {
+        return exemplarsTopK;
+    }
+
+    public int getExemplarsWindowSeconds() {
+        return exemplarsWindowSeconds;
+    }
+
+    /**
+     * /exemplars 에서 볼 수 있는 지난 구간 수
+     */
+    public int getExemplarsHistory() {
+        return exemplarsHistory;
+    }
+
+    /**
+     * run_id 라벨 값 - 비어 있으면 시뮬레이션 이름과 시작 시각으로 만든다
+     */
+    public String getRunId() {
+        return runId;
+    }
+
+    /**
+     * 이 시간 동안 기록이 없는 라벨 시리즈는 제거한다 (0 이면 제거하지 않음)
+     */
+    public long getRunIdleTtlMillis() {
+        return runIdleTtlMillis;
+    }
+
+    /**
+     * 종료 시 최종 스냅샷이 스크래핑되기를 기다리는 최대 시간
+     */
+    public long getFinalScrapeTimeoutMillis() {
+        return finalScrapeTimeoutMillis;
+    }
+
+    /**
+     * 요청/응답 body 크기와 연결 재사용 추정 기록 여부
+     */
+    public boolean isNetworkEnabled() {
+        return networkEnabled;
+    }
+}
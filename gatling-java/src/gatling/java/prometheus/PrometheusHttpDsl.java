@@ -1,8 +1,12 @@
 package prometheus;
 
 import io.gatling.javaapi.core.ChainBuilder;
+import io.gatling.javaapi.core.Session;
 import io.gatling.javaapi.http.HttpRequestActionBuilder;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import static io.gatling.javaapi.core.CoreDsl.*;
 import static io.gatling.javaapi.http.HttpDsl.*;
 
@@ -12,59 +16,55 @@ public class PrometheusHttpDsl {
 
     public static ChainBuilder prometheusHttp(String simulation, String scenario,
                                                HttpRequestActionBuilder request, String requestName) {
-        return exec(session -> session.set("prometheus_req_start", System.currentTimeMillis()))
-                .exec(request
-                        .check(status().saveAs("prometheus_status"))
-                        .check(responseTimeInMillis().saveAs("prometheus_response_time")))
-                .exec(session -> {
-                    int status = session.getInt("prometheus_status");
-                    long responseTime = session.getLong("prometheus_response_time");
-                    boolean success = status >= 200 && status < 400;
-
-                    metrics.recordRequest(simulation, scenario, requestName, success, responseTime);
-
-                    if (!success) {
-                        metrics.recordError(simulation, scenario, requestName, "HTTP_" + status);
-                    }
-
-                    return session;
-                });
+        RequestMetrics requestMetrics = metrics.requestMetrics(simulation, scenario, requestName);
+        metrics.markInstrumentedRequest(requestName);
+        return new PrometheusRequestActionBuilder(request, requestMetrics,
+                status -> status >= 200 && status < 400).toChainBuilder();
     }
 
     public static ChainBuilder prometheusHttpWithCheck(String simulation, String scenario,
                                                         HttpRequestActionBuilder request,
                                                         String requestName,
                                                         int expectedStatus) {
-        return exec(session -> session.set("prometheus_req_start", System.currentTimeMillis()))
-                .exec(request
-                        .check(status().is(expectedStatus).saveAs("prometheus_status"))
-                        .check(responseTimeInMillis().saveAs("prometheus_response_time")))
-                .exec(session -> {
-                    int status = session.getInt("prometheus_status");
-                    long responseTime = session.getLong("prometheus_response_time");
-                    boolean success = status == expectedStatus;
-
-                    metrics.recordRequest(simulation, scenario, requestName, success, responseTime);
-
-                    if (!success) {
-                        metrics.recordError(simulation, scenario, requestName, "HTTP_" + status);
-                    }
-
-                    return session;
-                });
+        RequestMetrics requestMetrics = metrics.requestMetrics(simulation, scenario, requestName);
+        metrics.markInstrumentedRequest(requestName);
+        return new PrometheusRequestActionBuilder(request.check(status().is(expectedStatus)), requestMetrics,
+                status -> status == expectedStatus).toChainBuilder();
     }
 
     public static ChainBuilder trackUser(String simulation, String scenario) {
+        boolean correctCoordinatedOmission = metrics.getConfig().isCoordinatedOmissionCorrection();
+        metrics.markInstrumentedScenario(scenario);
+        MetricsRun.ScenarioUsers users = metrics.scenarioUsers(simulation, scenario);
         return exec(session -> {
-            metrics.userStarted(simulation, scenario);
-            return session.set("prometheus_user_tracked", true)
-                    .set("prometheus_simulation", simulation)
-                    .set("prometheus_scenario", scenario);
+            long startedNanos = System.nanoTime();
+            long startLagNanos = metrics.userStarted(users);
+            // Session 복사는 한 번만 - 이후 트랜잭션 상태는 journey 객체 안에서 바뀐다
+            Map<String, Object> attributes = new HashMap<>(8);
+            attributes.put("prometheus_user_tracked", true);
+            attributes.put("prometheus_simulation", simulation);
+            attributes.put("prometheus_scenario", scenario);
+            // coordinated omission 보정 - 첫 계측 요청의 응답 시간에 사용자 시작 지연을 더한다
+            attributes.put(UserJourney.SESSION_KEY, new UserJourney(users, startedNanos,
+                    correctCoordinatedOmission ? Math.max(startLagNanos, 0) : 0));
+            return session.setAll(attributes);
         });
     }
 
     public static ChainBuilder untrackUser() {
         return exec(session -> {
+            UserJourney journey = session.get(UserJourney.SESSION_KEY);
+            if (journey != null) {
+                // 닫히지 않은 트랜잭션은 ko 로 남긴다
+                journey.closeAll();
+                long sessionNanos = journey.getSessionNanos(System.nanoTime());
+                if (journey.getUsers() != null) {
+                    journey.getUsers().userFinished(sessionNanos);
+                } else {
+                    metrics.userFinished(journey.getSimulation(), journey.getScenario(), sessionNanos);
+                }
+                return session;
+            }
             String simulation = session.getString("prometheus_simulation");
             String scenario = session.getString("prometheus_scenario");
             if (simulation != null && scenario != null) {
@@ -73,4 +73,45 @@ public class PrometheusHttpDsl {
             return session;
         });
     }
+
+    /**
+     * 이름 붙은 트랜잭션 시작 - {@link #endTransaction()} 까지의 요청을 하나의 사용자 여정 구간으로 기록한다.
+     * 중첩할 수 있으며, trackUser 없이 쓰면 첫 트랜잭션에서 journey 를 만든다.
+     */
+    public static ChainBuilder startTransaction(String simulation, String scenario, String transaction) {
+        TransactionMetrics transactionMetrics = metrics.transactionMetrics(simulation, scenario, transaction);
+        return exec(session -> {
+            UserJourney journey = session.get(UserJourney.SESSION_KEY);
+            if (journey != null) {
+                journey.start(transactionMetrics, session.isFailed());
+                return session;
+            }
+            journey = new UserJourney(simulation, scenario, System.nanoTime());
+            journey.start(transactionMetrics, session.isFailed());
+            return session.set(UserJourney.SESSION_KEY, journey);
+        });
+    }
+
+    /**
+     * 가장 안쪽 트랜잭션 종료
+     */
+    public static ChainBuilder endTransaction() {
+        return exec(session -> {
+            UserJourney journey = session.get(UserJourney.SESSION_KEY);
+            if (journey != null) {
+                journey.end(session.isFailed());
+            }
+            return session;
+        });
+    }
+
+    /**
+     * chain 전체를 하나의 트랜잭션으로 기록 - startTransaction, chain, endTransaction 과 같다
+     */
+    public static ChainBuilder transaction(String simulation, String scenario, String transaction,
+                                           ChainBuilder chain) {
+        return startTransaction(simulation, scenario, transaction)
+                .exec(chain)
+                .exec(endTransaction());
+    }
 }
\ No newline at end of file
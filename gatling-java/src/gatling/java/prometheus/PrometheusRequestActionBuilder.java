@@ -0,0 +1,266 @@
+package prometheus;
+
+import com.typesafe.scalalogging.Logger;
+import io.gatling.commons.validation.Success;
+import io.gatling.commons.validation.Validation;
+import io.gatling.core.action.Action;
+import io.gatling.core.structure.ScenarioContext;
+import io.gatling.http.client.body.RequestBody;
+import io.gatling.http.client.body.bytearray.ByteArrayRequestBody;
+import io.gatling.http.client.body.string.StringRequestBody;
+import io.gatling.http.client.body.stringchunks.StringChunksRequestBody;
+import io.gatling.http.request.builder.HttpRequestBuilder;
+import io.gatling.http.response.Response;
+import io.gatling.javaapi.core.ActionBuilder;
+import io.gatling.javaapi.core.Session;
+import io.gatling.javaapi.http.HttpRequestActionBuilder;
+import io.gatling.netty.util.StringWithCachedBytes;
+import scala.Function2;
+import scala.Option;
+import scala.Tuple2;
+
+import java.util.function.IntPredicate;
+
+/**
+ * HTTP 요청 하나를 감싸 시작과 기록을 HTTP 액션 앞뒤에서 바로 수행하는 ActionBuilder.
+ * <p>
+ * {@link #asScala()} 가 만드는 액션은 시작 처리 후 HTTP 액션을 그대로 호출하고, HTTP 액션의 {@code next} 로
+ * 기록 액션을 넘긴다. 별도의 exec 단계 없이 일반 {@code http(...)} 요청과 같은 자리에서 실행된다.
+ * 기록 액션은 응답을 받은 경우뿐 아니라 연결 오류, timeout, 체크 실패로 KO 된 경우에도 실행된다.
+ * 응답 정보(상태, 경로, 크기)는 response transformer 가 {@link UserJourney} 에 남기며, 응답이 없으면
+ * {@code error="no response"} 로 KO 를 기록한다.
+ * 상태 코드가 성공 조건을 벗어나거나 요청 중에 Session 이 실패 상태로 바뀌면 (체크 실패) KO 다.
+ * 요청에 이미 transformResponse 가 설정되어 있으면 응답 정보를 남긴 뒤 그 transformer 를 이어서 호출한다.
+ * <p>
+ * 사용자별 상태는 Session 에 한 번 넣어 둔 UserJourney 를 고쳐 쓰므로 요청마다 Session 을 복사하지 않는다.
+ * 응답 시간은 시작 처리와 기록 사이를 {@link System#nanoTime()} 으로 재므로 밀리초 미만 해상도를 갖는다.
+ * coordinated omission 보정이 켜져 있으면 {@code trackUser} 가 측정한 사용자 시작 지연을 그 사용자의 첫 요청 응답 시간에 한 번 더한다.
+ * 열려 있는 트랜잭션이 있으면 보정 전 응답 시간을 트랜잭션의 누적 응답 시간에 더한다.
+ * 구간의 가장 느린 K 개에 드는 응답은 사용자 id, 경로, 상태, 크기를 함께 남긴다 ({@link SlowRequestWindow}).
+ * network 가 켜져 있으면 요청/응답 body 크기와 {@code Connection: close} 여부도 기록한다 ({@link NetworkCounters}).
+ * 요청 body 는 복사하지 않고 크기를 알 수 있는 byte 배열/문자열 body 만 센다. 연결 풀 재사용과 TLS handshake 는
+ * Gatling 이 요청 단위로 노출하지 않으므로 기록하지 않는다.
+ */
+public final class PrometheusRequestActionBuilder implements ActionBuilder {
+
+    static final String NO_RESPONSE = "no response";
+    static final String CHECK_FAILED = "check failed";
+
+    private static final Logger LOGGER = Logger.apply(PrometheusRequestActionBuilder.class);
+
+    private final HttpRequestActionBuilder request;
+    private final RequestMetrics requestMetrics;
+    private final IntPredicate successStatus;
+    private final boolean recordNetwork;
+
+    public PrometheusRequestActionBuilder(HttpRequestActionBuilder request,
+                                          RequestMetrics requestMetrics,
+                                          IntPredicate successStatus) {
+        this.request = request;
+        this.requestMetrics = requestMetrics;
+        this.successStatus = successStatus;
+        this.recordNetwork = GatlingPrometheusMetrics.getInstance().getConfig().isNetworkEnabled();
+    }
+
+    @Override
+    public io.gatling.core.action.builder.ActionBuilder asScala() {
+        if (!(request.asScala() instanceof HttpRequestBuilder http)) {
+            throw new IllegalStateException("prometheusHttp expects an http(...) request, got " + request.asScala());
+        }
+        // 기존 transformer 는 응답 정보를 남긴 뒤 이어서 호출한다
+        Option<Function2<Response, io.gatling.core.session.Session,
+                Validation<Tuple2<Response, io.gatling.core.session.Session>>>> existing =
+                http.httpAttributes().responseTransformer();
+        HttpRequestBuilder capturing = http.transformResponseAndSession((response, session) -> {
+            capture(response, new Session(session));
+            return existing.isDefined() ? existing.get().apply(response, session) : new Success<>(new Tuple2<>(response, session));
+        });
+        return new io.gatling.core.action.builder.ActionBuilder() {
+            @Override
+            public Action build(ScenarioContext ctx, Action next) {
+                return new StartAction(capturing.build(ctx, new RecordAction(next)));
+            }
+        };
+    }
+
+    /**
+     * 요청 시작 - journey 가 없으면 (trackUser 없이 쓰는 경우) 사용자당 한 번만 Session 을 복사한다
+     */
+    Session start(Session session) {
+        UserJourney journey = session.get(UserJourney.SESSION_KEY);
+        Session current = session;
+        if (journey == null) {
+            journey = new UserJourney(requestMetrics.getSimulation(), requestMetrics.getScenario(), System.nanoTime());
+            current = session.set(UserJourney.SESSION_KEY, journey);
+        }
+        journey.requestStarted(System.nanoTime(), session.isFailed());
+        return current;
+    }
+
+    private void capture(Response response, Session session) {
+        UserJourney journey = session.get(UserJourney.SESSION_KEY);
+        if (journey == null) {
+            return;
+        }
+        long requestBytes = -1;
+        boolean connectionClosed = false;
+        if (recordNetwork) {
+            requestBytes = bodySize(response.request().getBody());
+            // HTTP/2 는 연결을 닫지 않고 다중화한다
+            connectionClosed = !response.isHttp2()
+                    && "close".equalsIgnoreCase(response.headers().get("Connection"));
+        }
+        journey.responseReceived(response.status().code(), response.request().getUri().getPath(),
+                requestBytes, response.body().length(), connectionClosed);
+    }
+
+    /**
+     * HTTP 액션이 끝난 뒤 (응답, 연결 오류, timeout 모두) 요청 하나를 기록한다
+     */
+    Session record(Session session) {
+        UserJourney journey = session.get(UserJourney.SESSION_KEY);
+        if (journey == null) {
+            return session;
+        }
+        int status = journey.getResponseStatus();
+        boolean responded = status > 0;
+        boolean checkFailed = session.isFailed() && !journey.wasFailedBeforeRequest();
+        boolean success = responded && successStatus.test(status) && !checkFailed;
+
+        // 시작 액션부터 nanoTime 으로 잰 시간 - Gatling 의 응답 타임스탬프는 밀리초 단위라 쓰지 않는다
+        long responseTimeNanos = System.nanoTime() - journey.getRequestStartNanos();
+        // 트랜잭션의 누적 응답 시간은 보정 전 값
+        journey.requestCompleted(responseTimeNanos, success);
+        // 의도한 시작 시각 기준 응답 시간 - 사용자의 첫 요청에만 (보정이 꺼져 있으면 지연은 0)
+        responseTimeNanos += journey.takeStartLag();
+        if (requestMetrics.isSlowCandidate(responseTimeNanos / 1000)) {
+            // 현재 구간의 가장 느린 K 개 후보 - 이때만 상세 정보를 만든다
+            requestMetrics.recordSlow(success, responseTimeNanos, new SlowRequestWindow.Sample(
+                    System.currentTimeMillis(), responseTimeNanos / 1000, success, status, session.userId(),
+                    journey.getResponsePath(), journey.getResponseBodyBytes()));
+        } else {
+            requestMetrics.recordNanos(success, responseTimeNanos);
+        }
+
+        if (!responded) {
+            requestMetrics.recordError(NO_RESPONSE);
+        } else if (!successStatus.test(status)) {
+            requestMetrics.recordHttpError(status);
+        } else if (checkFailed) {
+            requestMetrics.recordError(CHECK_FAILED);
+        }
+
+        if (recordNetwork && responded) {
+            requestMetrics.recordNetwork(journey.getRequestBodyBytes(), journey.getResponseBodyBytes(),
+                    journey.isConnectionClosed());
+        }
+        return session;
+    }
+
+    /**
+     * 요청 body 크기 - getBytes() 는 body 를 새 배열로 만들므로 쓰지 않는다.
+     * {@code StringBody("...#{el}...")} 가 만드는 조각 body 는 조각마다 이미 인코딩된 byte 배열을 더하고,
+     * 문자열 body 는 UTF-8 (Gatling 기본 charset) 기준으로 센다. 폼/multipart/파일/스트림 body 는 -1 (기록 안 함).
+     */
+    static long bodySize(RequestBody body) {
+        if (body == null) {
+            return 0;
+        }
+        if (body instanceof ByteArrayRequestBody bytes) {
+            return bytes.getContent().length;
+        }
+        if (body instanceof StringChunksRequestBody chunks) {
+            long length = 0;
+            for (StringWithCachedBytes chunk : chunks.getContent()) {
+                length += chunk.bytes.length;
+            }
+            return length;
+        }
+        if (body instanceof StringRequestBody string) {
+            return utf8Length(string.getContent());
+        }
+        return -1;
+    }
+
+    static long utf8Length(CharSequence text) {
+        long length = 0;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                // 짝이 없는 surrogate 는 인코더가 '?' 한 바이트로 바꾼다
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Scala Action 의 로거 구현 - 두 액션이 공유한다
+     */
+    private abstract static class InlineAction implements Action {
+
+        @Override
+        public Logger logger() {
+            return LOGGER;
+        }
+
+        @Override
+        public void com$typesafe$scalalogging$StrictLogging$_setter_$logger_$eq(Logger logger) {
+            // 고정 로거를 쓴다
+        }
+    }
+
+    /**
+     * 시작 처리 후 같은 스레드에서 HTTP 액션 실행
+     */
+    private final class StartAction extends InlineAction {
+
+        private final Action http;
+
+        StartAction(Action http) {
+            this.http = http;
+        }
+
+        @Override
+        public String name() {
+            return http.name();
+        }
+
+        @Override
+        public void execute(io.gatling.core.session.Session session) {
+            http.$bang(start(new Session(session)).asScala());
+        }
+    }
+
+    /**
+     * HTTP 액션의 next - 기록 후 원래 다음 액션으로 넘긴다
+     */
+    private final class RecordAction extends InlineAction {
+
+        private final Action next;
+
+        RecordAction(Action next) {
+            this.next = next;
+        }
+
+        @Override
+        public String name() {
+            return "prometheus-record-" + requestMetrics.getRequest();
+        }
+
+        @Override
+        public void execute(io.gatling.core.session.Session session) {
+            record(new Session(session));
+            next.$bang(session);
+        }
+    }
+}
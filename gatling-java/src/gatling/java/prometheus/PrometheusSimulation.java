@@ -3,6 +3,8 @@ package prometheus;
 import io.gatling.javaapi.core.Simulation;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public abstract class PrometheusSimulation extends Simulation {
 
@@ -11,9 +13,13 @@ public abstract class PrometheusSimulation extends Simulation {
     protected final String simulationName;
     protected final GatlingPrometheusMetrics metrics;
 
+    private final List<CapacitySearch> capacitySearches = new CopyOnWriteArrayList<>();
+
     public PrometheusSimulation() {
         this.simulationName = this.getClass().getSimpleName();
         this.metrics = GatlingPrometheusMetrics.getInstance();
+        // 하위 클래스가 시나리오를 정의하며 만드는 요청 핸들이 이번 실행에 묶이도록 먼저 시작한다
+        metrics.beginRun(simulationName);
     }
 
     @Override
@@ -22,23 +28,42 @@ public abstract class PrometheusSimulation extends Simulation {
         System.out.println("Starting simulation: " + simulationName);
         System.out.println("========================================");
 
+        int port = metrics.getConfig().getPort();
         try {
-            metrics.startServer(PROMETHEUS_PORT);
+            // 포트가 사용 중이면 임시 포트로 바인딩하고 실제 포트를 출력한다
+            metrics.startServer(port);
         } catch (IOException e) {
-            System.err.println("Warning: Could not start Prometheus server on port " + PROMETHEUS_PORT);
-            System.err.println("Reason: " + e.getMessage());
-            System.err.println("Metrics collection will continue, but may use a different port.");
-
-            // 대체 포트로 시도
-            try {
-                int altPort = findAvailablePort();
-                if (altPort > 0) {
-                    metrics.startServer(altPort);
-                }
-            } catch (IOException e2) {
-                System.err.println("Failed to start on alternative port. Continuing without Prometheus HTTP server.");
+            if (metrics.getConfig().isSharded()) {
+                // 코디네이터가 모르는 포트로 옮기지 않는다
+                throw new IllegalStateException("Injector " + metrics.getConfig().getNodeName()
+                        + " could not bind its metrics port " + port, e);
             }
+            System.err.println("Warning: Could not start Prometheus server on port " + port);
+            System.err.println("Reason: " + e.getMessage());
+            System.err.println("Continuing without Prometheus HTTP server.");
         }
+
+        try {
+            metrics.startInfluxDbWriter();
+        } catch (IOException e) {
+            System.err.println("Warning: Could not start InfluxDB writer: " + e.getMessage());
+        }
+
+        metrics.startRemoteWriteExporter();
+
+        try {
+            metrics.startResultsStore(simulationName);
+        } catch (IOException e) {
+            System.err.println("Warning: Could not start results store: " + e.getMessage());
+        }
+
+        metrics.startInjectorProbes();
+
+        metrics.startRegressionGate();
+
+        metrics.startSimulationLogTailer(simulationName);
+
+        capacitySearches.forEach(CapacitySearch::start);
     }
 
     @Override
@@ -47,40 +72,70 @@ public abstract class PrometheusSimulation extends Simulation {
         System.out.println("Simulation completed: " + simulationName);
         System.out.println("========================================");
 
-        // 마지막 스크래핑을 위해 잠시 대기
-        int waitSeconds = 10;
-        System.out.println("Waiting " + waitSeconds + " seconds for final Prometheus scrape...");
+        // 용량 탐색 결과 출력
+        capacitySearches.forEach(CapacitySearch::stop);
 
-        try {
-            for (int i = waitSeconds; i > 0; i--) {
-                System.out.print("\rShutting down in " + i + " seconds... ");
-                Thread.sleep(1000);
-            }
-            System.out.println();
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            System.out.println("\nInterrupted during shutdown wait.");
+        metrics.stopInjectorProbes();
+
+        // simulation.log 에 남은 레코드 반영
+        metrics.stopSimulationLogTailer();
+
+        // 남은 집계를 InfluxDB 로 최종 전송
+        metrics.stopInfluxDbWriter();
+
+        // 최종 스냅샷을 remote write 로 push
+        metrics.stopRemoteWriteExporter();
+
+        // 남은 샘플을 결과 저장소에 기록
+        metrics.stopResultsStore();
+
+        // baseline 대비 회귀 판정 - 실패 시 gatlingRun 태스크가 실패한다
+        if (!metrics.evaluateRegressionGate(simulationName)) {
+            System.err.println("Regression gate FAILED (regression or comparison error), see " + RegressionGate.RESULT_FILE);
         }
 
+        // 최종 스냅샷 고정 - 이후 스크래핑은 이 값을 본다
+        metrics.completeRun();
+
+        // 고정 이후 시작된 스크래핑이 끝나면 바로 종료 (스크래퍼가 없으면 기다리지 않음)
+        metrics.awaitFinalScrape();
+
         // 서버 종료
         if (metrics.isServerRunning()) {
             System.out.println("Stopping Prometheus metrics server...");
             metrics.stopServer();
         }
+        metrics.releaseRun();
 
         System.out.println("Cleanup complete.");
     }
 
-    private int findAvailablePort() {
-        for (int port = PROMETHEUS_PORT + 1; port < PROMETHEUS_PORT + 100; port++) {
-            try (java.net.ServerSocket socket = new java.net.ServerSocket(port)) {
-                socket.setReuseAddress(true);
-                return port;
-            } catch (IOException e) {
-                // continue
-            }
-        }
-        return -1;
+    /**
+     * (scenario, request) 를 대상으로 SLO 를 만족하는 최대 도착률을 찾는 용량 탐색 정의.
+     * 시나리오 맨 앞에 {@link CapacitySearch#admit()} 을, 주입 프로파일로 {@link CapacitySearch#injectionProfile()} 을 사용한다.
+     */
+    protected CapacitySearch.Builder capacitySearch(String scenario, String request) {
+        return new CapacitySearch.Builder(this, scenario, request);
+    }
+
+    void registerCapacitySearch(CapacitySearch search) {
+        capacitySearches.add(search);
+    }
+
+    /**
+     * {@link ShardCoordinator} 로 N 개 JVM 에 나눠 실행할 때 이 JVM 이 주입할 도착률 - 단독 실행이면 그대로.
+     */
+    protected double shardRate(double rate) {
+        return rate / metrics.getConfig().getShardCount();
+    }
+
+    /**
+     * 이 JVM 이 주입할 사용자 수 - 나머지는 앞쪽 shard 가 하나씩 더 맡는다.
+     */
+    protected int shardUsers(int users) {
+        PrometheusConfig config = metrics.getConfig();
+        int base = users / config.getShardCount();
+        return base + (config.getShardIndex() < users % config.getShardCount() ? 1 : 0);
     }
 
     protected GatlingPrometheusMetrics getMetrics() {
@@ -0,0 +1,252 @@
+package prometheus;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramIterationValue;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+
+/**
+ * 실행 결과를 저장된 baseline 과 비교하는 성능 회귀 게이트.
+ * <p>
+ * 실행 중에는 (scenario, request) 별 전체 응답 시간 분포를 {@link Recorder} 에 µs 단위로 쌓고,
+ * 종료 시 압축된 HdrHistogram 스냅샷을 {@code {directory}/{simulation}/last.tsv} 로 저장한 뒤
+ * {@code {baseline}.tsv} 와 비교한다. 다음 두 조건을 모두 만족하는 요청이 있으면 회귀로 판정한다.
+ * <ul>
+ *     <li>설정된 백분위수 중 하나가 baseline 대비 tolerance 이상 증가</li>
+ *     <li>단측 Mann-Whitney U 검정에서 현재 분포가 baseline 보다 크다는 p-value 가 significance 미만</li>
+ * </ul>
+ * 결과 보고서는 {@code build/regression/result.txt} 에 기록되며, 첫 줄이 FAILED 이면 Gradle 의
+ * gatlingRun 태스크가 실패한다. 스냅샷 저장이나 baseline 읽기가 실패해도 판정할 수 없으므로 FAILED 다.
+ */
+final class RegressionGate implements RequestListener {
+
+    static final Path RESULT_FILE = Paths.get("build", "regression", "result.txt");
+
+    private final PrometheusConfig config;
+    private final ConcurrentHashMap<RequestMetrics, Recorder> recorders = new ConcurrentHashMap<>();
+
+    RegressionGate(PrometheusConfig config) {
+        this.config = config;
+    }
+
+    @Override
+    public void onRequest(RequestMetrics request, boolean success, long timestampMillis, long responseTimeMicros) {
+        if (!success) {
+            return;
+        }
+        Recorder recorder = recorders.get(request);
+        if (recorder == null) {
+            recorder = recorders.computeIfAbsent(request, key -> new Recorder(LatencyWindow.SIGNIFICANT_DIGITS));
+        }
+        recorder.recordValue(Math.max(0, responseTimeMicros));
+    }
+
+    /**
+     * {@link #evaluate(String)} 와 같지만 비교 중 오류가 나면 FAILED 판정과 오류 내용을 결과 파일에 남긴다.
+     *
+     * @return 회귀가 없으면 true, 회귀가 있거나 판정하지 못했으면 false
+     */
+    boolean evaluateOrFail(String simulation) {
+        try {
+            return evaluate(simulation);
+        } catch (IOException | RuntimeException e) {
+            String report = "FAILED" + System.lineSeparator()
+                    + "ERROR: regression gate could not compare against baseline '" + config.getRegressionBaseline()
+                    + "': " + e + System.lineSeparator();
+            System.err.print(report);
+            try {
+                Files.createDirectories(RESULT_FILE.getParent());
+                Files.writeString(RESULT_FILE, report, StandardCharsets.UTF_8);
+            } catch (IOException writeError) {
+                System.err.println("Failed to write " + RESULT_FILE + ": " + writeError.getMessage());
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 이번 실행 스냅샷을 저장하고 baseline 과 비교한다.
+     *
+     * @return 회귀가 없으면 true
+     */
+    boolean evaluate(String simulation) throws IOException {
+        Map<String, Histogram> current = new TreeMap<>();
+        recorders.forEach((request, recorder) ->
+                current.merge(key(request.getScenario(), request.getRequest()), recorder.getIntervalHistogram(),
+                        (left, right) -> {
+                            left.add(right);
+                            return left;
+                        }));
+
+        Path directory = Paths.get(config.getRegressionDirectory(), simulation.toLowerCase());
+        Files.createDirectories(directory);
+        write(directory.resolve("last.tsv"), current);
+        if (!config.getRegressionSaveAs().isEmpty()) {
+            write(directory.resolve(config.getRegressionSaveAs() + ".tsv"), current);
+            System.out.println("✓ Saved run as baseline '" + config.getRegressionSaveAs() + "'");
+        }
+
+        Path baselineFile = directory.resolve(config.getRegressionBaseline() + ".tsv");
+        StringWriter report = new StringWriter();
+        PrintWriter out = new PrintWriter(report);
+        boolean passed = true;
+        if (!Files.exists(baselineFile)) {
+            out.println("PASSED");
+            out.println("No baseline '" + config.getRegressionBaseline() + "' at " + baselineFile + ", nothing to compare");
+        } else {
+            Map<String, Histogram> baseline = read(baselineFile);
+            List<String> lines = new ArrayList<>();
+            for (Map.Entry<String, Histogram> entry : current.entrySet()) {
+                Histogram base = baseline.get(entry.getKey());
+                if (base == null) {
+                    lines.add(entry.getKey().replace("\t", " / ") + "  (new, no baseline)");
+                    continue;
+                }
+                passed &= compare(entry.getKey(), base, entry.getValue(), lines);
+            }
+            out.println(passed ? "PASSED" : "FAILED");
+            out.printf("Baseline '%s', tolerance %.0f%%, significance p < %s%n",
+                    config.getRegressionBaseline(), config.getRegressionTolerance() * 100, config.getRegressionSignificance());
+            lines.forEach(out::println);
+        }
+        out.flush();
+
+        Files.createDirectories(RESULT_FILE.getParent());
+        Files.writeString(RESULT_FILE, report.toString(), StandardCharsets.UTF_8);
+        System.out.println("========================================");
+        System.out.print(report);
+        System.out.println("========================================");
+        return passed;
+    }
+
+    private boolean compare(String key, Histogram base, Histogram current, List<String> lines) {
+        StringBuilder line = new StringBuilder(key.replace("\t", " / "));
+        if (base.getTotalCount() < config.getRegressionMinSamples()
+                || current.getTotalCount() < config.getRegressionMinSamples()) {
+            lines.add(line.append("  (skipped, fewer than ").append(config.getRegressionMinSamples())
+                    .append(" samples)").toString());
+            return true;
+        }
+
+        double pValue = mannWhitneyGreater(base, current);
+        boolean significant = pValue < config.getRegressionSignificance();
+        boolean regressed = false;
+        for (double percentile : config.getRegressionPercentiles()) {
+            double before = base.getValueAtPercentile(percentile) / 1000.0;
+            double after = current.getValueAtPercentile(percentile) / 1000.0;
+            double delta = before > 0 ? (after - before) / before : 0;
+            boolean exceeded = delta > config.getRegressionTolerance();
+            regressed |= exceeded && significant;
+            line.append(String.format("  p%s %.1f -> %.1fms (%+.1f%%)%s",
+                    formatPercentile(percentile), before, after, delta * 100, exceeded ? "!" : ""));
+        }
+        line.append(String.format("  n=%d/%d  p-value=%.2g", base.getTotalCount(), current.getTotalCount(), pValue));
+        if (regressed) {
+            line.append("  REGRESSION");
+        }
+        lines.add(line.toString());
+        return !regressed;
+    }
+
+    /**
+     * 단측 Mann-Whitney U 검정 (정규 근사, 동순위 보정) - 현재 분포가 baseline 보다 크다는 대립가설의 p-value.
+     * 히스토그램 버킷 단위로 순위를 매기므로 같은 버킷의 값은 동순위로 처리된다.
+     */
+    static double mannWhitneyGreater(Histogram base, Histogram current) {
+        TreeMap<Long, long[]> counts = new TreeMap<>();
+        for (HistogramIterationValue value : base.recordedValues()) {
+            counts.computeIfAbsent(value.getValueIteratedTo(), k -> new long[2])[0] += value.getCountAtValueIteratedTo();
+        }
+        for (HistogramIterationValue value : current.recordedValues()) {
+            counts.computeIfAbsent(value.getValueIteratedTo(), k -> new long[2])[1] += value.getCountAtValueIteratedTo();
+        }
+
+        double n1 = base.getTotalCount();
+        double n2 = current.getTotalCount();
+        double n = n1 + n2;
+        double rankSumCurrent = 0;
+        double tieCorrection = 0;
+        double rank = 0;
+        for (long[] count : counts.values()) {
+            double tied = count[0] + count[1];
+            double averageRank = rank + (tied + 1) / 2.0;
+            rankSumCurrent += averageRank * count[1];
+            tieCorrection += tied * tied * tied - tied;
+            rank += tied;
+        }
+
+        double u = rankSumCurrent - n2 * (n2 + 1) / 2.0;
+        double mean = n1 * n2 / 2.0;
+        double variance = n1 * n2 / 12.0 * ((n + 1) - tieCorrection / (n * (n - 1)));
+        if (variance <= 0) {
+            return 1.0;
+        }
+        double z = (u - mean - 0.5) / Math.sqrt(variance);
+        return 1.0 - normalCdf(z);
+    }
+
+    // Abramowitz-Stegun 7.1.26 근사 (오차 1.5e-7)
+    private static double normalCdf(double z) {
+        double x = Math.abs(z) / Math.sqrt(2);
+        double t = 1.0 / (1.0 + 0.3275911 * x);
+        double erf = 1 - ((((1.061405429 * t - 1.453152027) * t + 1.421413741) * t - 0.284496736) * t + 0.254829592)
+                * t * Math.exp(-x * x);
+        return z >= 0 ? 0.5 * (1 + erf) : 0.5 * (1 - erf);
+    }
+
+    private static String formatPercentile(double percentile) {
+        return percentile == Math.rint(percentile) ? String.valueOf((long) percentile) : String.valueOf(percentile);
+    }
+
+    private static String key(String scenario, String request) {
+        return scenario + "\t" + request;
+    }
+
+    // scenario \t request \t count \t base64(압축 히스토그램)
+    private static void write(Path file, Map<String, Histogram> histograms) throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            Histogram histogram = entry.getValue();
+            ByteBuffer buffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+            int length = histogram.encodeIntoCompressedByteBuffer(buffer);
+            byte[] encoded = new byte[length];
+            buffer.flip();
+            buffer.get(encoded);
+            content.append(entry.getKey()).append('\t').append(histogram.getTotalCount()).append('\t')
+                    .append(Base64.getEncoder().encodeToString(encoded)).append('\n');
+        }
+        Files.writeString(file, content.toString(), StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, Histogram> read(Path file) throws IOException {
+        Map<String, Histogram> histograms = new TreeMap<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            String[] fields = line.split("\t");
+            if (fields.length != 4) {
+                continue;
+            }
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(Base64.getDecoder().decode(fields[3]));
+                histograms.put(key(fields[0], fields[1]), Histogram.decodeFromCompressedByteBuffer(buffer, 0));
+            } catch (DataFormatException | IllegalArgumentException e) {
+                throw new IOException("Corrupt baseline entry in " + file + ": " + fields[0] + " / " + fields[1], e);
+            }
+        }
+        return histograms;
+    }
+}
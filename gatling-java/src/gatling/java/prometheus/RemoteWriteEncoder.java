@@ -0,0 +1,265 @@
+package prometheus;
+
+import io.prometheus.metrics.model.snapshots.ClassicHistogramBuckets;
+import io.prometheus.metrics.model.snapshots.CounterSnapshot;
+import io.prometheus.metrics.model.snapshots.GaugeSnapshot;
+import io.prometheus.metrics.model.snapshots.HistogramSnapshot;
+import io.prometheus.metrics.model.snapshots.InfoSnapshot;
+import io.prometheus.metrics.model.snapshots.Labels;
+import io.prometheus.metrics.model.snapshots.MetricSnapshot;
+import io.prometheus.metrics.model.snapshots.MetricSnapshots;
+import io.prometheus.metrics.model.snapshots.Quantile;
+import io.prometheus.metrics.model.snapshots.SummarySnapshot;
+import io.prometheus.metrics.model.snapshots.UnknownSnapshot;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 레지스트리 스냅샷을 Prometheus remote-write {@code WriteRequest} protobuf 로 직렬화한다.
+ * <p>
+ * 메시지 구조가 단순하므로 protobuf 런타임 없이 직접 인코딩한다.
+ * <pre>
+ * WriteRequest { repeated TimeSeries timeseries = 1; }
+ * TimeSeries   { repeated Label labels = 1; repeated Sample samples = 2; }
+ * Label        { string name = 1; string value = 2; }
+ * Sample       { double value = 1; int64 timestamp = 2; }
+ * </pre>
+ * 히스토그램은 classic 버킷(_bucket/_sum/_count)으로만 변환되며 native 버킷은 전송하지 않는다.
+ * 한 인스턴스는 하나의 스레드에서만 사용해야 한다.
+ */
+final class RemoteWriteEncoder {
+
+    private static final int MAX_CACHED_STRINGS = 10_000;
+
+    private final String[] extraLabelNames;
+    private final String[] extraLabelValues;
+    private final Map<String, byte[]> utf8Cache = new HashMap<>();
+
+    private byte[] buffer = new byte[64 * 1024];
+    private int position;
+    private int seriesCount;
+
+    // 시리즈 하나의 라벨 작업 공간
+    private String[] labelNames = new String[16];
+    private String[] labelValues = new String[16];
+    private int labelCount;
+
+    RemoteWriteEncoder(Map<String, String> extraLabels) {
+        this.extraLabelNames = extraLabels.keySet().toArray(new String[0]);
+        this.extraLabelValues = new String[extraLabelNames.length];
+        for (int i = 0; i < extraLabelNames.length; i++) {
+            extraLabelValues[i] = extraLabels.get(extraLabelNames[i]);
+        }
+    }
+
+    byte[] encode(MetricSnapshots snapshots, long timestampMillis) {
+        position = 0;
+        seriesCount = 0;
+        if (utf8Cache.size() > MAX_CACHED_STRINGS) {
+            utf8Cache.clear();
+        }
+
+        for (MetricSnapshot snapshot : snapshots) {
+            String name = snapshot.getMetadata().getPrometheusName();
+            if (snapshot instanceof CounterSnapshot counter) {
+                for (CounterSnapshot.CounterDataPointSnapshot dataPoint : counter.getDataPoints()) {
+                    writeSeries(name + "_total", dataPoint.getLabels(), null, null, dataPoint.getValue(), timestampMillis);
+                }
+            } else if (snapshot instanceof GaugeSnapshot gauge) {
+                for (GaugeSnapshot.GaugeDataPointSnapshot dataPoint : gauge.getDataPoints()) {
+                    writeSeries(name, dataPoint.getLabels(), null, null, dataPoint.getValue(), timestampMillis);
+                }
+            } else if (snapshot instanceof HistogramSnapshot histogram) {
+                for (HistogramSnapshot.HistogramDataPointSnapshot dataPoint : histogram.getDataPoints()) {
+                    writeHistogram(name, dataPoint, timestampMillis);
+                }
+            } else if (snapshot instanceof SummarySnapshot summary) {
+                for (SummarySnapshot.SummaryDataPointSnapshot dataPoint : summary.getDataPoints()) {
+                    Labels labels = dataPoint.getLabels();
+                    for (Quantile quantile : dataPoint.getQuantiles()) {
+                        writeSeries(name, labels, "quantile", formatDouble(quantile.getQuantile()),
+                                quantile.getValue(), timestampMillis);
+                    }
+                    if (dataPoint.hasCount()) {
+                        writeSeries(name + "_count", labels, null, null, dataPoint.getCount(), timestampMillis);
+                    }
+                    if (dataPoint.hasSum()) {
+                        writeSeries(name + "_sum", labels, null, null, dataPoint.getSum(), timestampMillis);
+                    }
+                }
+            } else if (snapshot instanceof InfoSnapshot info) {
+                for (InfoSnapshot.InfoDataPointSnapshot dataPoint : info.getDataPoints()) {
+                    writeSeries(name + "_info", dataPoint.getLabels(), null, null, 1, timestampMillis);
+                }
+            } else if (snapshot instanceof UnknownSnapshot unknown) {
+                for (UnknownSnapshot.UnknownDataPointSnapshot dataPoint : unknown.getDataPoints()) {
+                    writeSeries(name, dataPoint.getLabels(), null, null, dataPoint.getValue(), timestampMillis);
+                }
+            }
+        }
+        return Arrays.copyOf(buffer, position);
+    }
+
+    int getLastSeriesCount() {
+        return seriesCount;
+    }
+
+    private void writeHistogram(String name, HistogramSnapshot.HistogramDataPointSnapshot dataPoint, long timestampMillis) {
+        Labels labels = dataPoint.getLabels();
+        if (dataPoint.hasClassicHistogramData()) {
+            ClassicHistogramBuckets buckets = dataPoint.getClassicBuckets();
+            long cumulative = 0;
+            for (int i = 0; i < buckets.size(); i++) {
+                cumulative += buckets.getCount(i);
+                writeSeries(name + "_bucket", labels, "le", formatDouble(buckets.getUpperBound(i)),
+                        cumulative, timestampMillis);
+            }
+        }
+        if (dataPoint.hasCount()) {
+            writeSeries(name + "_count", labels, null, null, dataPoint.getCount(), timestampMillis);
+        }
+        if (dataPoint.hasSum()) {
+            writeSeries(name + "_sum", labels, null, null, dataPoint.getSum(), timestampMillis);
+        }
+    }
+
+    private static String formatDouble(double value) {
+        if (value == Double.POSITIVE_INFINITY) {
+            return "+Inf";
+        }
+        if (value == Double.NEGATIVE_INFINITY) {
+            return "-Inf";
+        }
+        return Double.toString(value);
+    }
+
+    private void writeSeries(String name, Labels labels, String extraName, String extraValue,
+                             double value, long timestampMillis) {
+        labelCount = 0;
+        addLabel("__name__", name);
+        for (int i = 0; i < labels.size(); i++) {
+            addLabel(labels.getName(i), labels.getValue(i));
+        }
+        if (extraName != null) {
+            addLabel(extraName, extraValue);
+        }
+        for (int i = 0; i < extraLabelNames.length; i++) {
+            if (labels.get(extraLabelNames[i]) == null) {
+                addLabel(extraLabelNames[i], extraLabelValues[i]);
+            }
+        }
+        sortLabels();
+
+        int sampleSize = 1 + 8 + 1 + varintSize(timestampMillis);
+        int seriesSize = 1 + varintSize(sampleSize) + sampleSize;
+        for (int i = 0; i < labelCount; i++) {
+            int labelSize = labelSize(labelNames[i], labelValues[i]);
+            seriesSize += 1 + varintSize(labelSize) + labelSize;
+        }
+
+        ensureCapacity(1 + varintSize(seriesSize) + seriesSize);
+        writeByte(0x0A); // WriteRequest.timeseries
+        writeVarint(seriesSize);
+        for (int i = 0; i < labelCount; i++) {
+            byte[] labelName = utf8(labelNames[i]);
+            byte[] labelValue = utf8(labelValues[i]);
+            writeByte(0x0A); // TimeSeries.labels
+            writeVarint(labelSize(labelNames[i], labelValues[i]));
+            writeByte(0x0A); // Label.name
+            writeVarint(labelName.length);
+            writeBytes(labelName);
+            writeByte(0x12); // Label.value
+            writeVarint(labelValue.length);
+            writeBytes(labelValue);
+        }
+        writeByte(0x12); // TimeSeries.samples
+        writeVarint(sampleSize);
+        writeByte(0x09); // Sample.value (fixed64)
+        writeFixed64(Double.doubleToRawLongBits(value));
+        writeByte(0x10); // Sample.timestamp (varint)
+        writeVarint(timestampMillis);
+        seriesCount++;
+    }
+
+    private void addLabel(String name, String value) {
+        if (labelCount == labelNames.length) {
+            labelNames = Arrays.copyOf(labelNames, labelCount * 2);
+            labelValues = Arrays.copyOf(labelValues, labelCount * 2);
+        }
+        labelNames[labelCount] = name;
+        labelValues[labelCount] = value;
+        labelCount++;
+    }
+
+    // remote-write 는 라벨 이름 정렬을 요구한다 - 라벨 수가 적으므로 삽입 정렬
+    private void sortLabels() {
+        for (int i = 1; i < labelCount; i++) {
+            String name = labelNames[i];
+            String value = labelValues[i];
+            int j = i - 1;
+            while (j >= 0 && labelNames[j].compareTo(name) > 0) {
+                labelNames[j + 1] = labelNames[j];
+                labelValues[j + 1] = labelValues[j];
+                j--;
+            }
+            labelNames[j + 1] = name;
+            labelValues[j + 1] = value;
+        }
+    }
+
+    private int labelSize(String name, String value) {
+        int nameLength = utf8(name).length;
+        int valueLength = utf8(value).length;
+        return 1 + varintSize(nameLength) + nameLength + 1 + varintSize(valueLength) + valueLength;
+    }
+
+    private byte[] utf8(String value) {
+        byte[] bytes = utf8Cache.get(value);
+        if (bytes == null) {
+            bytes = value.getBytes(StandardCharsets.UTF_8);
+            utf8Cache.put(value, bytes);
+        }
+        return bytes;
+    }
+
+    private static int varintSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private void ensureCapacity(int additional) {
+        if (position + additional > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + additional));
+        }
+    }
+
+    private void writeByte(int value) {
+        buffer[position++] = (byte) value;
+    }
+
+    private void writeBytes(byte[] bytes) {
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    private void writeVarint(long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    private void writeFixed64(long value) {
+        for (int i = 0; i < 8; i++) {
+            buffer[position++] = (byte) (value >>> (8 * i));
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package prometheus;
+
+import io.prometheus.metrics.core.metrics.Counter;
+import io.prometheus.metrics.core.metrics.Histogram;
+import io.prometheus.metrics.model.registry.PrometheusRegistry;
+import org.xerial.snappy.Snappy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 레지스트리 스냅샷을 Prometheus remote-write 엔드포인트로 주기적으로 push 하는 exporter.
+ * <p>
+ * 수집 스레드가 설정된 주기(1초 미만 가능)마다 스냅샷을 protobuf 로 인코딩해 bounded queue 에 넣고,
+ * 전송 스레드가 대기 중인 스냅샷을 하나의 요청으로 묶어 snappy 압축 후 전송한다.
+ * (protobuf 의 repeated 필드는 메시지를 이어 붙이면 병합되므로 인코딩된 WriteRequest 를 그대로 연결한다)
+ * 큐가 가득 차면 가장 오래된 스냅샷을 버리고, 5xx/네트워크 오류는 재시도, 4xx 는 버린다.
+ * 종료 시 {@link #stop()} 이 마지막 스냅샷을 찍어 큐를 비울 때까지 전송한다.
+ * 히스토그램은 classic 버킷만 보내므로 {@code histogram.mode = native} 이면 시작 시 경고한다 ({@link RemoteWriteEncoder}).
+ */
+public final class RemoteWriteExporter {
+
+    private static final int MAX_SNAPSHOTS_PER_REQUEST = 20;
+    private static final long MAX_RETRY_BACKOFF_MILLIS = 2000;
+
+    private final PrometheusConfig config;
+    private final PrometheusRegistry registry;
+
+    private final Counter samplesSent;
+    private final Counter requestsFailed;
+    private final Counter snapshotsDropped;
+    private final Histogram sendDuration;
+
+    private final BlockingQueue<byte[]> queue;
+    private final RemoteWriteEncoder encoder;
+    private HttpClient httpClient;
+    private ScheduledExecutorService collector;
+    private Thread sender;
+    private volatile boolean running;
+    private volatile long shutdownDeadlineNanos = Long.MAX_VALUE;
+
+    RemoteWriteExporter(PrometheusConfig config, PrometheusRegistry registry) {
+        this.config = config;
+        this.registry = registry;
+        this.queue = new ArrayBlockingQueue<>(config.getRemoteWriteQueueCapacity());
+
+        Map<String, String> extraLabels = new LinkedHashMap<>();
+        extraLabels.put("job", config.getRemoteWriteJob());
+        extraLabels.put("instance", instanceName());
+        this.encoder = new RemoteWriteEncoder(extraLabels);
+
+        this.samplesSent = Counter.builder()
+                .name("gatling_remote_write_samples_total")
+                .help("Samples successfully pushed via remote write")
+                .register(registry);
+
+        this.requestsFailed = Counter.builder()
+                .name("gatling_remote_write_failures_total")
+                .help("Failed remote write requests")
+                .register(registry);
+
+        this.snapshotsDropped = Counter.builder()
+                .name("gatling_remote_write_dropped_snapshots_total")
+                .help("Snapshots dropped because the remote write queue was full or the request was rejected")
+                .register(registry);
+
+        this.sendDuration = Histogram.builder()
+                .name("gatling_remote_write_send_duration_seconds")
+                .help("Time spent sending one remote write request")
+                .classicOnly()
+                .classicUpperBounds(0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5)
+                .register(registry);
+    }
+
+    private static String instanceName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "localhost";
+        }
+    }
+
+    synchronized void start() {
+        if (running) {
+            return;
+        }
+        httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(2))
+                .build();
+        running = true;
+        shutdownDeadlineNanos = Long.MAX_VALUE;
+
+        collector = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "prometheus-remote-write-collector");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = config.getRemoteWriteIntervalMillis();
+        collector.scheduleAtFixedRate(this::collect, interval, interval, TimeUnit.MILLISECONDS);
+
+        sender = new Thread(this::sendLoop, "prometheus-remote-write-sender");
+        sender.setDaemon(true);
+        sender.start();
+
+        System.out.println("✓ Prometheus remote write started: " + config.getRemoteWriteUrl()
+                + " (every " + interval + "ms)");
+        String warning = histogramModeWarning(config);
+        if (warning != null) {
+            System.err.println(warning);
+        }
+    }
+
+    /**
+     * native 전용 히스토그램은 remote write 로 _sum/_count 만 전달된다 - 그 경우의 경고 문구, 아니면 null
+     */
+    static String histogramModeWarning(PrometheusConfig config) {
+        if (config.getHistogramMode() != PrometheusConfig.HistogramMode.NATIVE) {
+            return null;
+        }
+        return "WARNING: remote write pushes classic histogram buckets only - with histogram.mode = native"
+                + " response time histograms arrive as _sum/_count without buckets (use mode = both to keep them)";
+    }
+
+    /**
+     * 수집을 멈추고 최종 스냅샷을 포함해 큐에 남은 데이터를 모두 전송한 뒤 종료한다.
+     */
+    synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        collector.shutdown();
+        try {
+            collector.awaitTermination(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 최종 스냅샷
+        collect();
+        shutdownDeadlineNanos = System.nanoTime()
+                + TimeUnit.MILLISECONDS.toNanos(config.getRemoteWriteShutdownTimeoutMillis());
+        running = false;
+        sender.interrupt();
+        try {
+            sender.join(config.getRemoteWriteShutdownTimeoutMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!queue.isEmpty()) {
+            System.err.println("Remote write shutdown timed out with " + queue.size() + " snapshots pending");
+            queue.clear();
+        }
+        System.out.println("Prometheus remote write stopped");
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    private void collect() {
+        try {
+            byte[] snapshot = encoder.encode(registry.scrape(), System.currentTimeMillis());
+            while (!queue.offer(snapshot)) {
+                if (queue.poll() != null) {
+                    snapshotsDropped.inc();
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Remote write collection failed: " + e.getMessage());
+        }
+    }
+
+    private void sendLoop() {
+        List<byte[]> batch = new ArrayList<>(MAX_SNAPSHOTS_PER_REQUEST);
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(256 * 1024);
+        long backoffMillis = 0;
+
+        while (running || (!queue.isEmpty() || !batch.isEmpty()) && System.nanoTime() < shutdownDeadlineNanos) {
+            try {
+                if (batch.isEmpty()) {
+                    byte[] first = running ? queue.take() : queue.poll();
+                    if (first == null) {
+                        break;
+                    }
+                    batch.add(first);
+                    queue.drainTo(batch, MAX_SNAPSHOTS_PER_REQUEST - 1);
+                }
+
+                payload.reset();
+                for (byte[] snapshot : batch) {
+                    payload.write(snapshot, 0, snapshot.length);
+                }
+
+                int status = send(payload.toByteArray());
+                if (status / 100 == 2) {
+                    samplesSent.inc(countSamples(batch));
+                    batch.clear();
+                    backoffMillis = 0;
+                } else if (status / 100 == 4) {
+                    // 재시도해도 성공할 수 없는 요청
+                    System.err.println("Remote write rejected with HTTP " + status + ", dropping " + batch.size() + " snapshots");
+                    requestsFailed.inc();
+                    snapshotsDropped.inc(batch.size());
+                    batch.clear();
+                } else {
+                    throw new IOException("HTTP " + status);
+                }
+            } catch (InterruptedException e) {
+                // stop() 이 깨운 경우 - 남은 데이터를 계속 전송
+                if (running) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            } catch (IOException e) {
+                requestsFailed.inc();
+                backoffMillis = Math.min(MAX_RETRY_BACKOFF_MILLIS, Math.max(50, backoffMillis * 2));
+                System.err.println("Remote write failed (retry in " + backoffMillis + "ms): " + e.getMessage());
+                try {
+                    Thread.sleep(backoffMillis);
+                } catch (InterruptedException ie) {
+                    if (running) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    private int send(byte[] writeRequest) throws IOException, InterruptedException {
+        byte[] compressed = Snappy.compress(writeRequest);
+        HttpRequest request = HttpRequest.newBuilder(URI.create(config.getRemoteWriteUrl()))
+                .timeout(Duration.ofSeconds(5))
+                .header("Content-Type", "application/x-protobuf")
+                .header("Content-Encoding", "snappy")
+                .header("X-Prometheus-Remote-Write-Version", "0.1.0")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(compressed))
+                .build();
+        long start = System.nanoTime();
+        HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+        sendDuration.observe((System.nanoTime() - start) / 1_000_000_000.0);
+        return response.statusCode();
+    }
+
+    // 최상위 필드(WriteRequest.timeseries) 개수 = 샘플 수 (시리즈당 샘플 1개)
+    private static long countSamples(List<byte[]> batch) {
+        long samples = 0;
+        for (byte[] snapshot : batch) {
+            int position = 0;
+            while (position < snapshot.length) {
+                position++; // tag
+                long length = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = snapshot[position++];
+                    length |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                } while ((b & 0x80) != 0);
+                position += (int) length;
+                samples++;
+            }
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,94 @@
+package prometheus;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 요청 이벤트용 고정 크기 MPSC 링 버퍼.
+ * <p>
+ * 이벤트 필드는 미리 할당된 병렬 배열에 저장되므로 offer 시 객체를 만들지 않는다.
+ * 여러 Gatling 스레드가 동시에 {@link #offer} 하고, 하나의 소비 스레드만 {@link #drain} 한다.
+ * 가득 차면 대기하지 않고 이벤트를 버리며 {@link #getDropped()} 로 집계한다.
+ */
+final class RequestEventRing {
+
+    interface Handler {
+        void onEvent(RequestMetrics request, boolean success, long timestampMillis, long responseTimeMicros);
+    }
+
+    private final int capacity;
+    private final int mask;
+
+    private final RequestMetrics[] requests;
+    private final boolean[] successes;
+    private final long[] timestamps;
+    private final long[] responseTimes;
+    // 슬롯별 게시 시퀀스 - 값이 (seq + 1) 이면 seq 번째 이벤트가 기록 완료된 상태
+    private final AtomicLongArray published;
+
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+
+    RequestEventRing(int requestedCapacity) {
+        this.capacity = Integer.highestOneBit(Math.max(2, requestedCapacity - 1)) << 1;
+        this.mask = capacity - 1;
+        this.requests = new RequestMetrics[capacity];
+        this.successes = new boolean[capacity];
+        this.timestamps = new long[capacity];
+        this.responseTimes = new long[capacity];
+        this.published = new AtomicLongArray(capacity);
+    }
+
+    boolean offer(RequestMetrics request, boolean success, long timestampMillis, long responseTimeMicros) {
+        long seq;
+        do {
+            seq = tail.get();
+            if (seq - head.get() >= capacity) {
+                dropped.increment();
+                return false;
+            }
+        } while (!tail.compareAndSet(seq, seq + 1));
+
+        int index = (int) (seq & mask);
+        requests[index] = request;
+        successes[index] = success;
+        timestamps[index] = timestampMillis;
+        responseTimes[index] = responseTimeMicros;
+        published.lazySet(index, seq + 1);
+        return true;
+    }
+
+    /**
+     * 게시된 이벤트를 순서대로 처리한다. 소비 스레드 하나에서만 호출해야 한다.
+     */
+    int drain(Handler handler, int limit) {
+        long seq = head.get();
+        int count = 0;
+        while (count < limit) {
+            int index = (int) (seq & mask);
+            if (published.get(index) != seq + 1) {
+                break;
+            }
+            handler.onEvent(requests[index], successes[index], timestamps[index], responseTimes[index]);
+            requests[index] = null;
+            seq++;
+            count++;
+            head.lazySet(seq);
+        }
+        return count;
+    }
+
+    boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    long getDropped() {
+        return dropped.sum();
+    }
+}
@@ -0,0 +1,11 @@
+package prometheus;
+
+/**
+ * 요청 기록 시점에 호출되는 리스너.
+ * <p>
+ * Gatling 스레드에서 직접 호출되므로 구현체는 블로킹 없이 즉시 반환해야 한다.
+ */
+public interface RequestListener {
+
+    void onRequest(RequestMetrics request, boolean success, long timestampMillis, long responseTimeMicros);
+}
@@ -0,0 +1,280 @@
+package prometheus;
+
+import io.prometheus.metrics.core.datapoints.CounterDataPoint;
+import io.prometheus.metrics.core.datapoints.DistributionDataPoint;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * (simulation, scenario, request) 조합에 대해 미리 해석해 둔 데이터 포인트 핸들.
+ * <p>
+ * {@link GatlingPrometheusMetrics#requestMetrics(String, String, String)} 로 한 번 등록해 두면
+ * 이후 기록은 라벨 조회나 배열 할당 없이 observe/inc 만 수행한다.
+ * 핸들은 실행({@link MetricsRun}) 동안 유지되며, idle-ttl 동안 기록이 없으면 라벨 시리즈만 제거되었다가
+ * 다음 기록에서 다시 만들어진다 - 기록 경로의 추가 비용은 volatile 읽기 네 번이다 ({@link RunSeries}).
+ * 제거와 겹친 기록은 새 시리즈에 다시 기록하며, listener 에는 한 번만 전달한다.
+ */
+public final class RequestMetrics extends RunSeries {
+
+    private static final int MAX_HTTP_STATUS = 600;
+    private static final int MAX_CACHED_ERRORS = 1000;
+
+    private final GatlingPrometheusMetrics owner;
+    private final String simulation;
+    private final String scenario;
+    private final String request;
+
+    // 제거 후 다시 기록되면 reattach() 가 새 데이터 포인트로 바꾼다
+    private DistributionDataPoint okResponseTime;
+    private DistributionDataPoint koResponseTime;
+    private CounterDataPoint okRequests;
+    private CounterDataPoint koRequests;
+    private LatencyWindow latencyWindow;
+    private SlowRequestWindow slowRequests;
+
+    private final ConcurrentHashMap<String, CounterDataPoint> errors = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<CounterDataPoint> httpErrors = new AtomicReferenceArray<>(MAX_HTTP_STATUS);
+    // 제거할 때 필요한 error 라벨 값
+    private final Set<String> errorLabels = ConcurrentHashMap.newKeySet();
+    private volatile CounterDataPoint otherErrors;
+    private CounterDataPoint collapsedErrors;
+    private final NetworkCounters network = new NetworkCounters();
+    // 실행 동안의 누적 KO 수 - 시리즈가 제거되어도 유지된다 (simulation.log 대조용)
+    private final LongAdder koTotal = new LongAdder();
+
+    RequestMetrics(GatlingPrometheusMetrics owner, MetricsRun run, String simulation, String scenario, String request) {
+        super(run);
+        this.owner = owner;
+        this.simulation = simulation;
+        this.scenario = scenario;
+        this.request = request;
+        attachSeries();
+    }
+
+    @Override
+    void attachSeries() {
+        okResponseTime = run.responseTime.labelValues(simulation, scenario, request, "ok");
+        koResponseTime = run.responseTime.labelValues(simulation, scenario, request, "ko");
+        okRequests = run.requests.labelValues(simulation, scenario, request, "ok");
+        koRequests = run.requests.labelValues(simulation, scenario, request, "ko");
+        latencyWindow = owner.createLatencyWindow(simulation, scenario, request);
+        slowRequests = owner.createSlowRequestWindow(simulation, scenario, request);
+    }
+
+    public void record(boolean success, long responseTimeMs) {
+        observe(success, responseTimeMs, responseTimeMs * 1000, null);
+    }
+
+    /**
+     * nanoTime 기반 측정값 기록 - 밀리초 미만 해상도를 유지한다.
+     */
+    public void recordNanos(boolean success, long responseTimeNanos) {
+        observe(success, responseTimeNanos / 1_000_000.0, responseTimeNanos / 1000, null);
+    }
+
+    /**
+     * 현재 구간의 가장 느린 K 개에 들 수 있는 응답 시간인지 - 통과한 경우에만 상세 정보를 만들어
+     * {@link #recordSlow} 로 기록한다. 대부분의 요청은 여기서 volatile 읽기 한 번으로 걸러진다.
+     */
+    boolean isSlowCandidate(long responseTimeMicros) {
+        return slowRequests != null && slowRequests.admits(responseTimeMicros);
+    }
+
+    /**
+     * 상세 정보와 함께 기록 - 히스토그램에 exemplar 로 붙이고 top-K 에 넣는다
+     */
+    void recordSlow(boolean success, long responseTimeNanos, SlowRequestWindow.Sample sample) {
+        observe(success, responseTimeNanos / 1_000_000.0, responseTimeNanos / 1000, sample);
+    }
+
+    private void observe(boolean success, double responseTimeMs, long responseTimeMicros,
+                         SlowRequestWindow.Sample slowSample) {
+        int generation;
+        do {
+            generation = beginRecord();
+            observeSeries(success, responseTimeMs, responseTimeMicros, slowSample);
+        } while (lostDuringRecord(generation));
+        if (!success) {
+            koTotal.increment();
+        }
+        RequestListener[] listeners = owner.requestListeners;
+        if (listeners.length > 0) {
+            long timestampMillis = System.currentTimeMillis();
+            for (RequestListener listener : listeners) {
+                listener.onRequest(this, success, timestampMillis, responseTimeMicros);
+            }
+        }
+    }
+
+    private void observeSeries(boolean success, double responseTimeMs, long responseTimeMicros,
+                               SlowRequestWindow.Sample slowSample) {
+        DistributionDataPoint responseTime = success ? okResponseTime : koResponseTime;
+        if (slowSample != null && slowRequests.offer(slowSample)) {
+            responseTime.observeWithExemplar(responseTimeMs, slowSample.exemplarLabels());
+        } else {
+            responseTime.observe(responseTimeMs);
+        }
+        if (success) {
+            okRequests.inc();
+        } else {
+            koRequests.inc();
+        }
+        if (latencyWindow != null) {
+            latencyWindow.recordMicros(responseTimeMicros);
+        }
+    }
+
+    public void recordError(String errorMessage) {
+        if (errorMessage == null) {
+            errorMessage = "unknown";
+        }
+        int generation;
+        do {
+            generation = beginRecord();
+            CounterDataPoint dataPoint = errors.get(errorMessage);
+            if (dataPoint == null) {
+                dataPoint = resolveError(errorMessage);
+            }
+            incrementError(dataPoint);
+        } while (lostDuringRecord(generation));
+    }
+
+    /**
+     * HTTP 상태 코드 기반 에러 기록 - 라벨은 상태 코드별로 한 번만 만든다.
+     */
+    public void recordHttpError(int status) {
+        if (status < 0 || status >= MAX_HTTP_STATUS) {
+            recordError("HTTP_" + status);
+            return;
+        }
+        int generation;
+        do {
+            generation = beginRecord();
+            CounterDataPoint dataPoint = httpErrors.get(status);
+            if (dataPoint == null) {
+                dataPoint = errorDataPoint(owner.getErrorClassifier().classifyStatus(status));
+                httpErrors.compareAndSet(status, null, dataPoint);
+            }
+            incrementError(dataPoint);
+        } while (lostDuringRecord(generation));
+    }
+
+    private void incrementError(CounterDataPoint dataPoint) {
+        dataPoint.inc();
+        if (dataPoint == otherErrors) {
+            collapsedErrors.inc();
+        }
+    }
+
+    private CounterDataPoint resolveError(String errorMessage) {
+        CounterDataPoint dataPoint = errorDataPoint(owner.getErrorClassifier().classify(errorMessage));
+        // 메시지가 계속 바뀌는 경우 캐시가 무한히 커지지 않도록 제한
+        if (errors.size() < MAX_CACHED_ERRORS) {
+            errors.putIfAbsent(errorMessage, dataPoint);
+        }
+        return dataPoint;
+    }
+
+    private CounterDataPoint errorDataPoint(String label) {
+        if (!ErrorClassifier.OTHER.equals(label)) {
+            errorLabels.add(label);
+            return run.errors.labelValues(simulation, scenario, request, label);
+        }
+        // 상한을 넘은 에러는 'other' 로 합치고 합쳐진 횟수를 따로 센다
+        synchronized (this) {
+            if (otherErrors == null) {
+                errorLabels.add(ErrorClassifier.OTHER);
+                collapsedErrors = run.errorsCollapsed.labelValues(simulation, scenario, request);
+                otherErrors = run.errors.labelValues(simulation, scenario, request, ErrorClassifier.OTHER);
+            }
+            return otherErrors;
+        }
+    }
+
+    /**
+     * 응답의 body 크기와 연결 유지 여부 - prometheusHttp 요청만 기록한다.
+     * 같은 응답의 응답 시간 기록과 함께 호출하므로 유휴 판정은 요청 수로 충분하다.
+     */
+    public void recordNetwork(long requestBodyBytes, long responseBodyBytes, boolean connectionClosed) {
+        int generation;
+        do {
+            generation = beginRecord();
+            network.record(requestBodyBytes, responseBodyBytes, connectionClosed);
+        } while (lostDuringRecord(generation));
+    }
+
+    @Override
+    long sampleCount() {
+        return getOkCount() + getKoCount();
+    }
+
+    /**
+     * 라벨 시리즈, 에러 캐시, 윈도우 제거 - 핸들 자체는 남는다
+     */
+    @Override
+    void removeSeries() {
+        run.responseTime.remove(simulation, scenario, request, "ok");
+        run.responseTime.remove(simulation, scenario, request, "ko");
+        run.requests.remove(simulation, scenario, request, "ok");
+        run.requests.remove(simulation, scenario, request, "ko");
+        for (String label : errorLabels) {
+            run.errors.remove(simulation, scenario, request, label);
+        }
+        if (otherErrors != null) {
+            run.errorsCollapsed.remove(simulation, scenario, request);
+        }
+        errorLabels.clear();
+        errors.clear();
+        for (int status = 0; status < MAX_HTTP_STATUS; status++) {
+            httpErrors.set(status, null);
+        }
+        otherErrors = null;
+        collapsedErrors = null;
+        network.reset();
+        owner.releaseWindows(latencyWindow, slowRequests);
+    }
+
+    /**
+     * 최근 구간 백분위수 조회용 - window 가 비활성화된 경우 null
+     */
+    public LatencyWindow getLatencyWindow() {
+        return latencyWindow;
+    }
+
+    NetworkCounters getNetwork() {
+        return network;
+    }
+
+    /**
+     * 누적 OK/KO 요청 수 - 초 단위 차이를 계산하는 실시간 스트림용
+     */
+    long getOkCount() {
+        return (long) okRequests.get();
+    }
+
+    long getKoCount() {
+        return (long) koRequests.get();
+    }
+
+    /**
+     * 실행 시작부터의 KO 수 - {@link #getKoCount()} 와 달리 유휴 제거로 초기화되지 않는다
+     */
+    long getKoTotal() {
+        return koTotal.sum();
+    }
+
+    public String getSimulation() {
+        return simulation;
+    }
+
+    public String getScenario() {
+        return scenario;
+    }
+
+    public String getRequest() {
+        return request;
+    }
+}
@@ -0,0 +1,226 @@
+package prometheus;
+
+import org.HdrHistogram.IntCountsHistogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link ResultsStoreWriter} 가 기록한 결과 저장소의 오프라인 조회.
+ * <p>
+ * 세그먼트를 메모리 매핑해 코어 수만큼의 스레드가 나눠 스캔하고, (구간, 요청) 마다 히스토그램을 만든 뒤 합친다.
+ * 백분위수는 유효 숫자 2자리(상대 오차 약 1%) 히스토그램으로 계산한다.
+ * <pre>
+ * ./gradlew queryResults -PqueryArgs="build/results-store/smokesimulation-20250101-120000 --window=10s"
+ * </pre>
+ */
+public final class ResultsQuery {
+
+    private static final int SIGNIFICANT_DIGITS = 2;
+
+    public record Label(String simulation, String scenario, String request) {
+    }
+
+    public record WindowStats(long windowStartMillis, Label label, long count, long ko, double rps,
+                              double p50, double p95, double p99, double max) {
+    }
+
+    private final List<Label> labels;
+    private final List<ResultsSegment> segments;
+    private final long runStartMillis;
+
+    private ResultsQuery(List<Label> labels, List<ResultsSegment> segments) {
+        this.labels = labels;
+        this.segments = segments;
+        this.runStartMillis = segments.isEmpty() ? 0 : segments.get(0).getBaseTimestampMillis();
+    }
+
+    public static ResultsQuery open(Path runDirectory) throws IOException {
+        List<Label> labels = new ArrayList<>();
+        for (String line : Files.readAllLines(runDirectory.resolve(ResultsStoreWriter.LABELS_FILE), StandardCharsets.UTF_8)) {
+            String[] fields = line.split("\t", 4);
+            if (fields.length == 4) {
+                labels.add(new Label(fields[1], fields[2], fields[3]));
+            }
+        }
+
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(runDirectory,
+                ResultsStoreWriter.SEGMENT_PREFIX + "*" + ResultsStoreWriter.SEGMENT_SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        files.sort(null);
+        List<ResultsSegment> segments = new ArrayList<>(files.size());
+        for (Path file : files) {
+            segments.add(ResultsSegment.open(file));
+        }
+        return new ResultsQuery(labels, segments);
+    }
+
+    public long getRowCount() {
+        long rows = 0;
+        for (ResultsSegment segment : segments) {
+            rows += segment.getRows();
+        }
+        return rows;
+    }
+
+    /**
+     * 구간별, 요청별 응답 시간 백분위수(ms)와 RPS.
+     *
+     * @param request 요청 이름 필터, null 이면 전체
+     */
+    public List<WindowStats> windows(long windowMillis, String request) throws IOException {
+        boolean[] included = new boolean[labels.size()];
+        for (int i = 0; i < labels.size(); i++) {
+            included[i] = request == null || labels.get(i).request().equals(request);
+        }
+
+        int threads = Math.max(1, Math.min(segments.size(), Runtime.getRuntime().availableProcessors()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Map<Long, WindowAccumulator> merged = new HashMap<>();
+        try {
+            AtomicInteger nextSegment = new AtomicInteger();
+            List<Future<Map<Long, WindowAccumulator>>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    Map<Long, WindowAccumulator> partial = new HashMap<>();
+                    int index;
+                    while ((index = nextSegment.getAndIncrement()) < segments.size()) {
+                        scan(segments.get(index), windowMillis, included, partial);
+                    }
+                    return partial;
+                }));
+            }
+            for (Future<Map<Long, WindowAccumulator>> future : futures) {
+                future.get().forEach((key, accumulator) -> merged.merge(key, accumulator, WindowAccumulator::add));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while scanning results", e);
+        } catch (Exception e) {
+            throw new IOException("Failed to scan results: " + e.getMessage(), e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        int labelCount = Math.max(1, labels.size());
+        List<Long> keys = new ArrayList<>(merged.keySet());
+        keys.sort(null);
+        List<WindowStats> result = new ArrayList<>(keys.size());
+        for (long key : keys) {
+            WindowAccumulator accumulator = merged.get(key);
+            IntCountsHistogram histogram = accumulator.histogram;
+            long window = key / labelCount;
+            result.add(new WindowStats(runStartMillis + window * windowMillis, labels.get((int) (key % labelCount)),
+                    histogram.getTotalCount(), accumulator.ko,
+                    histogram.getTotalCount() * 1000.0 / windowMillis,
+                    histogram.getValueAtPercentile(50) / 1000.0,
+                    histogram.getValueAtPercentile(95) / 1000.0,
+                    histogram.getValueAtPercentile(99) / 1000.0,
+                    histogram.getMaxValue() / 1000.0));
+        }
+        return result;
+    }
+
+    // 행은 대부분 시간순이므로 요청별 현재 구간을 기억해 두고 구간이 바뀔 때만 맵을 조회한다
+    private void scan(ResultsSegment segment, long windowMillis, boolean[] included,
+                      Map<Long, WindowAccumulator> partial) {
+        int labelCount = Math.max(1, labels.size());
+        long[] currentWindow = new long[labelCount];
+        Arrays.fill(currentWindow, -1);
+        WindowAccumulator[] current = new WindowAccumulator[labelCount];
+
+        int rows = segment.getRows();
+        for (int row = 0; row < rows; row++) {
+            int requestId = segment.requestId(row);
+            if (requestId < 0 || requestId >= labelCount || !included[requestId]) {
+                continue;
+            }
+            long window = Math.max(0, segment.timestamp(row) - runStartMillis) / windowMillis;
+            WindowAccumulator accumulator = current[requestId];
+            if (currentWindow[requestId] != window) {
+                accumulator = partial.computeIfAbsent(window * labelCount + requestId, key -> new WindowAccumulator());
+                current[requestId] = accumulator;
+                currentWindow[requestId] = window;
+            }
+            accumulator.histogram.recordValue(segment.latencyMicros(row));
+            if (!segment.success(row)) {
+                accumulator.ko++;
+            }
+        }
+    }
+
+    private static final class WindowAccumulator {
+        final IntCountsHistogram histogram = new IntCountsHistogram(SIGNIFICANT_DIGITS);
+        long ko;
+
+        WindowAccumulator add(WindowAccumulator other) {
+            histogram.add(other.histogram);
+            ko += other.ko;
+            return this;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: ResultsQuery <run-directory> [--window=10s] [--request=<name>]");
+            System.exit(1);
+        }
+        Path runDirectory = Paths.get(args[0]);
+        long windowMillis = 10_000;
+        String request = null;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].startsWith("--window=")) {
+                windowMillis = parseDuration(args[i].substring("--window=".length()));
+            } else if (args[i].startsWith("--request=")) {
+                request = args[i].substring("--request=".length());
+            } else {
+                System.err.println("Unknown option: " + args[i]);
+                System.exit(1);
+            }
+        }
+
+        long start = System.nanoTime();
+        ResultsQuery query = open(runDirectory);
+        List<WindowStats> windows = query.windows(windowMillis, request);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        PrintStream out = System.out;
+        out.println("window_start,scenario,request,count,ko,rps,p50_ms,p95_ms,p99_ms,max_ms");
+        for (WindowStats stats : windows) {
+            out.printf("%s,%s,%s,%d,%d,%.1f,%.2f,%.2f,%.2f,%.2f%n",
+                    Instant.ofEpochMilli(stats.windowStartMillis()), stats.label().scenario(), stats.label().request(),
+                    stats.count(), stats.ko(), stats.rps(), stats.p50(), stats.p95(), stats.p99(), stats.max());
+        }
+        System.err.println(query.getRowCount() + " rows scanned in " + elapsedMillis + "ms");
+    }
+
+    private static long parseDuration(String value) {
+        if (value.endsWith("ms")) {
+            return Long.parseLong(value.substring(0, value.length() - 2));
+        }
+        if (value.endsWith("s")) {
+            return Long.parseLong(value.substring(0, value.length() - 1)) * 1000;
+        }
+        if (value.endsWith("m")) {
+            return Long.parseLong(value.substring(0, value.length() - 1)) * 60_000;
+        }
+        return Long.parseLong(value);
+    }
+}
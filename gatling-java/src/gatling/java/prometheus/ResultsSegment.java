@@ -0,0 +1,129 @@
+package prometheus;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 요청 결과 저장소의 세그먼트 파일 하나 (메모리 매핑, 컬럼 단위 고정 폭).
+ * <pre>
+ * header (64 bytes) : magic(int) version(int) capacity(int) rows(int) baseTimestampMillis(long)
+ * timestamp column  : int[capacity]  baseTimestampMillis 기준 ms
+ * request column    : int[capacity]  labels.tsv 의 요청 id
+ * status column     : byte[capacity] 1 = OK, 0 = KO
+ * latency column    : int[capacity]  응답 시간 µs
+ * </pre>
+ * 헤더의 rows 는 writer 가 배치를 쓸 때마다 갱신하므로 실행 중인 세그먼트도 그때까지의 행을 읽을 수 있다.
+ * 읽기는 절대 위치 조회만 사용하므로 여러 스레드에서 동시에 읽어도 된다.
+ */
+final class ResultsSegment {
+
+    static final int MAGIC = 0x47525331; // "GRS1"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 64;
+    static final int ROW_SIZE = 4 + 4 + 1 + 4;
+
+    private static final int ROWS_OFFSET = 12;
+    private static final int BASE_TIMESTAMP_OFFSET = 16;
+
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final long baseTimestampMillis;
+    private final int timestampColumn;
+    private final int requestColumn;
+    private final int statusColumn;
+    private final int latencyColumn;
+    private int rows;
+
+    private ResultsSegment(MappedByteBuffer buffer, int capacity, long baseTimestampMillis, int rows) {
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.baseTimestampMillis = baseTimestampMillis;
+        this.rows = rows;
+        this.timestampColumn = HEADER_SIZE;
+        this.requestColumn = timestampColumn + capacity * 4;
+        this.statusColumn = requestColumn + capacity * 4;
+        this.latencyColumn = statusColumn + capacity;
+    }
+
+    static ResultsSegment create(Path file, int capacity, long baseTimestampMillis) throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // 매핑은 채널을 닫은 뒤에도 유효하다
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    HEADER_SIZE + (long) capacity * ROW_SIZE);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, capacity);
+            buffer.putInt(ROWS_OFFSET, 0);
+            buffer.putLong(BASE_TIMESTAMP_OFFSET, baseTimestampMillis);
+            return new ResultsSegment(buffer, capacity, baseTimestampMillis, 0);
+        }
+    }
+
+    static ResultsSegment open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Not a results segment (or unsupported version): " + file);
+            }
+            int capacity = buffer.getInt(8);
+            return new ResultsSegment(buffer, capacity, buffer.getLong(BASE_TIMESTAMP_OFFSET),
+                    buffer.getInt(ROWS_OFFSET));
+        }
+    }
+
+    boolean isFull() {
+        return rows == capacity;
+    }
+
+    /**
+     * 한 행 추가 - 가득 찬 경우 false. 헤더의 행 수는 {@link #commit()} 에서 갱신된다.
+     */
+    boolean append(long timestampMillis, int requestId, boolean success, long latencyMicros) {
+        if (rows == capacity) {
+            return false;
+        }
+        int row = rows++;
+        buffer.putInt(timestampColumn + row * 4, (int) (timestampMillis - baseTimestampMillis));
+        buffer.putInt(requestColumn + row * 4, requestId);
+        buffer.put(statusColumn + row, (byte) (success ? 1 : 0));
+        buffer.putInt(latencyColumn + row * 4, (int) Math.min(Integer.MAX_VALUE, Math.max(0, latencyMicros)));
+        return true;
+    }
+
+    void commit() {
+        buffer.putInt(ROWS_OFFSET, rows);
+    }
+
+    void force() {
+        commit();
+        buffer.force();
+    }
+
+    int getRows() {
+        return rows;
+    }
+
+    long getBaseTimestampMillis() {
+        return baseTimestampMillis;
+    }
+
+    long timestamp(int row) {
+        return baseTimestampMillis + buffer.getInt(timestampColumn + row * 4);
+    }
+
+    int requestId(int row) {
+        return buffer.getInt(requestColumn + row * 4);
+    }
+
+    boolean success(int row) {
+        return buffer.get(statusColumn + row) != 0;
+    }
+
+    int latencyMicros(int row) {
+        return buffer.getInt(latencyColumn + row * 4);
+    }
+}
@@ -0,0 +1,187 @@
+package prometheus;
+
+import io.prometheus.metrics.core.metrics.CounterWithCallback;
+import io.prometheus.metrics.model.registry.PrometheusRegistry;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 모든 요청 샘플을 고정 폭 바이너리 행으로 기록하는 결과 저장소 writer.
+ * <p>
+ * Gatling 스레드는 {@link RequestEventRing} 에 이벤트를 넣기만 하고, 전용 스레드가 메모리 매핑된
+ * {@link ResultsSegment} 에 컬럼 단위로 쓴다. 세그먼트가 가득 차면 다음 세그먼트 파일을 만든다.
+ * 요청 라벨은 처음 나올 때 id 를 부여해 {@code labels.tsv} 에 한 줄씩 추가한다.
+ * <pre>
+ * {directory}/{simulation}-{yyyyMMdd-HHmmss}/
+ *   labels.tsv              id \t simulation \t scenario \t request
+ *   segment-000000.col ...
+ * </pre>
+ * 조회는 {@link ResultsQuery} 로 한다.
+ */
+final class ResultsStoreWriter implements RequestListener {
+
+    static final String LABELS_FILE = "labels.tsv";
+    static final String SEGMENT_PREFIX = "segment-";
+    static final String SEGMENT_SUFFIX = ".col";
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    private static final DateTimeFormatter RUN_DIRECTORY_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final PrometheusConfig config;
+    private final RequestEventRing ring;
+
+    // 아래 필드는 writer 스레드에서만 접근
+    private final Map<RequestMetrics, Integer> requestIds = new IdentityHashMap<>();
+    private Path runDirectory;
+    private BufferedWriter labels;
+    private ResultsSegment segment;
+    private int segmentIndex;
+    private volatile long rowsWritten;
+
+    private volatile boolean running;
+    private volatile Thread writerThread;
+
+    ResultsStoreWriter(PrometheusConfig config, PrometheusRegistry registry) {
+        this.config = config;
+        this.ring = new RequestEventRing(config.getResultsStoreRingCapacity());
+
+        CounterWithCallback.builder()
+                .name("gatling_results_store_rows_total")
+                .help("Request samples written to the binary results store")
+                .callback(callback -> callback.call(rowsWritten))
+                .register(registry);
+
+        CounterWithCallback.builder()
+                .name("gatling_results_store_dropped_events_total")
+                .help("Request samples dropped because the results store ring buffer was full")
+                .callback(callback -> callback.call(ring.getDropped()))
+                .register(registry);
+    }
+
+    @Override
+    public void onRequest(RequestMetrics request, boolean success, long timestampMillis, long responseTimeMicros) {
+        ring.offer(request, success, timestampMillis, responseTimeMicros);
+    }
+
+    synchronized void start(String simulation) throws IOException {
+        if (running) {
+            return;
+        }
+        runDirectory = Paths.get(config.getResultsStoreDirectory(),
+                simulation.toLowerCase() + "-" + LocalDateTime.now().format(RUN_DIRECTORY_FORMAT));
+        Files.createDirectories(runDirectory);
+        labels = Files.newBufferedWriter(runDirectory.resolve(LABELS_FILE), StandardCharsets.UTF_8);
+        requestIds.clear();
+        segment = null;
+        segmentIndex = 0;
+
+        running = true;
+        Thread thread = new Thread(this::runLoop, "prometheus-results-store");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        writerThread = thread;
+        thread.start();
+        System.out.println("✓ Results store started: " + runDirectory.toAbsolutePath());
+    }
+
+    /**
+     * 남은 이벤트를 모두 기록하고 세그먼트를 디스크에 반영한 뒤 종료한다.
+     */
+    synchronized void stop() {
+        Thread thread = writerThread;
+        if (!running || thread == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writerThread = null;
+        System.out.println("Results store stopped (" + rowsWritten + " rows in " + runDirectory + ")");
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    private void runLoop() {
+        try {
+            while (running) {
+                int drained = ring.drain(this::append, 8192);
+                if (drained > 0) {
+                    commit();
+                } else {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+            }
+            while (ring.drain(this::append, Integer.MAX_VALUE) > 0) {
+                // drain all
+            }
+            commit();
+            if (segment != null) {
+                segment.force();
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Results store writer failed: " + e.getMessage());
+        } finally {
+            try {
+                labels.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    private void append(RequestMetrics request, boolean success, long timestampMillis, long responseTimeMicros) {
+        try {
+            if (segment == null || segment.isFull()) {
+                nextSegment(timestampMillis);
+            }
+            segment.append(timestampMillis, requestId(request), success, responseTimeMicros);
+            rowsWritten++;
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write results segment", e);
+        }
+    }
+
+    private void nextSegment(long baseTimestampMillis) throws IOException {
+        if (segment != null) {
+            segment.force();
+        }
+        Path file = runDirectory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, segmentIndex++, SEGMENT_SUFFIX));
+        segment = ResultsSegment.create(file, config.getResultsStoreSegmentRows(), baseTimestampMillis);
+    }
+
+    private int requestId(RequestMetrics request) throws IOException {
+        Integer id = requestIds.get(request);
+        if (id == null) {
+            id = requestIds.size();
+            requestIds.put(request, id);
+            labels.write(id + "\t" + request.getSimulation() + "\t" + request.getScenario() + "\t" + request.getRequest());
+            labels.newLine();
+        }
+        return id;
+    }
+
+    // 라벨을 먼저 flush 해야 세그먼트의 id 를 읽는 쪽이 항상 라벨을 찾을 수 있다
+    private void commit() throws IOException {
+        labels.flush();
+        if (segment != null) {
+            segment.commit();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package prometheus;
+
+/**
+ * 실행({@link MetricsRun}) 동안 유지되는 라벨 시리즈 핸들의 공통 부분 - 유휴 제거와 다음 기록 시 재생성.
+ * <p>
+ * 하위 클래스는 데이터 포인트를 필드에 미리 해석해 두고 ({@link #attachSeries()}), 기록을
+ * {@code do { generation = beginRecord(); ... } while (lostDuringRecord(generation));} 로 감싼다.
+ * sweep 스레드는 {@link #sampleCount()} 가 idle-ttl 동안 그대로인 핸들의 라벨 시리즈를 제거하며
+ * ({@link #removeSeries()}), 핸들 자체는 남는다.
+ * <p>
+ * 기록 경로는 잠그지 않으므로 제거와 겹친 기록은 제거된 데이터 포인트에 들어가 사라질 수 있다.
+ * sweep 은 {@code evicted} 를 먼저 쓰고 기록 수를 다시 읽어 그 사이의 기록이 보이면 제거를 취소하고,
+ * 기록 쪽은 기록 후 {@code evicted} 와 세대를 다시 읽어 제거가 끝났으면 새 시리즈에 다시 기록한다.
+ * 둘 중 하나는 반드시 상대를 보므로 (volatile 순서) 샘플이 사라지지 않는다.
+ */
+abstract class RunSeries {
+
+    final MetricsRun run;
+
+    // 제거 후 다시 기록되면 reattach() 가 새 데이터 포인트로 바꾼다 (evicted 의 volatile 쓰기로 게시)
+    volatile boolean evicted;
+
+    // 시리즈를 제거할 때마다 증가 - 기록하는 사이 제거되었는지 판별한다
+    private volatile int generation;
+
+    // sweep 스레드에서만 접근
+    private long lastSeenCount = -1;
+    private long idleSinceMillis;
+
+    RunSeries(MetricsRun run) {
+        this.run = run;
+    }
+
+    /**
+     * 데이터 포인트를 해석해 필드에 보관
+     */
+    abstract void attachSeries();
+
+    /**
+     * 라벨 시리즈와 캐시 제거
+     */
+    abstract void removeSeries();
+
+    /**
+     * 누적 기록 수 - sweep 사이에 그대로면 유휴
+     */
+    abstract long sampleCount();
+
+    /**
+     * 기록이 없어도 제거하면 안 되는 상태인지 (예: 활성 사용자가 남은 시나리오)
+     */
+    boolean isInUse() {
+        return false;
+    }
+
+    /**
+     * 기록 시작 - 제거된 상태면 새 데이터 포인트로 바꾼다
+     *
+     * @return 이번 기록이 쓰는 데이터 포인트의 세대 - 기록 후 {@link #lostDuringRecord(int)} 에 넘긴다
+     */
+    final int beginRecord() {
+        int current = generation;
+        if (evicted) {
+            reattach();
+            current = generation;
+        }
+        return current;
+    }
+
+    /**
+     * 기록 후 확인 - 기록하는 사이 시리즈가 제거되었으면 그 샘플은 사라졌으므로 호출자가 다시 기록한다
+     */
+    final boolean lostDuringRecord(int recordedGeneration) {
+        if (evicted) {
+            // 진행 중인 제거가 끝날 때까지 기다린 뒤 새 데이터 포인트로 바꾼다
+            reattach();
+        }
+        return generation != recordedGeneration;
+    }
+
+    final synchronized void reattach() {
+        // 끝난 실행의 시리즈는 다시 만들지 않는다
+        if (evicted && !run.isCompleted()) {
+            attachSeries();
+            evicted = false;
+        }
+    }
+
+    /**
+     * 마지막 sweep 이후 기록 수가 그대로인 채 idle-ttl 이 지났으면 시리즈를 제거한다
+     */
+    final boolean evictIfIdle(long nowMillis, long idleTtlMillis) {
+        if (evicted) {
+            return false;
+        }
+        long count = sampleCount();
+        if (count != lastSeenCount || isInUse()) {
+            lastSeenCount = count;
+            idleSinceMillis = nowMillis;
+            return false;
+        }
+        if (nowMillis - idleSinceMillis < idleTtlMillis) {
+            return false;
+        }
+        return evictIfUnchanged(count);
+    }
+
+    private synchronized boolean evictIfUnchanged(long count) {
+        if (evicted) {
+            return false;
+        }
+        // 먼저 게시한 뒤 다시 센다 - 그 사이의 기록은 여기서 보이거나, 기록 쪽이 evicted 를 보고 다시 기록한다
+        evicted = true;
+        if (sampleCount() != count || isInUse()) {
+            evicted = false;
+            return false;
+        }
+        generation++;
+        removeSeries();
+        return true;
+    }
+
+    final synchronized void evict() {
+        if (evicted) {
+            return;
+        }
+        evicted = true;
+        generation++;
+        removeSeries();
+    }
+}
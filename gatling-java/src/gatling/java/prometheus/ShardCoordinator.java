@@ -0,0 +1,312 @@
+package prometheus;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 한 시뮬레이션을 N 개의 로컬 인젝터 JVM 으로 나눠 실행하고 메트릭을 하나로 합쳐 노출한다.
+ * <p>
+ * 각 JVM 은 {@code -Dprometheus.shard.index/count/node} 와 자기 포트(port + 1 + index)를 받아 실행되며,
+ * {@link PrometheusSimulation#shardRate(double)} / {@link PrometheusSimulation#shardUsers(int)} 로
+ * 주입 프로파일의 자기 몫만 주입한다. 코디네이터는 설정된 port(기본 9102)에서
+ * <ul>
+ *     <li>/metrics       : 노드 exposition 을 합친 결과 ({@link ExpositionMerger}) - 기존 대시보드가 그대로 보는 값</li>
+ *     <li>/metrics/nodes : 노드별 exposition 에 node 라벨을 붙인 원본</li>
+ * </ul>
+ * 를 서빙한다. 끝난 노드의 마지막 스냅샷은 계속 합산하므로 counter 가 되돌아가지 않는다.
+ * 노드별 simulation.log 와 결과 저장소는 {@code {dir}/{node}} 로 나뉘고, 회귀 게이트는 노드 단위 판정이 의미 없으므로 끈다.
+ * 코디네이터가 중단되면 (Ctrl+C, Gradle 태스크 취소, 인터럽트) 남은 인젝터 JVM 을 종료한다 - 먼저 정상 종료를 요청하고
+ * {@value #NODE_STOP_TIMEOUT_SECONDS} 초 안에 끝나지 않으면 강제 종료한다.
+ * <pre>
+ * ./gradlew gatlingShardedRun -Psimulation=simulations.SmokeSimulation -Pshards=4
+ * </pre>
+ */
+public final class ShardCoordinator {
+
+    private static final String GATLING_MAIN = "io.gatling.app.Gatling";
+    private static final long NODE_STOP_TIMEOUT_SECONDS = 10;
+    private static final List<String> DEFAULT_JVM_ARGS = List.of("-server", "-Xmx1G", "-XX:+UseG1GC",
+            "-XX:+ParallelRefProcEnabled", "-XX:MaxInlineLevel=20", "-XX:MaxTrivialSize=12");
+
+    private final PrometheusConfig config;
+    private final String simulationClass;
+    private final String runId;
+    private final int shards;
+    private final List<String> jvmArgs;
+    private final List<String> nodeNames = new ArrayList<>();
+    private final List<Integer> nodePorts = new ArrayList<>();
+    // 노드별 마지막 스냅샷 - 스크래핑 스레드만 쓰고 HTTP 스레드는 읽기만 한다
+    private final List<Map<String, ExpositionMerger.Family>> snapshots = new ArrayList<>();
+    private final long[] scrapeFailures;
+    private final boolean[] nodeUp;
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+    private volatile String merged = "";
+    private volatile String perNode = "";
+    private final FinalScrape finalScrape = new FinalScrape();
+
+    private ShardCoordinator(PrometheusConfig config, String simulationClass, int shards, List<String> jvmArgs) {
+        this.config = config;
+        this.simulationClass = simulationClass;
+        // 노드 시리즈가 합쳐지도록 모든 인젝터 JVM 이 같은 run_id 를 쓴다
+        this.runId = MetricsRun.runId(config, simulationClass.substring(simulationClass.lastIndexOf('.') + 1));
+        this.shards = shards;
+        this.jvmArgs = jvmArgs;
+        this.scrapeFailures = new long[shards];
+        this.nodeUp = new boolean[shards];
+        for (int i = 0; i < shards; i++) {
+            nodeNames.add("node-" + i);
+            nodePorts.add(config.getPort() + 1 + i);
+            snapshots.add(Map.of());
+        }
+    }
+
+    private int run() throws IOException, InterruptedException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(config.getPort()), 16);
+        server.createContext("/metrics", exchange -> {
+            long startedNanos = System.nanoTime();
+            respond(exchange, exchange.getRequestURI().getPath().startsWith("/metrics/nodes") ? perNode : merged);
+            finalScrape.scrapeCompleted(startedNanos);
+        });
+        server.setExecutor(Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "shard-coordinator-http");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        server.start();
+        System.out.println("✓ Shard coordinator started: " + shards + " injector JVMs for " + simulationClass
+                + " (run " + runId + ")");
+        System.out.println("  Merged metrics at: http://localhost:" + config.getPort() + "/metrics");
+
+        // 코디네이터가 끝나기 전에 JVM 이 종료되면 (SIGINT/SIGTERM) 노드가 고아로 남지 않도록 한다
+        List<Process> processes = new CopyOnWriteArrayList<>();
+        Thread shutdownHook = new Thread(() -> {
+            System.out.println("Shutdown hook triggered - stopping injector JVMs...");
+            stopNodes(processes);
+        }, "shard-coordinator-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+        try {
+            return awaitNodes(server, processes);
+        } finally {
+            // 인터럽트나 실행 실패로 빠져나온 경우에도 남은 노드를 정리한다
+            stopNodes(processes);
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // 이미 종료 중 - hook 이 정리한다
+            }
+        }
+    }
+
+    private int awaitNodes(HttpServer server, List<Process> processes) throws IOException, InterruptedException {
+        for (int i = 0; i < shards; i++) {
+            processes.add(launch(i));
+        }
+
+        ScheduledExecutorService scraper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "shard-coordinator-scrape");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = config.getShardScrapeIntervalMillis();
+        scraper.scheduleWithFixedDelay(this::scrapeAll, interval, interval, TimeUnit.MILLISECONDS);
+
+        int exitCode = 0;
+        for (int i = 0; i < processes.size(); i++) {
+            int code = processes.get(i).waitFor();
+            if (code != 0) {
+                System.err.println("[" + nodeNames.get(i) + "] exited with code " + code);
+                exitCode = code;
+            }
+        }
+
+        // 노드는 고정한 최종 스냅샷을 코디네이터가 스크래핑한 뒤 종료하므로, 마지막 스냅샷은 이미 반영되어 있다
+        scraper.shutdown();
+        scraper.awaitTermination(5, TimeUnit.SECONDS);
+        finalScrape.freeze();
+        System.out.println("All injector JVMs finished, waiting for the final merged snapshot to be scraped...");
+        if (finalScrape.await(config.getFinalScrapeTimeoutMillis())) {
+            System.out.println("✓ Final merged snapshot scraped");
+        } else if (finalScrape.wasScraped()) {
+            System.err.println("Final merged snapshot was not scraped within " + config.getFinalScrapeTimeoutMillis() + " ms");
+        }
+        server.stop(0);
+        return exitCode;
+    }
+
+    /**
+     * 살아 있는 노드에 정상 종료를 요청하고, 제한 시간 안에 끝나지 않은 노드는 강제 종료한다
+     */
+    private void stopNodes(List<Process> processes) {
+        List<Process> alive = new ArrayList<>();
+        for (Process process : processes) {
+            if (process.isAlive()) {
+                process.destroy();
+                alive.add(process);
+            }
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(NODE_STOP_TIMEOUT_SECONDS);
+        for (Process process : alive) {
+            try {
+                long remaining = deadline - System.nanoTime();
+                if (remaining > 0 && process.waitFor(remaining, TimeUnit.NANOSECONDS)) {
+                    continue;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            System.err.println("Injector JVM pid " + process.pid() + " did not stop within "
+                    + NODE_STOP_TIMEOUT_SECONDS + " s, killing it");
+            process.destroyForcibly();
+        }
+    }
+
+    private Process launch(int index) throws IOException {
+        String node = nodeNames.get(index);
+        String resultsDirectory = Paths.get(config.getTailResultsDirectory(), "shards", node).toString();
+
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmArgs);
+        // 코디네이터에 준 prometheus.* / gatling.* 설정은 그대로 전달하고, 노드별 값으로 덮어쓴다
+        System.getProperties().forEach((key, value) -> {
+            String name = key.toString();
+            if (name.startsWith("prometheus.") || name.startsWith("gatling.") || name.startsWith("capacity.")) {
+                command.add("-D" + name + "=" + value);
+            }
+        });
+        command.add("-Dprometheus.port=" + nodePorts.get(index));
+        command.add("-Dprometheus.shard.index=" + index);
+        command.add("-Dprometheus.shard.count=" + shards);
+        command.add("-Dprometheus.shard.node=" + node);
+        command.add("-Dprometheus.run.id=" + runId);
+        command.add("-Dprometheus.tail.results-directory=" + resultsDirectory);
+        command.add("-Dprometheus.results-store.directory="
+                + Paths.get(config.getResultsStoreDirectory(), node));
+        command.add("-Dprometheus.regression.enabled=false");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(GATLING_MAIN);
+        command.add("-s");
+        command.add(simulationClass);
+        command.add("-rf");
+        command.add(resultsDirectory);
+
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        Thread output = new Thread(() -> prefixOutput(node, process), "shard-" + node + "-output");
+        output.setDaemon(true);
+        output.start();
+        System.out.println("  " + node + " started (pid " + process.pid() + ", metrics port " + nodePorts.get(index) + ")");
+        return process;
+    }
+
+    private static void prefixOutput(String node, Process process) {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                System.out.println("[" + node + "] " + line);
+            }
+        } catch (IOException e) {
+            // 프로세스 종료
+        }
+    }
+
+    private void scrapeAll() {
+        for (int i = 0; i < shards; i++) {
+            HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + nodePorts.get(i) + "/metrics"))
+                    .header("Accept", "text/plain")
+                    .timeout(Duration.ofSeconds(2))
+                    .build();
+            try {
+                HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                if (response.statusCode() == 200) {
+                    snapshots.set(i, ExpositionMerger.parse(response.body()));
+                    nodeUp[i] = true;
+                    continue;
+                }
+            } catch (IOException e) {
+                // 아직 시작 전이거나 이미 종료 - 마지막 스냅샷 유지
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            nodeUp[i] = false;
+            scrapeFailures[i]++;
+        }
+
+        StringBuilder out = new StringBuilder(64 * 1024);
+        ExpositionMerger.write(out, ExpositionMerger.merge(snapshots));
+        out.append("# HELP gatling_shard_node_up Whether the last scrape of the injector JVM succeeded\n");
+        out.append("# TYPE gatling_shard_node_up gauge\n");
+        for (int i = 0; i < shards; i++) {
+            out.append("gatling_shard_node_up{node=\"").append(nodeNames.get(i)).append("\"} ")
+                    .append(nodeUp[i] ? 1 : 0).append('\n');
+        }
+        out.append("# HELP gatling_shard_scrape_failures_total Failed scrapes of the injector JVM\n");
+        out.append("# TYPE gatling_shard_scrape_failures_total counter\n");
+        for (int i = 0; i < shards; i++) {
+            out.append("gatling_shard_scrape_failures_total{node=\"").append(nodeNames.get(i)).append("\"} ")
+                    .append(scrapeFailures[i]).append('\n');
+        }
+        merged = out.toString();
+
+        StringBuilder nodes = new StringBuilder(64 * 1024);
+        ExpositionMerger.writeWithNodeLabel(nodes, nodeNames, snapshots);
+        perNode = nodes.toString();
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        try {
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Usage: ShardCoordinator <simulation-class> [--shards=N] [--jvm-args=\"-Xmx2G ...\"]");
+            System.exit(1);
+        }
+        String simulationClass = args[0];
+        int shards = Math.max(1, Runtime.getRuntime().availableProcessors() / 4);
+        List<String> jvmArgs = DEFAULT_JVM_ARGS;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].startsWith("--shards=")) {
+                shards = Math.max(1, Integer.parseInt(args[i].substring("--shards=".length())));
+            } else if (args[i].startsWith("--jvm-args=")) {
+                String value = args[i].substring("--jvm-args=".length()).trim();
+                jvmArgs = value.isEmpty() ? List.of() : List.of(value.split("\\s+"));
+            } else {
+                System.err.println("Unknown option: " + args[i]);
+                System.exit(1);
+            }
+        }
+        System.exit(new ShardCoordinator(PrometheusConfig.load(), simulationClass, shards, jvmArgs).run());
+    }
+}
@@ -0,0 +1,234 @@
+package prometheus;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Gatling 3.10+ 바이너리 simulation.log 디코더.
+ * <p>
+ * 포맷은 Gatling 내부 구현(LogFileDataWriter)이므로 헤더의 Gatling 버전이 {@link #SUPPORTED_VERSION_PREFIXES} 에
+ * 없으면 읽지 않는다. 레코드 구조 (big-endian, 타임스탬프는 실행 시작 기준 상대 ms):
+ * <pre>
+ * Run     : 0, version, simulationClass, start(long), description, scenarios[], assertions[]
+ * Request : 1, groups[cached], name(cached), start(int), end(int), ok(bool), message(cached)
+ * User    : 2, scenarioIndex(int), start(bool), timestamp(int)
+ * Group   : 3, groups[cached], start(int), end(int), cumulatedResponseTime(int), ok(bool)
+ * Error   : 4, message(cached), timestamp(int)
+ * </pre>
+ * 문자열은 {@code length(int) bytes coder(byte)} 로 기록되고, 반복되는 문자열은 처음 한 번만 본문이 쓰인 뒤
+ * 인덱스로만 참조된다. 따라서 디코딩된 문자열은 값마다 한 번만 할당된다.
+ * <p>
+ * 파일 끝에서 레코드가 잘린 경우 {@link #read} 는 해당 레코드 시작 위치로 되돌아가 다음 호출에서 이어 읽는다.
+ * 한 인스턴스는 하나의 스레드에서만 사용해야 한다.
+ */
+final class SimulationLogReader {
+
+    static final String[] SUPPORTED_VERSION_PREFIXES = {"3.10", "3.11", "3.12", "3.13", "3.14"};
+
+    private static final byte RUN = 0;
+    private static final byte REQUEST = 1;
+    private static final byte USER = 2;
+    private static final byte GROUP = 3;
+    private static final byte ERROR = 4;
+
+    private static final byte CODER_LATIN1 = 0;
+
+    interface Handler {
+        void onRun(String gatlingVersion, String simulationClass, long startMillis, List<String> scenarios);
+
+        void onUser(int scenarioIndex, boolean start, int timestamp);
+
+        /**
+         * @param groups 상위 그룹 이름의 캐시 인덱스 - 호출이 끝나면 재사용되므로 보관하면 안 된다
+         */
+        void onRequest(int[] groups, int groupCount, int nameIndex, int start, int end, boolean ok, int messageIndex);
+    }
+
+    /**
+     * 지원하지 않는 버전이거나 레코드 구조가 예상과 다른 경우.
+     */
+    static final class FormatException extends Exception {
+        FormatException(String message) {
+            super(message);
+        }
+    }
+
+    // 레코드가 버퍼 끝에서 잘렸음을 알리는 신호 - 스택 트레이스 없이 재사용
+    private static final RuntimeException UNDERFLOW = new RuntimeException("underflow", null, false, false) {
+    };
+
+    private final List<String> strings = new ArrayList<>();
+    private int[] groups = new int[8];
+    private boolean headerRead;
+
+    /**
+     * 버퍼의 완전한 레코드를 모두 처리하고, 잘린 레코드는 position 을 그 시작으로 남긴다.
+     *
+     * @return 처리한 레코드 수
+     */
+    int read(ByteBuffer buffer, Handler handler) throws FormatException {
+        int records = 0;
+        while (buffer.hasRemaining()) {
+            int recordStart = buffer.position();
+            int knownStrings = strings.size();
+            try {
+                readRecord(buffer, handler);
+                records++;
+            } catch (RuntimeException e) {
+                if (e != UNDERFLOW) {
+                    throw e;
+                }
+                // 잘린 레코드에서 새로 등록한 문자열도 되돌린다
+                buffer.position(recordStart);
+                while (strings.size() > knownStrings) {
+                    strings.remove(strings.size() - 1);
+                }
+                break;
+            }
+        }
+        return records;
+    }
+
+    /**
+     * 캐시 인덱스에 해당하는 문자열.
+     */
+    String string(int index) {
+        return strings.get(index);
+    }
+
+    private void readRecord(ByteBuffer buffer, Handler handler) throws FormatException {
+        byte type = readByte(buffer);
+        if (!headerRead && type != RUN) {
+            throw new FormatException("simulation.log does not start with a run record");
+        }
+        switch (type) {
+            case RUN -> readRun(buffer, handler);
+            case USER -> handler.onUser(readInt(buffer), readBoolean(buffer), readInt(buffer));
+            case REQUEST -> {
+                int groupCount = readGroups(buffer);
+                int name = readCachedString(buffer);
+                int start = readInt(buffer);
+                int end = readInt(buffer);
+                boolean ok = readBoolean(buffer);
+                int message = readCachedString(buffer);
+                handler.onRequest(groups, groupCount, name, start, end, ok, message);
+            }
+            case GROUP -> {
+                // 그룹 타이밍은 사용하지 않는다 - 요청 단위로만 집계
+                readGroups(buffer);
+                skip(buffer, 12);
+                readBoolean(buffer);
+            }
+            case ERROR -> {
+                readCachedString(buffer);
+                readInt(buffer);
+            }
+            default -> throw new FormatException("Unknown simulation.log record type " + type
+                    + " at offset " + (buffer.position() - 1));
+        }
+    }
+
+    private void readRun(ByteBuffer buffer, Handler handler) throws FormatException {
+        String version = readString(buffer);
+        if (!isSupported(version)) {
+            throw new FormatException("Unsupported simulation.log format (Gatling " + version + ")");
+        }
+        String simulationClass = readString(buffer);
+        long start = readLong(buffer);
+        readString(buffer); // run description
+        int scenarioCount = readInt(buffer);
+        List<String> scenarios = new ArrayList<>(scenarioCount);
+        for (int i = 0; i < scenarioCount; i++) {
+            scenarios.add(readString(buffer));
+        }
+        int assertionCount = readInt(buffer);
+        for (int i = 0; i < assertionCount; i++) {
+            skip(buffer, readInt(buffer));
+        }
+        headerRead = true;
+        handler.onRun(version, simulationClass, start, scenarios);
+    }
+
+    private static boolean isSupported(String version) {
+        for (String prefix : SUPPORTED_VERSION_PREFIXES) {
+            if (version.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int readGroups(ByteBuffer buffer) {
+        int count = readInt(buffer);
+        if (count > groups.length) {
+            groups = new int[Math.max(count, groups.length * 2)];
+        }
+        for (int i = 0; i < count; i++) {
+            groups[i] = readCachedString(buffer);
+        }
+        return count;
+    }
+
+    // 새 문자열이면 양수 인덱스 뒤에 본문, 이미 나온 문자열이면 음수 인덱스만 기록된다
+    private int readCachedString(ByteBuffer buffer) {
+        int index = readInt(buffer);
+        if (index >= 0 && index >= strings.size()) {
+            String value = readString(buffer);
+            while (strings.size() < index) {
+                strings.add(null);
+            }
+            strings.add(value);
+            return index;
+        }
+        return Math.abs(index);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = readInt(buffer);
+        if (length == 0) {
+            return "";
+        }
+        require(buffer, length + 1);
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        byte coder = buffer.get();
+        // String 내부 표현 그대로 기록됨 - LATIN1 또는 UTF16 (플랫폼 바이트 순서)
+        return coder == CODER_LATIN1
+                ? new String(bytes, StandardCharsets.ISO_8859_1)
+                : new String(bytes, ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN
+                        ? StandardCharsets.UTF_16LE : StandardCharsets.UTF_16BE);
+    }
+
+    private static void require(ByteBuffer buffer, int bytes) {
+        if (buffer.remaining() < bytes) {
+            throw UNDERFLOW;
+        }
+    }
+
+    private static void skip(ByteBuffer buffer, int bytes) {
+        require(buffer, bytes);
+        buffer.position(buffer.position() + bytes);
+    }
+
+    private static byte readByte(ByteBuffer buffer) {
+        require(buffer, 1);
+        return buffer.get();
+    }
+
+    private static boolean readBoolean(ByteBuffer buffer) {
+        return readByte(buffer) != 0;
+    }
+
+    private static int readInt(ByteBuffer buffer) {
+        require(buffer, 4);
+        return buffer.getInt();
+    }
+
+    private static long readLong(ByteBuffer buffer) {
+        require(buffer, 8);
+        return buffer.getLong();
+    }
+}
@@ -0,0 +1,382 @@
+package prometheus;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 실행 중인 simulation.log 를 이어 읽어 {@code prometheusHttp} 로 감싸지 않은 요청도 같은 메트릭으로 기록한다.
+ * <p>
+ * 결과 디렉터리에서 이번 실행의 simulation.log 가 생길 때까지 기다린 뒤, 마지막으로 읽은 위치부터
+ * {@link FileChannel} 위치 지정 읽기로 새로 추가된 바이트만 읽는다. 이미 읽은 구간은 다시 읽지 않는다.
+ * 디코딩은 {@link SimulationLogReader} 가 담당하며, 요청 이름별로 {@link RequestMetrics} 핸들을 캐시하므로
+ * 레코드마다 라벨 조회나 할당이 일어나지 않는다.
+ * <p>
+ * DSL 로 이미 계측된 요청 이름과 {@code trackUser} 로 추적 중인 시나리오는 이중 집계를 막기 위해 건너뛴다.
+ * (DSL 의 requestName 과 {@code http(...)} 이름이 같아야 한다)
+ * 단, 계측된 요청의 KO 는 이름별로 세어 두었다가 DSL 쪽이 기록한 누적 KO 수({@link RequestMetrics#getKoTotal()})보다
+ * 많으면 모자란 만큼 기록한다. 기록 액션에 도달하지 못한 사용자(실행 종료로 중단된 요청 등)의 실패가 빠지지 않게 하기 위해서다.
+ * DSL 의 기록은 simulation.log 기록과 동기화되지 않으므로, 부족분이 한 tail 주기 넘게 남아 있을 때만 채우고
+ * 종료 시에는 남은 부족분을 모두 채운다.
+ * simulation.log 에는 요청의 시나리오가 없으므로 시나리오가 하나인 실행은 그 이름을, 아니면 그룹 경로를
+ * scenario 라벨로 쓴다.
+ */
+final class SimulationLogTailer implements SimulationLogReader.Handler {
+
+    private static final int INITIAL_BUFFER_SIZE = 1024 * 1024;
+    private static final String NO_GROUP = "-";
+
+    private final GatlingPrometheusMetrics metrics;
+    private final File resultsDirectory;
+    private final long pollIntervalMillis;
+    private final Set<String> instrumentedRequests = ConcurrentHashMap.newKeySet();
+    private final Set<String> instrumentedScenarios = ConcurrentHashMap.newKeySet();
+
+    // 아래 필드는 tail 스레드에서만 접근
+    private final SimulationLogReader reader = new SimulationLogReader();
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(INITIAL_BUFFER_SIZE);
+    private FileChannel channel;
+    private long filePosition;
+    private String simulation;
+    private List<String> scenarios = List.of();
+    // scenario 인덱스별 사용자 수 핸들 - 사용자 레코드마다 키를 만들지 않는다
+    private MetricsRun.ScenarioUsers[] usersByScenario = new MetricsRun.ScenarioUsers[0];
+    // RequestMetrics 또는 InstrumentedRequest
+    private Object[] handlesByName = new Object[64];
+    private final Map<String, Object> groupedHandles = new HashMap<>();
+    private final Map<String, InstrumentedRequest> instrumentedByName = new HashMap<>();
+    private final StringBuilder groupPath = new StringBuilder();
+    private long recordsRead;
+    private long backfilledKo;
+    private long lastReconcileMillis;
+
+    private Thread thread;
+    private volatile boolean running;
+    private volatile long startedAtMillis;
+
+    SimulationLogTailer(GatlingPrometheusMetrics metrics, PrometheusConfig config) {
+        this.metrics = metrics;
+        this.resultsDirectory = new File(config.getTailResultsDirectory());
+        this.pollIntervalMillis = config.getTailPollIntervalMillis();
+    }
+
+    void markInstrumentedRequest(String request) {
+        instrumentedRequests.add(request);
+    }
+
+    void markInstrumentedScenario(String scenario) {
+        instrumentedScenarios.add(scenario);
+    }
+
+    synchronized void start(String simulationName) {
+        if (running) {
+            return;
+        }
+        this.simulation = simulationName;
+        this.startedAtMillis = System.currentTimeMillis();
+        // 이전 실행의 핸들은 끝난 실행에 묶여 있다
+        Arrays.fill(handlesByName, null);
+        groupedHandles.clear();
+        instrumentedByName.clear();
+        running = true;
+        thread = new Thread(this::tailLoop, "prometheus-simulation-log-tailer");
+        thread.setDaemon(true);
+        thread.start();
+        System.out.println("✓ simulation.log tailer started: " + resultsDirectory.getAbsolutePath());
+    }
+
+    /**
+     * 남은 레코드를 마지막으로 한 번 더 읽고 종료한다.
+     */
+    synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        thread.interrupt();
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        System.out.println("simulation.log tailer stopped (" + recordsRead + " records, "
+                + backfilledKo + " KO backfilled for instrumented requests)");
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    private void tailLoop() {
+        try {
+            while (running) {
+                if (channel == null) {
+                    openLog();
+                }
+                if (channel == null || poll() == 0) {
+                    sleep();
+                }
+                long now = System.currentTimeMillis();
+                if (now - lastReconcileMillis >= pollIntervalMillis) {
+                    lastReconcileMillis = now;
+                    reconcileKo(false);
+                }
+            }
+            // 종료 직전에 기록된 레코드까지 반영 - 사용자가 모두 끝났으므로 남은 부족분은 기록 액션에 도달하지 못한 KO 다
+            if (channel != null) {
+                while (poll() > 0) {
+                    // 끝까지 읽는다
+                }
+                reconcileKo(true);
+            }
+        } catch (SimulationLogReader.FormatException e) {
+            System.err.println("simulation.log tailer disabled: " + e.getMessage());
+        } catch (IOException e) {
+            System.err.println("simulation.log tailer failed: " + e.getMessage());
+        } finally {
+            closeChannel();
+        }
+    }
+
+    private void sleep() {
+        try {
+            Thread.sleep(pollIntervalMillis);
+        } catch (InterruptedException e) {
+            // stop() 이 깨운 경우 - 루프 조건에서 종료
+        }
+    }
+
+    // 결과 디렉터리 이름은 "<simulation 소문자>-<타임스탬프>" - 이번 실행 이후 생성된 것 중 가장 최근 것
+    private void openLog() throws IOException {
+        String prefix = simulation.toLowerCase() + "-";
+        File[] candidates = resultsDirectory.listFiles(file -> file.isDirectory()
+                && file.getName().startsWith(prefix)
+                && file.lastModified() >= startedAtMillis - TimeUnit.SECONDS.toMillis(5));
+        if (candidates == null || candidates.length == 0) {
+            return;
+        }
+        File latest = candidates[0];
+        for (File candidate : candidates) {
+            if (candidate.lastModified() > latest.lastModified()) {
+                latest = candidate;
+            }
+        }
+        Path log = latest.toPath().resolve("simulation.log");
+        if (!log.toFile().isFile()) {
+            return;
+        }
+        channel = FileChannel.open(log, StandardOpenOption.READ);
+        filePosition = 0;
+        buffer.clear();
+        System.out.println("  Tailing " + log);
+    }
+
+    /**
+     * 새로 추가된 바이트를 읽어 완전한 레코드를 모두 처리한다.
+     *
+     * @return 처리한 레코드 수
+     */
+    private int poll() throws IOException, SimulationLogReader.FormatException {
+        int total = 0;
+        while (true) {
+            int read = channel.read(buffer, filePosition);
+            if (read <= 0) {
+                return total;
+            }
+            filePosition += read;
+
+            buffer.flip();
+            int records = reader.read(buffer, this);
+            total += records;
+            recordsRead += records;
+            if (records == 0 && buffer.position() == 0 && buffer.limit() == buffer.capacity()) {
+                // 레코드 하나가 버퍼보다 큰 경우
+                ByteBuffer larger = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+                larger.put(buffer);
+                buffer = larger;
+            } else {
+                buffer.compact();
+            }
+        }
+    }
+
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            channel = null;
+        }
+    }
+
+    @Override
+    public void onRun(String gatlingVersion, String simulationClass, long startMillis, List<String> scenarios) {
+        this.scenarios = scenarios;
+        this.usersByScenario = new MetricsRun.ScenarioUsers[scenarios.size()];
+    }
+
+    @Override
+    public void onUser(int scenarioIndex, boolean start, int timestamp) {
+        if (scenarioIndex < 0 || scenarioIndex >= scenarios.size()) {
+            return;
+        }
+        String scenario = scenarios.get(scenarioIndex);
+        if (instrumentedScenarios.contains(scenario)) {
+            return;
+        }
+        MetricsRun.ScenarioUsers users = usersByScenario[scenarioIndex];
+        if (users == null) {
+            users = metrics.scenarioUsers(simulation, scenario);
+            usersByScenario[scenarioIndex] = users;
+        }
+        if (start) {
+            metrics.userStarted(users);
+        } else {
+            users.userFinished(-1);
+        }
+    }
+
+    @Override
+    public void onRequest(int[] groups, int groupCount, int nameIndex, int start, int end, boolean ok, int messageIndex) {
+        Object resolved = groupCount == 0 ? handleByName(nameIndex) : groupedHandle(groups, groupCount, nameIndex);
+        if (resolved instanceof RequestMetrics handle) {
+            handle.record(ok, Math.max(0, end - start));
+            if (!ok) {
+                handle.recordError(reader.string(messageIndex));
+            }
+        } else if (!ok) {
+            // 계측된 요청의 KO 는 세기만 하고 대조는 reconcileKo 에서
+            InstrumentedRequest instrumented = (InstrumentedRequest) resolved;
+            instrumented.koRecords++;
+            instrumented.lastResponseTimeMs = Math.max(0, end - start);
+            instrumented.lastMessageIndex = messageIndex;
+        }
+    }
+
+    /**
+     * 계측된 요청의 KO 를 DSL 쪽 누적 KO 수와 대조해 모자란 만큼 기록한다.
+     * 이번에 보인 부족분이 DSL 기록이 아직 도착하지 않은 것일 수 있으므로, {@code finalPass} 가 아니면
+     * 지난 대조 때부터 남아 있던 부족분까지만 기록한다. 기록한 KO 도 DSL 핸들의 누적 KO 에 포함되므로 다시 세지 않는다.
+     * 어떤 KO 가 빠졌는지는 알 수 없으므로 마지막 KO 레코드의 응답 시간과 메시지로 기록한다.
+     */
+    private void reconcileKo(boolean finalPass) {
+        for (InstrumentedRequest instrumented : instrumentedByName.values()) {
+            if (instrumented.koRecords == instrumented.reconciledKoRecords && instrumented.unmatched == 0) {
+                continue;
+            }
+            instrumented.reconciledKoRecords = instrumented.koRecords;
+            List<RequestMetrics> handles = metrics.requestMetricsNamed(instrumented.request);
+            long recorded = 0;
+            for (RequestMetrics handle : handles) {
+                recorded += handle.getKoTotal();
+            }
+            long deficit = instrumented.koRecords - recorded;
+            if (deficit <= 0) {
+                instrumented.unmatched = 0;
+                continue;
+            }
+            long backfill = finalPass ? deficit : Math.min(deficit, instrumented.unmatched);
+            instrumented.unmatched = deficit - backfill;
+            if (backfill == 0) {
+                continue;
+            }
+            RequestMetrics target = backfillTarget(instrumented, handles);
+            String message = reader.string(instrumented.lastMessageIndex);
+            for (long i = 0; i < backfill; i++) {
+                target.record(false, instrumented.lastResponseTimeMs);
+                target.recordError(message);
+            }
+            backfilledKo += backfill;
+        }
+    }
+
+    /**
+     * 로그 기준 scenario 라벨과 같은 DSL 핸들, 이 이름의 DSL 핸들이 하나뿐이면 그 핸들,
+     * 그 외에는 로그 기준 scenario 라벨의 핸들
+     */
+    private RequestMetrics backfillTarget(InstrumentedRequest instrumented, List<RequestMetrics> handles) {
+        for (RequestMetrics handle : handles) {
+            if (handle.getSimulation().equals(simulation) && handle.getScenario().equals(instrumented.scenario)) {
+                return handle;
+            }
+        }
+        if (handles.size() == 1) {
+            return handles.get(0);
+        }
+        return metrics.requestMetrics(simulation, instrumented.scenario, instrumented.request);
+    }
+
+    // 그룹이 없는 요청은 이름 인덱스로 바로 찾는다
+    private Object handleByName(int nameIndex) {
+        if (nameIndex >= handlesByName.length) {
+            handlesByName = Arrays.copyOf(handlesByName, Math.max(nameIndex + 1, handlesByName.length * 2));
+        }
+        Object handle = handlesByName[nameIndex];
+        if (handle == null) {
+            handle = resolve(NO_GROUP, reader.string(nameIndex));
+            handlesByName[nameIndex] = handle;
+        }
+        return handle;
+    }
+
+    private Object groupedHandle(int[] groups, int groupCount, int nameIndex) {
+        groupPath.setLength(0);
+        for (int i = 0; i < groupCount; i++) {
+            if (i > 0) {
+                groupPath.append(" / ");
+            }
+            groupPath.append(reader.string(groups[i]));
+        }
+        groupPath.append('\u0000').append(reader.string(nameIndex));
+        // 조회용 키 문자열 하나만 할당된다
+        String key = groupPath.toString();
+        Object handle = groupedHandles.get(key);
+        if (handle == null) {
+            int separator = key.indexOf('\u0000');
+            handle = resolve(key.substring(0, separator), key.substring(separator + 1));
+            groupedHandles.put(key, handle);
+        }
+        return handle;
+    }
+
+    private Object resolve(String groupPath, String request) {
+        String scenario = scenarios.size() == 1 ? scenarios.get(0) : groupPath;
+        if (instrumentedRequests.contains(request)) {
+            // 그룹이 달라도 이름이 같으면 DSL 핸들과 같은 KO 수로 대조한다
+            return instrumentedByName.computeIfAbsent(request, name -> new InstrumentedRequest(scenario, name));
+        }
+        return metrics.requestMetrics(simulation, scenario, request);
+    }
+
+    /**
+     * DSL 로 계측된 요청 - 성공은 건너뛰고 KO 수만 대조한다
+     */
+    private static final class InstrumentedRequest {
+
+        private final String scenario;
+        private final String request;
+        private long koRecords;
+        // 마지막 대조 때의 koRecords 와 그때 남은 부족분
+        private long reconciledKoRecords;
+        private long unmatched;
+        private long lastResponseTimeMs;
+        private int lastMessageIndex;
+
+        InstrumentedRequest(String scenario, String request) {
+            this.scenario = scenario;
+            this.request = request;
+        }
+    }
+}
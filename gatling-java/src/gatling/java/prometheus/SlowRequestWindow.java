@@ -0,0 +1,190 @@
+package prometheus;
+
+import io.prometheus.metrics.model.snapshots.Labels;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * (scenario, request) 단위로 현재 구간에서 가장 느린 K 개 요청의 상세 정보.
+ * <p>
+ * 크기 K 의 최소 힙을 유지하고, 힙이 차면 최솟값을 volatile 임계값으로 게시한다.
+ * 기록 스레드는 {@link #admits(long)} 로 임계값과 한 번 비교해 대부분의 요청을 바로 거르고,
+ * 통과한 요청만 상세 정보를 만들어 {@link #offer(Sample)} 한다 (락은 이때만).
+ * {@link SlowRequestWindows} 가 구간마다 {@link #rotate(long)} 해 끝난 구간을 최근 몇 개까지 보관한다.
+ */
+final class SlowRequestWindow {
+
+    // exemplar 라벨 이름과 값을 합친 길이 제한 (OpenMetrics)
+    private static final int MAX_EXEMPLAR_LABEL_CHARS = 128;
+
+    /**
+     * 느린 요청 하나. 모르는 값은 path = null, status = 0, responseBytes = -1.
+     */
+    record Sample(long timestampMillis, long responseTimeMicros, boolean success, int status,
+                  long userId, String path, long responseBytes) {
+
+        /**
+         * 히스토그램 exemplar 로 붙일 라벨 - 길이 제한을 넘지 않도록 path 를 자른다
+         */
+        Labels exemplarLabels() {
+            String user = Long.toString(userId);
+            String code = status > 0 ? Integer.toString(status) : null;
+            int budget = MAX_EXEMPLAR_LABEL_CHARS - "user_id".length() - user.length()
+                    - (code != null ? "status".length() + code.length() : 0) - "path".length();
+            String trimmed = path == null || path.length() <= budget ? path : path.substring(0, Math.max(0, budget));
+            if (code == null) {
+                return trimmed == null ? Labels.of("user_id", user) : Labels.of("user_id", user, "path", trimmed);
+            }
+            return trimmed == null
+                    ? Labels.of("user_id", user, "status", code)
+                    : Labels.of("user_id", user, "status", code, "path", trimmed);
+        }
+    }
+
+    /**
+     * 구간 하나의 결과 - 느린 순
+     */
+    record Window(long startMillis, long endMillis, List<Sample> samples) {
+    }
+
+    private static final Comparator<Sample> SLOWEST_FIRST =
+            Comparator.comparingLong(Sample::responseTimeMicros).reversed();
+
+    private final String simulation;
+    private final String scenario;
+    private final String request;
+    private final int history;
+
+    // 아래 필드는 synchronized (this) 안에서만 접근
+    private final Sample[] heap;
+    private int size;
+    private long windowStartMillis = System.currentTimeMillis();
+    private final ArrayDeque<Window> completed = new ArrayDeque<>();
+    private volatile long candidates;
+
+    // 힙이 차기 전에는 -1 (모두 통과)
+    private volatile long thresholdMicros = -1;
+
+    SlowRequestWindow(String simulation, String scenario, String request, int topK, int history) {
+        this.simulation = simulation;
+        this.scenario = scenario;
+        this.request = request;
+        this.heap = new Sample[topK];
+        this.history = history;
+    }
+
+    /**
+     * 현재 구간의 top-K 에 들 수 있는지 - 기록 스레드의 빠른 경로
+     */
+    boolean admits(long responseTimeMicros) {
+        return responseTimeMicros > thresholdMicros;
+    }
+
+    /**
+     * @return top-K 에 들어갔으면 true (이미 다른 스레드가 임계값을 올렸으면 false)
+     */
+    synchronized boolean offer(Sample sample) {
+        candidates++;
+        long micros = sample.responseTimeMicros();
+        if (size < heap.length) {
+            heap[size] = sample;
+            siftUp(size++);
+        } else if (micros > heap[0].responseTimeMicros()) {
+            heap[0] = sample;
+            siftDown(0);
+        } else {
+            return false;
+        }
+        if (size == heap.length) {
+            thresholdMicros = heap[0].responseTimeMicros();
+        }
+        return true;
+    }
+
+    /**
+     * 현재 구간을 닫아 보관하고 새 구간을 시작한다
+     */
+    synchronized void rotate(long nowMillis) {
+        if (size > 0) {
+            completed.addLast(new Window(windowStartMillis, nowMillis, sorted()));
+            while (completed.size() > history) {
+                completed.removeFirst();
+            }
+        }
+        Arrays.fill(heap, 0, size, null);
+        size = 0;
+        windowStartMillis = nowMillis;
+        thresholdMicros = -1;
+    }
+
+    /**
+     * 진행 중인 구간(endMillis = 0)과 보관된 구간 - 최근 구간부터
+     */
+    synchronized List<Window> windows() {
+        List<Window> windows = new ArrayList<>(completed.size() + 1);
+        if (size > 0) {
+            windows.add(new Window(windowStartMillis, 0, sorted()));
+        }
+        completed.descendingIterator().forEachRemaining(windows::add);
+        return windows;
+    }
+
+    private List<Sample> sorted() {
+        List<Sample> samples = new ArrayList<>(Arrays.asList(heap).subList(0, size));
+        samples.sort(SLOWEST_FIRST);
+        return samples;
+    }
+
+    private void siftUp(int index) {
+        Sample sample = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heap[parent].responseTimeMicros() <= sample.responseTimeMicros()) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = sample;
+    }
+
+    private void siftDown(int index) {
+        Sample sample = heap[index];
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            if (child + 1 < size && heap[child + 1].responseTimeMicros() < heap[child].responseTimeMicros()) {
+                child++;
+            }
+            if (sample.responseTimeMicros() <= heap[child].responseTimeMicros()) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = sample;
+    }
+
+    /**
+     * 임계값 검사를 통과해 상세 정보를 만든 요청 수
+     */
+    long getCandidates() {
+        return candidates;
+    }
+
+    String getSimulation() {
+        return simulation;
+    }
+
+    String getScenario() {
+        return scenario;
+    }
+
+    String getRequest() {
+        return request;
+    }
+}
@@ -0,0 +1,154 @@
+package prometheus;
+
+import io.prometheus.metrics.core.metrics.CounterWithCallback;
+import io.prometheus.metrics.model.registry.PrometheusRegistry;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 요청별 {@link SlowRequestWindow} 를 관리하고 구간마다 회전시키는 컴포넌트.
+ * <p>
+ * top-K 에 든 요청은 응답 시간 히스토그램에 OpenMetrics exemplar (user_id, status, path) 로도 붙는다.
+ * exemplar 는 버킷마다 하나씩만 남으므로 전체 목록은 {@code GET /exemplars} (JSON) 로 본다.
+ */
+final class SlowRequestWindows {
+
+    private final int topK;
+    private final int windowSeconds;
+    private final int history;
+    private final List<SlowRequestWindow> windows = new CopyOnWriteArrayList<>();
+    // 제거된 윈도우의 후보 수 - counter 가 줄어들지 않도록 남겨 둔다
+    private final AtomicLong retiredCandidates = new AtomicLong();
+    private final ScheduledExecutorService rotator;
+
+    SlowRequestWindows(PrometheusConfig config, PrometheusRegistry registry) {
+        this.topK = config.getExemplarsTopK();
+        this.windowSeconds = config.getExemplarsWindowSeconds();
+        this.history = config.getExemplarsHistory();
+
+        CounterWithCallback.builder()
+                .name("gatling_slow_request_candidates_total")
+                .help("Requests that passed the top-K threshold check and had their details captured")
+                .callback(callback -> {
+                    long candidates = retiredCandidates.get();
+                    for (SlowRequestWindow window : windows) {
+                        candidates += window.getCandidates();
+                    }
+                    callback.call(candidates);
+                })
+                .register(registry);
+
+        this.rotator = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "prometheus-slow-requests");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.rotator.scheduleAtFixedRate(this::rotateAll, windowSeconds, windowSeconds, TimeUnit.SECONDS);
+    }
+
+    SlowRequestWindow create(String simulation, String scenario, String request) {
+        SlowRequestWindow window = new SlowRequestWindow(simulation, scenario, request, topK, history);
+        windows.add(window);
+        return window;
+    }
+
+    /**
+     * 유휴 제거되었거나 끝난 실행의 윈도우 - 더 이상 회전/노출하지 않는다
+     */
+    void remove(SlowRequestWindow window) {
+        if (windows.remove(window)) {
+            retiredCandidates.addAndGet(window.getCandidates());
+        }
+    }
+
+    private void rotateAll() {
+        long now = System.currentTimeMillis();
+        for (SlowRequestWindow window : windows) {
+            window.rotate(now);
+        }
+    }
+
+    /**
+     * /exemplars 응답 - scenario, request 가 null 이 아니면 해당 요청만
+     */
+    String toJson(String scenario, String request) {
+        StringBuilder json = new StringBuilder(4096);
+        json.append("{\"topK\":").append(topK)
+                .append(",\"windowSeconds\":").append(windowSeconds)
+                .append(",\"requests\":[");
+        boolean firstRequest = true;
+        for (SlowRequestWindow window : windows) {
+            if ((scenario != null && !scenario.equals(window.getScenario()))
+                    || (request != null && !request.equals(window.getRequest()))) {
+                continue;
+            }
+            List<SlowRequestWindow.Window> completed = window.windows();
+            if (completed.isEmpty()) {
+                continue;
+            }
+            if (!firstRequest) {
+                json.append(',');
+            }
+            firstRequest = false;
+            json.append("{\"simulation\":");
+            appendString(json, window.getSimulation());
+            json.append(",\"scenario\":");
+            appendString(json, window.getScenario());
+            json.append(",\"request\":");
+            appendString(json, window.getRequest());
+            json.append(",\"windows\":[");
+            for (int w = 0; w < completed.size(); w++) {
+                SlowRequestWindow.Window slowest = completed.get(w);
+                if (w > 0) {
+                    json.append(',');
+                }
+                json.append("{\"start\":").append(slowest.startMillis())
+                        .append(",\"end\":").append(slowest.endMillis() > 0 ? Long.toString(slowest.endMillis()) : "null")
+                        .append(",\"samples\":[");
+                for (int s = 0; s < slowest.samples().size(); s++) {
+                    SlowRequestWindow.Sample sample = slowest.samples().get(s);
+                    if (s > 0) {
+                        json.append(',');
+                    }
+                    json.append("{\"timestamp\":").append(sample.timestampMillis())
+                            .append(",\"responseTimeMs\":").append(sample.responseTimeMicros() / 1000.0)
+                            .append(",\"ok\":").append(sample.success())
+                            .append(",\"status\":").append(sample.status() > 0 ? Integer.toString(sample.status()) : "null")
+                            .append(",\"userId\":").append(sample.userId())
+                            .append(",\"path\":");
+                    if (sample.path() != null) {
+                        appendString(json, sample.path());
+                    } else {
+                        json.append("null");
+                    }
+                    json.append(",\"responseBytes\":")
+                            .append(sample.responseBytes() >= 0 ? Long.toString(sample.responseBytes()) : "null")
+                            .append('}');
+                }
+                json.append("]}");
+            }
+            json.append("]}");
+        }
+        return json.append("]}\n").toString();
+    }
+
+    private static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+}
@@ -0,0 +1,89 @@
+package prometheus;
+
+import io.prometheus.metrics.core.datapoints.CounterDataPoint;
+import io.prometheus.metrics.core.datapoints.DistributionDataPoint;
+
+/**
+ * (simulation, scenario, transaction) 조합의 미리 해석해 둔 데이터 포인트 핸들.
+ * <p>
+ * 트랜잭션은 여러 요청으로 이루어진 사용자 여정의 이름 붙은 구간이다 ({@link PrometheusHttpDsl#transaction}).
+ * 끝날 때 두 가지 시간을 기록한다.
+ * <ul>
+ *     <li>duration - 시작부터 끝까지의 경과 시간 (pause 포함)</li>
+ *     <li>response time - 구간 안 계측된 요청(prometheusHttp, recordMetrics)들의 응답 시간 합
+ *     (pause 제외, Gatling group 의 cumulated response time 과 같은 정의). 일반 {@code http(...)} 요청은
+ *     응답 시간을 알 수 없으므로 포함되지 않는다 - 모든 요청을 넣으려면 구간 안 요청을 prometheusHttp 로 감싼다.</li>
+ * </ul>
+ * 구간 안의 요청이 하나라도 실패하면 (응답이 없는 실패, 일반 {@code http(...)} 요청의 KO 포함) status="ko" 로 기록된다.
+ */
+public final class TransactionMetrics extends RunSeries {
+
+    private final String simulation;
+    private final String scenario;
+    private final String transaction;
+
+    // 제거 후 다시 기록되면 reattach() 가 새 데이터 포인트로 바꾼다
+    private DistributionDataPoint okDuration;
+    private DistributionDataPoint koDuration;
+    private DistributionDataPoint okResponseTime;
+    private DistributionDataPoint koResponseTime;
+    private CounterDataPoint okTransactions;
+    private CounterDataPoint koTransactions;
+
+    TransactionMetrics(MetricsRun run, String simulation, String scenario, String transaction) {
+        super(run);
+        this.simulation = simulation;
+        this.scenario = scenario;
+        this.transaction = transaction;
+        attachSeries();
+    }
+
+    @Override
+    void attachSeries() {
+        okDuration = run.transactionDuration.labelValues(simulation, scenario, transaction, "ok");
+        koDuration = run.transactionDuration.labelValues(simulation, scenario, transaction, "ko");
+        okResponseTime = run.transactionResponseTime.labelValues(simulation, scenario, transaction, "ok");
+        koResponseTime = run.transactionResponseTime.labelValues(simulation, scenario, transaction, "ko");
+        okTransactions = run.transactions.labelValues(simulation, scenario, transaction, "ok");
+        koTransactions = run.transactions.labelValues(simulation, scenario, transaction, "ko");
+    }
+
+    /**
+     * @param durationNanos   시작부터 끝까지 (pause 포함)
+     * @param cumulatedNanos  구간 안 요청 응답 시간의 합 (pause 제외)
+     */
+    public void record(boolean success, long durationNanos, long cumulatedNanos) {
+        int generation;
+        do {
+            generation = beginRecord();
+            if (success) {
+                okDuration.observe(durationNanos / 1_000_000.0);
+                okResponseTime.observe(cumulatedNanos / 1_000_000.0);
+                okTransactions.inc();
+            } else {
+                koDuration.observe(durationNanos / 1_000_000.0);
+                koResponseTime.observe(cumulatedNanos / 1_000_000.0);
+                koTransactions.inc();
+            }
+        } while (lostDuringRecord(generation));
+    }
+
+    @Override
+    long sampleCount() {
+        return (long) (okTransactions.get() + koTransactions.get());
+    }
+
+    @Override
+    void removeSeries() {
+        run.transactionDuration.remove(simulation, scenario, transaction, "ok");
+        run.transactionDuration.remove(simulation, scenario, transaction, "ko");
+        run.transactionResponseTime.remove(simulation, scenario, transaction, "ok");
+        run.transactionResponseTime.remove(simulation, scenario, transaction, "ko");
+        run.transactions.remove(simulation, scenario, transaction, "ok");
+        run.transactions.remove(simulation, scenario, transaction, "ko");
+    }
+
+    public String getTransaction() {
+        return transaction;
+    }
+}
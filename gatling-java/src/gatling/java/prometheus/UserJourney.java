@@ -0,0 +1,214 @@
+package prometheus;
+
+import java.util.Arrays;
+
+/**
+ * 가상 사용자 한 명의 여정 상태 - 세션 시작 시각, 열려 있는 트랜잭션 스택, 진행 중인 prometheusHttp 요청.
+ * <p>
+ * {@code trackUser} 가 Session 에 한 번 넣어 두고 (없으면 첫 트랜잭션/요청에서) 이후에는 같은 객체를 직접 고친다.
+ * 트랜잭션 시작/끝과 요청 기록마다 Session 을 복사하지 않기 위해서다.
+ * 한 사용자의 액션은 순서대로 실행되므로 동기화하지 않는다 (같은 Session 을 여러 사용자가 공유하지 않는다).
+ * 스택은 배열로 두고 중첩이 깊어질 때만 늘린다.
+ */
+final class UserJourney {
+
+    static final String SESSION_KEY = "prometheus_journey";
+
+    private static final int INITIAL_DEPTH = 4;
+
+    private final String simulation;
+    private final String scenario;
+    // trackUser 가 만든 경우의 사용자 수 핸들, 그 외에는 null
+    private final MetricsRun.ScenarioUsers users;
+    private final long startNanos;
+    // coordinated omission 보정용 사용자 시작 지연 - 첫 계측 요청이 가져가면 0 이 된다
+    private long startLagNanos;
+
+    private TransactionMetrics[] transactions = new TransactionMetrics[INITIAL_DEPTH];
+    private long[] startedNanos = new long[INITIAL_DEPTH];
+    private long[] cumulatedNanos = new long[INITIAL_DEPTH];
+    private boolean[] failed = new boolean[INITIAL_DEPTH];
+    // 시작할 때 Session 이 이미 실패 상태였는지 - 구간 안의 일반 http(...) 요청 실패 판별용
+    private boolean[] sessionFailedAtStart = new boolean[INITIAL_DEPTH];
+    private int depth;
+
+    // 진행 중인 prometheusHttp 요청 - 시작 액션이 초기화하고 response transformer 가 응답 정보를 채운다
+    private long requestStartNanos;
+    private boolean failedBeforeRequest;
+    private int responseStatus;
+    private long requestBodyBytes;
+    private long responseBodyBytes;
+    private boolean connectionClosed;
+    private String responsePath;
+
+    UserJourney(String simulation, String scenario, long startNanos) {
+        this.simulation = simulation;
+        this.scenario = scenario;
+        this.users = null;
+        this.startNanos = startNanos;
+    }
+
+    UserJourney(MetricsRun.ScenarioUsers users, long startNanos, long startLagNanos) {
+        this.simulation = users.getSimulation();
+        this.scenario = users.getScenario();
+        this.users = users;
+        this.startNanos = startNanos;
+        this.startLagNanos = startLagNanos;
+    }
+
+    /**
+     * @param sessionFailed 시작 시점 Session 의 실패 상태
+     */
+    void start(TransactionMetrics transaction, boolean sessionFailed) {
+        if (depth == transactions.length) {
+            int capacity = depth * 2;
+            transactions = Arrays.copyOf(transactions, capacity);
+            startedNanos = Arrays.copyOf(startedNanos, capacity);
+            cumulatedNanos = Arrays.copyOf(cumulatedNanos, capacity);
+            failed = Arrays.copyOf(failed, capacity);
+            sessionFailedAtStart = Arrays.copyOf(sessionFailedAtStart, capacity);
+        }
+        transactions[depth] = transaction;
+        startedNanos[depth] = System.nanoTime();
+        cumulatedNanos[depth] = 0;
+        failed[depth] = false;
+        sessionFailedAtStart[depth] = sessionFailed;
+        depth++;
+    }
+
+    /**
+     * 가장 안쪽 트랜잭션을 닫아 기록한다. 구간 안에서 Session 이 실패 상태로 바뀌었으면
+     * (계측되지 않은 {@code http(...)} 요청의 KO 포함) ko 로 기록한다.
+     *
+     * @param sessionFailed 종료 시점 Session 의 실패 상태
+     * @return 열린 트랜잭션이 없으면 false
+     */
+    boolean end(boolean sessionFailed) {
+        if (depth == 0) {
+            return false;
+        }
+        boolean failedInside = sessionFailed && !sessionFailedAtStart[depth - 1];
+        return end(System.nanoTime(), failedInside);
+    }
+
+    private boolean end(long nowNanos, boolean forceFailure) {
+        if (depth == 0) {
+            return false;
+        }
+        depth--;
+        TransactionMetrics transaction = transactions[depth];
+        transactions[depth] = null;
+        transaction.record(!failed[depth] && !forceFailure, nowNanos - startedNanos[depth], cumulatedNanos[depth]);
+        return true;
+    }
+
+    /**
+     * 계측된 요청(prometheusHttp, recordMetrics) 하나가 끝났을 때 - 열려 있는 모든 (중첩) 트랜잭션에 응답 시간을 더한다.
+     * coordinated omission 보정 전의 실제 응답 시간을 넘긴다. 일반 {@code http(...)} 요청은 여기에 오지 않으므로
+     * 누적 응답 시간에 포함되지 않는다 (실패는 {@link #end(boolean)} 가 Session 상태로 반영한다).
+     */
+    void requestCompleted(long responseTimeNanos, boolean success) {
+        for (int i = 0; i < depth; i++) {
+            cumulatedNanos[i] += responseTimeNanos;
+            if (!success) {
+                failed[i] = true;
+            }
+        }
+    }
+
+    /**
+     * 세션이 끝날 때 닫히지 않은 트랜잭션을 ko 로 기록한다 (안쪽부터)
+     */
+    void closeAll() {
+        long now = System.nanoTime();
+        while (depth > 0) {
+            end(now, true);
+        }
+    }
+
+    /**
+     * prometheusHttp 요청 시작 - 이전 요청의 응답 정보를 지운다
+     *
+     * @param sessionFailed 요청 전 Session 의 실패 상태 (요청이 체크 실패로 KO 되었는지 판별용)
+     */
+    void requestStarted(long nowNanos, boolean sessionFailed) {
+        requestStartNanos = nowNanos;
+        failedBeforeRequest = sessionFailed;
+        responseStatus = 0;
+        requestBodyBytes = -1;
+        responseBodyBytes = -1;
+        connectionClosed = false;
+        responsePath = null;
+    }
+
+    /**
+     * 응답을 받았을 때 (response transformer) - 연결 오류나 timeout 이면 호출되지 않는다
+     */
+    void responseReceived(int status, String path, long requestBytes, long responseBytes, boolean closed) {
+        responseStatus = status;
+        responsePath = path;
+        requestBodyBytes = requestBytes;
+        responseBodyBytes = responseBytes;
+        connectionClosed = closed;
+    }
+
+    /**
+     * 사용자 시작 지연을 한 번만 돌려준다 - 지연은 사용자의 첫 요청만 밀어내므로 이후 요청에는 더하지 않는다
+     */
+    long takeStartLag() {
+        long lag = startLagNanos;
+        startLagNanos = 0;
+        return lag;
+    }
+
+    long getRequestStartNanos() {
+        return requestStartNanos;
+    }
+
+    boolean wasFailedBeforeRequest() {
+        return failedBeforeRequest;
+    }
+
+    /**
+     * 응답 상태 코드 - 응답을 받지 못했으면 0
+     */
+    int getResponseStatus() {
+        return responseStatus;
+    }
+
+    String getResponsePath() {
+        return responsePath;
+    }
+
+    long getRequestBodyBytes() {
+        return requestBodyBytes;
+    }
+
+    long getResponseBodyBytes() {
+        return responseBodyBytes;
+    }
+
+    boolean isConnectionClosed() {
+        return connectionClosed;
+    }
+
+    int getDepth() {
+        return depth;
+    }
+
+    long getSessionNanos(long nowNanos) {
+        return nowNanos - startNanos;
+    }
+
+    MetricsRun.ScenarioUsers getUsers() {
+        return users;
+    }
+
+    String getSimulation() {
+        return simulation;
+    }
+
+    String getScenario() {
+        return scenario;
+    }
+}
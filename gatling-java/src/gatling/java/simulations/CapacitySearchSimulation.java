@@ -0,0 +1,56 @@
+package simulations;
+
+import io.gatling.javaapi.core.*;
+import io.gatling.javaapi.http.*;
+import prometheus.CapacitySearch;
+import prometheus.PrometheusSimulation;
+
+import java.time.Duration;
+
+import static io.gatling.javaapi.core.CoreDsl.*;
+import static io.gatling.javaapi.http.HttpDsl.*;
+import static prometheus.PrometheusHttpDsl.*;
+
+/**
+ * SLO(p99 200ms, 에러 1%)를 만족하는 최대 도착률을 이분 탐색으로 찾는다.
+ * 대상 주소는 -Dcapacity.baseUrl 로 바꿀 수 있다.
+ */
+public class CapacitySearchSimulation extends PrometheusSimulation {
+
+    private static final String SIMULATION_NAME = "CapacitySearchSimulation";
+    private static final String SCENARIO_NAME = "Capacity Search";
+    private static final String REQUEST_NAME = "Get Item";
+
+    HttpProtocolBuilder httpProtocol = http
+        .baseUrl(System.getProperty("capacity.baseUrl", "http://localhost:8080"))
+        .acceptHeader("application/json")
+        .userAgentHeader("Gatling/Capacity Search");
+
+    CapacitySearch search = capacitySearch(SCENARIO_NAME, REQUEST_NAME)
+        .slo(200, 0.01)
+        .rates(10, 2000)
+        .binarySearch(0.05)
+        .stepDuration(Duration.ofSeconds(20), Duration.ofSeconds(5))
+        .build();
+
+    ScenarioBuilder scn = scenario(SCENARIO_NAME)
+        // 현재 목표 도착률을 넘는 사용자는 여기서 종료된다
+        .exec(search.admit())
+        .exec(trackUser(SIMULATION_NAME, SCENARIO_NAME))
+        .exec(
+            prometheusHttpWithCheck(
+                SIMULATION_NAME,
+                SCENARIO_NAME,
+                http(REQUEST_NAME).get("/api/items/1"),
+                REQUEST_NAME,
+                200
+            )
+        )
+        .exec(untrackUser());
+
+    {
+        setUp(
+                scn.injectOpen(search.injectionProfile())
+        ).protocols(httpProtocol);
+    }
+}
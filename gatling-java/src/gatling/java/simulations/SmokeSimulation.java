@@ -33,7 +33,8 @@ public class SmokeSimulation extends PrometheusSimulation {
             )
         )
         .pause(Duration.ofMillis(300))
-        // Request 2: Get another crocodile
+        // Request 2, 3: 상세 조회 여정 - gatling_transaction_* 로 묶어서 기록
+        .exec(startTransaction(SIMULATION_NAME, SCENARIO_NAME, "Browse Crocodiles"))
         .exec(
             prometheusHttpWithCheck(
                 SIMULATION_NAME,
@@ -44,7 +45,6 @@ public class SmokeSimulation extends PrometheusSimulation {
             )
         )
         .pause(Duration.ofMillis(200))
-        // Request 3: Get crocodile 3
         .exec(
             prometheusHttpWithCheck(
                 SIMULATION_NAME,
@@ -54,12 +54,16 @@ public class SmokeSimulation extends PrometheusSimulation {
                 200
             )
         )
+        .exec(endTransaction())
         .exec(untrackUser());
 
     {
+        // 인젝터 프로브가 실제 유입률과 사용자 시작 지연을 비교할 기준
+        metrics.expectInjectionRate(SIMULATION_NAME, SCENARIO_NAME, shardRate(2));
+
         setUp(
                 scn.injectOpen(
-                        constantUsersPerSec(2)   // 초당 2명 유입
+                        constantUsersPerSec(shardRate(2))   // 초당 2명 유입 (shard 실행 시 JVM 수로 나눔)
                                 .during(Duration.ofMinutes(4))
                 )
         ).protocols(httpProtocol)
@@ -0,0 +1,385 @@
+package stub;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * 스텁 서버의 I/O 스레드 하나 - 자기 Selector 에 등록된 연결의 요청을 읽고 응답을 쓴다.
+ * <p>
+ * 지연이 있는 응답은 스레드를 잡아 두지 않고 마감 시각 순 우선순위 큐에 넣었다가 select 타임아웃으로 깨어나 보낸다.
+ * 같은 연결의 파이프라인 요청은 앞선 응답보다 먼저 나가지 않도록 마감 시각을 직전 응답 이후로 맞춘다.
+ * 모든 상태는 이 스레드에서만 접근하며, 통계 필드만 다른 스레드(메트릭 콜백)가 읽는다.
+ */
+final class EventLoop implements Runnable {
+
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+    // 마감까지 이보다 짧으면 select 로 잠들지 않고 바로 다시 확인 (select 타임아웃은 ms 단위)
+    private static final long SPIN_THRESHOLD_NANOS = 200_000;
+
+    private static final byte[] CONTENT_LENGTH = "content-length".getBytes();
+    private static final byte[] CONNECTION = "connection".getBytes();
+    private static final byte[] TRANSFER_ENCODING = "transfer-encoding".getBytes();
+    private static final byte[] CLOSE = "close".getBytes();
+
+    private final Selector selector;
+    private final StubRoute[] routes;
+    private final StubRoute notFound;
+    private final Queue<SocketChannel> accepted = new ConcurrentLinkedQueue<>();
+    private final PriorityQueue<Delayed> delayed = new PriorityQueue<>();
+    private final SplittableRandom random = new SplittableRandom();
+    private long sequence;
+    private volatile boolean running = true;
+
+    private volatile int openConnections;
+    private volatile int delayedResponses;
+    private volatile long bytesWritten;
+
+    private record Delayed(long deadlineNanos, long sequence, Connection connection, StubRoute route,
+                           boolean error, long receivedNanos) implements Comparable<Delayed> {
+        @Override
+        public int compareTo(Delayed other) {
+            int byDeadline = Long.compare(deadlineNanos, other.deadlineNanos);
+            return byDeadline != 0 ? byDeadline : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private static final class Connection {
+        final SocketChannel channel;
+        final ByteBuffer in = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        final ArrayDeque<ByteBuffer> out = new ArrayDeque<>();
+        SelectionKey key;
+        long bodyRemaining;
+        long lastDeadlineNanos;
+        int pending;
+        boolean closeAfterResponses;
+        boolean closed;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    EventLoop(StubRoute[] routes, StubRoute notFound) throws IOException {
+        this.selector = Selector.open();
+        this.routes = routes;
+        this.notFound = notFound;
+    }
+
+    void register(SocketChannel channel) {
+        accepted.add(channel);
+        selector.wakeup();
+    }
+
+    void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    int getOpenConnections() {
+        return openConnections;
+    }
+
+    int getDelayedResponses() {
+        return delayedResponses;
+    }
+
+    long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                Delayed next = delayed.peek();
+                if (next == null) {
+                    selector.select(this::onSelected);
+                } else {
+                    long wait = next.deadlineNanos() - System.nanoTime();
+                    if (wait < SPIN_THRESHOLD_NANOS) {
+                        selector.selectNow(this::onSelected);
+                    } else {
+                        selector.select(this::onSelected, (wait + 999_999) / 1_000_000);
+                    }
+                }
+                registerAccepted();
+                fireDelayed();
+            }
+        } catch (IOException e) {
+            System.err.println("Stub event loop failed: " + e.getMessage());
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection connection) {
+                    close(connection);
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    private void registerAccepted() {
+        SocketChannel channel;
+        while ((channel = accepted.poll()) != null) {
+            try {
+                Connection connection = new Connection(channel);
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                openConnections++;
+            } catch (IOException e) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    private void onSelected(SelectionKey key) {
+        Connection connection = (Connection) key.attachment();
+        try {
+            if (key.isWritable()) {
+                flush(connection);
+            }
+            if (key.isValid() && key.isReadable()) {
+                read(connection);
+            }
+        } catch (IOException | RuntimeException e) {
+            close(connection);
+        }
+    }
+
+    private void read(Connection connection) throws IOException {
+        ByteBuffer in = connection.in;
+        int read = connection.channel.read(in);
+        if (read < 0) {
+            close(connection);
+            return;
+        }
+        in.flip();
+        parseRequests(connection, System.nanoTime());
+        in.compact();
+        if (!in.hasRemaining()) {
+            // 헤더가 버퍼보다 크다
+            close(connection);
+            return;
+        }
+        flush(connection);
+    }
+
+    private void parseRequests(Connection connection, long now) {
+        ByteBuffer in = connection.in;
+        byte[] bytes = in.array();
+        while (!connection.closeAfterResponses) {
+            if (connection.bodyRemaining > 0) {
+                int skip = (int) Math.min(in.remaining(), connection.bodyRemaining);
+                in.position(in.position() + skip);
+                connection.bodyRemaining -= skip;
+                if (connection.bodyRemaining > 0) {
+                    return;
+                }
+            }
+            int start = in.position();
+            int end = headerEnd(bytes, start, in.limit());
+            if (end < 0) {
+                return;
+            }
+
+            // 요청 줄: METHOD SP PATH[?query] SP VERSION
+            int lineEnd = indexOf(bytes, (byte) '\r', start, end);
+            int pathStart = indexOf(bytes, (byte) ' ', start, lineEnd) + 1;
+            if (pathStart <= 0) {
+                connection.closeAfterResponses = true;
+                return;
+            }
+            int pathEnd = pathStart;
+            while (pathEnd < lineEnd && bytes[pathEnd] != ' ' && bytes[pathEnd] != '?') {
+                pathEnd++;
+            }
+            boolean keepAlive = lineEnd - 3 >= pathEnd && bytes[lineEnd - 1] == '1' && bytes[lineEnd - 3] == '1';
+
+            long contentLength = 0;
+            int line = lineEnd + 2;
+            while (line < end - 2) {
+                int next = indexOf(bytes, (byte) '\r', line, end);
+                int colon = indexOf(bytes, (byte) ':', line, next);
+                if (colon > 0) {
+                    if (headerIs(bytes, line, colon, CONTENT_LENGTH)) {
+                        contentLength = parseLong(bytes, colon + 1, next);
+                    } else if (headerIs(bytes, line, colon, CONNECTION)) {
+                        keepAlive = !valueContains(bytes, colon + 1, next, CLOSE);
+                    } else if (headerIs(bytes, line, colon, TRANSFER_ENCODING)) {
+                        // chunked 요청 본문은 지원하지 않는다 - 응답 후 연결을 닫는다
+                        keepAlive = false;
+                    }
+                }
+                line = next + 2;
+            }
+            in.position(end);
+            connection.bodyRemaining = contentLength;
+            connection.closeAfterResponses = !keepAlive;
+            dispatch(connection, route(bytes, pathStart, pathEnd), now);
+        }
+    }
+
+    private StubRoute route(byte[] bytes, int from, int to) {
+        for (StubRoute route : routes) {
+            if (route.matches(bytes, from, to)) {
+                return route;
+            }
+        }
+        return notFound;
+    }
+
+    private void dispatch(Connection connection, StubRoute route, long now) {
+        boolean error = route.errorRate > 0 && random.nextDouble() < route.errorRate;
+        long latency = route.latency.sampleNanos(random);
+        if (latency == 0 && connection.pending == 0) {
+            respond(connection, route, error, now, System.nanoTime());
+            return;
+        }
+        long deadline = Math.max(now + latency, connection.lastDeadlineNanos);
+        connection.lastDeadlineNanos = deadline;
+        connection.pending++;
+        delayed.add(new Delayed(deadline, sequence++, connection, route, error, now));
+        delayedResponses = delayed.size();
+    }
+
+    private void fireDelayed() {
+        if (delayed.isEmpty()) {
+            return;
+        }
+        long now = System.nanoTime();
+        Delayed next;
+        while ((next = delayed.peek()) != null && next.deadlineNanos() <= now) {
+            delayed.poll();
+            Connection connection = next.connection();
+            connection.pending--;
+            if (connection.closed) {
+                continue;
+            }
+            respond(connection, next.route(), next.error(), next.receivedNanos(), now);
+            try {
+                flush(connection);
+            } catch (IOException e) {
+                close(connection);
+            }
+        }
+        delayedResponses = delayed.size();
+    }
+
+    private void respond(Connection connection, StubRoute route, boolean error, long receivedNanos, long now) {
+        connection.out.add((error ? route.errorResponse : route.okResponse).duplicate());
+        double millis = (now - receivedNanos) / 1_000_000.0;
+        if (error) {
+            route.errorTime.observe(millis);
+            route.errorCount.inc();
+        } else {
+            route.okTime.observe(millis);
+            route.okCount.inc();
+        }
+    }
+
+    private void flush(Connection connection) throws IOException {
+        ArrayDeque<ByteBuffer> out = connection.out;
+        long written = 0;
+        try {
+            ByteBuffer head;
+            while ((head = out.peek()) != null) {
+                written += connection.channel.write(head);
+                if (head.hasRemaining()) {
+                    connection.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+                out.poll();
+            }
+        } finally {
+            bytesWritten += written;
+        }
+        if (connection.key.interestOps() != SelectionKey.OP_READ) {
+            connection.key.interestOps(SelectionKey.OP_READ);
+        }
+        if (connection.closeAfterResponses && connection.pending == 0) {
+            close(connection);
+        }
+    }
+
+    private void close(Connection connection) {
+        if (connection.closed) {
+            return;
+        }
+        connection.closed = true;
+        connection.out.clear();
+        connection.key.cancel();
+        openConnections--;
+        try {
+            connection.channel.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    // \r\n\r\n 다음 위치, 없으면 -1
+    private static int headerEnd(byte[] bytes, int from, int to) {
+        for (int i = from; i + 3 < to; i++) {
+            if (bytes[i] == '\r' && bytes[i + 1] == '\n' && bytes[i + 2] == '\r' && bytes[i + 3] == '\n') {
+                return i + 4;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(byte[] bytes, byte value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean headerIs(byte[] bytes, int from, int to, byte[] lowerCaseName) {
+        if (to - from != lowerCaseName.length) {
+            return false;
+        }
+        for (int i = 0; i < lowerCaseName.length; i++) {
+            if ((bytes[from + i] | 0x20) != lowerCaseName[i] && bytes[from + i] != lowerCaseName[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean valueContains(byte[] bytes, int from, int to, byte[] lowerCaseToken) {
+        for (int i = from; i + lowerCaseToken.length <= to; i++) {
+            if (headerIs(bytes, i, i + lowerCaseToken.length, lowerCaseToken)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long parseLong(byte[] bytes, int from, int to) {
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            byte b = bytes[i];
+            if (b >= '0' && b <= '9') {
+                value = value * 10 + (b - '0');
+            } else if (b != ' ' && b != '\t') {
+                break;
+            }
+        }
+        return value;
+    }
+}
@@ -0,0 +1,57 @@
+package stub;
+
+import com.typesafe.config.Config;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * 스텁 라우트의 응답 지연 분포 (ns).
+ * <pre>
+ * { type = fixed, value = 5ms }
+ * { type = lognormal, median = 5ms, sigma = 0.5 }
+ * { type = bimodal, fast = 5ms, slow = 250ms, slow-ratio = 0.05, sigma = 0.2 }
+ * </pre>
+ * bimodal 은 두 lognormal 분포의 혼합이다 (예: 캐시 hit / miss). sigma = 0 이면 각 모드가 고정값이 된다.
+ */
+interface LatencyDistribution {
+
+    long MAX_NANOS = 60_000_000_000L;
+
+    LatencyDistribution NONE = random -> 0;
+
+    long sampleNanos(RandomGenerator random);
+
+    static LatencyDistribution from(Config config) {
+        String type = config.hasPath("type") ? config.getString("type").trim().toLowerCase() : "fixed";
+        return switch (type) {
+            case "fixed" -> fixed(config.hasPath("value") ? config.getDuration("value").toNanos() : 0);
+            case "lognormal" -> logNormal(config.getDuration("median").toNanos(),
+                    config.hasPath("sigma") ? config.getDouble("sigma") : 0.5);
+            case "bimodal" -> bimodal(config.getDuration("fast").toNanos(), config.getDuration("slow").toNanos(),
+                    config.hasPath("slow-ratio") ? config.getDouble("slow-ratio") : 0.05,
+                    config.hasPath("sigma") ? config.getDouble("sigma") : 0.2);
+            default -> throw new IllegalArgumentException("Unknown latency type '" + type
+                    + "', expected fixed | lognormal | bimodal");
+        };
+    }
+
+    static LatencyDistribution fixed(long nanos) {
+        long value = Math.min(MAX_NANOS, Math.max(0, nanos));
+        return value == 0 ? NONE : random -> value;
+    }
+
+    static LatencyDistribution logNormal(long medianNanos, double sigma) {
+        if (sigma <= 0) {
+            return fixed(medianNanos);
+        }
+        double median = Math.max(0, medianNanos);
+        return random -> (long) Math.min(MAX_NANOS, median * Math.exp(sigma * random.nextGaussian()));
+    }
+
+    static LatencyDistribution bimodal(long fastNanos, long slowNanos, double slowRatio, double sigma) {
+        LatencyDistribution fast = logNormal(fastNanos, sigma);
+        LatencyDistribution slow = logNormal(slowNanos, sigma);
+        double ratio = Math.min(1, Math.max(0, slowRatio));
+        return random -> random.nextDouble() < ratio ? slow.sampleNanos(random) : fast.sampleNanos(random);
+    }
+}
@@ -0,0 +1,65 @@
+package stub;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * stub.conf 의 {@code stub {}} 블록 설정.
+ * <p>
+ * 시스템 프로퍼티가 우선한다. (예: {@code -Dstub.port=8081})
+ */
+final class StubConfig {
+
+    private final int port;
+    private final int ioThreads;
+    private final int metricsPort;
+    private final int backlog;
+    private final List<StubRoute> routes;
+
+    private StubConfig(Config config) {
+        this.port = config.hasPath("port") ? config.getInt("port") : 8080;
+        int threads = config.hasPath("io-threads") ? config.getInt("io-threads") : 0;
+        this.ioThreads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.metricsPort = config.hasPath("metrics-port") ? config.getInt("metrics-port") : 9103;
+        this.backlog = config.hasPath("backlog") ? Math.max(1, config.getInt("backlog")) : 4096;
+
+        List<StubRoute> routes = new ArrayList<>();
+        if (config.hasPath("routes")) {
+            for (Config route : config.getConfigList("routes")) {
+                routes.add(StubRoute.from(route));
+            }
+        }
+        this.routes = routes;
+    }
+
+    static StubConfig load() {
+        Config config = ConfigFactory.systemProperties()
+                .withFallback(ConfigFactory.parseResources("stub.conf"));
+        return new StubConfig(config.hasPath("stub")
+                ? config.getConfig("stub")
+                : ConfigFactory.empty());
+    }
+
+    int getPort() {
+        return port;
+    }
+
+    int getIoThreads() {
+        return ioThreads;
+    }
+
+    int getMetricsPort() {
+        return metricsPort;
+    }
+
+    int getBacklog() {
+        return backlog;
+    }
+
+    List<StubRoute> getRoutes() {
+        return routes;
+    }
+}
@@ -0,0 +1,92 @@
+package stub;
+
+import io.prometheus.metrics.core.metrics.Counter;
+import io.prometheus.metrics.core.metrics.CounterWithCallback;
+import io.prometheus.metrics.core.metrics.GaugeWithCallback;
+import io.prometheus.metrics.core.metrics.Histogram;
+import io.prometheus.metrics.model.registry.PrometheusRegistry;
+import prometheus.PrometheusConfig;
+
+/**
+ * 스텁 서버가 측정한 서버 측 처리 시간과 요청 수.
+ * <p>
+ * 히스토그램 레이아웃은 gatling.conf 의 prometheus.histogram 설정을 그대로 따르므로
+ * 클라이언트 측 {@code gatling_response_time_milliseconds} 와 같은 버킷으로 비교할 수 있다.
+ * 처리 시간은 요청 헤더를 다 읽은 시점부터 응답을 소켓에 쓰기 시작한 시점까지이며, 주입한 지연을 포함한다.
+ */
+final class StubMetrics {
+
+    private final Histogram responseTime;
+    private final Counter requests;
+
+    StubMetrics(PrometheusRegistry registry, PrometheusConfig config, EventLoop[] loops) {
+        Histogram.Builder builder = Histogram.builder();
+        switch (config.getHistogramMode()) {
+            case CLASSIC -> builder.classicOnly()
+                    .classicUpperBounds(config.getHistogramBuckets());
+            case NATIVE -> builder.nativeOnly()
+                    .nativeInitialSchema(config.getNativeInitialSchema())
+                    .nativeMaxNumberOfBuckets(config.getNativeMaxBuckets());
+            case BOTH -> builder
+                    .classicUpperBounds(config.getHistogramBuckets())
+                    .nativeInitialSchema(config.getNativeInitialSchema())
+                    .nativeMaxNumberOfBuckets(config.getNativeMaxBuckets());
+        }
+        this.responseTime = builder
+                .name("stub_server_response_time_milliseconds")
+                .help("Server-side time from request received to response written, including injected latency")
+                .labelNames("route", "status")
+                .withoutExemplars()
+                .register(registry);
+
+        this.requests = Counter.builder()
+                .name("stub_server_requests_total")
+                .help("Requests served by the stub server")
+                .labelNames("route", "status")
+                .withoutExemplars()
+                .register(registry);
+
+        GaugeWithCallback.builder()
+                .name("stub_server_open_connections")
+                .help("Currently open client connections")
+                .callback(callback -> {
+                    long open = 0;
+                    for (EventLoop loop : loops) {
+                        open += loop.getOpenConnections();
+                    }
+                    callback.call(open);
+                })
+                .register(registry);
+
+        GaugeWithCallback.builder()
+                .name("stub_server_delayed_responses")
+                .help("Responses waiting for their injected latency to elapse")
+                .callback(callback -> {
+                    long delayed = 0;
+                    for (EventLoop loop : loops) {
+                        delayed += loop.getDelayedResponses();
+                    }
+                    callback.call(delayed);
+                })
+                .register(registry);
+
+        CounterWithCallback.builder()
+                .name("stub_server_written_bytes_total")
+                .help("Response bytes written to client sockets")
+                .callback(callback -> {
+                    long bytes = 0;
+                    for (EventLoop loop : loops) {
+                        bytes += loop.getBytesWritten();
+                    }
+                    callback.call(bytes);
+                })
+                .register(registry);
+    }
+
+    void bind(StubRoute route) {
+        route.okTime = responseTime.labelValues(route.name, "200");
+        route.okCount = requests.labelValues(route.name, "200");
+        route.errorTime = responseTime.labelValues(route.name, route.errorStatus);
+        route.errorCount = requests.labelValues(route.name, route.errorStatus);
+    }
+}
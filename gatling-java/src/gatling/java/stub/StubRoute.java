@@ -0,0 +1,127 @@
+package stub;
+
+import com.typesafe.config.Config;
+import io.prometheus.metrics.core.datapoints.CounterDataPoint;
+import io.prometheus.metrics.core.datapoints.DistributionDataPoint;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 스텁 서버의 라우트 하나 - 지연 분포, 에러 주입 비율, 미리 인코딩한 응답 바이트.
+ * <p>
+ * path 가 {@code /*} 로 끝나면 접두사로 매칭한다. 응답 헤더와 본문은 시작 시 한 번 만들어 두고
+ * 요청마다 {@link ByteBuffer#duplicate()} 로 공유한다.
+ */
+final class StubRoute {
+
+    private static final byte[] FILLER = "0123456789abcdefghijklmnopqrstuvwxyz".getBytes(StandardCharsets.US_ASCII);
+
+    final String name;
+    final String path;
+    final boolean prefix;
+    private final byte[] pathBytes;
+    final LatencyDistribution latency;
+    final double errorRate;
+    final ByteBuffer okResponse;
+    final ByteBuffer errorResponse;
+    final String errorStatus;
+
+    // StubMetrics 가 바인딩 - 기록 경로에서 라벨 조회를 하지 않는다
+    DistributionDataPoint okTime;
+    DistributionDataPoint errorTime;
+    CounterDataPoint okCount;
+    CounterDataPoint errorCount;
+
+    StubRoute(String path, LatencyDistribution latency, double errorRate, int errorStatus,
+              int payloadBytes, String contentType) {
+        this(path, path, latency, errorRate, errorStatus, payloadBytes, contentType, "injected");
+    }
+
+    private StubRoute(String name, String path, LatencyDistribution latency, double errorRate, int errorStatus,
+                      int payloadBytes, String contentType, String error) {
+        this.name = name;
+        this.prefix = path.endsWith("/*");
+        this.path = prefix ? path.substring(0, path.length() - 1) : path;
+        this.pathBytes = this.path.getBytes(StandardCharsets.US_ASCII);
+        this.latency = latency;
+        this.errorRate = Math.min(1, Math.max(0, errorRate));
+        this.errorStatus = String.valueOf(errorStatus);
+        this.okResponse = response(200, contentType, payload(Math.max(0, payloadBytes)));
+        this.errorResponse = response(errorStatus, "application/json",
+                ("{\"error\":\"" + error + "\"}").getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * 매칭되는 라우트가 없는 요청 - 항상 404.
+     */
+    static StubRoute notFound() {
+        return new StubRoute("unmatched", "/*", LatencyDistribution.NONE, 1, 404, 0, "application/json", "no route");
+    }
+
+    static StubRoute from(Config config) {
+        return new StubRoute(
+                config.getString("path"),
+                config.hasPath("latency") ? LatencyDistribution.from(config.getConfig("latency")) : LatencyDistribution.NONE,
+                config.hasPath("error-rate") ? config.getDouble("error-rate") : 0,
+                config.hasPath("error-status") ? config.getInt("error-status") : 500,
+                config.hasPath("payload-bytes") ? config.getInt("payload-bytes") : 256,
+                config.hasPath("content-type") ? config.getString("content-type") : "application/json");
+    }
+
+    /**
+     * 요청 경로 바이트 {@code bytes[from, to)} 와 비교 - 요청마다 문자열을 만들지 않는다.
+     */
+    boolean matches(byte[] bytes, int from, int to) {
+        int length = to - from;
+        if (prefix ? length < pathBytes.length : length != pathBytes.length) {
+            return false;
+        }
+        return Arrays.equals(bytes, from, from + pathBytes.length, pathBytes, 0, pathBytes.length);
+    }
+
+    // {"data":"0123..."} 형태로 정확히 size 바이트를 채운다
+    private static byte[] payload(int size) {
+        byte[] body = new byte[size];
+        byte[] open = "{\"data\":\"".getBytes(StandardCharsets.US_ASCII);
+        if (size < open.length + 2) {
+            Arrays.fill(body, (byte) ' ');
+            return body;
+        }
+        System.arraycopy(open, 0, body, 0, open.length);
+        for (int i = open.length; i < size - 2; i++) {
+            body[i] = FILLER[(i - open.length) % FILLER.length];
+        }
+        body[size - 2] = '"';
+        body[size - 1] = '}';
+        return body;
+    }
+
+    static ByteBuffer response(int status, String contentType, byte[] body) {
+        String header = "HTTP/1.1 " + status + " " + reason(status) + "\r\n"
+                + "Server: gatling-stub\r\n"
+                + "Content-Type: " + contentType + "\r\n"
+                + "Content-Length: " + body.length + "\r\n"
+                + "\r\n";
+        byte[] head = header.getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(head.length + body.length);
+        buffer.put(head).put(body).flip();
+        return buffer.asReadOnlyBuffer();
+    }
+
+    private static String reason(int status) {
+        return switch (status) {
+            case 200 -> "OK";
+            case 400 -> "Bad Request";
+            case 404 -> "Not Found";
+            case 429 -> "Too Many Requests";
+            case 431 -> "Request Header Fields Too Large";
+            case 500 -> "Internal Server Error";
+            case 502 -> "Bad Gateway";
+            case 503 -> "Service Unavailable";
+            case 504 -> "Gateway Timeout";
+            default -> "Status";
+        };
+    }
+}
@@ -0,0 +1,156 @@
+package stub;
+
+import com.sun.net.httpserver.HttpServer;
+import io.prometheus.metrics.expositionformats.ExpositionFormatWriter;
+import io.prometheus.metrics.expositionformats.ExpositionFormats;
+import io.prometheus.metrics.instrumentation.jvm.JvmMetrics;
+import io.prometheus.metrics.model.registry.PrometheusRegistry;
+import prometheus.PrometheusConfig;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * 인젝터 보정용 로컬 스텁 HTTP 서버.
+ * <p>
+ * 외부 API 대신 이 서버를 대상으로 돌리면 실행이 재현 가능하고, 라우트마다 지연 분포를 알고 있으므로
+ * 클라이언트 측 응답 시간과 서버 측 처리 시간의 차이로 인젝터 오버헤드를 볼 수 있다.
+ * <ul>
+ *     <li>NIO 이벤트 루프 (코어 수만큼) - 연결은 accept 스레드가 라운드 로빈으로 나눠 준다</li>
+ *     <li>HTTP/1.1 keep-alive, 파이프라이닝</li>
+ *     <li>라우트별 지연 분포(fixed, lognormal, bimodal), 에러 주입, 응답 크기 - stub.conf</li>
+ *     <li>서버 측 메트릭은 별도 포트(metrics-port)의 /metrics</li>
+ * </ul>
+ * <pre>
+ * ./gradlew stubServer
+ * ./gradlew stubServer -Dstub.port=8081
+ * </pre>
+ */
+public final class StubServer implements AutoCloseable {
+
+    private final StubConfig config;
+    private final ServerSocketChannel serverChannel;
+    private final EventLoop[] loops;
+    private final Thread[] loopThreads;
+    private final Thread acceptor;
+    private final HttpServer metricsServer;
+
+    private StubServer(StubConfig config) throws IOException {
+        this.config = config;
+
+        List<StubRoute> configured = config.getRoutes();
+        StubRoute[] routes = configured.toArray(new StubRoute[0]);
+        StubRoute notFound = StubRoute.notFound();
+
+        this.loops = new EventLoop[config.getIoThreads()];
+        this.loopThreads = new Thread[loops.length];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop(routes, notFound);
+        }
+
+        PrometheusRegistry registry = new PrometheusRegistry();
+        JvmMetrics.builder().register(registry);
+        StubMetrics metrics = new StubMetrics(registry, PrometheusConfig.load(), loops);
+        for (StubRoute route : routes) {
+            metrics.bind(route);
+        }
+        metrics.bind(notFound);
+
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        serverChannel.bind(new InetSocketAddress(config.getPort()), config.getBacklog());
+
+        this.metricsServer = HttpServer.create(new InetSocketAddress(config.getMetricsPort()), 16);
+        ExpositionFormatWriter writer = ExpositionFormats.init().getPrometheusTextFormatWriter();
+        metricsServer.createContext("/metrics", exchange -> {
+            // 스텁 서버 메트릭은 시리즈가 적으므로 스크래핑마다 인코딩한다
+            ByteArrayOutputStream body = new ByteArrayOutputStream(16 * 1024);
+            writer.write(body, registry.scrape());
+            try {
+                exchange.getResponseHeaders().set("Content-Type", writer.getContentType());
+                exchange.sendResponseHeaders(200, body.size());
+                try (OutputStream out = exchange.getResponseBody()) {
+                    body.writeTo(out);
+                }
+            } finally {
+                exchange.close();
+            }
+        });
+
+        for (int i = 0; i < loops.length; i++) {
+            Thread thread = new Thread(loops[i], "stub-io-" + i);
+            thread.setDaemon(true);
+            loopThreads[i] = thread;
+        }
+        this.acceptor = new Thread(this::acceptLoop, "stub-acceptor");
+        acceptor.setDaemon(true);
+    }
+
+    /**
+     * stub.conf 설정으로 서버를 시작한다.
+     */
+    public static StubServer start() throws IOException {
+        StubServer server = new StubServer(StubConfig.load());
+        for (Thread thread : server.loopThreads) {
+            thread.start();
+        }
+        server.acceptor.start();
+        server.metricsServer.start();
+        System.out.println("✓ Stub server started on port " + server.getPort()
+                + " (" + server.loops.length + " I/O threads, " + server.config.getRoutes().size() + " routes)");
+        System.out.println("  Server-side metrics at: http://localhost:" + server.config.getMetricsPort() + "/metrics");
+        return server;
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    private void acceptLoop() {
+        int next = 0;
+        while (serverChannel.isOpen()) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                loops[next].register(channel);
+                next = (next + 1) % loops.length;
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                System.err.println("Stub server accept failed: " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            // ignore
+        }
+        for (EventLoop loop : loops) {
+            loop.stop();
+        }
+        metricsServer.stop(0);
+    }
+
+    public static void main(String[] args) throws Exception {
+        StubServer server = start();
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            stopped.countDown();
+        }, "stub-shutdown"));
+        stopped.await();
+    }
+}
@@ -0,0 +1,117 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import prometheus.GatlingPrometheusMetrics;
+import prometheus.RequestMetrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 요청 기록 경로의 비용 측정 - 라벨 카디널리티별, 스레드 수는 -PjmhThreads 로 지정.
+ * <p>
+ * 파라미터 조합마다 JVM 을 새로 띄우므로 이전 조합의 라벨 자식이 결과에 섞이지 않는다.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetricsRecordingBenchmark {
+
+    private static final String SIMULATION = "BenchmarkSimulation";
+
+    @Param({"1", "100", "10000"})
+    public int cardinality;
+
+    private GatlingPrometheusMetrics metrics;
+    private String[] scenarios;
+    private String[] requests;
+    private String[] errorMessages;
+    private RequestMetrics[] handles;
+
+    @Setup
+    public void setUp() {
+        metrics = GatlingPrometheusMetrics.getInstance();
+        scenarios = new String[cardinality];
+        requests = new String[cardinality];
+        errorMessages = new String[cardinality];
+        handles = new RequestMetrics[cardinality];
+        for (int i = 0; i < cardinality; i++) {
+            scenarios[i] = "Scenario " + (i % 10);
+            requests[i] = "Request " + i;
+            // 가변 부분(IP, 포트)이 섞인 실제와 비슷한 메시지
+            errorMessages[i] = "j.n.ConnectException: Connection refused: host-" + i + "/10.0." + (i / 256) + "." + (i % 256) + ":443";
+            handles[i] = metrics.requestMetrics(SIMULATION, scenarios[i], requests[i]);
+        }
+    }
+
+    /**
+     * 스레드별 커서 - 라벨 순회와 응답 시간 분포를 스레드 간 공유 없이 만든다.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int index;
+        private long seed = System.nanoTime() | 1;
+
+        int next(int size) {
+            int current = index;
+            index = current + 1 == size ? 0 : current + 1;
+            return current;
+        }
+
+        // xorshift - 1~1024ms 범위로 여러 버킷에 고르게 분산
+        long latency() {
+            seed ^= seed << 13;
+            seed ^= seed >>> 7;
+            seed ^= seed << 17;
+            return 1 + (seed & 1023);
+        }
+    }
+
+    @Benchmark
+    public void recordRequest(Cursor cursor) {
+        int i = cursor.next(cardinality);
+        metrics.recordRequest(SIMULATION, scenarios[i], requests[i], true, cursor.latency());
+    }
+
+    @Benchmark
+    public void recordRequestHandle(Cursor cursor) {
+        handles[cursor.next(cardinality)].record(true, cursor.latency());
+    }
+
+    @Benchmark
+    public void recordRequestHandleNanos(Cursor cursor) {
+        handles[cursor.next(cardinality)].recordNanos(false, cursor.latency() * 1_000_000 + 123_456);
+    }
+
+    @Benchmark
+    public void recordError(Cursor cursor) {
+        int i = cursor.next(cardinality);
+        metrics.recordError(SIMULATION, scenarios[i], requests[i], errorMessages[i]);
+    }
+
+    @Benchmark
+    public void recordHttpErrorHandle(Cursor cursor) {
+        int i = cursor.next(cardinality);
+        handles[i].recordHttpError(500 + (i & 3));
+    }
+
+    @Benchmark
+    public void userStartedAndFinished(Cursor cursor) {
+        int i = cursor.next(cardinality);
+        metrics.userStarted(SIMULATION, scenarios[i]);
+        metrics.userFinished(SIMULATION, scenarios[i]);
+    }
+}
@@ -0,0 +1,106 @@
+package prometheus;
+
+import io.gatling.javaapi.core.Session;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * prometheusHttp 기록 액션의 비용 측정 - Session 에서 {@link UserJourney} 를 꺼내 {@link RequestMetrics} 에 기록하는
+ * {@link PrometheusRequestActionBuilder#record(Session)} 전체 경로.
+ * <p>
+ * start/record 는 패키지 전용이므로 {@code benchmarks} 가 아닌 같은 패키지에 둔다.
+ * 응답 정보는 response transformer 대신 journey 에 직접 넣는다.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RequestRecordBenchmark {
+
+    private static final String SIMULATION = "BenchmarkSimulation";
+    private static final String SCENARIO = "Scenario";
+
+    private PrometheusRequestActionBuilder builder;
+    private final AtomicLong userIds = new AtomicLong();
+
+    @Setup
+    public void setUp() {
+        RequestMetrics handle = GatlingPrometheusMetrics.getInstance().requestMetrics(SIMULATION, SCENARIO, "Get Item");
+        // HttpDsl 은 Gatling 실행 밖에서 초기화되지 않는다 - start/record 는 HTTP 요청을 쓰지 않으므로 null
+        builder = new PrometheusRequestActionBuilder(null, handle, status -> status >= 200 && status < 400);
+    }
+
+    /**
+     * 스레드마다 가상 사용자 하나 - Session 과 journey 는 trackUser 처럼 한 번만 만든다
+     */
+    @State(Scope.Thread)
+    public static class User {
+
+        private Session session;
+        private UserJourney journey;
+        // 응답 시간이 계속 늘어나 매번 가장 느린 K 개에 드는 요청용
+        private long slowNanos;
+
+        @Setup
+        public void setUp(RequestRecordBenchmark benchmark) {
+            journey = new UserJourney(SIMULATION, SCENARIO, System.nanoTime());
+            session = new Session(io.gatling.core.session.Session$.MODULE$.apply(
+                    SCENARIO, benchmark.userIds.incrementAndGet(), null))
+                    .set(UserJourney.SESSION_KEY, journey);
+        }
+    }
+
+    /**
+     * 일반 요청 - 대부분 slow 후보 검사에서 걸러지고 recordNanos 로 기록된다
+     */
+    @Benchmark
+    public Session record(User user) {
+        user.journey.requestStarted(System.nanoTime(), false);
+        user.journey.responseReceived(200, "/items/1", 0, 512, false);
+        return builder.record(user.session);
+    }
+
+    /**
+     * 매번 현재 구간의 가장 느린 K 개에 드는 요청 - Sample 생성, top-K 삽입, exemplar 기록까지
+     */
+    @Benchmark
+    public Session recordSlowCandidate(User user) {
+        user.slowNanos += 1_000;
+        user.journey.requestStarted(System.nanoTime() - user.slowNanos, false);
+        user.journey.responseReceived(200, "/items/1", 0, 512, false);
+        return builder.record(user.session);
+    }
+
+    /**
+     * 상태 코드 KO - 에러 라벨 기록 포함
+     */
+    @Benchmark
+    public Session recordHttpError(User user) {
+        user.journey.requestStarted(System.nanoTime(), false);
+        user.journey.responseReceived(503, "/items/1", 0, 0, false);
+        return builder.record(user.session);
+    }
+
+    /**
+     * 시작 액션과 기록 액션을 합친 요청 하나의 계측 비용
+     */
+    @Benchmark
+    public Session startAndRecord(User user) {
+        Session started = builder.start(user.session);
+        user.journey.responseReceived(200, "/items/1", 0, 512, false);
+        return builder.record(started);
+    }
+}
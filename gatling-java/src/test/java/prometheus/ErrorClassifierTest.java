@@ -0,0 +1,34 @@
+package prometheus;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 라벨 상한은 실행마다 적용된다 - 이전 실행에서 허용된 라벨이 다음 실행의 자리를 차지하지 않는다
+ */
+class ErrorClassifierTest {
+
+    @Test
+    void labelsBeyondLimitCollapseToOther() {
+        ErrorClassifier classifier = new ErrorClassifier(2, 100, false, ErrorClassifier.defaultTemplates());
+        assertEquals("HTTP_500", classifier.classifyStatus(500));
+        assertEquals("ConnectException", classifier.classify("j.n.ConnectException: Connection refused"));
+        assertEquals(ErrorClassifier.OTHER, classifier.classifyStatus(503));
+        assertEquals("HTTP_500", classifier.classifyStatus(500));
+    }
+
+    @Test
+    void newRunStartsWithEmptyLabelSet() {
+        ErrorClassifier classifier = new ErrorClassifier(1, 100, false, ErrorClassifier.defaultTemplates());
+        assertEquals("HTTP_500", classifier.classifyStatus(500));
+        assertEquals(ErrorClassifier.OTHER, classifier.classify("request timeout after 60000 ms"));
+
+        classifier.runStarted();
+
+        // 캐시된 'other' 도 비워져 다시 분류된다
+        assertEquals("request timeout after <n> ms", classifier.classify("request timeout after 60000 ms"));
+        assertEquals(ErrorClassifier.OTHER, classifier.classifyStatus(500));
+        assertEquals(1, classifier.getAdmittedLabelCount());
+    }
+}
@@ -0,0 +1,148 @@
+package prometheus;
+
+import com.sun.net.httpserver.HttpServer;
+import com.typesafe.config.ConfigFactory;
+import io.prometheus.metrics.model.registry.PrometheusRegistry;
+import io.prometheus.metrics.model.snapshots.CounterSnapshot;
+import io.prometheus.metrics.model.snapshots.HistogramSnapshot;
+import io.prometheus.metrics.model.snapshots.MetricSnapshot;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 로컬 stub /write 엔드포인트로 line protocol 출력과 writer 자체 메트릭 확인
+ */
+class InfluxDbWriterTest {
+
+    private final BlockingQueue<String> writes = new LinkedBlockingQueue<>();
+    private final PrometheusRegistry registry = new PrometheusRegistry();
+    private HttpServer influx;
+    private InfluxDbWriter writer;
+    private RequestMetrics request;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        influx = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        influx.createContext("/write", exchange -> {
+            writes.add(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        influx.start();
+
+        GatlingPrometheusMetrics metrics = GatlingPrometheusMetrics.getInstance();
+        metrics.beginRun("InfluxSim");
+        request = metrics.requestMetrics("InfluxSim", "scn", "get item");
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (writer != null) {
+            writer.stop();
+        }
+        influx.stop(0);
+        GatlingPrometheusMetrics.getInstance().completeRun();
+        GatlingPrometheusMetrics.getInstance().releaseRun();
+    }
+
+    @Test
+    void writesOnePointPerRequestAndSecond() throws Exception {
+        writer = writer(65536);
+        long second = System.currentTimeMillis() / 1000 - 10;
+        writer.onRequest(request, true, second * 1000 + 100, 10_000);
+        writer.onRequest(request, true, second * 1000 + 500, 20_000);
+        writer.onRequest(request, false, second * 1000 + 999, 30_000);
+        writer.start();
+
+        String body = writes.poll(5, TimeUnit.SECONDS);
+        assertNotNull(body, "no write received");
+        assertTrue(body.startsWith("gatling_requests,simulation=InfluxSim,scenario=scn,request=get\\ item "
+                + "count=3i,ok=2i,ko=1i,min=10.0,"), body);
+        assertTrue(body.contains(",max=30.0"), body);
+        assertTrue(body.endsWith(" " + second + "000000000\n"), body);
+
+        writer.stop();
+        assertEquals(1.0, counter("gatling_influxdb_points_written"));
+        assertEquals(0.0, counter("gatling_influxdb_write_errors"));
+        assertTrue(flushCount() >= 1, "flush duration not observed");
+    }
+
+    @Test
+    void lateEventsForWrittenSecondAreCountedNotRewritten() throws Exception {
+        writer = writer(65536);
+        long second = System.currentTimeMillis() / 1000 - 10;
+        writer.onRequest(request, true, second * 1000, 10_000);
+        writer.start();
+        assertNotNull(writes.poll(5, TimeUnit.SECONDS), "no write received");
+
+        // 이미 기록된 초 - 두 번째 점이 첫 점을 덮어쓰면 안 된다
+        writer.onRequest(request, true, second * 1000 + 1, 50_000);
+        writer.stop();
+
+        assertNull(writes.poll(500, TimeUnit.MILLISECONDS));
+        assertEquals(1.0, counter("gatling_influxdb_late_events"));
+    }
+
+    @Test
+    void currentSecondIsHeldBackUntilStop() throws Exception {
+        writer = writer(65536);
+        long now = System.currentTimeMillis();
+        writer.onRequest(request, true, now, 10_000);
+        writer.start();
+        // 진행 중인 초와 유예 1 초는 flush 되지 않는다
+        assertNull(writes.poll(300, TimeUnit.MILLISECONDS));
+
+        writer.stop();
+        String body = writes.poll(5, TimeUnit.SECONDS);
+        assertNotNull(body, "final flush not received");
+        assertTrue(body.endsWith(" " + now / 1000 + "000000000\n"), body);
+    }
+
+    @Test
+    void fullRingDropsEvents() {
+        writer = writer(4);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 10; i++) {
+            writer.onRequest(request, true, now, 1_000);
+        }
+        assertEquals(6.0, counter("gatling_influxdb_dropped_events"));
+    }
+
+    private InfluxDbWriter writer(int ringCapacity) {
+        PrometheusConfig config = new PrometheusConfig(ConfigFactory.parseString(
+                "influxdb { enabled = true, url = \"http://127.0.0.1:" + influx.getAddress().getPort() + "\","
+                        + " database = \"gatling\", flush-interval = 100ms, ring-capacity = " + ringCapacity + " }"));
+        return new InfluxDbWriter(config, registry);
+    }
+
+    private double counter(String name) {
+        for (MetricSnapshot snapshot : registry.scrape()) {
+            if (snapshot.getMetadata().getName().equals(name) && snapshot instanceof CounterSnapshot counter) {
+                return counter.getDataPoints().get(0).getValue();
+            }
+        }
+        throw new AssertionError("metric not found: " + name);
+    }
+
+    private long flushCount() {
+        for (MetricSnapshot snapshot : registry.scrape()) {
+            if (snapshot.getMetadata().getName().equals("gatling_influxdb_flush_duration_seconds")) {
+                return ((HistogramSnapshot) snapshot).getDataPoints().get(0).getCount();
+            }
+        }
+        throw new AssertionError("flush duration histogram not found");
+    }
+}
@@ -0,0 +1,70 @@
+package prometheus;
+
+import com.typesafe.config.ConfigFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 판정할 수 없는 경우 게이트가 통과시키지 않는지 (fail closed) 확인
+ */
+class RegressionGateTest {
+
+    private Path directory;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.deleteIfExists(RegressionGate.RESULT_FILE);
+        if (directory != null) {
+            try (var files = Files.walk(directory)) {
+                files.sorted((left, right) -> right.compareTo(left)).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    @Test
+    void writesFailedVerdictWhenSnapshotCannotBeSaved() throws IOException {
+        // 디렉터리 자리에 파일이 있어 스냅샷 디렉터리를 만들 수 없다
+        directory = Files.createTempFile("perf-baselines", ".tmp");
+        RegressionGate gate = gate(directory);
+
+        assertFalse(gate.evaluateOrFail("GateSim"));
+        List<String> result = Files.readAllLines(RegressionGate.RESULT_FILE, StandardCharsets.UTF_8);
+        assertEquals("FAILED", result.get(0));
+        assertTrue(result.get(1).startsWith("ERROR: "), result.get(1));
+    }
+
+    @Test
+    void writesFailedVerdictWhenBaselineIsCorrupt() throws IOException {
+        directory = Files.createTempDirectory("perf-baselines");
+        Files.createDirectories(directory.resolve("gatesim"));
+        Files.writeString(directory.resolve("gatesim").resolve("baseline.tsv"), "scn\tget item\t100\tnot-base64!\n");
+        RegressionGate gate = gate(directory);
+
+        assertFalse(gate.evaluateOrFail("GateSim"));
+        assertEquals("FAILED", Files.readAllLines(RegressionGate.RESULT_FILE, StandardCharsets.UTF_8).get(0));
+    }
+
+    @Test
+    void passesWithoutBaseline() throws IOException {
+        directory = Files.createTempDirectory("perf-baselines");
+        RegressionGate gate = gate(directory);
+
+        assertTrue(gate.evaluateOrFail("GateSim"));
+        assertEquals("PASSED", Files.readAllLines(RegressionGate.RESULT_FILE, StandardCharsets.UTF_8).get(0));
+    }
+
+    private static RegressionGate gate(Path directory) {
+        return new RegressionGate(new PrometheusConfig(ConfigFactory.parseString(
+                "regression { enabled = true, directory = \"" + directory.toString().replace("\\", "/") + "\" }")));
+    }
+}
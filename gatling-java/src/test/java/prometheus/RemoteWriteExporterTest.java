@@ -0,0 +1,200 @@
+package prometheus;
+
+import com.sun.net.httpserver.HttpServer;
+import com.typesafe.config.ConfigFactory;
+import io.prometheus.metrics.core.metrics.Counter;
+import io.prometheus.metrics.core.metrics.Histogram;
+import io.prometheus.metrics.model.registry.PrometheusRegistry;
+import io.prometheus.metrics.model.snapshots.CounterSnapshot;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xerial.snappy.Snappy;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 로컬 stub receiver 가 받은 WriteRequest 를 디코딩해 remote write 출력 확인
+ */
+class RemoteWriteExporterTest {
+
+    private final BlockingQueue<Received> writes = new LinkedBlockingQueue<>();
+    private final PrometheusRegistry registry = new PrometheusRegistry();
+    private HttpServer receiver;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        receiver = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        receiver.createContext("/api/v1/write", exchange -> {
+            writes.add(new Received(exchange.getRequestHeaders().getFirst("Content-Type"),
+                    exchange.getRequestHeaders().getFirst("Content-Encoding"),
+                    exchange.getRequestHeaders().getFirst("X-Prometheus-Remote-Write-Version"),
+                    exchange.getRequestBody().readAllBytes()));
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        receiver.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        receiver.stop(0);
+    }
+
+    @Test
+    void pushesDecodableWriteRequest() throws Exception {
+        Counter.builder().name("gatling_test_requests").help("test").labelNames("request").register(registry)
+                .labelValues("get item").inc(3);
+        Histogram.builder().name("gatling_test_latency").help("test").classicOnly().classicUpperBounds(100, 200)
+                .register(registry).observe(150);
+
+        // 주기를 길게 두어 stop() 의 최종 스냅샷만 전송된다
+        RemoteWriteExporter exporter = new RemoteWriteExporter(config("interval = 1h"), registry);
+        exporter.start();
+        exporter.stop();
+
+        Received write = writes.poll(5, TimeUnit.SECONDS);
+        assertNotNull(write);
+        assertEquals("application/x-protobuf", write.contentType());
+        assertEquals("snappy", write.contentEncoding());
+        assertEquals("0.1.0", write.version());
+
+        List<Series> series = decode(Snappy.uncompress(write.body()));
+        Series requests = find(series, "gatling_test_requests_total", "request", "get item");
+        assertEquals(3.0, requests.value());
+        assertEquals("gatling-test", requests.labels().get("job"));
+        assertNotNull(requests.labels().get("instance"));
+        assertTrue(requests.timestamp() > 0);
+        for (Series each : series) {
+            List<String> names = new ArrayList<>(each.labels().keySet());
+            assertEquals(names.stream().sorted().toList(), names, "labels must be sorted");
+        }
+
+        assertEquals(0.0, find(series, "gatling_test_latency_bucket", "le", "100.0").value());
+        assertEquals(1.0, find(series, "gatling_test_latency_bucket", "le", "200.0").value());
+        assertEquals(1.0, find(series, "gatling_test_latency_bucket", "le", "+Inf").value());
+        assertEquals(1.0, find(series, "gatling_test_latency_count", null, null).value());
+        assertEquals(150.0, find(series, "gatling_test_latency_sum", null, null).value());
+
+        assertEquals(series.size(), (long) counter("gatling_remote_write_samples"));
+        assertEquals(0, (long) counter("gatling_remote_write_failures"));
+    }
+
+    @Test
+    void nativeHistogramsArriveWithoutBuckets() throws Exception {
+        PrometheusConfig config = config("", "histogram { mode = native }");
+        MetricsRun.histogramBuilder(config, new double[]{100, 200}).name("gatling_test_latency").help("test")
+                .register(registry).observe(150);
+
+        List<Series> series = decode(new RemoteWriteEncoder(Map.of("job", "gatling")).encode(registry.scrape(), 1));
+
+        assertEquals(List.of("gatling_test_latency_count", "gatling_test_latency_sum"),
+                series.stream().map(each -> each.labels().get("__name__")).sorted().toList());
+        assertNotNull(RemoteWriteExporter.histogramModeWarning(config));
+        assertNull(RemoteWriteExporter.histogramModeWarning(config("", "histogram { mode = both }")));
+    }
+
+    private PrometheusConfig config(String remoteWrite) {
+        return config(remoteWrite, "");
+    }
+
+    private PrometheusConfig config(String remoteWrite, String extra) {
+        return new PrometheusConfig(ConfigFactory.parseString(
+                "remote-write { enabled = true, job = gatling-test"
+                        + ", url = \"http://127.0.0.1:" + receiver.getAddress().getPort() + "/api/v1/write\""
+                        + (remoteWrite.isEmpty() ? "" : ", " + remoteWrite) + " }\n" + extra));
+    }
+
+    private double counter(String name) {
+        return registry.scrape().stream()
+                .filter(snapshot -> snapshot.getMetadata().getName().equals(name))
+                .map(snapshot -> ((CounterSnapshot) snapshot).getDataPoints().get(0).getValue())
+                .findFirst().orElseThrow();
+    }
+
+    private static Series find(List<Series> series, String name, String label, String value) {
+        return series.stream()
+                .filter(each -> name.equals(each.labels().get("__name__")))
+                .filter(each -> label == null || value.equals(each.labels().get(label)))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("no series " + name + " " + label + "=" + value));
+    }
+
+    // WriteRequest { repeated TimeSeries timeseries = 1; } 디코딩 - 시리즈당 샘플 하나
+    private static List<Series> decode(byte[] writeRequest) {
+        List<Series> series = new ArrayList<>();
+        ByteBuffer request = ByteBuffer.wrap(writeRequest);
+        while (request.hasRemaining()) {
+            assertEquals(0x0A, request.get());
+            ByteBuffer timeSeries = slice(request);
+            Map<String, String> labels = new LinkedHashMap<>();
+            double value = Double.NaN;
+            long timestamp = 0;
+            while (timeSeries.hasRemaining()) {
+                int tag = timeSeries.get();
+                ByteBuffer field = slice(timeSeries);
+                if (tag == 0x0A) {
+                    assertEquals(0x0A, field.get());
+                    String name = string(slice(field));
+                    assertEquals(0x12, field.get());
+                    labels.put(name, string(slice(field)));
+                } else {
+                    assertEquals(0x12, tag);
+                    assertEquals(0x09, field.get());
+                    value = field.order(ByteOrder.LITTLE_ENDIAN).getDouble();
+                    assertEquals(0x10, field.get());
+                    timestamp = varint(field);
+                }
+            }
+            series.add(new Series(labels, value, timestamp));
+        }
+        return series;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer) {
+        int length = (int) varint(buffer);
+        ByteBuffer slice = buffer.slice(buffer.position(), length);
+        buffer.position(buffer.position() + length);
+        return slice;
+    }
+
+    private static long varint(ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static String string(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private record Received(String contentType, String contentEncoding, String version, byte[] body) {
+    }
+
+    private record Series(Map<String, String> labels, double value, long timestamp) {
+    }
+}
@@ -0,0 +1,41 @@
+package prometheus;
+
+import io.gatling.http.client.body.bytearray.ByteArrayRequestBody;
+import io.gatling.http.client.body.string.StringRequestBody;
+import io.gatling.http.client.body.stringchunks.StringChunksRequestBody;
+import io.gatling.netty.util.StringWithCachedBytes;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 요청 body 를 복사하지 않고 센 크기가 UTF-8 인코딩 결과와 같은지 확인
+ */
+class RequestBodySizeTest {
+
+    @Test
+    void countsUtf8BytesWithoutEncoding() {
+        for (String text : new String[]{"", "{\"id\":1}", "é", "한글 주문", "emoji 😀", "\uD800 lone surrogate"}) {
+            assertEquals(text.getBytes(StandardCharsets.UTF_8).length, PrometheusRequestActionBuilder.utf8Length(text), text);
+        }
+    }
+
+    @Test
+    void countsKnownBodyTypes() {
+        assertEquals(3, PrometheusRequestActionBuilder.bodySize(new ByteArrayRequestBody(new byte[3], null, null)));
+        assertEquals(6, PrometheusRequestActionBuilder.bodySize(new StringRequestBody("{\"é\"}", StandardCharsets.UTF_8)));
+        // StringBody("...#{el}...") 는 조각 body 로 전송된다
+        assertEquals(13, PrometheusRequestActionBuilder.bodySize(new StringChunksRequestBody(List.of(
+                new StringWithCachedBytes("{\"name\":\"", StandardCharsets.UTF_8),
+                new StringWithCachedBytes("é", StandardCharsets.UTF_8),
+                new StringWithCachedBytes("\"}", StandardCharsets.UTF_8)), StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void nullBodyIsEmpty() {
+        assertEquals(0, PrometheusRequestActionBuilder.bodySize(null));
+    }
+}
@@ -0,0 +1,109 @@
+package prometheus;
+
+import com.typesafe.config.ConfigFactory;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 기록과 유휴 제거가 겹칠 때 샘플이 사라지지 않는지 - 겹치는 순서를 직접 만들어 확인
+ */
+class RunSeriesTest {
+
+    private static final long TTL = 1000;
+
+    private final MetricsRun run = new MetricsRun(GatlingPrometheusMetrics.getInstance(),
+            new PrometheusConfig(ConfigFactory.empty()), "series-test", "SeriesSim");
+
+    @Test
+    void sampleWrittenToEvictedSeriesIsReplayed() {
+        CountingSeries series = new CountingSeries(run);
+        series.record(null);
+        assertFalse(series.evictIfIdle(0, TTL));
+
+        // 기록 전 확인은 통과했고, 쓰기 직전에 sweep 이 시리즈를 제거한다
+        series.record(() -> assertTrue(series.evictIfIdle(TTL, TTL)));
+
+        assertFalse(series.evicted);
+        assertEquals(1, series.live.get());
+        assertEquals(2, series.attached);
+    }
+
+    @Test
+    void sampleWrittenBeforeRecountCancelsEviction() {
+        CountingSeries series = new CountingSeries(run);
+        series.record(null);
+        assertFalse(series.evictIfIdle(0, TTL));
+
+        // sweep 이 유휴로 판정한 뒤 다시 세기 전에 evicted 를 보지 못한 기록이 들어온다
+        series.beforeCount = 3;
+        series.concurrentWrite = () -> series.live.incrementAndGet();
+        assertFalse(series.evictIfIdle(TTL, TTL));
+
+        assertFalse(series.evicted);
+        assertEquals(2, series.live.get());
+        assertEquals(1, series.attached);
+    }
+
+    @Test
+    void recordAfterCompletedRunDoesNotReattach() {
+        CountingSeries series = new CountingSeries(run);
+        run.complete();
+        series.evict();
+
+        series.record(null);
+
+        assertTrue(series.evicted);
+        assertEquals(1, series.attached);
+    }
+
+    private static final class CountingSeries extends RunSeries {
+
+        AtomicLong live;
+        int attached;
+        int beforeCount = -1;
+        Runnable concurrentWrite;
+        private int counts;
+
+        CountingSeries(MetricsRun run) {
+            super(run);
+            attachSeries();
+        }
+
+        void record(Runnable beforeWrite) {
+            int generation;
+            do {
+                generation = beginRecord();
+                AtomicLong target = live;
+                if (beforeWrite != null) {
+                    beforeWrite.run();
+                    beforeWrite = null;
+                }
+                target.incrementAndGet();
+            } while (lostDuringRecord(generation));
+        }
+
+        @Override
+        void attachSeries() {
+            live = new AtomicLong();
+            attached++;
+        }
+
+        @Override
+        void removeSeries() {
+            // 실제 시리즈처럼 기존 데이터 포인트는 버려지고 필드는 reattach 까지 남는다
+        }
+
+        @Override
+        long sampleCount() {
+            if (++counts == beforeCount && concurrentWrite != null) {
+                concurrentWrite.run();
+            }
+            return live.get();
+        }
+    }
+}